@@ -0,0 +1,338 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.calculator;
+
+import java.io.*;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import java.security.CodeSource;
+
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A template class used to build a CompiledExpressions class from a set of parsed
+ * expressions. The class is generated, compiled and loaded the same way as the
+ * MethodInvoker class built by MethodInvokerTemplate.
+ *
+ * Expressions that cannot be compiled (see Expression.isCompilable()) are left
+ * out of the generated class and are marked false in the array returned by
+ * getCompiledFlags() so that the caller keeps using the interpreter for them.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class CompiledExpressionTemplate implements Serializable {
+
+    private static Logger logger = Logger.getLogger("com.pb.common.calculator");
+
+    //Classes already loaded, keyed by the generated class body
+    private static final HashMap<String, CompiledExpressions> loadedClasses = new HashMap<String, CompiledExpressions>();
+
+    private String className;
+
+    private String sourceCode;
+
+    //System properties
+    private String tempDir = System.getProperty("java.io.tmpdir");
+    private String fileSeparator = System.getProperty("file.separator");
+
+    private Expression[] expressions;
+    private boolean[] compiled;
+
+
+    /**
+     * @param expressions  array of parsed expressions, null elements are skipped.
+     * The position of an expression in the array is the expressionNumber passed
+     * to CompiledExpressions.solve().
+     */
+    public CompiledExpressionTemplate( Expression[] expressions ) {
+        this.expressions = expressions;
+        this.compiled = new boolean[expressions.length];
+    }
+
+
+    /**
+     * Generate, compile and load the class. A class generated with the same body
+     * is loaded only once and then shared, so all UECs built from one model sheet
+     * use the same class instead of each running the compiler.
+     *
+     * @return the compiled expressions, or null if the class could not be built.
+     */
+    public CompiledExpressions generateAndLoadClass() {
+
+        String classBody = createClassBody();
+
+        synchronized (loadedClasses) {
+            CompiledExpressions compiledExpressions = loadedClasses.get(classBody);
+            if (compiledExpressions == null) {
+                compiledExpressions = compileAndLoadClass(classBody);
+                if (compiledExpressions == null) {
+                    java.util.Arrays.fill(compiled, false);
+                    return null;
+                }
+                loadedClasses.put(classBody, compiledExpressions);
+            }
+            else {
+                className = compiledExpressions.getClass().getSimpleName();
+                sourceCode = createClassHeader() + classBody;
+            }
+            return compiledExpressions;
+        }
+    }
+
+
+    private CompiledExpressions compileAndLoadClass(String classBody) {
+
+        //Make sure that tempDir ends with a "/" or "\"
+        if (! tempDir.endsWith(fileSeparator)) {
+            tempDir = tempDir + fileSeparator;
+        }
+
+        File sourceFile = null;
+        try {
+             sourceFile = File.createTempFile("CompiledExpressionsImpl", ".java", new File(tempDir));
+        } catch (IOException e) {
+            logger.error("caught exception in CompiledExpressionTemplate.generateAndLoadClass()", e);
+            return null;
+        }
+
+        //Strip off the ".java" ending to isolate just the class name
+        int end = sourceFile.getName().indexOf(".java");
+        className = sourceFile.getName().substring(0,end);
+
+        createSourceFile(sourceFile, classBody);
+
+        if ( ! compileSourceFile(tempDir, sourceFile) ) {
+            logger.warn("could not compile " + sourceFile + ", expressions will be interpreted");
+            deleteFiles(sourceFile, tempDir, className);
+            return null;
+        }
+
+        //Load compiled class file
+        try {
+            URL url = (new File(tempDir)).toURI().toURL();
+            URL[] urls = new URL[] { url };
+
+            logger.debug("loading " + "scratch."+className + ".class from: " + url);
+
+            ClassLoader cl = new URLClassLoader(urls, Thread.currentThread().getContextClassLoader() );
+            Class<?> cls = cl.loadClass("scratch."+className);
+
+            CompiledExpressions compiledExpressions = (CompiledExpressions) cls.newInstance();
+
+            deleteFiles(sourceFile, tempDir, className);
+
+            return compiledExpressions;
+        } catch (Throwable t) {
+            logger.error("caught exception in CompiledExpressionTemplate.generateAndLoadClass()", t);
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Generate the body of the CompiledExpressions class - one private method per
+     * expression plus a switch statement to dispatch on the expression number. The
+     * body does not refer to the class name.
+     */
+    private String createClassBody() {
+
+        StringWriter sWriter = new StringWriter(16384);
+        PrintWriter out = new PrintWriter(sWriter);
+
+        out.println("    public double solve(int expressionNumber, VariableTable vt) {");
+        out.println();
+        out.println("        switch (expressionNumber) {");
+        out.println();
+
+        StringBuffer methods = new StringBuffer(16384);
+        for (int i = 0; i < expressions.length; i++) {
+            if ( expressions[i] == null || ! expressions[i].isCompilable() )
+                continue;
+
+            //an expression the interpreter can't solve either is left to report its own error
+            String method;
+            try {
+                method = expressions[i].generateJavaMethod("e" + i);
+            }
+            catch (RuntimeException e) {
+                logger.warn("could not compile expression: " + expressions[i].getExpression(), e);
+                continue;
+            }
+
+            methods.append("\n");
+            methods.append( method );
+            compiled[i] = true;
+
+            out.println("            case " + i + ": return e" + i + "(vt);");
+        }
+
+        out.println("            default:");
+        out.println("                throw new RuntimeException(\"expression number = \"+expressionNumber+\" not compiled\");");
+        out.println("        }");
+        out.println("    }");
+        out.print(methods.toString());
+        out.println("}");
+
+        out.close();
+
+        return sWriter.toString();
+    }
+
+
+    private String createClassHeader() {
+
+        StringWriter sWriter = new StringWriter(256);
+        PrintWriter out = new PrintWriter(sWriter);
+
+        out.println("package scratch;");
+        out.println();
+        out.println("import com.pb.common.calculator.CompiledExpressions;");
+        out.println("import com.pb.common.calculator.VariableTable;");
+        out.println();
+        out.println("public class "+className+" implements CompiledExpressions {");
+        out.println();
+
+        out.close();
+
+        return sWriter.toString();
+    }
+
+
+    /**
+     * Write the CompiledExpressions class source file.
+     */
+    private void createSourceFile(File sourceFile, String classBody) {
+
+        logger.debug("creating "+className+".java at: " + sourceFile);
+
+        sourceCode = createClassHeader() + classBody;
+
+        //Write file to temporary location
+        try {
+            PrintWriter pout = new PrintWriter(new FileWriter(sourceFile));
+            pout.print(sourceCode);
+            pout.close();
+        } catch (IOException e) {
+            logger.error("caught exception in CompiledExpressionTemplate.createSourceFile()", e);
+        }
+
+    }
+
+
+    private boolean compileSourceFile(String tempDir, File sourceFile) {
+
+        //Compile source file by exec'ing a javac process
+        try {
+            String[] command = { "javac", "-nowarn", "-classpath", getCompileClasspath(), "-d", tempDir, sourceFile.getPath() };
+
+            logger.debug("compiling: " + sourceFile);
+
+            ProcessBuilder pb = new ProcessBuilder( command );
+            pb.redirectErrorStream(true);
+            Process child = pb.start();
+
+            //Drain compiler output so the child process cannot block on a full pipe
+            BufferedReader in = new BufferedReader( new InputStreamReader( child.getInputStream() ) );
+            String line;
+            while ( (line = in.readLine()) != null )
+                logger.debug(line);
+            in.close();
+
+            return child.waitFor() == 0;
+        }
+        catch (InterruptedException e) {
+            logger.error("caught exception in CompiledExpressionTemplate.compileSourceFile()", e);
+        }
+        catch (IOException e) {
+            logger.error("caught exception in CompiledExpressionTemplate.compileSourceFile()", e);
+        }
+
+        return false;
+    }
+
+
+    private String getCompileClasspath() {
+
+        String ps = System.getProperty("path.separator");
+
+        //Generated class only needs the calculator interfaces and MathUtil
+        String classpath = getLocation( com.pb.common.calculator.CompiledExpressions.class );
+        String mathClasspath = getLocation( com.pb.common.math.MathUtil.class );
+
+        if ( ! mathClasspath.equalsIgnoreCase(classpath) )
+            classpath = classpath + ps + mathClasspath;
+
+        return classpath;
+    }
+
+
+    private String getLocation(Class<?> cls) {
+
+        CodeSource cSource = cls.getProtectionDomain().getCodeSource();
+        String location = cSource.getLocation().getFile();
+
+        //Look for this /C:/files/pbdev/classes/
+        //Trim the first / from the beginning of the string - must be a VM bug
+        if ((fileSeparator.equals("\\")) && (location.startsWith("/"))  ) {
+            location = location.substring(1);
+        }
+
+        return location;
+    }
+
+
+    //Delete the Java source and class files
+    private void deleteFiles(File sourceFile, String tempDir, String className) {
+
+        try {
+            sourceFile.delete();
+        } catch (Exception e) {
+            logger.error("could not delete source file", e);
+        }
+
+        File classFile = new File(tempDir + fileSeparator + "scratch" + fileSeparator + className + ".class");
+        try {
+            classFile.delete();
+        } catch (Exception e) {
+            logger.error("could not delete class file", e);
+        }
+    }
+
+
+    /**
+     * Returns an array with one element per expression which is true if the
+     * expression is included in the generated class.
+     */
+    public boolean[] getCompiledFlags() {
+        return compiled;
+    }
+
+    /**
+     * Returns the source code generated by the createSourceFile() method.
+     *
+     * @return source code for generated class
+     */
+    public String getGeneratedSourceCode() {
+        return sourceCode;
+    }
+
+}
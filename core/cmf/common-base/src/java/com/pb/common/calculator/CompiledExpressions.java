@@ -0,0 +1,31 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.calculator;
+
+/**
+ * Interface implemented by the class generated by CompiledExpressionTemplate.
+ * Each parsed expression in a UEC is turned into a straight-line method that
+ * reads its variables through the same VariableTable contract used by the
+ * Expression interpreter.
+ *
+ * @version   1.0, 10/17/2026
+ */
+
+public interface CompiledExpressions {
+
+    public double solve(int expressionNumber, VariableTable vtable);
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.calculator;
+
+import com.pb.common.util.ResourceUtil;
+import jxl.Sheet;
+import jxl.Workbook;
+import jxl.WorkbookSettings;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the cell contents of UEC control files so that each workbook is parsed
+ * by jxl once, rather than once for every UtilityExpressionCalculator built
+ * from it.
+ *
+ * Sheets are kept in memory by file, and can also be written to binary files
+ * in a cache directory for later runs. Both are identified by an MD5 digest of
+ * the workbook, so any change to the .xls file causes it to be parsed again.
+ * Only the cell contents are cached; the environment variable substitution in
+ * ControlFileReader is done on every read.
+ *
+ * The cache is off unless the system property uec.cacheControlFiles=true is
+ * set. Set uec.cacheControlFiles.dir to a directory, such as one under the
+ * model output directory, to keep the binary files there as well; the input
+ * directories are never written to.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public final class ControlFileCache {
+
+    private static Logger logger = Logger.getLogger(ControlFileCache.class);
+
+    public static final String CACHE_FILE_EXTENSION = ".cache";
+
+    private static final int MAGIC = 0x55454343;    // "UECC"
+    private static final int VERSION = 1;
+
+    private static boolean useCache = ResourceUtil.checkSystemProperties("uec.cacheControlFiles", "false").equalsIgnoreCase("true");
+    private static String cacheDirectory = ResourceUtil.checkSystemProperties("uec.cacheControlFiles.dir", "");
+
+    private static ConcurrentHashMap<String, CachedWorkbook> workbooks = new ConcurrentHashMap<String, CachedWorkbook>();
+
+
+    /**
+     * The contents of one worksheet, indexed by [row][column]. Empty cells are
+     * empty strings, and, as with jxl, reading outside the used range of the
+     * sheet throws ArrayIndexOutOfBoundsException.
+     */
+    public static final class SheetContents {
+
+        private final String[][] cells;
+
+        SheetContents(String[][] cells) {
+            this.cells = cells;
+        }
+
+        public int getRows() {
+            return cells.length;
+        }
+
+        public String getContents(int column, int row) {
+            return cells[row][column];
+        }
+    }
+
+
+    private static final class CachedWorkbook {
+        long length = -1;
+        long lastModified;
+        byte[] digest;
+        SheetContents[] sheets;
+    }
+
+
+    private ControlFileCache() {
+    }
+
+
+    /**
+     * Returns the contents of all the sheets in a control file, parsing the
+     * workbook only if it is not cached or has changed.
+     */
+    public static SheetContents[] getSheets(File file) {
+
+        if (!useCache)
+            return parse(file);
+
+        String key = file.getAbsolutePath();
+        CachedWorkbook cached = workbooks.get(key);
+        if (cached == null) {
+            workbooks.putIfAbsent(key, new CachedWorkbook());
+            cached = workbooks.get(key);
+        }
+
+        // threads building UECs from the same file wait for one parse
+        synchronized (cached) {
+            if (cached.sheets != null && cached.length == file.length() && cached.lastModified == file.lastModified())
+                return cached.sheets;
+
+            long length = file.length();
+            long lastModified = file.lastModified();
+            byte[] digest = digest(file);
+
+            if (cached.sheets == null || !Arrays.equals(digest, cached.digest)) {
+                File cacheFile = getCacheFile(file);
+                SheetContents[] sheets = cacheFile == null ? null : read(cacheFile, digest);
+                if (sheets == null) {
+                    sheets = parse(file);
+                    if (cacheFile != null)
+                        write(cacheFile, digest, sheets);
+                }
+                cached.sheets = sheets;
+                cached.digest = digest;
+            }
+            cached.length = length;
+            cached.lastModified = lastModified;
+
+            return cached.sheets;
+        }
+    }
+
+    /**
+     * Remove all workbooks from the in-memory cache.
+     */
+    public static void clear() {
+        workbooks.clear();
+    }
+
+
+    /**
+     * Returns the binary cache file for a workbook in the cache directory, or null
+     * if no cache directory is set. The name includes a hash of the workbook's path,
+     * so workbooks with the same name in different directories don't share a file.
+     */
+    private static File getCacheFile(File file) {
+        if (cacheDirectory.length() == 0)
+            return null;
+
+        File directory = new File(cacheDirectory);
+        if (!directory.mkdirs() && !directory.isDirectory()) {
+            logger.warn("could not create control file cache directory " + directory + ", the cache will be kept in memory only");
+            return null;
+        }
+        String name = file.getName() + "." + Integer.toHexString(file.getAbsolutePath().hashCode()) + CACHE_FILE_EXTENSION;
+        return new File(directory, name);
+    }
+
+
+    private static SheetContents[] parse(File file) {
+
+        Workbook workbook;
+        try {
+            WorkbookSettings ws = new WorkbookSettings();
+            ws.setGCDisabled( true );
+            workbook = Workbook.getWorkbook( file, ws );
+        }
+        catch (Exception e) {
+            throw new RuntimeException("could not read control file " + file, e);
+        }
+
+        try {
+            SheetContents[] sheets = new SheetContents[workbook.getNumberOfSheets()];
+            for (int s=0; s < sheets.length; s++) {
+                Sheet sheet = workbook.getSheet(s);
+                String[][] cells = new String[sheet.getRows()][sheet.getColumns()];
+                for (int r=0; r < cells.length; r++) {
+                    for (int c=0; c < cells[r].length; c++)
+                        cells[r][c] = sheet.getCell(c, r).getContents();
+                }
+                sheets[s] = new SheetContents(cells);
+            }
+            return sheets;
+        }
+        finally {
+            workbook.close();
+        }
+    }
+
+
+    private static byte[] digest(File file) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[65536];
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                    md.update(buffer, 0, n);
+            }
+            finally {
+                in.close();
+            }
+            return md.digest();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("could not read control file " + file, e);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Read a binary cache file, or return null if it is missing, unreadable or
+     * was written from a different version of the workbook.
+     */
+    private static SheetContents[] read(File cacheFile, byte[] digest) {
+
+        if (!cacheFile.exists())
+            return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 65536));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return null;
+
+                byte[] cachedDigest = new byte[in.readInt()];
+                in.readFully(cachedDigest);
+                if (!Arrays.equals(digest, cachedDigest))
+                    return null;
+
+                SheetContents[] sheets = new SheetContents[in.readInt()];
+                for (int s=0; s < sheets.length; s++) {
+                    String[][] cells = new String[in.readInt()][in.readInt()];
+                    for (int r=0; r < cells.length; r++) {
+                        for (int c=0; c < cells[r].length; c++)
+                            cells[r][c] = in.readUTF();
+                    }
+                    sheets[s] = new SheetContents(cells);
+                }
+
+                if (logger.isDebugEnabled())
+                    logger.debug("read control file cache " + cacheFile);
+                return sheets;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            logger.warn("could not read control file cache " + cacheFile + ", the workbook will be parsed: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Write a binary cache file. The file is written under a temporary name and
+     * renamed, so other processes never read a partly written cache. Failures are
+     * logged and otherwise ignored, since the cache is only an optimization.
+     */
+    private static void write(File cacheFile, byte[] digest, SheetContents[] sheets) {
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(digest.length);
+                out.write(digest);
+                out.writeInt(sheets.length);
+                for (SheetContents sheet : sheets) {
+                    String[][] cells = sheet.cells;
+                    out.writeInt(cells.length);
+                    out.writeInt(cells.length == 0 ? 0 : cells[0].length);
+                    for (String[] row : cells) {
+                        for (String cell : row)
+                            out.writeUTF(cell);
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            cacheFile.delete();
+            if (!tempFile.renameTo(cacheFile))
+                throw new IOException("could not rename " + tempFile);
+            tempFile = null;
+        }
+        catch (IOException e) {
+            logger.warn("could not write control file cache " + cacheFile + ": " + e.getMessage());
+        }
+        finally {
+            if (tempFile != null)
+                tempFile.delete();
+        }
+    }
+
+}
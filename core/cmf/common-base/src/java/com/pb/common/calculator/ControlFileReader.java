@@ -17,10 +17,8 @@
 package com.pb.common.calculator;
 
 import com.pb.common.util.ResourceUtil;
-import jxl.Cell;
-import jxl.Sheet;
+import com.pb.common.calculator.ControlFileCache.SheetContents;
 import jxl.Workbook;
-import jxl.WorkbookSettings;
 
 import org.apache.log4j.Logger;
 
@@ -51,7 +49,7 @@ public class ControlFileReader implements Serializable {
     protected int modelSheet;
     protected int dataSheet;
 
-    protected transient Workbook workbook;
+    protected transient SheetContents[] sheets;
 
     //Data from control file
     public ModelHeader header;
@@ -92,14 +90,7 @@ public class ControlFileReader implements Serializable {
 
         printEnvironmentVariables();
 
-        try {
-            WorkbookSettings ws = new WorkbookSettings();
-            ws.setGCDisabled( true );
-            this.workbook = Workbook.getWorkbook( file, ws );
-        }
-        catch (Throwable t) {
-            t.printStackTrace();
-        }
+        this.sheets = ControlFileCache.getSheets( file );
 
         readModelHeader();
         readAlternativeHeader();
@@ -158,23 +149,23 @@ public class ControlFileReader implements Serializable {
      */
     protected void readModelHeader() {
 
-        Cell cell;
-        Sheet sheet = workbook.getSheet( modelSheet );
+        String cell;
+        SheetContents sheet = sheets[ modelSheet ];
 
         int row = findEntry(sheet, "Model", 0, 0, true);
 
-        cell = sheet.getCell(1, row);
-        float number = Float.parseFloat( cell.getContents() );
+        cell = sheet.getContents(1, row);
+        float number = Float.parseFloat( cell );
 
-        cell = sheet.getCell(2, row);
-        String description = cell.getContents();
+        cell = sheet.getContents(2, row);
+        String description = cell;
 
-        cell = sheet.getCell(5, row);
-        String dmu = cell.getContents();
+        cell = sheet.getContents(5, row);
+        String dmu = cell;
 
         //Read number of alternatives or keyword
-        cell = sheet.getCell(7, row);
-        String value = cell.getContents();
+        cell = sheet.getContents(7, row);
+        String value = cell;
 
         int numberOfAlts = 1;
         boolean isAlternativesInFile = false;
@@ -183,15 +174,15 @@ public class ControlFileReader implements Serializable {
             isAlternativesInFile = true;
         }
         else {
-            numberOfAlts = Integer.parseInt( cell.getContents() );
+            numberOfAlts = Integer.parseInt( cell );
             isAlternativesInFile = false;
         }
 
         //Read number of levels in NL model; assume MNL if cell is 0, 1 or blank
         int numberOfLevels = 1;
         try {
-            cell = sheet.getCell(9, row);
-            numberOfLevels = Integer.parseInt( cell.getContents() );
+            cell = sheet.getContents(9, row);
+            numberOfLevels = Integer.parseInt( cell );
         }
         catch ( NumberFormatException e ){
             numberOfLevels = 1;
@@ -216,7 +207,7 @@ public class ControlFileReader implements Serializable {
      */
     protected void readAlternativeHeader() {
 
-        Sheet sheet = workbook.getSheet( modelSheet );
+        SheetContents sheet = sheets[ modelSheet ];
 
         int row;
         row = findEntry(sheet, "Model", 0, 0, true);
@@ -227,8 +218,7 @@ public class ControlFileReader implements Serializable {
         alternatives = new ModelAlternative[header.numberOfAlts];
 
         for (int col=0; col < header.numberOfAlts; col++) {
-            Cell cell = sheet.getCell(col+ALTERNATIVE_START_COL, row);
-            String name = cell.getContents();
+            String name = sheet.getContents(col+ALTERNATIVE_START_COL, row);
             alternatives[col] = new ModelAlternative(col+1, name);
 
             if ( logger.isDebugEnabled()){
@@ -250,8 +240,8 @@ public class ControlFileReader implements Serializable {
                 row++;
 
                 for (int col=0; col < header.numberOfAlts; col++) {
-                    Cell cell = sheet.getCell(col+ALTERNATIVE_START_COL, row);
-                    int levelIndex = Integer.parseInt( cell.getContents() );
+                    String cell = sheet.getContents(col+ALTERNATIVE_START_COL, row);
+                    int levelIndex = Integer.parseInt( cell );
                     nestedAlternatives[r][col] = levelIndex;
 
                     if ( logger.isDebugEnabled()){
@@ -269,9 +259,9 @@ public class ControlFileReader implements Serializable {
                 row++;
 
                 for (int col=0; col < header.numberOfAlts; col++) {
-                    Cell cell = sheet.getCell(col+ALTERNATIVE_START_COL, row);
+                    String cell = sheet.getContents(col+ALTERNATIVE_START_COL, row);
                     try {
-                        nestingCoefficients[r][col] =  Double.parseDouble( cell.getContents() );
+                        nestingCoefficients[r][col] =  Double.parseDouble( cell );
                     }
                     catch ( NumberFormatException e ){
                         nestingCoefficients[r][col] = 0.0;
@@ -294,13 +284,13 @@ public class ControlFileReader implements Serializable {
      */
     protected void readModelEntries() {
 
-        Sheet sheet = workbook.getSheet( modelSheet );
+        SheetContents sheet = sheets[ modelSheet ];
 
         int row;
         row = findEntry(sheet, "Model", 0, 0, true);
         row = findEntry(sheet, "1", row, 0, true);
 
-        Cell cell;
+        String cell;
 
         //Temporary lists. We don't know how many entries there are.
         ArrayList<ModelEntry> entryList = new ArrayList<ModelEntry>();
@@ -313,30 +303,30 @@ public class ControlFileReader implements Serializable {
                 break;
             }
 
-            cell = sheet.getCell(0, row);
-            String number = cell.getContents();
+            cell = sheet.getContents(0, row);
+            String number = cell;
 
             //Check for end of input
             if ( (number == null) || (number.length() == 0) ) {
                 break;
             }
 
-            cell = sheet.getCell(1, row);
-            String name = cell.getContents().trim();
+            cell = sheet.getContents(1, row);
+            String name = cell.trim();
 
-            cell = sheet.getCell(2, row);
-            String description = cell.getContents();
+            cell = sheet.getContents(2, row);
+            String description = cell;
 
-            cell = sheet.getCell(3, row);
-            String filterString = cell.getContents().trim();
+            cell = sheet.getContents(3, row);
+            String filterString = cell.trim();
             String filter = searchAndReplaceWithEnv(filterString);
 
-            cell = sheet.getCell(4, row);
-            String expressionString = cell.getContents().trim();
+            cell = sheet.getContents(4, row);
+            String expressionString = cell.trim();
             String expression = searchAndReplaceWithEnv(expressionString);
 
-            cell = sheet.getCell(5, row);
-            String index = cell.getContents().trim();
+            cell = sheet.getContents(5, row);
+            String index = cell.trim();
 
             //Add entry object to array list (temporarily)
             ModelEntry entry = new ModelEntry(name, description, filter, expression, index);
@@ -346,8 +336,8 @@ public class ControlFileReader implements Serializable {
             float[] coeff = new float[header.numberOfAlts];
 
             for (int col=0; col < header.numberOfAlts; col++) {
-                cell = sheet.getCell(col+ALTERNATIVE_START_COL, row);
-                String coeffString = cell.getContents().trim();
+                cell = sheet.getContents(col+ALTERNATIVE_START_COL, row);
+                String coeffString = cell.trim();
                 String coeffStr = searchAndReplaceWithEnv(coeffString);
                 if ( (coeffStr != null) && (coeffStr.length() > 0) )
                     coeff[col] = Float.parseFloat( coeffStr );
@@ -395,9 +385,9 @@ public class ControlFileReader implements Serializable {
         //Holds the entries found in the section
         ArrayList<DataEntry> dataList = new ArrayList<DataEntry>();
 
-        Cell cell;
+        String cell;
 
-        Sheet sheet = workbook.getSheet( dataSheet );
+        SheetContents sheet = sheets[ dataSheet ];
 
         int row = findEntry(sheet, "Table Data", 0, 0, false);
         int mtxRow = findEntry(sheet, "Matrix Data", 0, 0, false);
@@ -420,21 +410,21 @@ public class ControlFileReader implements Serializable {
 
         while (true) {
 
-            cell = sheet.getCell(1, row);
-            String type = cell.getContents();
+            cell = sheet.getContents(1, row);
+            String type = cell;
 
             //Check for end of input
             if ( (type == null) || (type.length() == 0) ) {
                 break;
             }
 
-            cell = sheet.getCell(2, row);
-            String format = cell.getContents();
+            cell = sheet.getContents(2, row);
+            String format = cell;
             format = searchAndReplaceWithEnv( format );
 
 
-            cell = sheet.getCell(3, row);
-            String fileName = cell.getContents();
+            cell = sheet.getContents(3, row);
+            String fileName = cell;
             fileName = searchAndReplaceWithEnv( fileName );
 
 
@@ -454,8 +444,8 @@ public class ControlFileReader implements Serializable {
         //Holds entries found in the section
         ArrayList<DataEntry> matrixList = new ArrayList<DataEntry>();
 
-        Cell cell;
-        Sheet sheet = workbook.getSheet( dataSheet );
+        String cell;
+        SheetContents sheet = sheets[ dataSheet ];
 
         int mtxRow = findEntry(sheet, "Matrix Data", 0, 0, false);
         if (mtxRow == -1) {
@@ -477,30 +467,30 @@ public class ControlFileReader implements Serializable {
             }
 
 
-            cell = sheet.getCell(1, row);
-            String name = cell.getContents();
+            cell = sheet.getContents(1, row);
+            String name = cell;
 
             //Check for end of input
             if ( (name == null) || (name.length() == 0) ) {
                 break;
             }
 
-            cell = sheet.getCell(2, row);
-            String format = cell.getContents();
+            cell = sheet.getContents(2, row);
+            String format = cell;
             format = searchAndReplaceWithEnv( format );
 
 
-            cell = sheet.getCell(3, row);
-            String fileName = cell.getContents();
+            cell = sheet.getContents(3, row);
+            String fileName = cell;
 
-            cell = sheet.getCell(4, row);
-            String matrixName = cell.getContents();
+            cell = sheet.getContents(4, row);
+            String matrixName = cell;
 
-            cell = sheet.getCell(5, row);
-            String groupName = cell.getContents();
+            cell = sheet.getContents(5, row);
+            String groupName = cell;
 
-            cell = sheet.getCell(6, row);
-            String indexFlag = cell.getContents();
+            cell = sheet.getContents(6, row);
+            String indexFlag = cell;
 
             String gName  = (groupName == null) ? "" : groupName;
             boolean iFlag = ((indexFlag != null) && (indexFlag.trim().length() > 0)) ? true : false;
@@ -533,14 +523,13 @@ public class ControlFileReader implements Serializable {
      *            If true, throw RuntimeException if search term is not found.
      * @return row number containing search term, or -1 if not found
      */
-    protected int findEntry(Sheet sheet, String keyword, int startRow, int startColumn, boolean fail) {
+    protected int findEntry(SheetContents sheet, String keyword, int startRow, int startColumn, boolean fail) {
         int rowFound = -1;
         String str;
 
         try {
             for (int r=startRow; r < sheet.getRows(); r++) {
-                Cell cell = sheet.getCell(startColumn, r);
-                str = cell.getContents();
+                str = sheet.getContents(startColumn, r);
                 if (str.equalsIgnoreCase(keyword)) {
                     rowFound = r;
                     break;
@@ -77,6 +77,28 @@ public class Expression implements Constants, Serializable {
         }
     }
 
+    /**
+     * Creates a copy of a parsed expression that is solved with another variable
+     * table. The token and execution stacks, which solving does not change, are
+     * shared with the parsed expression; the solve state belongs to the copy.
+     */
+    public Expression(Expression parsed, VariableTable va) {
+        this.vtable = va;
+        this.logDebug = parsed.logDebug;
+        this.prog = parsed.prog;
+        this.count = parsed.count;
+        this.result_token = parsed.result_token;
+        this.result_index = parsed.result_index;
+        this.tokenType = parsed.tokenType;
+        this.expStack = parsed.expStack;
+        this.parenStack = parsed.parenStack;
+        this.tokenIndex = parsed.tokenIndex;
+        this.tempindex = parsed.tempindex;
+        this.expindex = parsed.expindex;
+        this.variableMap = parsed.variableMap;
+        this.error = parsed.error;
+    }
+
     @Override
     public String toString() {
         return this.prog;
@@ -559,6 +581,197 @@ public class Expression implements Constants, Serializable {
             }
     }
 
+    /**
+     * Solve the expression using a compiled version of this expression rather than
+     * the interpreter. Assignment expressions are stored in the variable table
+     * exactly as in solve().
+     *
+     * @param compiled  class generated by CompiledExpressionTemplate
+     * @param expressionNumber  number assigned to this expression when the class was generated
+     */
+    public double solveCompiled(CompiledExpressions compiled, int expressionNumber) {
+
+        if (!error) {
+            answer = compiled.solve(expressionNumber, vtable);
+            if (result_index >= 0) {
+                vtable.setValue(result_index, answer);
+            }
+        }
+        else {
+            throw new RuntimeException("cannot solve expression, " + prog);
+        }
+
+        return answer;
+    }
+
+    /**
+     * Returns true if the parsed expression can be translated into Java source by
+     * generateJavaMethod(). PUT() and GET() keep state in the expression object so
+     * they are only supported by the interpreter.
+     */
+    public boolean isCompilable() {
+
+        if (error || expStack == null)
+            return false;
+
+        for (int i=0; i <= expindex; i++) {
+            if (tokenType[i] == DELIMITER) {
+                int op = (int) expStack[i];
+                if (op == PUT || op == GET)
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Generate the source for a static method that evaluates this expression. The
+     * method walks the execution stack in the same order as solve1(), so operands
+     * are fetched from the variable table in the same sequence as the interpreter
+     * and every operator uses the same arithmetic.
+     *
+     * @param methodName  name of the generated method
+     * @return java source of a method with signature: double methodName(VariableTable vt)
+     */
+    public String generateJavaMethod(String methodName) {
+
+        StringBuffer code = new StringBuffer(1024);
+        code.append("    private static double " + methodName + "(VariableTable vt) {\n");
+
+        tindex = expindex;
+        genTemp = 0;
+        genCode = code;
+        String result = gen_solve1();
+        genCode = null;
+
+        code.append("        return " + result + ";\n");
+        code.append("    }\n");
+
+        return code.toString();
+    }
+
+    //variables used while generating java source
+    private transient StringBuffer genCode;
+    private transient int genTemp;
+
+    protected String gen_solve1() {
+
+        String d3;
+        String d2;
+        String d1;
+
+        if (tindex == 0) {
+            if (tokenType[tindex] == NUMBER)
+                return gen_number(expStack[tindex]);
+            if (tokenType[tindex] == VARIABLE)
+                return gen_temp("vt.getValueForIndex(" + (int) expStack[tindex] + ")");
+        }
+
+        int op = (int) expStack[tindex];
+
+        if (op > THREE_ARGS) {
+            if (op == ARRAY_LOOKUP) {
+                String index = gen_oprand();
+                int matrix = (int) expStack[--tindex];
+                return gen_temp("vt.getValueForIndex(" + matrix + ", (int) " + index + ")");
+            }
+
+            d3 = gen_oprand();
+            d2 = gen_oprand();
+            d1 = gen_oprand();
+            return gen_temp(gen_calculate3(op, d1, d2, d3));
+        } else {
+            if (op > TWO_ARGS) {
+                d2 = gen_oprand();
+                d1 = gen_oprand();
+                return gen_temp(gen_calculate2(op, d1, d2));
+            }
+            else {
+                d1 = gen_oprand();
+                return gen_temp(gen_calculate1(op, d1));
+            }
+        }
+    }
+
+    protected String gen_oprand() {
+
+        if (tokenType[--tindex] == VARIABLE) {
+            return gen_temp("vt.getValueForIndex(" + (int) expStack[tindex] + ")");
+        }
+        else
+            if (tokenType[tindex] == NUMBER) {
+                return gen_number(expStack[tindex]);
+            }
+            else {
+                return gen_solve1();
+            }
+    }
+
+    private String gen_temp(String valueSource) {
+        String name = "t" + genTemp++;
+        genCode.append("        double " + name + " = " + valueSource + ";\n");
+        return name;
+    }
+
+    private String gen_number(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            return "Double.longBitsToDouble(0x" + Long.toHexString(Double.doubleToRawLongBits(d)) + "L)";
+        return "(" + Double.toString(d) + ")";
+    }
+
+    protected String gen_calculate1(int i, String d1) {
+
+        switch (i) {
+        case LN:
+            return "com.pb.common.math.MathUtil.log(" + d1 + ")";
+        case EXP:
+            return "Math.pow(Math.E, " + d1 + ")";
+        case ABS:
+            return "Math.abs(" + d1 + ")";
+        case SIGN:
+            return "(" + d1 + " < 0 ? -1.0 : (" + d1 + " == 0 ? 0.0 : 1.0))";
+        case INT:
+            return "Math.floor(" + d1 + ")";
+        case SQRT:
+            return "Math.sqrt(" + d1 + ")";
+        default:
+            throw new RuntimeException("gen_calculate1, function = " + i + " not found ");
+        }
+    }
+
+    protected String gen_calculate2(int i, String d1, String d2) {
+
+        switch (i) {
+        case ADDITION:       return d1 + " + " + d2;
+        case SUBTRACTION:    return d1 + " - " + d2;
+        case MULTIPLICATION: return d1 + " * " + d2;
+        case DIVISION:       return d1 + " / " + d2;
+        case MODULUS:        return d1 + " % " + d2;
+        case GREATER:        return "(" + d1 + " > " + d2 + " ? 1.0 : 0.0)";
+        case LESS:           return "(" + d1 + " < " + d2 + " ? 1.0 : 0.0)";
+        case EQUAL:          return "(" + d1 + " == " + d2 + " ? 1.0 : 0.0)";
+        case NOT_EQUAL:      return "(" + d1 + " != " + d2 + " ? 1.0 : 0.0)";
+        case POWER:          return "Math.pow(" + d1 + ", " + d2 + ")";
+        case MAX:            return "Math.max(" + d1 + ", " + d2 + ")";
+        case MIN:            return "Math.min(" + d1 + ", " + d2 + ")";
+        case GREATER_EQUAL:  return "(" + d1 + " >= " + d2 + " ? 1.0 : 0.0)";
+        case LESS_EQUAL:     return "(" + d1 + " <= " + d2 + " ? 1.0 : 0.0)";
+        default:
+            throw new RuntimeException("gen_calculate2, function = " + i + " not found ");
+        }
+    }
+
+    protected String gen_calculate3(int i, String d1, String d2, String d3) {
+
+        switch (i) {
+        case IF:
+            return "(" + d1 + " > 0 ? " + d2 + " : " + d3 + ")";
+        default:
+            throw new RuntimeException("gen_calculate3, function = " + i + " not found ");
+        }
+    }
+
     protected double get_oprand() {
 
         if (tokenType[--tindex] == VARIABLE) {
@@ -57,6 +57,10 @@ public class MatrixDataManager implements Serializable {
     //Holds list of matrix entries read into memory
     private ArrayList<DataEntry> mEntryList = new ArrayList<DataEntry>();
 
+    //Number of times clearData() has been called. Indices handed out before a
+    //call are not valid after it.
+    private volatile int clearCount = 0;
+
     //Holds references to each matrix collection
     private MatrixCollection[] mGroupValues = new MatrixCollection[0];
 
@@ -108,6 +112,7 @@ public class MatrixDataManager implements Serializable {
      * reclaimed by the garbage collector.
      */
     synchronized public void clearData() {
+        clearCount++;
         mValues = new Matrix[0];
         mEntryList.clear();
 
@@ -122,6 +127,12 @@ public class MatrixDataManager implements Serializable {
         mMatrixNames.clear();
     }
 
+    /** Returns the number of times clearData() has been called.
+     */
+    public int getClearCount() {
+        return clearCount;
+    }
+
     synchronized public void addMatrixEntry(DataEntry entry) {
         throw new UnsupportedOperationException(
                 "addMatrixEntry(DataEntry) not supported");
@@ -237,11 +248,16 @@ public class MatrixDataManager implements Serializable {
     private void addMatrices(HashMap<String, DataEntry> matrixMap) {
         ArrayList<Matrix> newMatrixList = new ArrayList<Matrix>();
 
-        //Iterate over matrix map and read matrices
-        for (DataEntry matrixEntry : matrixMap.values()) {
+        //Read all matrices first so a matrix server can read them in one call
+        DataEntry[] matrixEntries = matrixMap.values().toArray(new DataEntry[matrixMap.size()]);
+        Matrix[] matrices = getMatrices(matrixEntries);
+
+        //Iterate over matrix map and add matrices
+        for (int i = 0; i < matrixEntries.length; i++) {
 
+            DataEntry matrixEntry = matrixEntries[i];
             String name = matrixEntry.name;
-            Matrix matrix = getMatrix(matrixEntry);
+            Matrix matrix = matrices[i];
             if ( matrix == null) {
                 RuntimeException e = new RuntimeException();
                 logger.error( "MatrixDataManager received a null matrix object for " + name, e );
@@ -600,12 +616,14 @@ public class MatrixDataManager implements Serializable {
      * get the Matrix object whose location is identified in the DataEntry object.
      * if an instance of MatrixDataServerIf has been set, it will get the Matrix object
      * from a server object using an RMI or xml-rpc based method, for example.  Otherwise readMatrix() is called.
+     * Matrices in "mapped" format are always read locally, since mapping the file shares the
+     * values between processes without copying them through the server.
      * @param matrixEntry is the DataEntry object that describes the specifics of the matrix data table
      * @return a Matrix object.
      */
     protected Matrix getMatrix(DataEntry matrixEntry) {
 
-        if ( mDataServer == null ) {
+        if ( mDataServer == null || matrixEntry.format.equalsIgnoreCase("mapped") ) {
             return readMatrix( matrixEntry );
         }
         else {
@@ -619,6 +637,45 @@ public class MatrixDataManager implements Serializable {
     }
 
 
+    /**
+     * get the Matrix objects for a set of DataEntry objects.  If an instance of MatrixDataServerIf
+     * has been set, the matrices are requested from the server in one call so the server can read
+     * them in parallel.  Otherwise, and for matrices in "mapped" format, getMatrix() is called.
+     * @param matrixEntries DataEntry objects that describe the matrix data tables
+     * @return Matrix objects in the same order as matrixEntries.
+     */
+    protected Matrix[] getMatrices(DataEntry[] matrixEntries) {
+
+        Matrix[] matrices = new Matrix[matrixEntries.length];
+
+        ArrayList<DataEntry> serverEntries = new ArrayList<DataEntry>();
+        ArrayList<Integer> serverIndices = new ArrayList<Integer>();
+        for (int i = 0; i < matrixEntries.length; i++) {
+            if ( mDataServer == null || matrixEntries[i].format.equalsIgnoreCase("mapped") ) {
+                matrices[i] = getMatrix( matrixEntries[i] );
+            }
+            else {
+                serverEntries.add( matrixEntries[i] );
+                serverIndices.add( i );
+            }
+        }
+
+        if ( serverEntries.size() > 0 ) {
+            Matrix[] serverMatrices = mDataServer.getMatrices( serverEntries.toArray(new DataEntry[serverEntries.size()]) );
+            for (int k = 0; k < serverMatrices.length; k++) {
+                DataEntry matrixEntry = serverEntries.get(k);
+                mMatrixNames.add(matrixEntry.name);
+                mEntryList.add(matrixEntry);
+                if ( serverMatrices[k] != null )
+                    serverMatrices[k].setName(matrixEntry.name);
+                matrices[serverIndices.get(k)] = serverMatrices[k];
+            }
+        }
+
+        return matrices;
+    }
+
+
     /*
      * Read a matrix.
      *
@@ -662,6 +719,9 @@ public class MatrixDataManager implements Serializable {
         } else if (matrixEntry.format.equalsIgnoreCase("omx")) {
             MatrixReader mr = MatrixReader.createReader(MatrixType.OMX, new File(fileName));
             matrix = mr.readMatrix(matrixEntry.matrixName);
+        } else if (matrixEntry.format.equalsIgnoreCase("mapped")) {
+            MatrixReader mr = MatrixReader.createReader(MatrixType.MAPPED, new File(fileName));
+            matrix = mr.readMatrix(matrixEntry.matrixName);
         } else {
             throw new RuntimeException("unsupported matrix type: " + matrixEntry.format);
         }
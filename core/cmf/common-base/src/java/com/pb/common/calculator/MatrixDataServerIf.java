@@ -16,6 +16,7 @@ public interface MatrixDataServerIf {
     public void start32BitMatrixIoServer( MatrixType mType );
     public void stop32BitMatrixIoServer();
     public Matrix getMatrix( DataEntry matrixEntry );
+    public Matrix[] getMatrices( DataEntry[] matrixEntries );
     
     public String testRemote( String remoteObjectName );
     public String testRemote();
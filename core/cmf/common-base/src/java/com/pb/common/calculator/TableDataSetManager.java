@@ -49,6 +49,10 @@ public class TableDataSetManager implements Serializable {
     private TableDataSet zoneTableData = new TableDataSet();  //Zone data
     private TableDataSet hhTableData = null;                  //Household data
 
+    //Number of times clearData() has been called. Indices handed out before a
+    //call are not valid after it.
+    private volatile int clearCount = 0;
+
 
     private TableDataSetManager() {
 
@@ -65,6 +69,7 @@ public class TableDataSetManager implements Serializable {
      * reclaimed by the garbage collector.
      */
 	synchronized public void clearData() {
+        clearCount++;
         tableEntryList.clear();
 
         zoneColumnName = new String[0];
@@ -75,6 +80,12 @@ public class TableDataSetManager implements Serializable {
     }
 
 
+    /** Returns the number of times clearData() has been called.
+     */
+    public int getClearCount() {
+        return clearCount;
+    }
+
 	synchronized public void addTableEntries(DataEntry[] tableEntries) {
 
         readZoneData(tableEntries);
@@ -51,6 +51,11 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
 
     protected static Object objLock = new Object();
 
+    //Expressions are translated into a generated class when -Duec.compileExpressions=true.
+    //With -Duec.compileExpressions.parityCheck=true both versions are solved and compared.
+    private static boolean compileExpressions = ResourceUtil.checkSystemProperties("uec.compileExpressions", "false").equalsIgnoreCase("true");
+    private static boolean compileParityCheck = ResourceUtil.checkSystemProperties("uec.compileExpressions.parityCheck", "false").equalsIgnoreCase("true");
+
     private static int OZ_INDEX = 0;
     private static int DZ_INDEX = 1;
     private static int SZ_INDEX = 2;
@@ -118,6 +123,11 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
     private transient MethodInvokerTemplate invokerTemplate;
     private transient MethodInvoker methodInvoker;
 
+    //Compiled versions of model expressions (0 to nModelEntries-1) and filter
+    //expressions (nModelEntries to 2*nModelEntries-1)
+    private transient CompiledExpressions compiledExpressions;
+    private boolean[] isCompiled;
+
 
     //Determines if alterantives are to be found in a file
     private boolean isAlternativesInFile = false;
@@ -255,6 +265,9 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
 
             if (loggerDebug)
                 logger.debug ("MethodInvoker source file: "+invokerTemplate.getGeneratedSourceCodePrefix());
+
+            if (compileExpressions)
+                compileExpressions();
         }
 
         if (loggerDebug)
@@ -356,6 +369,66 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
 
     }
 
+    /**
+     * Generate a class with a straight-line method for each model and filter
+     * expression. Expressions that can't be compiled continue to be solved by
+     * the interpreter.
+     */
+    private void compileExpressions() {
+
+        Expression[] expressions = new Expression[2*nModelEntries];
+        for (int i=0; i < nModelEntries; i++) {
+            expressions[i] = modelExpressions[i];
+            if (expressionFlags[i].hasFilter)
+                expressions[nModelEntries + i] = filterExpressions[i];
+        }
+
+        CompiledExpressionTemplate template = new CompiledExpressionTemplate(expressions);
+        compiledExpressions = template.generateAndLoadClass();
+        isCompiled = template.getCompiledFlags();
+
+        if (loggerDebug)
+            logger.debug("CompiledExpressions source: \n" + template.getGeneratedSourceCode());
+    }
+
+
+    private double solveModelExpression(int e) {
+        if (compiledExpressions == null || ! isCompiled[e])
+            return modelExpressions[e].solve();
+
+        return solveCompiledExpression(modelExpressions[e], e);
+    }
+
+
+    private double solveFilterExpression(int e) {
+        if (compiledExpressions == null || ! isCompiled[nModelEntries + e])
+            return filterExpressions[e].solve();
+
+        return solveCompiledExpression(filterExpressions[e], nModelEntries + e);
+    }
+
+
+    private double solveCompiledExpression(Expression expression, int expressionNumber) {
+
+        if (! compileParityCheck)
+            return expression.solveCompiled(compiledExpressions, expressionNumber);
+
+        //Solve the compiled version without assignment, then let the interpreter
+        //do the assignment so scalar variables are only updated once
+        double compiledResult = compiledExpressions.solve(expressionNumber, this);
+        double interpretedResult = expression.solve();
+
+        if (Double.compare(compiledResult, interpretedResult) != 0) {
+            String msg = String.format("compiled expression result %s differs from interpreted result %s, file=%s, expression=%s",
+                    compiledResult, interpretedResult, file.getName(), expression.getExpression());
+            logger.error(msg);
+            throw new RuntimeException(msg);
+        }
+
+        return interpretedResult;
+    }
+
+
     /**
      * Log the data values for a given origin, destination, and zone.
      * 
@@ -767,7 +840,7 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
                         filterExpressions[e].setTraceLogging( false );
                     }
                     else {
-                        filterResult = filterExpressions[e].solve();
+                        filterResult = solveFilterExpression(e);
                     }
 
                     if (debugLoggerDebug) {
@@ -783,7 +856,7 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
                                 modelExpressions[e].setTraceLogging( false );
                             }
                             else {
-                                answers[e] = modelExpressions[e].solve();
+                                answers[e] = solveModelExpression(e);
                             }
                         }
                         catch ( Exception ex ) {
@@ -808,7 +881,7 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
                             modelExpressions[e].setTraceLogging( false );
                         }
                         else {
-                            answers[e] = modelExpressions[e].solve();
+                            answers[e] = solveModelExpression(e);
                         }
                     }
                     catch ( Exception ex ) {
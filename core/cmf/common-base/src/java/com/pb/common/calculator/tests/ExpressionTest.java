@@ -16,6 +16,8 @@
  */
 package com.pb.common.calculator.tests;
 
+import com.pb.common.calculator.CompiledExpressionTemplate;
+import com.pb.common.calculator.CompiledExpressions;
 import com.pb.common.calculator.Expression;
 import com.pb.common.calculator.VariableTable;
 
@@ -40,6 +42,7 @@ public class ExpressionTest implements VariableTable {
         test.doTest3();
 //        test.doTest4();
 //        test.doTest5();
+        test.doTestCompiled();
     }
 
     public void doTest1() {
@@ -100,7 +103,75 @@ public class ExpressionTest implements VariableTable {
         System.out.println("Answer=" + answer);
     }
 
-    
+
+    /**
+     * Solve a set of expressions with the interpreter and with the class generated
+     * by CompiledExpressionTemplate and compare the answers.
+     */
+    public void doTestCompiled() {
+        utility = -1.5;
+        distance = 12.25;
+        time = 0.0;
+
+        String[] programs = {
+                "10+(-10+30)+10",
+                "2*ln(exp(2.5))+1",
+                "-0.25*distance + -0.50*time",
+                "min( max(1,2), 3)",
+                "if( 5 == 6, 1, 2)",
+                "if( distance > 10, distance^2, sqrt(distance))",
+                "int(-8.9) * 2",
+                "1<2 * 4+1^2+3",
+                "abs(utility) + sign(utility) + sign(time)",
+                "(distance % 5) / (time != 0)",
+                "5<=5 * 5 + (distance >= 12.25)",
+                "distance",
+                "3.5",
+                "put(1+1) + get(1)"
+        };
+
+        Expression[] expressions = new Expression[programs.length];
+        for (int i=0; i < programs.length; i++) {
+            expressions[i] = new Expression(programs[i], this);
+            expressions[i].parse();
+        }
+
+        CompiledExpressionTemplate template = new CompiledExpressionTemplate(expressions);
+        CompiledExpressions compiled = template.generateAndLoadClass();
+        boolean[] isCompiled = template.getCompiledFlags();
+
+        if (compiled == null)
+            throw new RuntimeException("ExpressionTest failed: could not generate compiled expressions");
+
+        int failures = 0;
+        for (int i=0; i < programs.length; i++) {
+            double interpreted = expressions[i].solve();
+            if (! isCompiled[i]) {
+                //only put() and get() are left to the interpreter
+                if (expressions[i].isCompilable())
+                    throw new RuntimeException("ExpressionTest failed: not compiled: " + programs[i]);
+                System.out.println("interpreted only: " + programs[i] + " = " + interpreted);
+                continue;
+            }
+
+            double result = expressions[i].solveCompiled(compiled, i);
+            boolean same = Double.compare(interpreted, result) == 0;
+            if (! same)
+                failures++;
+            System.out.println((same ? "ok     " : "FAILED ") + programs[i] + " = " + result + ", interpreted = " + interpreted);
+        }
+
+        System.out.println("compiled expression failures=" + failures);
+        if (failures > 0)
+            throw new RuntimeException("ExpressionTest failed: " + failures + " compiled expressions differ from the interpreter");
+
+        //a second template with the same expressions reuses the loaded class
+        CompiledExpressionTemplate template2 = new CompiledExpressionTemplate(expressions);
+        if (template2.generateAndLoadClass() != compiled)
+            throw new RuntimeException("ExpressionTest failed: compiled class was not reused");
+    }
+
+
     //------------------------ Variable Table Methods ------------------------
 
     /**
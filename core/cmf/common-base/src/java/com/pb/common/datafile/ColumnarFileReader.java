@@ -0,0 +1,328 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.datafile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads a columnar binary file written by ColumnarFileWriter into a TableDataSet.
+ *
+ * As with the CSV readers, a column is read as a NUMBER column if all of its values
+ * are numbers, and as a STRING column otherwise. Numbers are read as floats unless
+ * setReadDoubles(true) is called, in which case columns written as DOUBLE are read
+ * as DOUBLE columns. Columns that are not requested are skipped without being decoded.
+ *
+ * The main method converts a columnar file to a CSV file.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class ColumnarFileReader extends TableDataFileReader {
+
+    protected static transient Logger logger = Logger.getLogger("com.pb.common.datafile");
+
+
+    private boolean readDoubles = false;
+
+
+    public ColumnarFileReader() {
+    }
+
+
+    /**
+     * @param readDoubles if true, columns written as DOUBLE are read with double
+     * precision instead of as float NUMBER columns.
+     */
+    public void setReadDoubles(boolean readDoubles) {
+        this.readDoubles = readDoubles;
+    }
+
+
+    public TableDataSet readFile(File file) throws IOException {
+        return readFile(file, null);
+    }
+
+
+    /**
+     * @param columnsToRead labels of the columns to read, or null to read all columns.
+     */
+    public TableDataSet readFile(File file, String[] columnsToRead) throws IOException {
+
+        logger.debug("Opening file: " + file);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20));
+        try {
+            if (in.readInt() != ColumnarFileWriter.MAGIC)
+                throw new IOException(file + " is not a columnar table file");
+            int version = in.readInt();
+            if (version < 1 || version > ColumnarFileWriter.VERSION)
+                throw new IOException(file + " has unsupported columnar table version " + version);
+
+            int nCols = in.readInt();
+            String[] labels = new String[nCols];
+            byte[] types = new byte[nCols];
+            for (int c=0; c < nCols; c++) {
+                labels[c] = in.readUTF();
+                types[c] = in.readByte();
+            }
+
+            boolean[] read = new boolean[nCols];
+            if (columnsToRead == null) {
+                Arrays.fill(read, true);
+            }
+            else {
+                HashSet<String> names = new HashSet<String>(Arrays.asList(columnsToRead));
+                for (int c=0; c < nCols; c++)
+                    read[c] = names.contains(labels[c]);
+            }
+
+            ArrayList<Object>[] chunks = newChunkLists(nCols);
+            int nRows = 0;
+            int rows;
+            while ((rows = in.readInt()) > 0) {
+                for (int c=0; c < nCols; c++) {
+                    byte encoding = in.readByte();
+                    int length = in.readInt();
+                    if (read[c])
+                        chunks[c].add(readChunk(in, encoding, rows));
+                    else
+                        skipFully(in, length);
+                }
+                nRows += rows;
+            }
+
+            TableDataSet table = new TableDataSet();
+            for (int c=0; c < nCols; c++) {
+                if (!read[c])
+                    continue;
+                if (readDoubles && types[c] == ColumnarFileWriter.DOUBLE)
+                    table.appendColumnAsDouble(makeColumn(chunks[c], nRows, true), labels[c]);
+                else
+                    table.appendColumn(makeColumn(chunks[c], nRows, false), labels[c]);
+            }
+            table.setName(file.getName());
+
+            logger.debug("Read " + nRows + " rows from " + file);
+            return table;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    public TableDataSet readTable(String tableName) throws IOException {
+        File fileName = new File(getMyDirectory().getPath() + File.separator + tableName + ColumnarFileWriter.FILE_EXTENSION);
+        TableDataSet myTable = readFile(fileName);
+        myTable.setName(tableName);
+        return myTable;
+    }
+
+
+    public void close() {
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Object>[] newChunkLists(int nCols) {
+        ArrayList<Object>[] chunks = (ArrayList<Object>[]) new ArrayList<?>[nCols];
+        for (int c=0; c < nCols; c++)
+            chunks[c] = new ArrayList<Object>();
+        return chunks;
+    }
+
+
+    /**
+     * @return an int[], a float[], a double[] or a String[] of the chunk values.
+     */
+    private static Object readChunk(DataInputStream in, byte encoding, int rows) throws IOException {
+
+        switch (encoding) {
+        case ColumnarFileWriter.ENCODING_INT: {
+            int[] values = new int[rows];
+            for (int r=0; r < rows; r++)
+                values[r] = in.readInt();
+            return values;
+        }
+        case ColumnarFileWriter.ENCODING_FLOAT: {
+            float[] values = new float[rows];
+            for (int r=0; r < rows; r++)
+                values[r] = in.readFloat();
+            return values;
+        }
+        case ColumnarFileWriter.ENCODING_DOUBLE: {
+            double[] values = new double[rows];
+            for (int r=0; r < rows; r++)
+                values[r] = in.readDouble();
+            return values;
+        }
+        case ColumnarFileWriter.ENCODING_DICTIONARY: {
+            String[] dictionary = new String[in.readInt()];
+            for (int i=0; i < dictionary.length; i++)
+                dictionary[i] = in.readUTF();
+            int width = ColumnarFileWriter.codeWidth(dictionary.length);
+            String[] values = new String[rows];
+            for (int r=0; r < rows; r++) {
+                int code = width == 1 ? in.readUnsignedByte() : width == 2 ? in.readUnsignedShort() : in.readInt();
+                values[r] = dictionary[code];
+            }
+            return values;
+        }
+        default:
+            throw new IOException("unknown columnar chunk encoding: " + encoding);
+        }
+    }
+
+
+    /**
+     * Join the chunks of a column into a float[] (or a double[] if asDouble is true)
+     * if all values are numbers, or a String[].
+     */
+    private static Object makeColumn(ArrayList<Object> chunks, int nRows, boolean asDouble) {
+
+        boolean numeric = true;
+        for (Object chunk : chunks) {
+            if (chunk instanceof String[] && !isNumeric((String[]) chunk)) {
+                numeric = false;
+                break;
+            }
+        }
+
+        int row = 0;
+        if (numeric && asDouble) {
+            double[] column = new double[nRows];
+            for (Object chunk : chunks) {
+                if (chunk instanceof int[]) {
+                    for (int value : (int[]) chunk)
+                        column[row++] = value;
+                }
+                else if (chunk instanceof float[]) {
+                    for (float value : (float[]) chunk)
+                        column[row++] = value;
+                }
+                else if (chunk instanceof double[]) {
+                    double[] values = (double[]) chunk;
+                    System.arraycopy(values, 0, column, row, values.length);
+                    row += values.length;
+                }
+                else {
+                    for (String value : (String[]) chunk)
+                        column[row++] = Double.parseDouble(value);
+                }
+            }
+            return column;
+        }
+        if (numeric) {
+            float[] column = new float[nRows];
+            for (Object chunk : chunks) {
+                if (chunk instanceof int[]) {
+                    for (int value : (int[]) chunk)
+                        column[row++] = value;
+                }
+                else if (chunk instanceof float[]) {
+                    float[] values = (float[]) chunk;
+                    System.arraycopy(values, 0, column, row, values.length);
+                    row += values.length;
+                }
+                else if (chunk instanceof double[]) {
+                    for (double value : (double[]) chunk)
+                        column[row++] = (float) value;
+                }
+                else {
+                    for (String value : (String[]) chunk)
+                        column[row++] = Float.parseFloat(value);
+                }
+            }
+            return column;
+        }
+
+        String[] column = new String[nRows];
+        for (Object chunk : chunks) {
+            if (chunk instanceof int[]) {
+                for (int value : (int[]) chunk)
+                    column[row++] = Integer.toString(value);
+            }
+            else if (chunk instanceof float[]) {
+                for (float value : (float[]) chunk)
+                    column[row++] = Float.toString(value);
+            }
+            else if (chunk instanceof double[]) {
+                for (double value : (double[]) chunk)
+                    column[row++] = Double.toString(value);
+            }
+            else {
+                String[] values = (String[]) chunk;
+                System.arraycopy(values, 0, column, row, values.length);
+                row += values.length;
+            }
+        }
+        return column;
+    }
+
+
+    private static boolean isNumeric(String[] values) {
+        // only the distinct values need to be checked
+        HashSet<String> checked = new HashSet<String>();
+        for (String value : values) {
+            if (!checked.add(value))
+                continue;
+            try {
+                Float.parseFloat(value);
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int n = in.skipBytes(length - skipped);
+            if (n <= 0)
+                throw new IOException("unexpected end of columnar table file");
+            skipped += n;
+        }
+    }
+
+
+    /**
+     * Convert a columnar table file to a CSV file.
+     *
+     * @param args args[0] is the columnar file, args[1] the CSV file to write.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2) {
+            System.out.println("usage: java com.pb.common.datafile.ColumnarFileReader <columnar file> <csv file>");
+            return;
+        }
+
+        TableDataSet table = new ColumnarFileReader().readFile(new File(args[0]));
+        new CSVFileWriter().writeFile(table, new File(args[1]));
+    }
+
+}
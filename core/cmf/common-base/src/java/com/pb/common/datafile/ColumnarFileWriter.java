@@ -0,0 +1,535 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.datafile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes a table to a typed, columnar binary file, read back by ColumnarFileReader.
+ *
+ * Rows are collected in RowGroups, which may be filled and encoded on different
+ * threads and are written to the file in the order writeRowGroup() is called. Each
+ * row group holds one chunk per column: integer columns as 4 byte ints, real columns
+ * as 4 byte floats or 8 byte doubles, and text columns as a dictionary of the
+ * distinct values in the chunk followed by a 1, 2 or 4 byte code per row. If a value
+ * in an integer or real column cannot be parsed, that column's chunk is written as
+ * text instead.
+ *
+ * File layout, all values big-endian as written by DataOutputStream:
+ * <pre>
+ *   int magic, int version, int columns, columns x (UTF label, byte type)
+ *   row groups: int rows, columns x (byte encoding, int length, length bytes)
+ *   int 0
+ * </pre>
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class ColumnarFileWriter {
+
+    public static final String FILE_EXTENSION = ".ctbl";
+
+    // declared column types
+    public static final byte INT = 1;
+    public static final byte FLOAT = 2;
+    public static final byte STRING = 3;
+    public static final byte DOUBLE = 4;
+
+    // chunk encodings
+    static final byte ENCODING_INT = 1;
+    static final byte ENCODING_FLOAT = 2;
+    static final byte ENCODING_DICTIONARY = 3;
+    static final byte ENCODING_DOUBLE = 4;
+
+    static final int MAGIC = 0x4354424C;    // "CTBL"
+    // version 2 added double columns
+    static final int VERSION = 2;
+
+    // stored in place of a null value
+    static final String NULL_VALUE = "null";
+
+    private final String[] columnLabels;
+    private final byte[] columnTypes;
+    private final File file;
+    private DataOutputStream out;
+    private long rowCount;
+
+
+    public ColumnarFileWriter(File file, String[] columnLabels, byte[] columnTypes) throws IOException {
+
+        if (columnLabels.length != columnTypes.length)
+            throw new IllegalArgumentException("number of column labels and column types differ for " + file);
+
+        this.file = file;
+        this.columnLabels = columnLabels.clone();
+        this.columnTypes = columnTypes.clone();
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columnLabels.length);
+        for (int c=0; c < columnLabels.length; c++) {
+            out.writeUTF(columnLabels[c]);
+            out.writeByte(columnTypes[c]);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getColumnCount() {
+        return columnLabels.length;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return an empty row group for this file. Row groups are not thread safe, but
+     *         different row groups may be filled on different threads.
+     */
+    public RowGroup newRowGroup() {
+        return new RowGroup(columnTypes);
+    }
+
+    /**
+     * Append a row group to the file, encoding it first if that has not been done.
+     */
+    public synchronized void writeRowGroup(RowGroup rowGroup) throws IOException {
+
+        if (rowGroup.rows == 0)
+            return;
+
+        byte[][] chunks = rowGroup.encode();
+        out.writeInt(rowGroup.rows);
+        for (byte[] chunk : chunks)
+            out.write(chunk);
+        rowCount += rowGroup.rows;
+    }
+
+    /**
+     * Write the end of file marker and close the file.
+     */
+    public synchronized void close() throws IOException {
+        if (out == null)
+            return;
+        try {
+            out.writeInt(0);
+        }
+        finally {
+            out.close();
+            out = null;
+        }
+    }
+
+
+    /**
+     * Rows of a table, held by column until they are encoded.
+     *
+     * Rows are added either as lists of text with addRow(List), or value by value
+     * with addInt(), addFloat(), addDouble() and addString() followed by endRow(), which keeps
+     * numbers in arrays without formatting them as text. All the rows of a row
+     * group are added the same way.
+     */
+    public static final class RowGroup {
+
+        private final byte[] columnTypes;
+        private final ArrayList<String>[] values;
+        private int rows;
+        private byte[][] chunks;
+
+        // rows added value by value: the numbers of the integer and real columns, by
+        // column, null for a text column or once a column has been turned to text
+        private boolean valueRows;
+        private int column;
+        private int capacity;
+        private int[][] intValues;
+        private float[][] floatValues;
+        private double[][] doubleValues;
+
+        @SuppressWarnings("unchecked")
+        RowGroup(byte[] columnTypes) {
+            this.columnTypes = columnTypes;
+            values = (ArrayList<String>[]) new ArrayList<?>[columnTypes.length];
+            for (int c=0; c < values.length; c++)
+                values[c] = new ArrayList<String>();
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        /**
+         * Add a row of values, in column order, formatted as they would be for a
+         * CSV file. A null value is stored as the text "null", which is how the CSV
+         * writers print it, and makes an integer or real column chunk text.
+         */
+        public void addRow(List<String> row) {
+
+            if (chunks != null)
+                throw new IllegalStateException("row added to a row group that has been encoded");
+            if (valueRows)
+                throw new IllegalStateException("row list added to a row group of rows added value by value");
+            if (row.size() != values.length)
+                throw new IllegalArgumentException("row has " + row.size() + " values, table has " + values.length + " columns");
+
+            int c = 0;
+            for (String value : row)
+                values[c++].add(value == null ? NULL_VALUE : value);
+            rows++;
+        }
+
+        /**
+         * Add the next value of the current row. It is stored as an integer in an
+         * integer column, in a double column, and in a float column if the float has
+         * the same value; otherwise it is added as text, as addString() would add it.
+         */
+        public void addInt(int value) {
+            int c = nextColumn();
+            if (intValues[c] != null)
+                intValues[c][rows] = value;
+            else if (floatValues[c] != null && (int) (float) value == value)
+                floatValues[c][rows] = value;
+            else if (doubleValues[c] != null)
+                doubleValues[c][rows] = value;
+            else
+                addText(c, Integer.toString(value));
+        }
+
+        /**
+         * Add the next value of the current row. It is stored in a real column, and
+         * in an integer column if it is a whole number; otherwise it is added as
+         * text, as addString() would add it.
+         */
+        public void addFloat(float value) {
+            int c = nextColumn();
+            if (floatValues[c] != null)
+                floatValues[c][rows] = value;
+            else if (doubleValues[c] != null)
+                doubleValues[c][rows] = value;
+            else if (intValues[c] != null && (int) value == value)
+                intValues[c][rows] = (int) value;
+            else
+                addText(c, Float.toString(value));
+        }
+
+        /**
+         * Add the next value of the current row. It is stored in a double column, in
+         * a float column if the float has the same value, and in an integer column if
+         * it is a whole number; otherwise it is added as text, as addString() would
+         * add it.
+         */
+        public void addDouble(double value) {
+            int c = nextColumn();
+            if (doubleValues[c] != null)
+                doubleValues[c][rows] = value;
+            else if (floatValues[c] != null && ((float) value == value || Double.isNaN(value)))
+                floatValues[c][rows] = (float) value;
+            else if (intValues[c] != null && (int) value == value)
+                intValues[c][rows] = (int) value;
+            else
+                addText(c, Double.toString(value));
+        }
+
+        /**
+         * Add the next value of the current row. In an integer or real column the
+         * text is parsed as addRow(List) would parse it. A value that can't be parsed,
+         * or a null, which is stored as the text "null", turns the column chunk to
+         * text, with the numbers added before it formatted by toString().
+         */
+        public void addString(String value) {
+            int c = nextColumn();
+            if (value != null) {
+                try {
+                    if (intValues[c] != null) {
+                        intValues[c][rows] = Integer.parseInt(value.trim());
+                        return;
+                    }
+                    if (floatValues[c] != null) {
+                        floatValues[c][rows] = Float.parseFloat(value);
+                        return;
+                    }
+                    if (doubleValues[c] != null) {
+                        doubleValues[c][rows] = Double.parseDouble(value);
+                        return;
+                    }
+                }
+                catch (NumberFormatException e) {
+                    // added as text
+                }
+            }
+            addText(c, value == null ? NULL_VALUE : value);
+        }
+
+        /**
+         * End the current row, once a value has been added for every column.
+         */
+        public void endRow() {
+            if (!valueRows || column != values.length)
+                throw new IllegalStateException("row ended after " + (valueRows ? column : 0) + " values, table has " + values.length + " columns");
+            column = 0;
+            rows++;
+        }
+
+        private int nextColumn() {
+
+            if (chunks != null)
+                throw new IllegalStateException("value added to a row group that has been encoded");
+            if (!valueRows) {
+                if (rows > 0)
+                    throw new IllegalStateException("value added to a row group of row lists");
+                startValueRows();
+            }
+            if (column == values.length)
+                throw new IllegalStateException("row has more values than the table has columns");
+
+            if (column == 0 && rows == capacity) {
+                capacity *= 2;
+                for (int c=0; c < values.length; c++) {
+                    if (intValues[c] != null)
+                        intValues[c] = Arrays.copyOf(intValues[c], capacity);
+                    if (floatValues[c] != null)
+                        floatValues[c] = Arrays.copyOf(floatValues[c], capacity);
+                    if (doubleValues[c] != null)
+                        doubleValues[c] = Arrays.copyOf(doubleValues[c], capacity);
+                }
+            }
+            return column++;
+        }
+
+        private void startValueRows() {
+            valueRows = true;
+            capacity = 1024;
+            intValues = new int[values.length][];
+            floatValues = new float[values.length][];
+            doubleValues = new double[values.length][];
+            for (int c=0; c < values.length; c++) {
+                if (columnTypes[c] == INT)
+                    intValues[c] = new int[capacity];
+                else if (columnTypes[c] == FLOAT)
+                    floatValues[c] = new float[capacity];
+                else if (columnTypes[c] == DOUBLE)
+                    doubleValues[c] = new double[capacity];
+            }
+        }
+
+        /**
+         * Add a text value for the current row, first turning the column to text if
+         * it still holds numbers.
+         */
+        private void addText(int c, String value) {
+            if (intValues[c] != null) {
+                for (int r=0; r < rows; r++)
+                    values[c].add(Integer.toString(intValues[c][r]));
+                intValues[c] = null;
+            }
+            else if (floatValues[c] != null) {
+                for (int r=0; r < rows; r++)
+                    values[c].add(Float.toString(floatValues[c][r]));
+                floatValues[c] = null;
+            }
+            else if (doubleValues[c] != null) {
+                for (int r=0; r < rows; r++)
+                    values[c].add(Double.toString(doubleValues[c][r]));
+                doubleValues[c] = null;
+            }
+            values[c].add(value);
+        }
+
+        /**
+         * Encode the column chunks and release the row values. Called by
+         * writeRowGroup() if it has not already been called, so the encoding can be
+         * done on the thread that filled the row group.
+         */
+        public synchronized byte[][] encode() {
+
+            if (chunks != null)
+                return chunks;
+            if (valueRows && column != 0)
+                throw new IllegalStateException("row group encoded before its last row was ended");
+
+            try {
+                chunks = new byte[values.length][];
+                for (int c=0; c < values.length; c++) {
+                    if (!valueRows)
+                        chunks[c] = encodeColumn(columnTypes[c], values[c]);
+                    else if (intValues[c] != null)
+                        chunks[c] = encodeInts(intValues[c]);
+                    else if (floatValues[c] != null)
+                        chunks[c] = encodeFloats(floatValues[c]);
+                    else if (doubleValues[c] != null)
+                        chunks[c] = encodeDoubles(doubleValues[c]);
+                    else
+                        chunks[c] = encodeColumn(STRING, values[c]);
+                    values[c] = null;
+                }
+                intValues = null;
+                floatValues = null;
+                doubleValues = null;
+            }
+            catch (IOException e) {
+                // writing to a byte array does not throw
+                throw new RuntimeException(e);
+            }
+            return chunks;
+        }
+
+        private byte[] encodeColumn(byte type, ArrayList<String> column) throws IOException {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(column.size() * 4 + 16);
+            DataOutputStream data = new DataOutputStream(bytes);
+
+            byte encoding = ENCODING_DICTIONARY;
+            if (type == INT)
+                encoding = writeInts(data, column) ? ENCODING_INT : ENCODING_DICTIONARY;
+            else if (type == FLOAT)
+                encoding = writeFloats(data, column) ? ENCODING_FLOAT : ENCODING_DICTIONARY;
+            else if (type == DOUBLE)
+                encoding = writeDoubles(data, column) ? ENCODING_DOUBLE : ENCODING_DICTIONARY;
+
+            if (encoding == ENCODING_DICTIONARY) {
+                bytes.reset();
+                writeDictionary(data, column);
+            }
+            data.flush();
+            return chunk(encoding, bytes);
+        }
+
+        private byte[] encodeInts(int[] column) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * 4);
+            DataOutputStream data = new DataOutputStream(bytes);
+            for (int r=0; r < rows; r++)
+                data.writeInt(column[r]);
+            data.flush();
+            return chunk(ENCODING_INT, bytes);
+        }
+
+        private byte[] encodeFloats(float[] column) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * 4);
+            DataOutputStream data = new DataOutputStream(bytes);
+            for (int r=0; r < rows; r++)
+                data.writeFloat(column[r]);
+            data.flush();
+            return chunk(ENCODING_FLOAT, bytes);
+        }
+
+        private byte[] encodeDoubles(double[] column) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * 8);
+            DataOutputStream data = new DataOutputStream(bytes);
+            for (int r=0; r < rows; r++)
+                data.writeDouble(column[r]);
+            data.flush();
+            return chunk(ENCODING_DOUBLE, bytes);
+        }
+
+        private static byte[] chunk(byte encoding, ByteArrayOutputStream bytes) throws IOException {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(bytes.size() + 5);
+            DataOutputStream header = new DataOutputStream(chunk);
+            header.writeByte(encoding);
+            header.writeInt(bytes.size());
+            bytes.writeTo(header);
+            header.flush();
+            return chunk.toByteArray();
+        }
+
+        private static boolean writeInts(DataOutputStream data, ArrayList<String> column) throws IOException {
+            try {
+                for (String value : column)
+                    data.writeInt(Integer.parseInt(value.trim()));
+                return true;
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private static boolean writeFloats(DataOutputStream data, ArrayList<String> column) throws IOException {
+            try {
+                for (String value : column)
+                    data.writeFloat(Float.parseFloat(value));
+                return true;
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private static boolean writeDoubles(DataOutputStream data, ArrayList<String> column) throws IOException {
+            try {
+                for (String value : column)
+                    data.writeDouble(Double.parseDouble(value));
+                return true;
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private static void writeDictionary(DataOutputStream data, ArrayList<String> column) throws IOException {
+
+            HashMap<String, Integer> codes = new HashMap<String, Integer>();
+            ArrayList<String> dictionary = new ArrayList<String>();
+            int[] rowCodes = new int[column.size()];
+            for (int r=0; r < rowCodes.length; r++) {
+                String value = column.get(r);
+                Integer code = codes.get(value);
+                if (code == null) {
+                    code = dictionary.size();
+                    codes.put(value, code);
+                    dictionary.add(value);
+                }
+                rowCodes[r] = code;
+            }
+
+            data.writeInt(dictionary.size());
+            for (String value : dictionary)
+                data.writeUTF(value);
+
+            int width = codeWidth(dictionary.size());
+            for (int code : rowCodes) {
+                if (width == 1)
+                    data.writeByte(code);
+                else if (width == 2)
+                    data.writeShort(code);
+                else
+                    data.writeInt(code);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes used for each row's code in a dictionary chunk.
+     */
+    static int codeWidth(int dictionarySize) {
+        if (dictionarySize <= 256)
+            return 1;
+        if (dictionarySize <= 65536)
+            return 2;
+        return 4;
+    }
+
+}
@@ -0,0 +1,706 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.datafile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+
+/**
+ * Creates a TableDataSet from a CSV file, as CSVFileReader does, by memory mapping
+ * the file and parsing it in chunks on several threads.
+ *
+ * The data lines are split into chunks that start and end on line boundaries.
+ * The lines in each chunk are counted in parallel, which gives the row each chunk
+ * starts at, and then the chunks are parsed in parallel straight into the float[]
+ * and String[] columns of the table. Numbers are parsed from the bytes of the file
+ * without making a String for each value, and values in columns that are not read
+ * are skipped without being parsed.
+ *
+ * Fields are parsed as CSVFileReader parses them: delimiters inside double quotes
+ * do not separate fields, a double quote at the start and at the end of a field is
+ * removed and "" is replaced by ". Column types are taken from the first data line,
+ * a column being a NUMBER column if its value there is not quoted and is a number,
+ * or from the column formats given by the caller. Unlike CSVFileReader, blank lines
+ * are skipped, and a quoted value cannot contain a line break.
+ *
+ * @version  1.0, 10/17/2026
+ */
+public class MappedCSVFileReader extends TableDataFileReader implements DataTypes {
+
+    protected static transient Logger logger = Logger.getLogger("com.pb.common.datafile");
+
+    // each chunk is mapped separately, and chunks are split so they are about this size at most
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+
+    // powers of ten up to 10^10, which are exact floats as 5^10 < 2^24
+    private static final double[] POWERS_OF_TEN = new double[11];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i=1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10.0;
+    }
+
+    //Can be set by caller
+    private byte delimiter = ',';
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+    private long chunkSize = 4L << 20;
+
+    private final Charset charset = Charset.defaultCharset();
+
+
+    public MappedCSVFileReader () {
+    }
+
+
+    /**
+     * @param delimiter character separating fields in CSV file, default is a comma
+     */
+    public void setDelimiter(char delimiter) {
+        if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+            throw new IllegalArgumentException("delimiter must be a single byte character other than a quote or a line break: " + delimiter);
+        this.delimiter = (byte) delimiter;
+    }
+
+    public char getDelimiter() {
+        return (char) delimiter;
+    }
+
+    /**
+     * @param numberOfThreads the number of threads used to parse a file, default is
+     *                        the number of available processors
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @param chunkSize the smallest number of bytes parsed as one chunk, default is 4MB
+     */
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_BYTES));
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+
+    public TableDataSet readFile(File file) throws IOException {
+        return readFile(file, true);
+    }
+
+    /**
+     * @param columnLabelsPresent  determines whether first line is treated
+     *                              as column titles
+     */
+    public TableDataSet readFile(File file, boolean columnLabelsPresent) throws IOException {
+        return readFile(file, columnLabelsPresent, null, null);
+    }
+
+    /**
+     * @param columnsToRead list of column labels that should be read - all other
+     *                      columns will be dropped from the table data set
+     */
+    public TableDataSet readFile(File file, String[] columnsToRead) throws IOException {
+        return readFile(file, true, columnsToRead, null);
+    }
+
+    public TableDataSet readFile(File file, boolean columnLabelsPresent, String[] columnsToRead) throws IOException {
+        return readFile(file, columnLabelsPresent, columnsToRead, null);
+    }
+
+    /**
+     * Read the csv file with a String[] of specified column formats (NUMBER or STRING),
+     * where the format is specified for all columns, all columns are read,
+     * and column headings must be present on the first line.
+     */
+    public TableDataSet readFileWithFormats(File file, String[] columnFormats) throws IOException {
+        return readFile(file, true, null, columnFormats);
+    }
+
+
+    /**
+     * Main method which loads a CSV file into a table data class.
+     *
+     * @param file  name of file to read
+     * @param columnLabelsPresent  determines whether first line is treated
+     *                              as column titles
+     * @param columnsToRead list of column labels that should be read - all other
+     *                      columns will be dropped from the table data set, or
+     *                      null to read all columns
+     * @param columnFormats format of each column in the file, "NUMBER" or "STRING",
+     *                      or null to determine the formats from the first data line
+     * @throws IOException
+     */
+    public TableDataSet readFile(File file, boolean columnLabelsPresent, String[] columnsToRead, String[] columnFormats)
+            throws IOException {
+
+        if ((columnsToRead != null) && (columnLabelsPresent == false)) {
+            throw new RuntimeException("Column lables provided as filter but there are no column labels in CSV file");
+        }
+
+        logger.debug("Opening file: " + file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+
+            //Read column titles
+            long dataStart = 0;
+            ArrayList<String> fileLabels = null;
+            if (columnLabelsPresent) {
+                long lineEnd = findLineEnd(channel, 0, size);
+                if (size == 0)
+                    throw new IOException("Error: file looks like it's empty");
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, lineEnd);
+                fileLabels = new ArrayList<String>();
+                for (long[] field : splitFields(header, 0, trimLine(header, 0, (int) lineEnd)))
+                    fileLabels.add(decodeString(header, (int) field[0], (int) field[1], new byte[64]));
+                dataStart = Math.min(lineEnd + 1, size);
+            }
+
+            //Read the first data line, which gives the number of columns when there
+            //are no column titles and the column types when no formats are given
+            long firstLineStart = skipBlankLines(channel, dataStart, size);
+            ArrayList<long[]> firstLineFields = null;
+            ByteBuffer firstLine = null;
+            if (firstLineStart < size) {
+                long firstLineEnd = findLineEnd(channel, firstLineStart, size);
+                firstLine = channel.map(FileChannel.MapMode.READ_ONLY, firstLineStart, firstLineEnd - firstLineStart);
+                firstLineFields = splitFields(firstLine, 0, trimLine(firstLine, 0, firstLine.limit()));
+            }
+
+            int fileColumnCount = fileLabels != null ? fileLabels.size() : (firstLineFields != null ? firstLineFields.size() : 0);
+
+            //Determine which columns are read and their position in the table
+            int[] tableColumn = new int[fileColumnCount];
+            ArrayList<String> labels = new ArrayList<String>();
+            for (int c=0; c < fileColumnCount; c++) {
+                tableColumn[c] = -1;
+                String label = fileLabels != null ? fileLabels.get(c) : "column_" + (c+1);
+                if (columnsToRead != null) {
+                    boolean read = false;
+                    for (String name : columnsToRead) {
+                        if (name.equalsIgnoreCase(label)) {
+                            read = true;
+                            break;
+                        }
+                    }
+                    if (!read)
+                        continue;
+                }
+                tableColumn[c] = labels.size();
+                labels.add(label);
+            }
+
+            if (columnLabelsPresent && labels.size() == 0) {
+                logger.fatal("No columns read when reading file " + file);
+                throw new RuntimeException("No columns read when reading file " + file);
+            }
+
+            //Determine the column types
+            int[] columnType = new int[labels.size()];
+            for (int c=0; c < fileColumnCount; c++) {
+                if (tableColumn[c] < 0)
+                    continue;
+                if (columnFormats != null)
+                    columnType[tableColumn[c]] = columnFormats[c].equals("NUMBER") ? NUMBER : STRING;
+                else if (firstLineFields == null || c >= firstLineFields.size())
+                    columnType[tableColumn[c]] = STRING;
+                else
+                    columnType[tableColumn[c]] = determineColumnType(firstLine, firstLineFields.get(c));
+            }
+
+            //Count the rows in each chunk, then parse the chunks into the columns
+            ArrayList<Chunk> chunks = makeChunks(channel, firstLineStart, size, file, tableColumn, columnType);
+            runChunks(chunks, false);
+
+            int rowCount = 0;
+            for (Chunk chunk : chunks) {
+                chunk.firstRow = rowCount;
+                rowCount += chunk.rows;
+            }
+            logger.debug("number of rows in file: " + rowCount);
+
+            Object[] columnData = new Object[labels.size()];
+            for (int c=0; c < columnData.length; c++) {
+                if (columnType[c] == NUMBER)
+                    columnData[c] = new float[rowCount];
+                else
+                    columnData[c] = new String[rowCount];
+            }
+            for (Chunk chunk : chunks)
+                chunk.columnData = columnData;
+
+            runChunks(chunks, true);
+
+            TableDataSet tds = new TableDataSet();
+            for (int c=0; c < columnData.length; c++)
+                tds.appendColumn(columnData[c], labels.get(c));
+            tds.setName(file.toString());
+            return tds;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+
+    /* (non-Javadoc)
+     * @see com.pb.common.datafile.TableDataReader#readTable(java.lang.String)
+     */
+    public TableDataSet readTable(String tableName) throws IOException {
+        File fileName = new File (getMyDirectory().getPath() + File.separator + tableName + ".csv");
+        TableDataSet me = readFile(fileName);
+        me.setName(tableName);
+        return me;
+    }
+
+
+    /* (non-Javadoc)
+     * @see com.pb.common.datafile.TableDataReader#close()
+     */
+    public void close() {
+    }
+
+
+    /**
+     * Split the data lines from start to the end of the file into chunks of at
+     * least chunkSize bytes, each starting at the beginning of a line.
+     */
+    private ArrayList<Chunk> makeChunks(FileChannel channel, long start, long size, File file,
+            int[] tableColumn, int[] columnType) throws IOException {
+
+        long bytes = size - start;
+        int numChunks = (int) Math.max(1, Math.min(bytes / chunkSize, numberOfThreads * 4L));
+        numChunks = (int) Math.max(numChunks, (bytes + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+        ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+        long chunkStart = start;
+        for (int i=1; i <= numChunks && chunkStart < size; i++) {
+            long chunkEnd = size;
+            if (i < numChunks) {
+                long target = Math.max(chunkStart, start + bytes * i / numChunks);
+                chunkEnd = Math.min(findLineEnd(channel, target, size) + 1, size);
+            }
+            if (chunkEnd - chunkStart > 2 * MAX_CHUNK_BYTES)
+                throw new IOException("lines longer than " + MAX_CHUNK_BYTES + " bytes in file " + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+            chunks.add(new Chunk(buffer, file, tableColumn, columnType));
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+
+    /**
+     * Count the rows of the chunks, or parse them, on numberOfThreads threads.
+     */
+    private void runChunks(ArrayList<Chunk> chunks, final boolean parse) throws IOException {
+
+        if (chunks.size() == 1 || numberOfThreads == 1) {
+            for (Chunk chunk : chunks) {
+                if (parse)
+                    chunk.parse();
+                else
+                    chunk.count();
+            }
+            return;
+        }
+
+        ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (final Chunk chunk : chunks) {
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    if (parse)
+                        chunk.parse();
+                    else
+                        chunk.count();
+                    return null;
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(numberOfThreads, chunks.size()));
+        try {
+            for (Future<Object> future : pool.invokeAll(tasks))
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted reading CSV file", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * The lines of a file between two line boundaries.
+     */
+    private final class Chunk {
+
+        private final ByteBuffer buffer;
+        private final File file;
+        private final int[] tableColumn;
+        private final int[] columnType;
+        private int rows;
+        private int firstRow;
+        private Object[] columnData;
+
+        Chunk(ByteBuffer buffer, File file, int[] tableColumn, int[] columnType) {
+            this.buffer = buffer;
+            this.file = file;
+            this.tableColumn = tableColumn;
+            this.columnType = columnType;
+        }
+
+        /**
+         * Count the lines that are not blank.
+         */
+        void count() {
+            int limit = buffer.limit();
+            int n = 0;
+            boolean blank = true;
+            for (int p=0; p < limit; p++) {
+                byte b = buffer.get(p);
+                if (b == '\n') {
+                    if (!blank)
+                        n++;
+                    blank = true;
+                }
+                else if (b != '\r') {
+                    blank = false;
+                }
+            }
+            if (!blank)
+                n++;
+            rows = n;
+        }
+
+        void parse() {
+            int limit = buffer.limit();
+            int lastColumn = -1;
+            for (int c=0; c < tableColumn.length; c++)
+                if (tableColumn[c] >= 0)
+                    lastColumn = c;
+
+            byte[] scratch = new byte[256];
+            int row = firstRow;
+            int lineStart = 0;
+            while (lineStart < limit) {
+
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+                    lineEnd++;
+                int end = trimLine(buffer, lineStart, lineEnd);
+
+                if (end > lineStart) {
+
+                    //Process each field on the current line
+                    //c is the actual column number of the column being read in the file
+                    int c = 0;
+                    int p = lineStart;
+                    while (c <= lastColumn) {
+                        int fieldStart = p;
+                        boolean inQuotes = false;
+                        while (p < end) {
+                            byte b = buffer.get(p);
+                            if (b == '"')
+                                inQuotes = !inQuotes;
+                            else if (b == delimiter && !inQuotes)
+                                break;
+                            p++;
+                        }
+
+                        int c2 = tableColumn[c];
+                        if (c2 >= 0) {
+                            if (columnType[c2] == NUMBER) {
+                                ((float[]) columnData[c2])[row] = parseNumber(fieldStart, p, scratch, row, c);
+                            }
+                            else {
+                                if (p - fieldStart > scratch.length)
+                                    scratch = new byte[2 * (p - fieldStart)];
+                                ((String[]) columnData[c2])[row] = decodeString(buffer, fieldStart, p, scratch);
+                            }
+                        }
+
+                        c++;
+                        if (p >= end)
+                            break;
+                        p++;
+                    }
+
+                    //Check that there are the right number of columns
+                    if (c <= lastColumn) {
+                        throw new RuntimeException(c + " columns found on line " +
+                                row + ", should be at least " + (lastColumn + 1) + " in file " + file);
+                    }
+
+                    row++;
+                }
+
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private float parseNumber(int start, int end, byte[] scratch, int row, int column) {
+            float value = parseSimpleNumber(buffer, start, end);
+            if (!Float.isNaN(value))
+                return value;
+
+            //Values that are not simple decimal numbers are parsed as CSVFileReader parses them
+            if (end - start > scratch.length)
+                scratch = new byte[end - start];
+            String token = decodeString(buffer, start, end, scratch);
+            try {
+                return Float.parseFloat(token);
+            }
+            catch (NumberFormatException e) {
+                throw new RuntimeException("could not parse '" + token + "' as a number in column " + (column + 1) +
+                        " for row number " + row + " in file " + file, e);
+            }
+        }
+    }
+
+
+    /**
+     * Parse a decimal number, with an optional sign, fraction and exponent, whose
+     * digits are less than 2^24 and scaled by at most 10^10 or 10^-10, giving the
+     * same float as Float.parseFloat().
+     *
+     * @return the number, or NaN if the bytes are not such a number, in which
+     *         case Float.parseFloat() is used.
+     */
+    static float parseSimpleNumber(ByteBuffer buffer, int start, int end) {
+
+        int p = start;
+        boolean negative = false;
+        if (p < end && (buffer.get(p) == '-' || buffer.get(p) == '+')) {
+            negative = buffer.get(p) == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; p < end; p++) {
+            byte b = buffer.get(p);
+            if (b >= '0' && b <= '9') {
+                if (++digits > 18)
+                    return Float.NaN;
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction)
+                    exponent--;
+            }
+            else if (b == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                break;
+            }
+        }
+        if (digits == 0)
+            return Float.NaN;
+
+        if (p < end && (buffer.get(p) == 'e' || buffer.get(p) == 'E')) {
+            p++;
+            boolean negativeExponent = false;
+            if (p < end && (buffer.get(p) == '-' || buffer.get(p) == '+')) {
+                negativeExponent = buffer.get(p) == '-';
+                p++;
+            }
+            int e = 0;
+            int exponentDigits = 0;
+            for (; p < end; p++) {
+                byte b = buffer.get(p);
+                if (b < '0' || b > '9' || ++exponentDigits > 4)
+                    return Float.NaN;
+                e = e * 10 + (b - '0');
+            }
+            if (exponentDigits == 0)
+                return Float.NaN;
+            exponent += negativeExponent ? -e : e;
+        }
+        if (p != end)
+            return Float.NaN;
+
+        // the mantissa and the power of ten are exact floats, so rounding their
+        // quotient or product to a double and then to a float gives the correctly
+        // rounded float, as a double has more than twice the precision of a float
+        // plus two bits. Larger mantissas or powers could be rounded twice the
+        // wrong way near a halfway point between two floats.
+        float value;
+        if (mantissa == 0)
+            value = 0.0f;
+        else if (mantissa >= (1L << 24) || exponent < -10 || exponent > 10)
+            return Float.NaN;
+        else if (exponent < 0)
+            value = (float) (mantissa / POWERS_OF_TEN[-exponent]);
+        else
+            value = (float) (mantissa * POWERS_OF_TEN[exponent]);
+
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * @return the field as CSVFileReader returns it: a leading and a trailing
+     *         quote removed and "" replaced by ".
+     */
+    private String decodeString(ByteBuffer buffer, int start, int end, byte[] scratch) {
+        if (start < end && buffer.get(start) == '"')
+            start++;
+        if (start < end && buffer.get(end - 1) == '"')
+            end--;
+        if (end - start > scratch.length)
+            scratch = new byte[end - start];
+
+        int n = 0;
+        for (int p=start; p < end; p++) {
+            byte b = buffer.get(p);
+            scratch[n++] = b;
+            if (b == '"' && p + 1 < end && buffer.get(p + 1) == '"')
+                p++;
+        }
+        return new String(scratch, 0, n, charset);
+    }
+
+    /**
+     * A column is a STRING column if its value on the first data line is quoted or
+     * is not a number.
+     */
+    private int determineColumnType(ByteBuffer line, long[] field) {
+        int start = (int) field[0];
+        int end = (int) field[1];
+        if (start < end && line.get(start) == '"')
+            return STRING;
+        if (!Float.isNaN(parseSimpleNumber(line, start, end)))
+            return NUMBER;
+
+        byte[] bytes = new byte[end - start];
+        for (int p=start; p < end; p++)
+            bytes[p - start] = line.get(p);
+        try {
+            Float.parseFloat(new String(bytes, charset));
+            return NUMBER;
+        }
+        catch (NumberFormatException e) {
+            return STRING;
+        }
+    }
+
+    /**
+     * @return the start and end of each field of the line.
+     */
+    private ArrayList<long[]> splitFields(ByteBuffer buffer, int start, int end) {
+        ArrayList<long[]> fields = new ArrayList<long[]>();
+        int p = start;
+        while (true) {
+            int fieldStart = p;
+            boolean inQuotes = false;
+            while (p < end) {
+                byte b = buffer.get(p);
+                if (b == '"')
+                    inQuotes = !inQuotes;
+                else if (b == delimiter && !inQuotes)
+                    break;
+                p++;
+            }
+            fields.add(new long[] { fieldStart, p });
+            if (p >= end)
+                break;
+            p++;
+        }
+        return fields;
+    }
+
+    /**
+     * @return the end of the line without a trailing carriage return.
+     */
+    private static int trimLine(ByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r')
+            end--;
+        return end;
+    }
+
+    /**
+     * @return the position of the first line feed at or after position, or size if there is none.
+     */
+    private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+                break;
+            for (int i=0; i < n; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * @return the start of the first line at or after position that is not blank, or size if there is none.
+     */
+    private static long skipBlankLines(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long lineStart = position;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0)
+                break;
+            for (int i=0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n')
+                    lineStart = position + i + 1;
+                else if (b != '\r')
+                    return lineStart;
+            }
+            position += n;
+        }
+        return size;
+    }
+
+}
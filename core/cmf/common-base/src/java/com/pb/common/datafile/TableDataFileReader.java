@@ -75,6 +75,10 @@ public abstract class TableDataFileReader extends TableDataReader {
         if ( fileName.endsWith(".csv") ) {
             reader = new CSVFileReader();
         }
+        else
+        if ( fileName.endsWith(ColumnarFileWriter.FILE_EXTENSION) ) {
+            reader = new ColumnarFileReader();
+        }
         else {
             throw new RuntimeException("Could not determine file type for: "+ fileName);
         }
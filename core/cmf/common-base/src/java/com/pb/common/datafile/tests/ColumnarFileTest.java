@@ -0,0 +1,203 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.datafile.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.pb.common.datafile.ColumnarFileReader;
+import com.pb.common.datafile.ColumnarFileWriter;
+import com.pb.common.datafile.TableDataSet;
+
+
+/**
+ * Tests the ColumnarFileWriter and ColumnarFileReader classes.
+ *
+ * @version  1.0, 10/17/2026
+ */
+public class ColumnarFileTest {
+
+    public static void main(String[] args) throws IOException {
+
+        File file = File.createTempFile("columnarFileTest", ColumnarFileWriter.FILE_EXTENSION);
+        file.deleteOnExit();
+
+        String[] labels = { "id", "purpose", "distance", "mixed" };
+        byte[] types = { ColumnarFileWriter.INT, ColumnarFileWriter.STRING, ColumnarFileWriter.FLOAT, ColumnarFileWriter.INT };
+        String[] purposes = { "Home", "Work", "Shop" };
+
+        // two row groups, filled in reverse order; the second has a non-integer value and
+        // a null in an integer column, and the first a null in a text column
+        ColumnarFileWriter writer = new ColumnarFileWriter(file, labels, types);
+        ColumnarFileWriter.RowGroup first = writer.newRowGroup();
+        ColumnarFileWriter.RowGroup second = writer.newRowGroup();
+        int rows = 1000;
+        for (int r=rows-1; r >= 0; r--) {
+            ColumnarFileWriter.RowGroup group = r < 600 ? first : second;
+            String mixed = r == 700 ? "NA" : r == 800 ? null : Integer.toString(r % 7);
+            String purpose = r == 5 ? null : purposes[r % 3];
+            group.addRow(Arrays.asList(Integer.toString(r), purpose, Float.toString(r * 0.25f), mixed));
+        }
+        second.encode();
+        writer.writeRowGroup(first);
+        writer.writeRowGroup(second);
+        writer.close();
+        System.out.println("wrote " + writer.getRowCount() + " rows, " + file.length() + " bytes");
+
+        TableDataSet table = new ColumnarFileReader().readFile(file);
+        check(table.getRowCount() == rows, "row count " + table.getRowCount());
+        check(table.getColumnCount() == labels.length, "column count " + table.getColumnCount());
+
+        // rows are in row group order, each group in the order its rows were added
+        for (int i=1; i <= rows; i++) {
+            int r = i <= 600 ? 600 - i : 1000 - (i - 600);
+            check(table.getValueAt(i, "id") == r, "id at row " + i);
+            String purpose = r == 5 ? "null" : purposes[r % 3];
+            check(table.getStringValueAt(i, "purpose").equals(purpose), "purpose at row " + i);
+            check(table.getValueAt(i, "distance") == r * 0.25f, "distance at row " + i);
+            String mixed = r == 700 ? "NA" : r == 800 ? "null" : Integer.toString(r % 7);
+            check(table.getStringValueAt(i, "mixed").equals(mixed), "mixed at row " + i);
+        }
+
+        // read one column only
+        TableDataSet distances = new ColumnarFileReader().readFile(file, new String[] { "distance" });
+        check(distances.getColumnCount() == 1 && distances.getRowCount() == rows, "distance column only");
+
+        checkTypedRows();
+        checkDoubleColumns();
+
+        System.out.println("ColumnarFileTest passed");
+    }
+
+    /**
+     * Rows added value by value encode to the same chunks as the same rows added as
+     * lists of text, including a number column that turns to text part way through.
+     */
+    private static void checkTypedRows() throws IOException {
+
+        File file = File.createTempFile("columnarFileTest", ColumnarFileWriter.FILE_EXTENSION);
+        file.deleteOnExit();
+
+        String[] labels = { "orig", "period", "time", "count", "code" };
+        byte[] types = { ColumnarFileWriter.INT, ColumnarFileWriter.STRING, ColumnarFileWriter.FLOAT, ColumnarFileWriter.INT, ColumnarFileWriter.INT };
+        float[] specials = { Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, -0.0f, Float.MIN_VALUE, Float.MAX_VALUE, 0.1f };
+
+        ColumnarFileWriter writer = new ColumnarFileWriter(file, labels, types);
+        ColumnarFileWriter.RowGroup text = writer.newRowGroup();
+        ColumnarFileWriter.RowGroup typed = writer.newRowGroup();
+        int rows = 5000;
+        for (int r=0; r < rows; r++) {
+            String period = r == 17 ? null : r % 2 == 0 ? "AM" : "PM";
+            float time = r < specials.length ? specials[r] : r / 7.0f;
+            // count is a whole number held in a float; code turns to text at row 3000
+            float count = r * 2.0f;
+            String code = r == 3000 ? "NA" : Integer.toString(r % 13);
+
+            text.addRow(Arrays.asList(Integer.toString(r / 100), period, Float.toString(time),
+                    Integer.toString((int) count), code));
+
+            typed.addInt(r / 100);
+            typed.addString(period);
+            typed.addFloat(time);
+            typed.addFloat(count);
+            if (r == 3000)
+                typed.addString(code);
+            else
+                typed.addInt(r % 13);
+            typed.endRow();
+        }
+        check(Arrays.deepEquals(text.encode(), typed.encode()), "chunks of rows added value by value differ from row lists");
+        writer.writeRowGroup(typed);
+        writer.close();
+
+        TableDataSet table = new ColumnarFileReader().readFile(file);
+        check(table.getRowCount() == rows, "typed row count " + table.getRowCount());
+        check(Float.isNaN(table.getValueAt(1, "time")), "typed NaN");
+        check(table.getValueAt(rows, "count") == 2.0f * (rows - 1), "typed count at last row");
+        check(table.getStringValueAt(18, "period").equals("null"), "typed null period");
+        check(table.getStringValueAt(3001, "code").equals("NA") && table.getStringValueAt(3002, "code").equals(Integer.toString(3001 % 13)),
+                "typed code turned to text");
+
+        ColumnarFileWriter.RowGroup mixed = writer.newRowGroup();
+        mixed.addInt(1);
+        try {
+            mixed.endRow();
+            check(false, "row ended before a value was added for every column");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            mixed.addRow(Arrays.asList("1", "AM", "0.5", "1", "2"));
+            check(false, "row list added to a row group of rows added value by value");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Double columns keep double precision, are read as floats by default and as
+     * doubles when asked for, and whole doubles added to an integer column stay ints.
+     */
+    private static void checkDoubleColumns() throws IOException {
+
+        File file = File.createTempFile("columnarFileTest", ColumnarFileWriter.FILE_EXTENSION);
+        file.deleteOnExit();
+
+        String[] labels = { "dist", "tap" };
+        byte[] types = { ColumnarFileWriter.DOUBLE, ColumnarFileWriter.INT };
+        double[] specials = { Double.NaN, Double.NEGATIVE_INFINITY, -0.0, Double.MIN_VALUE, 0.1 };
+
+        ColumnarFileWriter writer = new ColumnarFileWriter(file, labels, types);
+        ColumnarFileWriter.RowGroup text = writer.newRowGroup();
+        ColumnarFileWriter.RowGroup typed = writer.newRowGroup();
+        int rows = 2000;
+        for (int r=0; r < rows; r++) {
+            double dist = r < specials.length ? specials[r] : r / 3.0;
+            // tap turns to text at row 1500; later values are added as doubles, so their text is "1.0"
+            double tap = r == 1500 ? 0.5 : r % 40;
+            text.addRow(Arrays.asList(Double.toString(dist), r >= 1500 ? Double.toString(tap) : Integer.toString((int) tap)));
+            typed.addDouble(dist);
+            typed.addDouble(tap);
+            typed.endRow();
+        }
+        check(Arrays.deepEquals(text.encode(), typed.encode()), "chunks of double rows added value by value differ from row lists");
+        writer.writeRowGroup(typed);
+        writer.close();
+
+        TableDataSet floats = new ColumnarFileReader().readFile(file);
+        check(floats.getValueAt(rows, "dist") == (float) ((rows - 1) / 3.0), "double column read as float");
+
+        ColumnarFileReader reader = new ColumnarFileReader();
+        reader.setReadDoubles(true);
+        TableDataSet doubles = reader.readFile(file);
+        double[] dists = doubles.getColumnAsDoubleFromDouble("dist");
+        check(Double.isNaN(dists[0]), "double NaN");
+        for (int r=specials.length; r < rows; r++)
+            check(dists[r] == r / 3.0, "double at row " + (r + 1));
+        check(doubles.getStringValueAt(1501, "tap").equals("0.5") && doubles.getStringValueAt(1500, "tap").equals(Integer.toString(1499 % 40)),
+                "tap turned to text");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new RuntimeException("ColumnarFileTest failed: " + message);
+    }
+
+}
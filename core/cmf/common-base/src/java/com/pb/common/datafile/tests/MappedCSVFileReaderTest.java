@@ -0,0 +1,142 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.datafile.tests;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import com.pb.common.datafile.CSVFileReader;
+import com.pb.common.datafile.DataTypes;
+import com.pb.common.datafile.MappedCSVFileReader;
+import com.pb.common.datafile.TableDataSet;
+
+
+/**
+ * Tests that the MappedCSVFileReader class reads the same table as CSVFileReader.
+ *
+ * @version  1.0, 10/17/2026
+ */
+public class MappedCSVFileReaderTest {
+
+    public static void main(String[] args) throws IOException {
+
+        File file = File.createTempFile("mappedCSVFileReaderTest", ".csv");
+        file.deleteOnExit();
+
+        // numbers in several formats, quoted strings with delimiters and quotes, and CRLF line ends
+        Random random = new Random(17);
+        int rows = 20000;
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+        out.write("id,value,purpose,note,exp,mixed\r\n");
+        for (int r=0; r < rows; r++) {
+            String value;
+            switch (r % 4) {
+            case 0: value = Float.toString(random.nextFloat() * 1000 - 500); break;
+            case 1: value = String.format("%.6f", random.nextDouble() * 100000); break;
+            case 2: value = Integer.toString(random.nextInt()); break;
+            default: value = Double.toString(random.nextDouble()); break;
+            }
+            String note = r % 3 == 0 ? "\"a, \"\"quoted\"\" note " + r + "\"" : "note" + r;
+            String exp = (random.nextInt(2000) - 1000) + "e" + (random.nextInt(40) - 20);
+            String mixed = r == 0 ? "1" : r % 1000 == 0 ? " 1.5" : r % 5 == 0 ? "1E3" : "0x1p3";
+            out.write(r + "," + value + ",Work," + note + "," + exp + "," + mixed + "\r\n");
+        }
+        out.close();
+
+        TableDataSet expected = new CSVFileReader().readFile(file);
+
+        MappedCSVFileReader reader = new MappedCSVFileReader();
+        reader.setChunkSize(64 * 1024);
+        reader.setNumberOfThreads(4);
+        TableDataSet table = reader.readFile(file);
+        compare(expected, table);
+
+        // one thread and one chunk
+        reader = new MappedCSVFileReader();
+        reader.setNumberOfThreads(1);
+        compare(expected, reader.readFile(file));
+
+        // column projection
+        reader = new MappedCSVFileReader();
+        reader.setChunkSize(64 * 1024);
+        TableDataSet projected = reader.readFile(file, new String[] { "NOTE", "id" });
+        check(projected.getColumnCount() == 2, "projected column count " + projected.getColumnCount());
+        check(projected.getColumnLabels()[0].equals("id") && projected.getColumnLabels()[1].equals("note"), "projected labels");
+        for (int i=1; i <= rows; i++) {
+            check(projected.getValueAt(i, "id") == expected.getValueAt(i, "id"), "projected id at row " + i);
+            check(projected.getStringValueAt(i, "note").equals(expected.getStringValueAt(i, "note")), "projected note at row " + i);
+        }
+
+        // column formats
+        TableDataSet typed = reader.readFileWithFormats(file, new String[] { "STRING", "NUMBER", "STRING", "STRING", "NUMBER", "STRING" });
+        check(typed.getColumnType()[0] == DataTypes.STRING && typed.getStringValueAt(rows, "id").equals(Integer.toString(rows - 1)), "typed id");
+        check(typed.getColumnType()[5] == DataTypes.STRING && typed.getStringValueAt(2, "mixed").equals("0x1p3"), "typed mixed");
+
+        // blank lines and no line feed at the end of the file
+        out = new BufferedWriter(new FileWriter(file));
+        out.write("a,b\n\n1,x\n\r\n2,y");
+        out.close();
+        TableDataSet small = new MappedCSVFileReader().readFile(file);
+        check(small.getRowCount() == 2 && small.getValueAt(2, "a") == 2 && small.getStringValueAt(2, "b").equals("y"), "blank lines");
+
+        // decimal numbers just above and below the halfway point between two floats,
+        // which are rounded the wrong way if they are rounded to a double first
+        out = new BufferedWriter(new FileWriter(file));
+        out.write("value\n0.5000000298023224\n");
+        for (int r=0; r < rows; r++) {
+            float f = random.nextFloat() * (float) Math.pow(10, random.nextInt(9) - 4);
+            BigDecimal halfway = new BigDecimal(f).add(new BigDecimal(Math.nextUp(f))).divide(BigDecimal.valueOf(2));
+            RoundingMode mode = r % 2 == 0 ? RoundingMode.UP : RoundingMode.DOWN;
+            out.write(halfway.round(new MathContext(8 + random.nextInt(10), mode)).toPlainString() + "\n");
+        }
+        out.close();
+        TableDataSet halfway = new MappedCSVFileReader().readFile(file);
+        check(halfway.getValueAt(1, "value") == 0.50000006f, "0.5000000298023224 read as " + halfway.getValueAt(1, "value"));
+        compare(new CSVFileReader().readFile(file), halfway);
+
+        System.out.println("MappedCSVFileReaderTest passed");
+    }
+
+    private static void compare(TableDataSet expected, TableDataSet table) {
+        check(table.getRowCount() == expected.getRowCount(), "row count " + table.getRowCount());
+        check(table.getColumnCount() == expected.getColumnCount(), "column count " + table.getColumnCount());
+        for (int c=1; c <= expected.getColumnCount(); c++) {
+            String label = expected.getColumnLabel(c);
+            check(table.getColumnLabel(c).equals(label), "label of column " + c);
+            check(table.getColumnType()[c-1] == expected.getColumnType()[c-1], "type of column " + label);
+            for (int i=1; i <= expected.getRowCount(); i++) {
+                if (expected.getColumnType()[c-1] == DataTypes.NUMBER)
+                    check(Float.floatToIntBits(table.getValueAt(i, c)) == Float.floatToIntBits(expected.getValueAt(i, c)),
+                            label + " at row " + i + ": " + table.getValueAt(i, c) + " != " + expected.getValueAt(i, c));
+                else
+                    check(table.getStringValueAt(i, c).equals(expected.getStringValueAt(i, c)), label + " at row " + i);
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new RuntimeException("MappedCSVFileReaderTest failed: " + message);
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.math;
+
+/**
+ * Pure Java exp and log, a portable replacement for the MathNative library.
+ *
+ * exp() reduces x to k*ln2/64 + r, with |r| <= ln2/128, takes 2^(k/64) from a
+ * 64 entry table and evaluates exp(r) with a degree 6 polynomial, so there is
+ * no division and no call out of Java. Results are within 2 ulp of StrictMath.exp().
+ * Arguments whose result would be subnormal, infinite or NaN are handled by the
+ * fdlibm algorithm, which is within 1 ulp.
+ *
+ * log() is the fdlibm algorithm (e_log.c) written in Java, within 1 ulp and
+ * normally equal to StrictMath.log().
+ *
+ * The array methods loop over a range of a double[] with no allocation. The
+ * accuracy against StrictMath is checked by tests.FastMathTest.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public final class FastMath {
+
+    private static final int TABLE_BITS = 6;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    // 2^(j/64), j = 0 to 63
+    private static final double[] EXP2_TABLE = new double[TABLE_SIZE];
+    static {
+        for (int j=0; j < TABLE_SIZE; j++)
+            EXP2_TABLE[j] = StrictMath.pow(2.0, j / (double) TABLE_SIZE);
+    }
+
+    // arguments in this range give normal, finite results from the table method
+    private static final double EXP_TABLE_MIN = -708.0;
+    private static final double EXP_TABLE_MAX = 709.0;
+
+    // adding this rounds a double in [-2^51, 2^51] to an integer held in the low bits
+    private static final double ROUND_SHIFT = 0x1.8p52;
+
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double INV_LN2 = 1.44269504088896338700e+00;
+
+    private static final double TABLE_INV_LN2 = TABLE_SIZE * INV_LN2;
+    private static final double TABLE_LN2_HI = LN2_HI / TABLE_SIZE;
+    private static final double TABLE_LN2_LO = LN2_LO / TABLE_SIZE;
+
+    // fdlibm e_exp.c
+    private static final double O_THRESHOLD = 7.09782712893383973096e+02;
+    private static final double U_THRESHOLD = -7.45133219101941108420e+02;
+    private static final double TWOM1000 = 9.33263618503218878990e-302;
+    private static final double P1 = 1.66666666666666019037e-01;
+    private static final double P2 = -2.77777777770155933842e-03;
+    private static final double P3 = 6.61375632143793436117e-05;
+    private static final double P4 = -1.65339022054652515390e-06;
+    private static final double P5 = 4.13813679705723846039e-08;
+
+    // fdlibm e_log.c
+    private static final double TWO54 = 1.80143985094819840000e+16;
+    private static final double LG1 = 6.666666666666735130e-01;
+    private static final double LG2 = 3.999999999940941908e-01;
+    private static final double LG3 = 2.857142874366239149e-01;
+    private static final double LG4 = 2.222219843214978396e-01;
+    private static final double LG5 = 1.818357216161805012e-01;
+    private static final double LG6 = 1.531383769920937332e-01;
+    private static final double LG7 = 1.479819860511658591e-01;
+
+
+    private FastMath() {
+    }
+
+
+    /**
+     * Returns e raised to the power x, within 2 ulp of StrictMath.exp(x).
+     */
+    public static double exp(double x) {
+        if (!(x > EXP_TABLE_MIN && x < EXP_TABLE_MAX))
+            return expFdlibm(x);
+
+        double kd = x * TABLE_INV_LN2 + ROUND_SHIFT;
+        int k = (int) Double.doubleToRawLongBits(kd);
+        kd -= ROUND_SHIFT;
+
+        double r = (x - kd * TABLE_LN2_HI) - kd * TABLE_LN2_LO;
+        double p = r + r * r * (0.5 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720)))));
+
+        double t = EXP2_TABLE[k & (TABLE_SIZE - 1)];
+        double y = t + t * p;
+
+        // multiply by 2^(k/64 rounded down), the result is a normal number in this range
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(y) + ((long) (k >> TABLE_BITS) << 52));
+    }
+
+    /**
+     * Returns the natural logarithm of x, within 1 ulp.
+     */
+    public static double log(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        int hx = (int) (bits >> 32);
+        int lx = (int) bits;
+
+        int k = 0;
+        if (hx < 0x00100000) {                   // x < 2^-1022
+            if (((hx & 0x7fffffff) | lx) == 0)
+                return Double.NEGATIVE_INFINITY; // log(+-0) = -inf
+            if (hx < 0)
+                return Double.NaN;               // log(-x) = NaN
+            k -= 54;
+            x *= TWO54;                          // scale up subnormal x
+            bits = Double.doubleToRawLongBits(x);
+            hx = (int) (bits >> 32);
+        }
+        if (hx >= 0x7ff00000)
+            return x + x;
+
+        k += (hx >> 20) - 1023;
+        hx &= 0x000fffff;
+        int i = (hx + 0x95f64) & 0x100000;
+        // normalize x or x/2
+        x = Double.longBitsToDouble(((long) (hx | (i ^ 0x3ff00000)) << 32) | (bits & 0xffffffffL));
+        k += (i >> 20);
+        double f = x - 1.0;
+        double dk = k;
+
+        if ((0x000fffff & (2 + hx)) < 3) {      // |f| < 2^-20
+            if (f == 0.0)
+                return k == 0 ? 0.0 : dk * LN2_HI + dk * LN2_LO;
+            double r = f * f * (0.5 - 0.33333333333333333 * f);
+            return k == 0 ? f - r : dk * LN2_HI - ((r - dk * LN2_LO) - f);
+        }
+
+        double s = f / (2.0 + f);
+        double z = s * s;
+        i = hx - 0x6147a;
+        double w = z * z;
+        int j = 0x6b851 - hx;
+        double t1 = w * (LG2 + w * (LG4 + w * LG6));
+        double t2 = z * (LG1 + w * (LG3 + w * (LG5 + w * LG7)));
+        i |= j;
+        double r = t2 + t1;
+        if (i > 0) {
+            double hfsq = 0.5 * f * f;
+            if (k == 0)
+                return f - (hfsq - s * (hfsq + r));
+            return dk * LN2_HI - ((hfsq - (s * (hfsq + r) + dk * LN2_LO)) - f);
+        }
+        if (k == 0)
+            return f - s * (f - r);
+        return dk * LN2_HI - ((s * (f - r) - dk * LN2_LO) - f);
+    }
+
+    /**
+     * Set result[i] = exp(arg[i]) for all elements of arg.
+     */
+    public static void expArray(double[] arg, double[] result) {
+        expArray(arg, 0, arg.length, result);
+    }
+
+    /**
+     * Set result[i] = exp(arg[i]) for i = from to to-1.
+     */
+    public static void expArray(double[] arg, int from, int to, double[] result) {
+        for (int i=from; i < to; i++)
+            result[i] = exp(arg[i]);
+    }
+
+    /**
+     * Returns the sum of exp(arg[i]) for i = from to to-1.
+     */
+    public static double sumExp(double[] arg, int from, int to) {
+        double sum = 0;
+        for (int i=from; i < to; i++)
+            sum += exp(arg[i]);
+        return sum;
+    }
+
+    /**
+     * Returns log(sum of exp(arg[i])) for i = from to to-1, calculated relative to
+     * the largest argument so it does not overflow or lose the small terms to
+     * underflow. Returns negative infinity for an empty range or if all arguments
+     * are negative infinity.
+     */
+    public static double logSumExp(double[] arg, int from, int to) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i=from; i < to; i++) {
+            if (arg[i] > max)
+                max = arg[i];
+        }
+        if (max == Double.NEGATIVE_INFINITY)
+            return max;
+        if (max == Double.POSITIVE_INFINITY)
+            return max;
+
+        double sum = 0;
+        for (int i=from; i < to; i++)
+            sum += exp(arg[i] - max);
+        return max + log(sum);
+    }
+
+
+    /**
+     * The fdlibm exp algorithm (e_exp.c), within 1 ulp for all arguments.
+     */
+    static double expFdlibm(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        int hx = (int) (bits >>> 32);
+        int xsb = hx >>> 31;
+        hx &= 0x7fffffff;
+
+        if (hx >= 0x40862E42) {                  // |x| >= 709.78
+            if (hx >= 0x7ff00000) {
+                if (((hx & 0xfffff) | (int) bits) != 0)
+                    return x + x;                // NaN
+                return xsb == 0 ? x : 0.0;       // exp(+-inf) = inf, 0
+            }
+            if (x > O_THRESHOLD)
+                return Double.POSITIVE_INFINITY;
+            if (x < U_THRESHOLD)
+                return 0.0;
+        }
+
+        double hi = 0;
+        double lo = 0;
+        int k = 0;
+        if (hx > 0x3fd62e42) {                   // |x| > 0.5 ln2
+            if (hx < 0x3FF0A2B2) {               // |x| < 1.5 ln2
+                if (xsb == 0) {
+                    hi = x - LN2_HI;
+                    lo = LN2_LO;
+                    k = 1;
+                } else {
+                    hi = x + LN2_HI;
+                    lo = -LN2_LO;
+                    k = -1;
+                }
+            } else {
+                k = (int) (INV_LN2 * x + (xsb == 0 ? 0.5 : -0.5));
+                double t = k;
+                hi = x - t * LN2_HI;
+                lo = t * LN2_LO;
+            }
+            x = hi - lo;
+        } else if (hx < 0x3e300000) {            // |x| < 2^-28
+            return 1.0 + x;
+        }
+
+        double t = x * x;
+        double c = x - t * (P1 + t * (P2 + t * (P3 + t * (P4 + t * P5))));
+        if (k == 0)
+            return 1.0 - ((x * c) / (c - 2.0) - x);
+
+        double y = 1.0 - ((lo - (x * c) / (2.0 - c)) - hi);
+        if (k >= -1021)
+            return Double.longBitsToDouble(Double.doubleToRawLongBits(y) + ((long) k << 52));
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(y) + ((long) (k + 1000) << 52)) * TWOM1000;
+    }
+
+}
@@ -16,9 +16,16 @@
  */
 package com.pb.common.math;
 
+import org.apache.log4j.Logger;
+
 import com.pb.common.util.ResourceUtil;
 
 /** This class contains math utilties.
+ *
+ * exp(), log() and expArray() use java.lang.Math by default. Setting the system
+ * property math.useFast=true selects the pure Java FastMath kernels, and
+ * math.useNative=true the MathNative library. If the native library can't be
+ * loaded, FastMath is used instead.
  *
  * @author    Tim Heier
  * @version   1.0, 9/29/2002
@@ -27,6 +34,7 @@ import com.pb.common.util.ResourceUtil;
 public class MathUtil {
 
     private static boolean useNative = false;
+    private static boolean useFast = false;
     
     //Look for property which determines which math library to use 
     static {
@@ -34,11 +42,23 @@ public class MathUtil {
         if (value.equalsIgnoreCase("true")) {
             useNative = true;
         }
+        value = ResourceUtil.checkSystemProperties("math.useFast", "false");
+        if (value.equalsIgnoreCase("true")) {
+            useFast = true;
+        }
         
         //This line forces the MathNative library to be loaded - serves as a check
         //that the libary can be found.
-        if (useNative)
-            new MathNative();
+        if (useNative) {
+            try {
+                new MathNative();
+            }
+            catch (LinkageError e) {
+                Logger.getLogger(MathUtil.class).warn("MathNative library could not be loaded, using FastMath: " + e);
+                useNative = false;
+                useFast = true;
+            }
+        }
     }
     
     /**
@@ -84,7 +104,9 @@ public class MathUtil {
 
     
     public static double log(double a) {
-        if (useNative == true)
+        if (useFast == true)
+            return FastMath.log(a);
+        else if (useNative == true)
             return MathNative.log(a);
         else
             return Math.log(a);
@@ -92,14 +114,19 @@ public class MathUtil {
     
     
     public static double exp(double a) {
-        if (useNative == true)
+        if (useFast == true)
+            return FastMath.exp(a);
+        else if (useNative == true)
             return MathNative.exp(a);
         else
             return Math.exp(a);
     }
     
     public static void expArray(double[] arg, double[] result) {
-        if (useNative == true) {
+        if (useFast == true) {
+            FastMath.expArray( arg, result );
+        }
+        else if (useNative == true) {
             MathNative.expArray( arg, result );
         }
         else {
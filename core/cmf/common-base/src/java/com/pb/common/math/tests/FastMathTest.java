@@ -0,0 +1,186 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.math.tests;
+
+import java.util.Random;
+
+import com.pb.common.math.FastMath;
+
+
+/** This class tests the accuracy of FastMath against StrictMath.
+ *
+ * @version   1.0, 10/17/2026
+ */
+
+public class FastMathTest {
+
+    public static int SAMPLE_SIZE = 5000000;
+
+    // documented error bounds, in ulp
+    public static long EXP_MAX_ULP = 2;
+    public static long LOG_MAX_ULP = 1;
+
+    private Random random = new Random(17);
+    private int failures = 0;
+
+
+    public FastMathTest() {
+    }
+
+
+    public static void main(String[] args) {
+
+        System.out.println("\nstarting tests.\n");
+
+        FastMathTest test = new FastMathTest();
+
+        test.testExp();
+        test.testLog();
+        test.testSpecialValues();
+        test.testArrays();
+
+        System.out.println("\nfinished tests, " + test.failures + " failures.");
+        if (test.failures > 0)
+            System.exit(1);
+    }
+
+
+    public void testExp() {
+
+        // utilities are mostly in this range
+        checkExp(-50, 50);
+        checkExp(-1, 1);
+        // the full range, including subnormal results and overflow
+        checkExp(-760, 720);
+    }
+
+
+    public void testLog() {
+
+        checkLog(0, 2);
+        checkLog(0.999, 1.001);
+        checkLog(0, 1.0e6);
+        checkLog(0, Double.MIN_NORMAL);
+
+        long maxUlp = 0;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            double x = Double.longBitsToDouble(random.nextLong() & 0x7fefffffffffffffL);
+            maxUlp = Math.max(maxUlp, ulps(FastMath.log(x), StrictMath.log(x)));
+        }
+        report("log, all positive doubles", maxUlp, LOG_MAX_ULP);
+    }
+
+
+    public void testSpecialValues() {
+
+        check("exp(NaN)", FastMath.exp(Double.NaN), Double.NaN);
+        check("exp(+inf)", FastMath.exp(Double.POSITIVE_INFINITY), Double.POSITIVE_INFINITY);
+        check("exp(-inf)", FastMath.exp(Double.NEGATIVE_INFINITY), 0.0);
+        check("exp(0)", FastMath.exp(0.0), 1.0);
+        check("exp(-999)", FastMath.exp(-999), 0.0);
+        check("exp(710)", FastMath.exp(710), Double.POSITIVE_INFINITY);
+
+        check("log(NaN)", FastMath.log(Double.NaN), Double.NaN);
+        check("log(-1)", FastMath.log(-1), Double.NaN);
+        check("log(0)", FastMath.log(0.0), Double.NEGATIVE_INFINITY);
+        check("log(-0)", FastMath.log(-0.0), Double.NEGATIVE_INFINITY);
+        check("log(1)", FastMath.log(1.0), 0.0);
+        check("log(+inf)", FastMath.log(Double.POSITIVE_INFINITY), Double.POSITIVE_INFINITY);
+        check("log(MIN_VALUE)", FastMath.log(Double.MIN_VALUE), StrictMath.log(Double.MIN_VALUE));
+    }
+
+
+    public void testArrays() {
+
+        double[] utilities = new double[1000];
+        for (int i = 0; i < utilities.length; i++)
+            utilities[i] = random.nextDouble() * 40 - 30;
+
+        double[] expUtilities = new double[utilities.length];
+        FastMath.expArray(utilities, 100, 900, expUtilities);
+
+        long maxUlp = 0;
+        double sum = 0;
+        for (int i = 100; i < 900; i++) {
+            maxUlp = Math.max(maxUlp, ulps(expUtilities[i], StrictMath.exp(utilities[i])));
+            sum += StrictMath.exp(utilities[i]);
+        }
+        report("expArray", maxUlp, EXP_MAX_ULP);
+        check("expArray outside the range", expUtilities[0] + expUtilities[999], 0.0);
+
+        double logsum = FastMath.logSumExp(utilities, 100, 900);
+        double relativeError = Math.abs(logsum - StrictMath.log(sum)) / Math.abs(StrictMath.log(sum));
+        System.out.println(String.format("logSumExp relative error = %.3e", relativeError));
+        if (relativeError > 1.0e-14)
+            failures++;
+
+        // a sum that would overflow exp()
+        double[] large = { 800, 801, 799 };
+        double expected = 801 + StrictMath.log(StrictMath.exp(-1) + 1 + StrictMath.exp(-2));
+        System.out.println(String.format("logSumExp(800, 801, 799) = %.15f, expected %.15f", FastMath.logSumExp(large, 0, 3), expected));
+        if (Math.abs(FastMath.logSumExp(large, 0, 3) - expected) > 1.0e-12)
+            failures++;
+
+        check("logSumExp of empty range", FastMath.logSumExp(large, 1, 1), Double.NEGATIVE_INFINITY);
+    }
+
+
+    private void checkExp(double min, double max) {
+        long maxUlp = 0;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            double x = min + random.nextDouble() * (max - min);
+            maxUlp = Math.max(maxUlp, ulps(FastMath.exp(x), StrictMath.exp(x)));
+        }
+        report("exp, " + min + " to " + max, maxUlp, EXP_MAX_ULP);
+    }
+
+
+    private void checkLog(double min, double max) {
+        long maxUlp = 0;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            double x = min + random.nextDouble() * (max - min);
+            maxUlp = Math.max(maxUlp, ulps(FastMath.log(x), StrictMath.log(x)));
+        }
+        report("log, " + min + " to " + max, maxUlp, LOG_MAX_ULP);
+    }
+
+
+    /**
+     * Distance between two finite doubles of the same sign in units in the last place.
+     */
+    private static long ulps(double a, double b) {
+        if (a == b)
+            return 0;
+        return Math.abs(Double.doubleToLongBits(a) - Double.doubleToLongBits(b));
+    }
+
+
+    private void report(String label, long maxUlp, long bound) {
+        System.out.println(String.format("%-40s max error = %d ulp (bound %d)", label, maxUlp, bound));
+        if (maxUlp > bound)
+            failures++;
+    }
+
+
+    private void check(String label, double actual, double expected) {
+        boolean ok = Double.isNaN(expected) ? Double.isNaN(actual) : actual == expected;
+        System.out.println(String.format("%-40s %s", label + " = " + actual, ok ? "ok" : "expected " + expected));
+        if (!ok)
+            failures++;
+    }
+
+}
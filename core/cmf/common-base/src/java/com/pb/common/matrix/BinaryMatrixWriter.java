@@ -115,11 +115,12 @@ public class BinaryMatrixWriter extends MatrixWriter {
             ByteArrayOutputStream baos = new ByteArrayOutputStream( m.nCols * WORDSIZE );
             DataOutputStream dout = new DataOutputStream(baos);
 
+            float[][] values = m.getValues();
             for (int row=0; row < m.nRows; row++) {
 
                 //Write contents of a row to the byte array.
                 for(int col=0; col < m.nCols; col++) {
-                    dout.writeFloat(m.values[row][col]);
+                    dout.writeFloat(values[row][col]);
                 }
                 dout.flush();
 
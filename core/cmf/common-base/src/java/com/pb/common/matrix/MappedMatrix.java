@@ -0,0 +1,451 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.matrix;
+
+import java.io.File;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.FloatBuffer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A read-only matrix whose values live in a memory mapped file written by
+ * MappedMatrixWriter. Cell and row access reads directly from the mapping.
+ * Methods that need the whole matrix as a float[][] (getValues(), arithmetic
+ * operations, statistics reports) work on a heap copy, so they should be avoided
+ * for large skims. Every method that changes values throws an
+ * UnsupportedOperationException.
+ *
+ * When serialized, only the file name and core name are written. The receiving
+ * JVM maps the same file again, so a MappedMatrix can be passed through the
+ * matrix server without copying the values.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class MappedMatrix extends Matrix {
+
+    static Logger logger = Logger.getLogger("com.pb.common.matrix");
+
+    private transient FloatBuffer[] segments;
+    private transient int segmentShift;
+    private transient int segmentMask;
+
+    private File file;
+    private String coreName;
+
+
+    MappedMatrix(File file, String coreName, int nRows, int nCols, int[] externalRowNumbers, int[] externalColumnNumbers,
+            FloatBuffer[] segments, int segmentShift) {
+        this.file = file;
+        this.coreName = coreName;
+        this.name = coreName;
+        this.nRows = nRows;
+        this.nCols = nCols;
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+
+        setExternalNumbers(externalRowNumbers, externalColumnNumbers);
+    }
+
+
+    /**
+     * Return the value at an internal (0-based) row and column position.
+     */
+    private float value(int r, int c) {
+        return segments[r >>> segmentShift].get( (r & segmentMask) * nCols + c );
+    }
+
+    private void readRow(int r, float[] rowBuffer) {
+        FloatBuffer view = segments[r >>> segmentShift].duplicate();
+        view.position( (r & segmentMask) * nCols );
+        view.get(rowBuffer, 0, nCols);
+    }
+
+    private int checkRow(int row) {
+        int r = getInternalRowNumber(row);
+        if ((r < 0) || (r >= nRows)) {
+            throw new MatrixException(MatrixException.INVALID_INDEX +", "+r);
+        }
+        return r;
+    }
+
+    private int checkColumn(int col) {
+        int c = getInternalColumnNumber(col);
+        if ((c < 0) || (c >= nCols)) {
+            throw new MatrixException(MatrixException.INVALID_INDEX +", "+c);
+        }
+        return c;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Copy the mapped values into a regular heap based Matrix.
+     */
+    public Matrix toMatrix() {
+        Matrix m = new Matrix(name, description, copyValues2D());
+        m.setExternalNumbers(externalRowNumbers, externalColumnNumbers);
+        return m;
+    }
+
+    //------------------------ Getters ------------------------
+
+    @Override
+    public float getValueAt(int itaz, int jtaz) throws MatrixException {
+        int r = getInternalRowNumber(itaz);
+        int c = getInternalColumnNumber(jtaz);
+
+        if ((r < 0) || (r >= nRows) || (c < 0) || (c >= nCols)) {
+            throw new MatrixException(MatrixException.INVALID_INDEX +" itaz="+itaz+",row="+r+
+                    ";  jtaz="+jtaz+", col="+c);
+        }
+
+        return value(r, c);
+    }
+
+    @Override
+    public RowVector getRow(int row) throws MatrixException {
+        int r = checkRow(row);
+        RowVector rv = new RowVector(nCols);
+        readRow(r, rv.values[0]);
+        return rv;
+    }
+
+    @Override
+    public void getRow(int row, float[] rowBuffer) throws MatrixException {
+        int r = checkRow(row);
+        if (rowBuffer.length != nCols) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        readRow(r, rowBuffer);
+    }
+
+    @Override
+    public float getRowSum(int row) throws MatrixException {
+        int r = checkRow(row);
+        double sum = 0.0;
+        for (int c = 0; c < nCols; ++c) {
+            sum += value(r, c);
+        }
+        return (float) sum;
+    }
+
+    @Override
+    public ColumnVector getRowTotals() {
+        ColumnVector cv = new ColumnVector(nRows);
+        for (int r = 0; r < nRows; ++r) {
+            float sum = 0;
+            for (int c = 0; c < nCols; ++c) {
+                sum += value(r, c);
+            }
+            cv.values[r][0] = sum;
+        }
+        cv.setExternalNumbers(externalRowNumbers);
+        return cv;
+    }
+
+    @Override
+    public void getRowTotals(double[] rowTotals) throws MatrixException {
+        if (rowTotals.length != nRows) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        for (int r = 0; r < nRows; ++r) {
+            double sum = 0;
+            for (int c = 0; c < nCols; ++c) {
+                sum += value(r, c);
+            }
+            rowTotals[r] = sum;
+        }
+    }
+
+    @Override
+    public ColumnVector getColumn(int col) throws MatrixException {
+        int c = checkColumn(col);
+        ColumnVector cv = new ColumnVector(nRows);
+        for (int r = 0; r < nRows; ++r) {
+            cv.values[r][0] = value(r, c);
+        }
+        return cv;
+    }
+
+    @Override
+    public void getColumn(int col, float[] colBuffer) throws MatrixException {
+        int c = checkColumn(col);
+        if (colBuffer.length != nRows) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        for (int r = 0; r < nRows; ++r) {
+            colBuffer[r] = value(r, c);
+        }
+    }
+
+    @Override
+    public float getColumnMin(int col) throws MatrixException {
+        int c = checkColumn(col);
+        float min = Float.MAX_VALUE;
+        for (int r = 0; r < nRows; ++r) {
+            min = Math.min(min, value(r, c));
+        }
+        return min;
+    }
+
+    @Override
+    public float getColumnSum(int col) throws MatrixException {
+        int c = checkColumn(col);
+        double sum = 0.0;
+        for (int r = 0; r < nRows; ++r) {
+            sum += value(r, c);
+        }
+        return (float) sum;
+    }
+
+    @Override
+    public RowVector getColumnTotals() {
+        RowVector rv = new RowVector(nCols);
+        for (int r = 0; r < nRows; ++r) {
+            for (int c = 0; c < nCols; ++c) {
+                rv.values[0][c] += value(r, c);
+            }
+        }
+        rv.setExternalNumbers(externalColumnNumbers);
+        return rv;
+    }
+
+    @Override
+    public void getColumnTotals(double[] columnTotals) throws MatrixException {
+        if (columnTotals.length != nCols) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        java.util.Arrays.fill(columnTotals, 0.0);
+        for (int r = 0; r < nRows; ++r) {
+            for (int c = 0; c < nCols; ++c) {
+                columnTotals[c] += value(r, c);
+            }
+        }
+    }
+
+    /**
+     * Returns a heap copy of the values. The copy is not cached, so changes to
+     * the returned array are not reflected in this matrix.
+     */
+    @Override
+    public float[][] getValues() {
+        logger.warn("getValues() called on memory mapped matrix " + name + ", values are copied to the heap");
+        return copyValues2D();
+    }
+
+    @Override
+    public float[][] copyValues2D() {
+        float v[][] = new float[nRows][nCols];
+        for (int r = 0; r < nRows; ++r) {
+            readRow(r, v[r]);
+        }
+        return v;
+    }
+
+    @Override
+    public double getSum() {
+        double sum = 0.0;
+        for (int r = 0; r < nRows; ++r) {
+            for (int c = 0; c < nCols; ++c) {
+                sum += value(r, c);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public float getMax() {
+        float max = value(0, 0);
+        for (int r = 0; r < nRows; r++) {
+            for (int c = 0; c < nCols; c++) {
+                max = Math.max(max, value(r, c));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public float getMin() {
+        float min = value(0, 0);
+        for (int r = 0; r < nRows; r++) {
+            for (int c = 0; c < nCols; c++) {
+                min = Math.min(min, value(r, c));
+            }
+        }
+        return min;
+    }
+
+    @Override
+    public int getZeroCount() {
+        int nZeros = 0;
+        for (int r = 0; r < nRows; r++) {
+            for (int c = 0; c < nCols; c++) {
+                if (value(r, c) == 0.0f)
+                    nZeros++;
+            }
+        }
+        return nZeros;
+    }
+
+    @Override
+    public Matrix getTranspose() {
+        return toMatrix().getTranspose();
+    }
+
+    @Override
+    public Matrix add(Matrix m) throws MatrixException {
+        return toMatrix().add(m);
+    }
+
+    @Override
+    public Matrix subtract(Matrix m) throws MatrixException {
+        return toMatrix().subtract(m);
+    }
+
+    @Override
+    public Matrix multiply(float k) {
+        return toMatrix().multiply(k);
+    }
+
+    @Override
+    public Matrix multiply(Matrix m) throws MatrixException {
+        return toMatrix().multiply(m);
+    }
+
+    @Override
+    public ColumnVector multiply(ColumnVector cv) throws MatrixException {
+        return toMatrix().multiply(cv);
+    }
+
+    @Override
+    public RowVector multiply(RowVector rv) throws MatrixException {
+        return toMatrix().multiply(rv);
+    }
+
+    @Override
+    public Object clone() {
+        return toMatrix();
+    }
+
+    @Override
+    public void logMatrixStats() {
+        toMatrix().logMatrixStats();
+    }
+
+    @Override
+    public void logMatrixStatsToInfo() {
+        toMatrix().logMatrixStatsToInfo();
+    }
+
+    @Override
+    public void logMatrixStatsToInfo( Logger myLogger ) {
+        toMatrix().logMatrixStatsToInfo(myLogger);
+    }
+
+    @Override
+    public void logMatrixStatsToConsole() {
+        toMatrix().logMatrixStatsToConsole();
+    }
+
+    //------------------------ Setters ------------------------
+
+    @Override
+    public void setValueAt(int itaz, int jtaz, float value) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void setDoubleValueAt(int itaz, int jtaz, double value, float negativeInfinityValue, float positiveInfinityValue) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void addToValueAt(int itaz, int jtaz, float additionalValue) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    protected void setValues(float values[][]) {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void setRow(RowVector rv, int row) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void setRow(float[] rowValues, int row) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void setColumn(ColumnVector cv, int col) throws MatrixException {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void fill(float value) {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void scale(float value) {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    @Override
+    public void setIntrazonalToHalfNearestNeighbor() {
+        throw new UnsupportedOperationException("memory mapped matrix " + name + " is read only");
+    }
+
+    //------------------------ Serialization ------------------------
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new MappedMatrixReference(file, coreName, name);
+    }
+
+    /**
+     * Serialized form of a MappedMatrix - the matrix is mapped again when it is read.
+     */
+    private static class MappedMatrixReference implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private File file;
+        private String coreName;
+        private String name;
+
+        MappedMatrixReference(File file, String coreName, String name) {
+            this.file = file;
+            this.coreName = coreName;
+            this.name = name;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            Matrix m = new MappedMatrixReader(file).readMatrix(coreName);
+            m.setName(name);
+            return m;
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.matrix;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Implements a MatrixReader for files written by MappedMatrixWriter. The matrix
+ * values are not read into the heap. Each core is memory mapped and returned as a
+ * read-only MappedMatrix, so every JVM on a machine shares the same pages in the
+ * operating system file cache.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class MappedMatrixReader extends MatrixReader {
+
+    static Logger logger = Logger.getLogger("com.pb.common.matrix");
+
+    //Largest number of bytes mapped in one buffer
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    //Store header values
+    private int nRows;
+    private int nCols;
+    private String[] coreNames;
+    private long[] coreOffsets;
+    private int[] externalRowNumbers;
+    private int[] externalColumnNumbers;
+
+    /**
+     * @param file represents the physical matrix file
+     */
+    public MappedMatrixReader(File file) {
+        this.file = file;
+        readHeader();
+    }
+
+    public Matrix readMatrix() throws MatrixException {
+        return readCore(0);
+    }
+
+    /**
+     * @param name name of the core, or the 1-based core number
+     */
+    public Matrix readMatrix(String name) throws MatrixException {
+        for (int i=0; i < coreNames.length; i++) {
+            if (coreNames[i].equalsIgnoreCase(name))
+                return readCore(i);
+        }
+
+        try {
+            int core = Integer.parseInt(name);
+            if (core >= 1 && core <= coreNames.length)
+                return readCore(core-1);
+        }
+        catch (NumberFormatException e) {
+            //fall through
+        }
+
+        throw new MatrixException(MatrixException.INVALID_TABLE_NAME + ", " + name + " in " + file);
+    }
+
+    public Matrix[] readMatrices() throws MatrixException {
+        Matrix[] m = new Matrix[coreNames.length];
+        for (int i=0; i < coreNames.length; i++)
+            m[i] = readCore(i);
+        return m;
+    }
+
+    public String[] getMatrixNames() {
+        return coreNames.clone();
+    }
+
+
+    private void readHeader() {
+
+        RandomAccessFile randFile = null;
+        try {
+            randFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randFile.getChannel();
+
+            ByteBuffer fixed = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, fixed, 0);
+
+            int magic = fixed.getInt();
+            int version = fixed.getInt();
+            if (magic != MappedMatrixWriter.MAGIC || version != MappedMatrixWriter.VERSION)
+                throw new MatrixException(MatrixException.INVALID_FORMAT + ", " + file);
+
+            nRows = fixed.getInt();
+            nCols = fixed.getInt();
+            int nCores = fixed.getInt();
+
+            //The header is always smaller than the start of the first core, which is
+            //aligned, so read the external numbers and core table in one pass
+            long maxHeader = 20 + (long)(nRows + nCols)*4 + nCores*(2 + 65535 + 8);
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(maxHeader, channel.size() - 20)).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 20);
+
+            //External numbering starts in element [1]
+            externalRowNumbers = new int[nRows+1];
+            for (int r=1; r <= nRows; r++)
+                externalRowNumbers[r] = header.getInt();
+            externalColumnNumbers = new int[nCols+1];
+            for (int c=1; c <= nCols; c++)
+                externalColumnNumbers[c] = header.getInt();
+
+            coreNames = new String[nCores];
+            coreOffsets = new long[nCores];
+            for (int i=0; i < nCores; i++) {
+                byte[] nameBytes = new byte[header.getShort() & 0xFFFF];
+                header.get(nameBytes);
+                coreNames[i] = new String(nameBytes, MappedMatrixWriter.UTF8);
+                coreOffsets[i] = header.getLong();
+            }
+        }
+        catch (MatrixException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new MatrixException(e, MatrixException.ERROR_READING_FILE + ", " + file);
+        }
+        finally {
+            close(randFile);
+        }
+    }
+
+
+    /**
+     * Map a core. Cores larger than 2GB are mapped in several segments, each
+     * holding a power of 2 number of rows.
+     */
+    private Matrix readCore(int core) {
+
+        long rowBytes = (long) nCols * MappedMatrixWriter.WORDSIZE;
+        int segmentShift = 0;
+        while ( segmentShift < 30 && ((2L << segmentShift) * rowBytes) <= MAX_SEGMENT_BYTES && (1 << segmentShift) < nRows )
+            segmentShift++;
+        int rowsPerSegment = 1 << segmentShift;
+        int nSegments = (nRows + rowsPerSegment - 1) / rowsPerSegment;
+
+        FloatBuffer[] segments = new FloatBuffer[nSegments];
+
+        long startTime = System.currentTimeMillis();
+        RandomAccessFile randFile = null;
+        try {
+            randFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randFile.getChannel();
+
+            for (int s=0; s < nSegments; s++) {
+                int rows = Math.min(rowsPerSegment, nRows - s*rowsPerSegment);
+                long offset = coreOffsets[core] + s * rowsPerSegment * rowBytes;
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, rows * rowBytes);
+                segments[s] = bytes.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        }
+        catch (Exception e) {
+            throw new MatrixException(e, MatrixException.ERROR_READING_FILE + ", " + file);
+        }
+        finally {
+            //Mappings stay valid after the channel is closed
+            close(randFile);
+        }
+
+        logger.debug("mapped " + coreNames[core] + " from " + file + " in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        return new MappedMatrix(file, coreNames[core], nRows, nCols, externalRowNumbers, externalColumnNumbers, segments, segmentShift);
+    }
+
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws java.io.IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                break;
+            position += n;
+        }
+        buffer.flip();
+    }
+
+
+    private void close(RandomAccessFile randFile) {
+        try {
+            if (randFile != null)
+                randFile.close();
+        }
+        catch (Exception e) {
+            logger.error("could not close " + file, e);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.matrix;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Implements a MatrixWriter to write a set of matrices (cores) with the same
+ * dimensions to a single file that can be memory mapped by MappedMatrixReader.
+ *
+ * File layout, all values little endian:
+ * <pre>
+ *   int     MAGIC
+ *   int     VERSION
+ *   int     nRows, nCols, nCores
+ *   int[]   external row numbers (nRows values)
+ *   int[]   external column numbers (nCols values)
+ *   for each core: short name length, name bytes (UTF-8), long data offset
+ *   padding to a multiple of ALIGNMENT bytes
+ *   float[] core data, row major, one contiguous block of nRows*nCols values per core
+ * </pre>
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class MappedMatrixWriter extends MatrixWriter {
+
+    public static final int MAGIC     = 0x584D4250;    // "PBMX"
+    public static final int VERSION   = 1;
+    public static final int WORDSIZE  = 4;
+    public static final int ALIGNMENT = 4096;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @param file represents the physical matrix file
+     */
+    public MappedMatrixWriter(File file) {
+        this.file = file;
+    }
+
+    public void writeMatrix(Matrix m) throws MatrixException {
+        writeMatrix(m.getName(), m);
+    }
+
+    public void writeMatrix(String name, Matrix m) throws MatrixException {
+        writeMatrices(new String[] { name }, new Matrix[] { m });
+    }
+
+    /**
+     * Writes all matrices to a single file. Null elements in the matrix array are
+     * skipped (TpplusMatrixReader64.readMatrices() returns a trailing null).
+     */
+    public void writeMatrices(String[] names, Matrix[] m) throws MatrixException {
+
+        int nCores = 0;
+        for (int i=0; i < m.length; i++) {
+            if (m[i] != null)
+                nCores++;
+        }
+        if (nCores == 0)
+            throw new MatrixException("no matrices to write to " + file);
+
+        Matrix[] cores = new Matrix[nCores];
+        byte[][] coreNames = new byte[nCores][];
+        int k = 0;
+        for (int i=0; i < m.length; i++) {
+            if (m[i] == null)
+                continue;
+            cores[k] = m[i];
+            String name = (names != null && i < names.length && names[i] != null) ? names[i] : m[i].getName();
+            coreNames[k] = name.getBytes(UTF8);
+            k++;
+        }
+
+        int nRows = cores[0].getRowCount();
+        int nCols = cores[0].getColumnCount();
+        for (int i=1; i < nCores; i++) {
+            if (cores[i].getRowCount() != nRows || cores[i].getColumnCount() != nCols)
+                throw new MatrixException(MatrixException.INVALID_DIMENSIONS + ", all matrices in " + file + " must be " + nRows + " x " + nCols);
+        }
+
+        //Compute the header size so the data offsets can be written in the header
+        long headerSize = 5*4 + (long)(nRows + nCols)*4;
+        for (int i=0; i < nCores; i++)
+            headerSize += 2 + coreNames[i].length + 8;
+        long dataStart = ((headerSize + ALIGNMENT - 1) / ALIGNMENT) * ALIGNMENT;
+        long coreSize = (long) nRows * nCols * WORDSIZE;
+
+        RandomAccessFile randFile = null;
+        try {
+            randFile = new RandomAccessFile(file, "rw");
+            randFile.setLength(0L);
+            FileChannel channel = randFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate((int) dataStart).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(nRows);
+            header.putInt(nCols);
+            header.putInt(nCores);
+            for (int r=0; r < nRows; r++)
+                header.putInt(cores[0].getExternalRowNumber(r));
+            for (int c=0; c < nCols; c++)
+                header.putInt(cores[0].getExternalColumnNumber(c));
+            for (int i=0; i < nCores; i++) {
+                header.putShort((short) coreNames[i].length);
+                header.put(coreNames[i]);
+                header.putLong(dataStart + i*coreSize);
+            }
+            header.position(0);
+            while (header.hasRemaining())
+                channel.write(header);
+
+            //Write each core one row at a time
+            float[] rowBuffer = new float[nCols];
+            ByteBuffer rowBytes = ByteBuffer.allocateDirect(nCols*WORDSIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i=0; i < nCores; i++) {
+                for (int r=0; r < nRows; r++) {
+                    cores[i].getRow(cores[i].getExternalRowNumber(r), rowBuffer);
+                    rowBytes.clear();
+                    rowBytes.asFloatBuffer().put(rowBuffer);
+                    rowBytes.limit(nCols*WORDSIZE);
+                    while (rowBytes.hasRemaining())
+                        channel.write(rowBytes);
+                }
+            }
+
+            channel.force(false);
+        }
+        catch (MatrixException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new MatrixException(e, MatrixException.ERROR_WRITING_FILE + ", " + file);
+        }
+        finally {
+            try {
+                if (randFile != null)
+                    randFile.close();
+            }
+            catch (Exception e) {
+                throw new MatrixException(e, MatrixException.ERROR_WRITING_FILE + ", " + file);
+            }
+        }
+    }
+
+}
@@ -11,12 +11,25 @@ public class MatrixConverter {
     public static void main(String[] args) {
         if (args.length!=4) {
             System.out.println("usage: MatrixConverter fileIn, typeIn, fileOut, typeOut");
-            System.out.println("Current valid types are Binary, ZIP, CSV, Emme2, D311, TPPlus, Transcad");
+            System.out.println("Current valid types are Binary, ZIP, CSV, Emme2, D311, TPPlus, Transcad, OMX, Mapped");
+            System.out.println("All tables in fileIn are written when typeOut is Mapped");
         }
         MatrixReader reader = MatrixReader.createReader(args[1], new File(args[0]));
-        Matrix m = reader.readMatrix();
         MatrixWriter writer = MatrixWriter.createWriter(args[3], new File(args[2]));
-        writer.writeMatrix(m);
+
+        if (writer instanceof MappedMatrixWriter) {
+            Matrix[] m = reader.readMatrices();
+            String[] names = new String[m.length];
+            for (int i=0; i < m.length; i++) {
+                if (m[i] != null)
+                    names[i] = m[i].getName();
+            }
+            writer.writeMatrices(names, m);
+        }
+        else {
+            Matrix m = reader.readMatrix();
+            writer.writeMatrix(m);
+        }
 
     }
 
@@ -84,6 +84,9 @@ public abstract class MatrixReader {
         else if  (type.equals(MatrixType.OMX)) {
             reader = new OMXMatrixReader( file );
         }
+        else if  (type.equals(MatrixType.MAPPED)) {
+            reader = new MappedMatrixReader( file );
+        }
         else {
             throw new MatrixException(MatrixException.INVALID_TYPE+", "+ type);
         }
@@ -136,6 +139,9 @@ public abstract class MatrixReader {
         } else if (type.equals(MatrixType.OMX)) {
             MatrixReader mr = MatrixReader.createReader(MatrixType.OMX, file);
             matrix = mr.readMatrix(matrixName);
+        } else if (type.equals(MatrixType.MAPPED)) {
+            MatrixReader mr = MatrixReader.createReader(MatrixType.MAPPED, file);
+            matrix = mr.readMatrix(matrixName);
         } else {
             throw new RuntimeException("Unsupported matrix type: " + type);
         }
@@ -189,6 +195,9 @@ public abstract class MatrixReader {
         else if (fileName.indexOf(".omx") > 0 || fileName.indexOf(".OMX") > 0) {
             type = MatrixType.OMX;
         }
+        else if (fileName.indexOf(".mmx") > 0 || fileName.indexOf(".MMX") > 0) {
+            type = MatrixType.MAPPED;
+        }
         else {
             throw new RuntimeException("Could not determine type of matrix file, " + file.getAbsolutePath());
         }
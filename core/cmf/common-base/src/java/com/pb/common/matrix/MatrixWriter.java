@@ -91,6 +91,10 @@ public abstract class MatrixWriter {
                 writer = new OMXMatrixWriter( file );
         }
         else
+        if  (type.equals(MatrixType.MAPPED)) {
+                writer = new MappedMatrixWriter( file );
+        }
+        else
         if (type.equals(MatrixType.CSV)) {
             writer = new CSVMatrixWriter( file );
         }
@@ -97,6 +97,7 @@ public class ZipMatrixWriter extends MatrixWriter {
 
         //Write data
         try {
+            float[][] values = m.getValues();
             for (int row=0; row < m.nRows; row++) {
                 String rowName = "row_" + (row+1);
 
@@ -109,7 +110,7 @@ public class ZipMatrixWriter extends MatrixWriter {
 
                 //Write contents of a row to the byte array.
                 for(int col=0; col < m.nCols; col++) {
-                    dout.writeFloat(m.values[row][col]);
+                    dout.writeFloat(values[row][col]);
                 }
                 dout.close();
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.matrix.tests;
+
+import com.pb.common.matrix.Matrix;
+import com.pb.common.matrix.MatrixReader;
+import com.pb.common.matrix.MatrixType;
+import com.pb.common.matrix.MatrixWriter;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Tests the MappedMatrixWriter and MappedMatrixReader classes. Both test
+ * matrices from TestZipMatrix are written, mapped back in and compared cell by
+ * cell, then a mapped matrix is serialized and compared again.
+ *
+ * @version   1.0, 10/17/2026
+ */
+public class TestMappedMatrix {
+    static Logger logger = Logger.getLogger("com.pb.common.matrix.tests");
+
+    public static final String matrix1FileName = "testmatrix1.mmx";
+    public static final String matrix2FileName = "testmatrix2.mmx";
+
+    public static void main(String[] args) throws Exception {
+
+        int failures = 0;
+
+        Matrix m1 = TestZipMatrix.createMatrix1();
+        Matrix m2 = TestZipMatrix.createMatrix2();
+
+        //Two cores with the same dimensions in one file
+        Matrix m1b = m1.multiply(2.0f);
+        m1b.setName("doubled");
+        MatrixWriter mw = MatrixWriter.createWriter(MatrixType.MAPPED, new File(matrix1FileName));
+        mw.writeMatrices(new String[] { "m1", "doubled" }, new Matrix[] { m1, m1b });
+
+        MatrixWriter.createWriter(MatrixType.MAPPED, new File(matrix2FileName)).writeMatrix("m2", m2);
+
+        MatrixReader mr = MatrixReader.createReader(MatrixType.MAPPED, new File(matrix1FileName));
+        failures += compare(m1, mr.readMatrix("m1"));
+        failures += compare(m1b, mr.readMatrix("DOUBLED"));
+        failures += compare(m1b, mr.readMatrix("2"));
+
+        Matrix mapped2 = MatrixReader.readMatrix(new File(matrix2FileName), "m2");
+        failures += compare(m2, mapped2);
+
+        //Serialized form only holds the file and core name
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(mapped2);
+        out.close();
+        logger.info("serialized mapped matrix size = " + bytes.size() + " bytes");
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        failures += compare(m2, (Matrix) in.readObject());
+        in.close();
+
+        try {
+            mapped2.setValueAt(4, 3, 1.0f);
+            logger.error("setValueAt() did not fail on a mapped matrix");
+            failures++;
+        }
+        catch (UnsupportedOperationException e) {
+            logger.info("setValueAt() on mapped matrix failed as expected");
+        }
+
+        try {
+            mapped2.setIntrazonalToHalfNearestNeighbor();
+            logger.error("setIntrazonalToHalfNearestNeighbor() did not fail on a mapped matrix");
+            failures++;
+        }
+        catch (UnsupportedOperationException e) {
+            logger.info("setIntrazonalToHalfNearestNeighbor() on mapped matrix failed as expected");
+        }
+
+        //Methods of Matrix that read the values array of this or another matrix
+        mapped2.logMatrixStatsToInfo();
+        mapped2.logMatrixStatsToConsole();
+        failures += compare(m2.multiply(2.0f), m2.add(mapped2));
+        failures += compare(m2.multiply(0.0f), m2.subtract(mapped2));
+
+        File binaryFile = new File("testmatrix2.binary");
+        MatrixWriter.createWriter(MatrixType.BINARY, binaryFile).writeMatrix(mapped2);
+        failures += compare(m2, MatrixReader.readMatrix(binaryFile, "m2"));
+        binaryFile.delete();
+
+        logger.info("failures = " + failures);
+    }
+
+    private static int compare(Matrix expected, Matrix actual) {
+        int failures = 0;
+        int[] rows = expected.getExternalRowNumbers();
+        int[] cols = expected.getExternalColumnNumbers();
+        for (int i=1; i < rows.length; i++) {
+            for (int j=1; j < cols.length; j++) {
+                float e = expected.getValueAt(rows[i], cols[j]);
+                float a = actual.getValueAt(rows[i], cols[j]);
+                if (e != a) {
+                    logger.error(actual.getName() + " [" + rows[i] + "," + cols[j] + "] expected " + e + ", found " + a);
+                    failures++;
+                }
+            }
+        }
+        if (Math.abs(expected.getSum() - actual.getSum()) > 1.0e-4) {
+            logger.error(actual.getName() + " sum expected " + expected.getSum() + ", found " + actual.getSum());
+            failures++;
+        }
+        logger.info("compared " + actual.getName() + ", " + failures + " differences");
+        return failures;
+    }
+
+}
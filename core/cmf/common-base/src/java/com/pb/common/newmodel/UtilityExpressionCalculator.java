@@ -16,6 +16,8 @@
  */
 package com.pb.common.newmodel;
 
+import com.pb.common.calculator.CompiledExpressionTemplate;
+import com.pb.common.calculator.CompiledExpressions;
 import com.pb.common.calculator.ControlFileReader;
 import com.pb.common.calculator.DataEntry;
 import com.pb.common.calculator.Expression;
@@ -31,6 +33,7 @@ import com.pb.common.calculator.VariableTable;
 import com.pb.common.calculator.VariableType;
 import com.pb.common.datafile.OLD_CSVFileReader;
 import com.pb.common.datafile.TableDataSet;
+import com.pb.common.util.ResourceUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -41,6 +44,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -63,6 +67,19 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
     private static final String[] ALT_COLUMN_LABELS = { "a", "alt" };
     
     private static int MAX_NEGATIVE_EXPONENT = -250;
+
+    //Expressions are translated into a generated class when -Duec.compileExpressions=true.
+    //With -Duec.compileExpressions.parityCheck=true both versions are solved and compared.
+    private static boolean compileExpressions = ResourceUtil.checkSystemProperties("uec.compileExpressions", "false").equalsIgnoreCase("true");
+    private static boolean compileParityCheck = ResourceUtil.checkSystemProperties("uec.compileExpressions.parityCheck", "false").equalsIgnoreCase("true");
+
+    //Entries are solved across all available alternatives in one pass when -Duec.solveByEntry=true
+    private static boolean solveByEntryDefault = ResourceUtil.checkSystemProperties("uec.solveByEntry", "false").equalsIgnoreCase("true");
+
+    //UECs built from the same control file sheets, environment and DMU class share
+    //their parsed definition unless -Duec.shareDefinitions=false
+    private static boolean shareDefinitions = ResourceUtil.checkSystemProperties("uec.shareDefinitions", "true").equalsIgnoreCase("true");
+    private static ConcurrentHashMap<DefinitionKey, Definition> definitions = new ConcurrentHashMap<DefinitionKey, Definition>();
     
     private static int OZ_INDEX = 0;
     private static int DZ_INDEX = 1;
@@ -106,6 +123,20 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
     private double[][] altAnswers;
     private double[] results;
 
+    //Compiled versions of model expressions (0 to nModelEntries-1) and filter
+    //expressions (nModelEntries to 2*nModelEntries-1)
+    private transient CompiledExpressions compiledExpressions;
+    private boolean[] isCompiled;
+
+    //Solve by entry instead of by alternative, if the expressions allow it
+    private boolean solveByEntry = solveByEntryDefault;
+    private boolean solveByEntryAllowed;
+
+    //Alternative number of each alternative index, and the indices of the
+    //alternatives being solved by solveExpressionsByEntry()
+    private int[] alternativeNumbers;
+    private int[] availableAltIndex;
+
     //Used as global variables during parsing - this is kind of a hack
     private int currentMatrixVariable;
     private int expressionBeingParsed;
@@ -182,6 +213,41 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
             logger.debug("Data sheet: "+this.dataSheet);
         }
 
+        DefinitionKey key = shareDefinitions ? new DefinitionKey(file, modelSheet, dataSheet, env, userObject) : null;
+        Definition definition = key == null ? null : definitions.get(key);
+        if (definition != null && definition.isCurrent())
+        {
+            setDefinition(definition);
+        } else
+        {
+            int matrixClearCount = matrixDataManager.getClearCount();
+            int tableClearCount = tableDataManager.getClearCount();
+            readDefinition(env);
+            if (key != null)
+                definitions.put(key, new Definition(this, matrixClearCount, tableClearCount));
+        }
+
+        // Holds the results from expression.solve()
+        answers = new double[nModelEntries];
+        altAnswers = new double[nModelEntries][nAlternatives];
+
+        //Holds the sum of each expression*coefficient for an alternative
+        results = new double[nAlternatives];
+
+        //Holds the availabilty of each alternative - available by default
+        available = new int[nAlternatives+1];
+        Arrays.fill(available, 1);
+
+        availableAltIndex = new int[nAlternatives];
+
+    }
+
+
+    /**
+     * Read the control file and data entries, and parse the expressions.
+     */
+    private void readDefinition(HashMap<String, String> env)
+    {
         //Mark critical section of code
         if (loggerDebug)
             logger.debug("About to enter critical section for: " + file.getName());
@@ -217,6 +283,9 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         // " parseExpressions() Total Time: " + (System.currentTimeMillis()-time1) +
         // " milliseconds" );
 
+        if (compileExpressions)
+            compileExpressions();
+
         // Set number of alternatives based on alternatives in file
         ModelHeader controlFileHeader = controlFile.getHeader();
         if (controlFileHeader.isAlternativesInFile)
@@ -229,25 +298,60 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         // }
         if (loggerDebug) logger.debug("Left critical section for: " + file.getName());
 
-        // Holds the results from expression.solve()
-        answers = new double[nModelEntries];
-        altAnswers = new double[nModelEntries][nAlternatives];
-
-        //Holds the sum of each expression*coefficient for an alternative
-        results = new double[nAlternatives];
-
-        //Holds the availabilty of each alternative - available by default
-        available = new int[nAlternatives+1];
-        Arrays.fill(available, 1);
+        alternativeNumbers = new int[nAlternatives];
+        for (int a = 0; a < nAlternatives; a++)
+            alternativeNumbers[a] = isAlternativesInFile ? (int) altTableData.getIndexedValueAt(a + 1, 1) : a + 1;
 
         //Optimization for the getAlternativeNames method
         altNames = new String[alternativeNames.length];
         for(int i=0; i < alternativeNames.length; i++) {
             altNames[i]=alternativeNames[i].name;
         }
-
     }
 
+    /**
+     * Use a definition built by another UEC. The expressions are copied, so this UEC
+     * has its own solve state, and the scalar and variable lists are copied since
+     * they are appended to when a variable is looked up.
+     */
+    private void setDefinition(Definition definition)
+    {
+        modelEntries = definition.modelEntries;
+        nModelEntries = modelEntries.length;
+        nAlternatives = definition.nAlternatives;
+        alternativeNames = definition.alternativeNames;
+        alternativeTableNames = definition.alternativeTableNames;
+        altNames = definition.altNames;
+        alternativeNumbers = definition.alternativeNumbers;
+        nestedAlternatives = definition.nestedAlternatives;
+        nestingCoefficients = definition.nestingCoefficients;
+        coefficients = definition.coefficients;
+
+        modelExpressions = new Expression[nModelEntries];
+        filterExpressions = new Expression[nModelEntries];
+        for (int i = 0; i < nModelEntries; i++)
+        {
+            modelExpressions[i] = new Expression(definition.modelExpressions[i], this);
+            filterExpressions[i] = new Expression(definition.filterExpressions[i], this);
+        }
+        expressionFlags = definition.expressionFlags;
+        expressionIndex = definition.expressionIndex;
+        compiledExpressions = definition.compiledExpressions;
+        isCompiled = definition.isCompiled;
+        solveByEntryAllowed = definition.solveByEntryAllowed;
+
+        matrixIndexChangesByAlternative = definition.matrixIndexChangesByAlternative;
+        indexChangedByAlternative = definition.indexChangedByAlternative;
+
+        altTableData = definition.altTableData;
+        altColumnName = definition.altColumnName;
+        isAlternativesInFile = definition.isAlternativesInFile;
+
+        scalarIndex = new ArrayList<String>(definition.scalarIndex);
+        scalarValue = new double[scalarIndex.size()];
+        varInfo = definition.varInfo;
+        varInfoList = new ArrayList<VariableInfo>(Arrays.asList(varInfo));
+    }
 
     /**
      * @return Logger used in UEC to log detailed trace information
@@ -319,6 +423,20 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         //variables have been identified
         scalarValue = new double[scalarIndex.size()];
 
+        //Solving by entry is only the same as solving by alternative if no assignment
+        //changes by alternative, and no assignment follows an entry that changes by
+        //alternative, since that entry would otherwise see a value assigned for a
+        //different alternative, or one assigned later in the first alternative.
+        solveByEntryAllowed = true;
+        boolean changesByAlternative = false;
+        for (int i = 0; i < nModelEntries; i++) {
+            if ( (! expressionFlags[i].isModelEntry) && (changesByAlternative || expressionFlags[i].hasAlternativeVariable) ) {
+                solveByEntryAllowed = false;
+                break;
+            }
+            changesByAlternative |= expressionFlags[i].hasAlternativeVariable;
+        }
+
         //Create variableInfo array out of list.
         varInfo = varInfoList.toArray( new VariableInfo[varInfoList.size()] );
 
@@ -327,6 +445,82 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
 
     }
 
+    /**
+     * Generate a class with a straight-line method for each model and filter
+     * expression. Expressions that can't be compiled continue to be solved by
+     * the interpreter. The debug and trace solve methods always use the
+     * interpreter.
+     */
+    private void compileExpressions() {
+
+        Expression[] expressions = new Expression[2*nModelEntries];
+        for (int i=0; i < nModelEntries; i++) {
+            expressions[i] = modelExpressions[i];
+            if (expressionFlags[i].hasFilter)
+                expressions[nModelEntries + i] = filterExpressions[i];
+        }
+
+        CompiledExpressionTemplate template = new CompiledExpressionTemplate(expressions);
+        compiledExpressions = template.generateAndLoadClass();
+        isCompiled = template.getCompiledFlags();
+
+        if (loggerDebug)
+            logger.debug("CompiledExpressions source: \n" + template.getGeneratedSourceCode());
+    }
+
+
+    /**
+     * Returns the number of model and filter expressions solved by the generated
+     * class rather than the interpreter.
+     */
+    public int getNumberOfCompiledExpressions() {
+        int n = 0;
+        if (compiledExpressions != null) {
+            for (boolean compiled : isCompiled)
+                if (compiled)
+                    n++;
+        }
+        return n;
+    }
+
+
+    private double solveModelExpression(int e) {
+        if (compiledExpressions == null || ! isCompiled[e])
+            return modelExpressions[e].solve();
+
+        return solveCompiledExpression(modelExpressions[e], e);
+    }
+
+
+    private double solveFilterExpression(int e) {
+        if (compiledExpressions == null || ! isCompiled[nModelEntries + e])
+            return filterExpressions[e].solve();
+
+        return solveCompiledExpression(filterExpressions[e], nModelEntries + e);
+    }
+
+
+    private double solveCompiledExpression(Expression expression, int expressionNumber) {
+
+        if (! compileParityCheck)
+            return expression.solveCompiled(compiledExpressions, expressionNumber);
+
+        //Solve the compiled version without assignment, then let the interpreter
+        //do the assignment so scalar variables are only updated once
+        double compiledResult = compiledExpressions.solve(expressionNumber, this);
+        double interpretedResult = expression.solve();
+
+        if (Double.compare(compiledResult, interpretedResult) != 0) {
+            String msg = String.format("compiled expression result %s differs from interpreted result %s, file=%s, expression=%s",
+                    compiledResult, interpretedResult, file.getName(), expression.getExpression());
+            logger.error(msg);
+            throw new RuntimeException(msg);
+        }
+
+        return interpretedResult;
+    }
+
+
     /**
      * Log the data values for a given origin, destination, and zone.
      * 
@@ -770,25 +964,31 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         int alternativeNumber, coeffIndex;
         boolean firstAlternative = true;
 
-        for (int a = 0; a < nAlternatives; a++)
+        if (solveByEntry && solveByEntryAllowed)
         {
-
-            if (isAlternativesInFile)
-            {
-                alternativeNumber = (int) altTableData.getIndexedValueAt(a + 1, 1);
-                coeffIndex = 0;
-            } else
+            solveExpressionsByEntry();
+        } else
+        {
+            for (int a = 0; a < nAlternatives; a++)
             {
-                alternativeNumber = a + 1;
-                coeffIndex = a;
-            }
 
-            internalVariable[ALT_INDEX] = alternativeNumber;
+                if (isAlternativesInFile)
+                {
+                    alternativeNumber = (int) altTableData.getIndexedValueAt(a + 1, 1);
+                    coeffIndex = 0;
+                } else
+                {
+                    alternativeNumber = a + 1;
+                    coeffIndex = a;
+                }
 
-            if (available[alternativeNumber] <= 0) continue;
+                internalVariable[ALT_INDEX] = alternativeNumber;
 
-            solveExpressions(firstAlternative, a, coeffIndex);
-            firstAlternative = false;
+                if (available[alternativeNumber] <= 0) continue;
+
+                solveExpressions(firstAlternative, a, coeffIndex);
+                firstAlternative = false;
+            }
         }
 
         // return a copy of results array to avoid reference side effects
@@ -933,13 +1133,13 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
                 if (expressionFlags[e].hasFilter)
                 {
 
-                    filterResult = filterExpressions[e].solve();
+                    filterResult = solveFilterExpression(e);
 
                     if (filterResult > 0)
                     {
                         try
                         {
-                            answers[e] = modelExpressions[e].solve();
+                            answers[e] = solveModelExpression(e);
                         } catch (Exception ex)
                         {
                             logger.error( String.format(
@@ -959,7 +1159,7 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
                 {
                     try
                     {
-                        answers[e] = modelExpressions[e].solve();
+                        answers[e] = solveModelExpression(e);
                     } catch (Exception ex)
                     {
                         logger.error(String.format(
@@ -1003,6 +1203,104 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
 
     }
 
+    /**
+     * Solves the expressions one model entry at a time across the available
+     * alternatives, with the same results as calling solveExpressions() for each
+     * alternative: entries that don't change by alternative are solved once for
+     * the first available alternative, utilities are accumulated in entry order,
+     * and an alternative other than the first is no longer solved once its
+     * utility is below MAX_NEGATIVE_EXPONENT, its remaining answers set to NaN.
+     */
+    private void solveExpressionsByEntry()
+    {
+
+        int nSolving = 0;
+        for (int a = 0; a < nAlternatives; a++)
+        {
+            if (available[alternativeNumbers[a]] > 0)
+                availableAltIndex[nSolving++] = a;
+        }
+
+        if (nSolving > 0)
+        {
+            int firstAltIndex = availableAltIndex[0];
+
+            for (int e = 0; e < nModelEntries; e++)
+            {
+
+                boolean hasAlternativeVariable = expressionFlags[e].hasAlternativeVariable;
+                boolean isModelEntry = expressionFlags[e].isModelEntry;
+                float[] coeffs = coefficients[e];
+
+                if (!hasAlternativeVariable)
+                {
+                    internalVariable[ALT_INDEX] = alternativeNumbers[firstAltIndex];
+                    answers[e] = solveEntry(e, firstAltIndex);
+                }
+
+                int nStillSolving = 0;
+                for (int k = 0; k < nSolving; k++)
+                {
+                    int a = availableAltIndex[k];
+
+                    if (hasAlternativeVariable)
+                    {
+                        internalVariable[ALT_INDEX] = alternativeNumbers[a];
+                        answers[e] = solveEntry(e, a);
+                    }
+
+                    if (isModelEntry)
+                    {
+                        results[a] += answers[e] * coeffs[isAlternativesInFile ? 0 : a];
+                    }
+
+                    altAnswers[e][a] = answers[e];
+
+                    if (results[a] < MAX_NEGATIVE_EXPONENT && a != firstAltIndex)
+                    {
+                        for (int j = e + 1; j < nModelEntries; j++)
+                            altAnswers[j][a] = Double.NaN;
+                    } else
+                    {
+                        availableAltIndex[nStillSolving++] = a;
+                    }
+                }
+                nSolving = nStillSolving;
+            }
+        }
+
+        // leave the alternative index where the loop over alternatives leaves it
+        if (nAlternatives > 0)
+            internalVariable[ALT_INDEX] = alternativeNumbers[nAlternatives - 1];
+    }
+
+    /**
+     * Solve the filter and model expression of an entry for the current alternative.
+     */
+    private double solveEntry(int e, int altIndex)
+    {
+
+        if (expressionFlags[e].hasFilter && solveFilterExpression(e) <= 0)
+            return 0;
+
+        try
+        {
+            return solveModelExpression(e);
+        } catch (Exception ex)
+        {
+            logger.error(String.format(
+                "Exception thrown in UEC with: File=%s, ModelSheet=%d, DataSheet=%d, internalVariable=%d, %d, %d, %d, %d, %d.",
+                file, modelSheet, dataSheet, internalVariable[0],
+                internalVariable[1], internalVariable[2],
+                internalVariable[3], internalVariable[4],
+                internalVariable[5]));
+            logger.error(String.format(
+                "Exception thrown evaluating expression for: alt=%d, e=%d, expression=%s.",
+                altIndex + 1, e + 1, modelExpressions[e].getExpression()));
+            throw new RuntimeException(ex);
+        }
+    }
+
     /**
      * This version contains debugging statements that can be turned on in log configuartion
      * 
@@ -1359,6 +1657,7 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
      */
     public static void clearData()
     {
+        definitions.clear();
         TableDataSetManager.getInstance().clearData();
         MatrixDataManager.getInstance().clearData();
     }
@@ -1368,6 +1667,25 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         debugLoggerDebug = showDebugOutput;
     }
 
+    /**
+     * Solve the expressions one entry at a time across the alternatives rather than
+     * one alternative at a time. The default is set by -Duec.solveByEntry, and the
+     * UEC solves by alternative anyway if an assignment changes by alternative or
+     * follows an entry that does. Debug solves are always by alternative.
+     */
+    public void setSolveByEntry(boolean solveByEntry)
+    {
+        this.solveByEntry = solveByEntry;
+    }
+
+    /**
+     * Returns true if solve() solves the expressions one entry at a time.
+     */
+    public boolean isSolveByEntry()
+    {
+        return solveByEntry && solveByEntryAllowed;
+    }
+
     // ------------------------ Data Reading Methods ------------------------
 
     public void readData(DataEntry[] tableEntries, DataEntry[] matrixEntries)
@@ -2011,6 +2329,62 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         return coefficients;
     }
 
+    public File getFile() {
+        return file;
+    }
+
+    public int getModelSheet() {
+        return modelSheet;
+    }
+
+    /**
+     * Returns the DMU method indices of the @ variables used by the expressions,
+     * each index once, in the order the variables were parsed.
+     */
+    public int[] getObjectVariableIndices() {
+        int[] indices = new int[varInfo.length];
+        int n = 0;
+        for (VariableInfo vi : varInfo) {
+            if (vi.getType() != VariableType.OBJECT)
+                continue;
+            boolean found = false;
+            for (int i = 0; i < n && !found; i++)
+                found = indices[i] == vi.getValueIndex();
+            if (!found)
+                indices[n++] = vi.getValueIndex();
+        }
+        return Arrays.copyOf(indices, n);
+    }
+
+    /**
+     * Returns true if any variable is household data, or is indexed by the stop,
+     * zone or household index, so that the results depend on those index values
+     * as well as on the origin, destination, alternative and DMU object.
+     */
+    public boolean usesStopZoneOrHouseholdIndex() {
+        for (VariableInfo vi : varInfo) {
+            switch (vi.getType()) {
+                case VariableType.HOUSEHOLD:
+                case VariableType.ZONE:
+                    return true;
+                case VariableType.MATRIX:
+                case VariableType.MATRIX_COLLECTION:
+                    if (isStopZoneOrHouseholdIndex(vi.getOrigIndex()) || isStopZoneOrHouseholdIndex(vi.getDestIndex()))
+                        return true;
+                    break;
+                case VariableType.INTERNAL:
+                    if (isStopZoneOrHouseholdIndex(vi.getValueIndex()))
+                        return true;
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStopZoneOrHouseholdIndex(int internalIndex) {
+        return internalIndex == SZ_INDEX || internalIndex == ZONE_INDEX || internalIndex == HH_INDEX;
+    }
+
     // ------------------------ Variable Table Methods ------------------------
 
     /**
@@ -2136,6 +2510,130 @@ public class UtilityExpressionCalculator implements VariableTable, Serializable
         }
     }
 
+    /**
+     * Identifies the UECs that can share a definition: the expressions are parsed
+     * from the same sheets of the same control file with the same environment,
+     * and DMU methods are looked up by name in the same DMU class.
+     */
+    private static final class DefinitionKey
+    {
+        private final String file;
+        private final int modelSheet;
+        private final int dataSheet;
+        private final HashMap<String, String> env;
+        private final Class<?> dmuClass;
+
+        DefinitionKey(File file, int modelSheet, int dataSheet, HashMap<String, String> env, Object dmuObject)
+        {
+            this.file = file.getAbsolutePath();
+            this.modelSheet = modelSheet;
+            this.dataSheet = dataSheet;
+            this.env = env == null ? new HashMap<String, String>() : new HashMap<String, String>(env);
+            this.dmuClass = dmuObject == null ? null : dmuObject.getClass();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof DefinitionKey))
+                return false;
+            DefinitionKey k = (DefinitionKey) o;
+            return file.equals(k.file) && modelSheet == k.modelSheet && dataSheet == k.dataSheet
+                    && dmuClass == k.dmuClass && env.equals(k.env);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (file.hashCode() * 31 + modelSheet) * 31 + dataSheet;
+        }
+    }
+
+    /**
+     * The parts of a UEC that don't change after its expressions are parsed, which
+     * UECs built from the same control file sheets can share. The variable indices
+     * in the parsed expressions point into the matrix and table data managers, so
+     * a definition is only used while their data has not been cleared.
+     */
+    private static final class Definition
+    {
+        final ModelEntry[] modelEntries;
+        final int nAlternatives;
+        final ModelAlternative[] alternativeNames;
+        final ModelAlternative[] alternativeTableNames;
+        final String[] altNames;
+        final int[] alternativeNumbers;
+        final int[][] nestedAlternatives;
+        final double[][] nestingCoefficients;
+        final float[][] coefficients;
+
+        final Expression[] modelExpressions;
+        final Expression[] filterExpressions;
+        final ExpressionFlags[] expressionFlags;
+        final ExpressionIndex[] expressionIndex;
+        final CompiledExpressions compiledExpressions;
+        final boolean[] isCompiled;
+        final boolean solveByEntryAllowed;
+
+        final boolean matrixIndexChangesByAlternative;
+        final Set<String> indexChangedByAlternative;
+
+        final TableDataSet altTableData;
+        final String[] altColumnName;
+        final boolean isAlternativesInFile;
+
+        final ArrayList<String> scalarIndex;
+        final VariableInfo[] varInfo;
+
+        final int matrixClearCount;
+        final int tableClearCount;
+
+        Definition(UtilityExpressionCalculator uec, int matrixClearCount, int tableClearCount)
+        {
+            modelEntries = uec.modelEntries;
+            nAlternatives = uec.nAlternatives;
+            alternativeNames = uec.alternativeNames;
+            alternativeTableNames = uec.alternativeTableNames;
+            altNames = uec.altNames;
+            alternativeNumbers = uec.alternativeNumbers;
+            nestedAlternatives = uec.nestedAlternatives;
+            nestingCoefficients = uec.nestingCoefficients;
+            coefficients = uec.coefficients;
+
+            modelExpressions = new Expression[uec.nModelEntries];
+            filterExpressions = new Expression[uec.nModelEntries];
+            for (int i = 0; i < uec.nModelEntries; i++)
+            {
+                modelExpressions[i] = new Expression(uec.modelExpressions[i], null);
+                filterExpressions[i] = new Expression(uec.filterExpressions[i], null);
+            }
+            expressionFlags = uec.expressionFlags;
+            expressionIndex = uec.expressionIndex;
+            compiledExpressions = uec.compiledExpressions;
+            isCompiled = uec.isCompiled;
+            solveByEntryAllowed = uec.solveByEntryAllowed;
+
+            matrixIndexChangesByAlternative = uec.matrixIndexChangesByAlternative;
+            indexChangedByAlternative = uec.indexChangedByAlternative;
+
+            altTableData = uec.altTableData;
+            altColumnName = uec.altColumnName;
+            isAlternativesInFile = uec.isAlternativesInFile;
+
+            scalarIndex = new ArrayList<String>(uec.scalarIndex);
+            varInfo = uec.varInfo;
+
+            this.matrixClearCount = matrixClearCount;
+            this.tableClearCount = tableClearCount;
+        }
+
+        boolean isCurrent()
+        {
+            return matrixClearCount == MatrixDataManager.getInstance().getClearCount()
+                    && tableClearCount == TableDataSetManager.getInstance().getClearCount();
+        }
+    }
+
     /**
      * Defines information that describes a variable. Most notably information about
      * indexing is stored.
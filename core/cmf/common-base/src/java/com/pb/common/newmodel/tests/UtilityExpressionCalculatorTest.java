@@ -0,0 +1,345 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.common.newmodel.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jxl.Workbook;
+import jxl.write.Label;
+import jxl.write.WritableSheet;
+import jxl.write.WritableWorkbook;
+import jxl.write.WriteException;
+
+import com.pb.common.calculator.IndexValues;
+import com.pb.common.calculator.VariableTable;
+import com.pb.common.newmodel.UtilityExpressionCalculator;
+
+
+/**
+ * Tests the com.pb.common.newmodel.UtilityExpressionCalculator on a control file
+ * written to a temporary directory. The compiled expressions are checked against
+ * the interpreter for every model and filter expression solved, which needs javac
+ * on the path, and solving by entry is checked against solving by alternative.
+ * UECs built on several threads from the same sheet share the parsed definition
+ * and are checked to give the same results as the first UEC.
+ *
+ * @version  1.0, 10/17/2026
+ */
+public class UtilityExpressionCalculatorTest {
+
+    private static final int NUMBER_OF_ALTS = 4;
+    private static final int NUMBER_OF_ZONES = 5;
+    private static final int NUMBER_OF_CASES = 2000;
+    private static final int NUMBER_OF_THREADS = 8;
+
+    // name of the scalar assigned (blank for a utility term), filter, expression,
+    // and coefficients for each alternative
+    private static final String[][] ENTRIES = {
+        { "distFactor", "", "@distance * 0.5", "", "", "", "" },
+        { "", "", "distFactor", "-0.1", "-0.2", "-0.3", "-0.05" },
+        { "", "", "@@altTime", "-0.02", "-0.02", "-0.03", "-0.01" },
+        { "", "@income > 50000", "ln(@income)", "0.1", "0", "0.2", "0" },
+        { "", "", "if($ALT == 2, 1, 0) + min(@size, 3) * max(pop / 1000, 0.5)", "1.0", "0.5", "0.25", "0.3" },
+        { "", "", "exp(0 - @distance / 10)", "0.4", "0.4", "-0.7", "0" },
+        { "", "@size >= 2", "$ALT * emp / 100", "0.01", "0.02", "0.03", "0.04" },
+        { "", "", "($ALT == 4) * (@distance > 20) * 300", "0", "0", "0", "-1" },
+        { "", "", "@@altTime * 2 + distFactor", "0.01", "0.01", "0.01", "0.01" }
+    };
+
+    // a scalar assigned for each alternative, which can't be solved by entry
+    private static final String[][] ALTERNATIVE_ASSIGNMENT_ENTRIES = {
+        { "altCost", "", "@@altTime * 0.5", "", "", "", "" },
+        { "", "", "altCost", "-0.1", "-0.1", "-0.2", "-0.2" },
+        { "", "", "@distance", "-0.05", "0", "0.05", "0.1" }
+    };
+
+    // a scalar assigned again after an entry that changes by alternative, which the
+    // second and later alternatives see when solving by alternative
+    private static final String[][] LATE_ASSIGNMENT_ENTRIES = {
+        { "x", "", "@distance", "", "", "", "" },
+        { "", "", "x * $ALT", "-0.1", "-0.1", "-0.2", "-0.2" },
+        { "x", "", "@size", "", "", "", "" },
+        { "", "", "x", "0.3", "0.2", "0.1", "0" }
+    };
+
+    public static void main(String[] args) throws Exception {
+
+        System.setProperty("uec.compileExpressions", "true");
+        System.setProperty("uec.compileExpressions.parityCheck", "true");
+
+        File dir = File.createTempFile("uecTest", "");
+        dir.delete();
+        dir.mkdir();
+
+        File controlFile = writeControlFile(dir);
+        TestDMU dmu = new TestDMU();
+
+        UtilityExpressionCalculator.clearData();
+        UtilityExpressionCalculator uec = new UtilityExpressionCalculator(controlFile, 0, 1, new HashMap<String, String>(), dmu);
+
+        // all model expressions and the two filters are compiled
+        int expected = ENTRIES.length + 2;
+        check(uec.getNumberOfCompiledExpressions() == expected, "compiled expressions " + uec.getNumberOfCompiledExpressions() + ", expected " + expected);
+
+        // the parity check throws if a compiled result differs from the interpreted one
+        double[][] results = solveCases(uec, dmu);
+        check(results.length == NUMBER_OF_CASES, "number of cases");
+
+        // UECs built and solved on other threads share the parsed definition, keep
+        // their own solve state, and give the same utilities to the bit
+        compareThreads(controlFile, uec, results);
+
+        // solving one entry at a time gives the same utilities and answers as solving
+        // one alternative at a time, including the NaN answers of an alternative left
+        // once its utility is below the cutoff
+        int nanAnswers = 0;
+        for (int sheet : new int[] { 0, 2, 3 }) {
+            UtilityExpressionCalculator byAlternative = new UtilityExpressionCalculator(controlFile, sheet, 1, new HashMap<String, String>(), dmu);
+            UtilityExpressionCalculator byEntry = new UtilityExpressionCalculator(controlFile, sheet, 1, new HashMap<String, String>(), dmu);
+            byAlternative.setSolveByEntry(false);
+            byEntry.setSolveByEntry(true);
+            check(byEntry.isSolveByEntry() == (sheet == 0), "solve by entry allowed for sheet " + sheet);
+            nanAnswers += compareSolveByEntry(byAlternative, byEntry, dmu);
+        }
+        check(nanAnswers > 0, "no alternative was left below the utility cutoff");
+
+        UtilityExpressionCalculator.clearData();
+        deleteDirectory(dir);
+
+        System.out.println("UtilityExpressionCalculatorTest passed");
+    }
+
+    /**
+     * Solve the UEC for a fixed, pseudo-random sequence of decision makers, zones and
+     * alternative availabilities.
+     */
+    private static double[][] solveCases(UtilityExpressionCalculator uec, TestDMU dmu) {
+
+        Random random = new Random(12345);
+        double[][] results = new double[NUMBER_OF_CASES][];
+        int[] availability = new int[NUMBER_OF_ALTS + 1];
+        IndexValues index = new IndexValues();
+
+        for (int c = 0; c < NUMBER_OF_CASES; c++) {
+            nextCase(random, dmu, availability, index);
+            results[c] = uec.solve(index, dmu, availability);
+        }
+
+        return results;
+    }
+
+    /**
+     * Build a UEC for the same sheet on each of several threads and solve the same
+     * cases on all of them at once.
+     */
+    private static void compareThreads(final File controlFile, final UtilityExpressionCalculator uec, double[][] expected) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+        try {
+            Future<?>[] futures = new Future<?>[NUMBER_OF_THREADS];
+            for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+                futures[t] = executor.submit(new Callable<double[][]>() {
+                    public double[][] call() throws Exception {
+                        TestDMU dmu = new TestDMU();
+                        UtilityExpressionCalculator other = new UtilityExpressionCalculator(controlFile, 0, 1, new HashMap<String, String>(), dmu);
+                        if (! "false".equalsIgnoreCase(System.getProperty("uec.shareDefinitions")))
+                            check(other.getCoefficients() == uec.getCoefficients(), "definition not shared");
+                        return solveCases(other, dmu);
+                    }
+                });
+            }
+            for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+                double[][] actual = (double[][]) futures[t].get();
+                for (int c = 0; c < NUMBER_OF_CASES; c++)
+                    check(Arrays.equals(expected[c], actual[c]), "thread " + t + ", case " + c + ", utilities " + Arrays.toString(actual[c]) + ", expected " + Arrays.toString(expected[c]));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Solve both UECs for each case and check the utilities and the answers array are
+     * the same to the bit.
+     *
+     * @return the number of NaN answers seen.
+     */
+    private static int compareSolveByEntry(UtilityExpressionCalculator byAlternative, UtilityExpressionCalculator byEntry, TestDMU dmu) {
+
+        Random random = new Random(54321);
+        int[] availability = new int[NUMBER_OF_ALTS + 1];
+        IndexValues index = new IndexValues();
+        int nanAnswers = 0;
+
+        for (int c = 0; c < NUMBER_OF_CASES; c++) {
+            nextCase(random, dmu, availability, index);
+            double[] expected = byAlternative.solve(index, dmu, availability);
+            double[] actual = byEntry.solve(index, dmu, availability);
+            String label = "sheet " + byEntry.getModelSheet() + ", case " + c;
+            check(Arrays.equals(expected, actual), label + ", utilities " + Arrays.toString(actual) + ", expected " + Arrays.toString(expected));
+
+            double[][] expectedAnswers = byAlternative.getAnswersArray();
+            double[][] actualAnswers = byEntry.getAnswersArray();
+            for (int e = 0; e < expectedAnswers.length; e++) {
+                check(Arrays.equals(expectedAnswers[e], actualAnswers[e]), label + ", answers of entry " + (e + 1));
+                for (double answer : actualAnswers[e])
+                    if (Double.isNaN(answer))
+                        nanAnswers++;
+            }
+        }
+
+        return nanAnswers;
+    }
+
+    private static void nextCase(Random random, TestDMU dmu, int[] availability, IndexValues index) {
+        dmu.distance = random.nextDouble() * 40;
+        dmu.income = random.nextInt(150000);
+        dmu.size = 1 + random.nextInt(5);
+        for (int a = 1; a <= NUMBER_OF_ALTS; a++) {
+            dmu.altTime[a] = random.nextDouble() * 60;
+            availability[a] = random.nextInt(5) == 0 ? 0 : 1;
+        }
+        index.setZoneIndex(1 + random.nextInt(NUMBER_OF_ZONES));
+        index.setOriginZone(index.getZoneIndex());
+    }
+
+    private static File writeControlFile(File dir) throws IOException, WriteException {
+
+        File zoneFile = new File(dir, "zones.csv");
+        PrintWriter out = new PrintWriter(zoneFile);
+        out.println("zone,pop,emp");
+        for (int z = 1; z <= NUMBER_OF_ZONES; z++)
+            out.println(z + "," + (z * 750) + "," + (z * 120 + 35));
+        out.close();
+
+        File file = new File(dir, "uecTest.xls");
+        WritableWorkbook workbook = Workbook.createWorkbook(file);
+
+        writeModelSheet(workbook.createSheet("Model", 0), ENTRIES);
+
+        WritableSheet data = workbook.createSheet("Data", 1);
+        data.addCell(new Label(0, 0, "Table Data"));
+        data.addCell(new Label(0, 1, "1"));
+        data.addCell(new Label(1, 1, "zone"));
+        data.addCell(new Label(2, 1, "CSV"));
+        data.addCell(new Label(3, 1, zoneFile.getPath()));
+        data.addCell(new Label(0, 3, "Matrix Data"));
+
+        writeModelSheet(workbook.createSheet("AltAssign", 2), ALTERNATIVE_ASSIGNMENT_ENTRIES);
+        writeModelSheet(workbook.createSheet("LateAssign", 3), LATE_ASSIGNMENT_ENTRIES);
+
+        workbook.write();
+        workbook.close();
+
+        return file;
+    }
+
+    private static void writeModelSheet(WritableSheet model, String[][] entries) throws WriteException {
+        model.addCell(new Label(0, 0, "Model"));
+        model.addCell(new Label(1, 0, "1"));
+        model.addCell(new Label(2, 0, "UEC test model"));
+        model.addCell(new Label(5, 0, "TestDMU"));
+        model.addCell(new Label(7, 0, Integer.toString(NUMBER_OF_ALTS)));
+        model.addCell(new Label(0, 1, "No"));
+        model.addCell(new Label(1, 1, "Token"));
+        model.addCell(new Label(3, 1, "Filter"));
+        model.addCell(new Label(4, 1, "Formula"));
+        model.addCell(new Label(5, 1, "Index"));
+        for (int a = 0; a < NUMBER_OF_ALTS; a++)
+            model.addCell(new Label(6 + a, 2, "alt" + (a + 1)));
+        for (int e = 0; e < entries.length; e++) {
+            int row = 3 + e;
+            model.addCell(new Label(0, row, Integer.toString(e + 1)));
+            model.addCell(new Label(1, row, entries[e][0]));
+            model.addCell(new Label(3, row, entries[e][1]));
+            model.addCell(new Label(4, row, entries[e][2]));
+            for (int a = 0; a < NUMBER_OF_ALTS; a++)
+                model.addCell(new Label(6 + a, row, entries[e][3 + a]));
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File f : files)
+                f.delete();
+        dir.delete();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (! condition)
+            throw new RuntimeException("UtilityExpressionCalculatorTest failed: " + message);
+    }
+
+
+    /**
+     * Decision making unit with the @ and @@ variables used by the test control file.
+     */
+    public static class TestDMU implements VariableTable {
+
+        private static final String[] GETTERS = { "getDistance", "getIncome", "getSize", "getAltTime" };
+
+        public double distance;
+        public double income;
+        public double size;
+        public double[] altTime = new double[NUMBER_OF_ALTS + 1];
+
+        public int getIndexValue(String variableName) {
+            for (int i = 0; i < GETTERS.length; i++)
+                if (GETTERS[i].equalsIgnoreCase(variableName))
+                    return i;
+            throw new RuntimeException("no method " + variableName);
+        }
+
+        public double getValueForIndex(int variableIndex, int arrayIndex) {
+            switch (variableIndex) {
+                case 0: return distance;
+                case 1: return income;
+                case 2: return size;
+                case 3: return altTime[arrayIndex];
+                default: throw new RuntimeException("method number = " + variableIndex + " not found");
+            }
+        }
+
+        public int getAssignmentIndexValue(String variableName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public double getValueForIndex(int variableIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setValue(String variableName, double variableValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setValue(int variableIndex, double variableValue) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
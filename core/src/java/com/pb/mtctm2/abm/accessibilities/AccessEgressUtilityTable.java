@@ -0,0 +1,226 @@
+package com.pb.mtctm2.abm.accessibilities;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+import com.pb.mtctm2.abm.ctramp.MgraDataManager;
+import com.pb.mtctm2.abm.ctramp.Modes.AccessMode;
+import com.pb.mtctm2.abm.ctramp.TazDataManager;
+import com.pb.mtctm2.abm.ctramp.TransitDriveAccessDMU;
+import com.pb.mtctm2.abm.ctramp.TransitWalkAccessDMU;
+
+/**
+ * Access and egress utilities for every zone and the TAPs reachable from it,
+ * stored in compressed sparse row form. For zone z the TAPs and their utilities
+ * are at positions start[z] to start[z+1]-1.
+ *
+ * Walk entries are per MGRA, in the order of MgraDataManager.getMgraWlkTapsDistArray()[mgra][0].
+ * Drive entries are per TAZ, in the order of the park and ride TAPs returned by
+ * TazDataManager.getParkRideOrKissRideTapsForZone(). So a path search looping
+ * over those TAPs reads the utility for the i-th TAP at start[zone] + i.
+ *
+ * All utilities are calculated once, in parallel, when the table is built.
+ */
+public class AccessEgressUtilityTable
+{
+
+    private static Logger logger = Logger.getLogger(AccessEgressUtilityTable.class);
+
+    // number of zones calculated by one fork/join task
+    private static final int ZONES_PER_TASK = 32;
+
+    private final int[]   walkStart;
+    private final float[] walkAccessUtils;      // MGRA to TAP
+    private final float[] walkEgressUtils;      // TAP to MGRA
+
+    private final int[]   driveStart;
+    private final int[]   driveTaps;
+    private final float[] driveAccessUtils;     // TAZ to TAP
+    private final float[] driveEgressUtils;     // TAP to TAZ
+
+    private final int[][] mgraWalkTaps;
+
+
+    private AccessEgressUtilityTable(MgraDataManager mgraManager, TazDataManager tazManager)
+    {
+        int maxMgra = mgraManager.getMaxMgra();
+        int maxTaz = tazManager.getMaxTaz();
+
+        int[][][] mgraWlkTapsDistArray = mgraManager.getMgraWlkTapsDistArray();
+        mgraWalkTaps = new int[maxMgra + 1][];
+        walkStart = new int[maxMgra + 2];
+        for (int mgra = 1; mgra <= maxMgra; mgra++)
+        {
+            if (mgraWlkTapsDistArray[mgra] != null) mgraWalkTaps[mgra] = mgraWlkTapsDistArray[mgra][0];
+            walkStart[mgra + 1] = walkStart[mgra] + (mgraWalkTaps[mgra] == null ? 0 : mgraWalkTaps[mgra].length);
+        }
+        walkAccessUtils = new float[walkStart[maxMgra + 1]];
+        walkEgressUtils = new float[walkStart[maxMgra + 1]];
+
+        int[][] tazDriveTaps = new int[maxTaz + 1][];
+        driveStart = new int[maxTaz + 2];
+        for (int taz = 1; taz <= maxTaz; taz++)
+        {
+            tazDriveTaps[taz] = tazManager.getParkRideOrKissRideTapsForZone(taz, AccessMode.PARK_N_RIDE);
+            driveStart[taz + 1] = driveStart[taz] + (tazDriveTaps[taz] == null ? 0 : tazDriveTaps[taz].length);
+        }
+        driveTaps = new int[driveStart[maxTaz + 1]];
+        for (int taz = 1; taz <= maxTaz; taz++)
+        {
+            if (tazDriveTaps[taz] != null)
+                System.arraycopy(tazDriveTaps[taz], 0, driveTaps, driveStart[taz], tazDriveTaps[taz].length);
+        }
+        driveAccessUtils = new float[driveTaps.length];
+        driveEgressUtils = new float[driveTaps.length];
+    }
+
+    /**
+     * Build the table. Each fork/join worker thread gets its own
+     * BestTransitPathCalculator and DMU objects, since UECs are not thread safe.
+     */
+    static AccessEgressUtilityTable build(final HashMap<String, String> rbMap, MgraDataManager mgraManager, TazDataManager tazManager)
+    {
+        long startTime = System.currentTimeMillis();
+
+        final AccessEgressUtilityTable table = new AccessEgressUtilityTable(mgraManager, tazManager);
+        int maxMgra = mgraManager.getMaxMgra();
+        int maxTaz = tazManager.getMaxTaz();
+
+        final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+            protected Worker initialValue()
+            {
+                return new Worker(rbMap);
+            }
+        };
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try
+        {
+            pool.invoke(new ZoneRangeTask(new ZoneCalculation() {
+                public void calculate(int mgra)
+                {
+                    table.calculateWalkUtilities(workers.get(), mgra);
+                }
+            }, 1, maxMgra + 1));
+            pool.invoke(new ZoneRangeTask(new ZoneCalculation() {
+                public void calculate(int taz)
+                {
+                    table.calculateDriveUtilities(workers.get(), taz);
+                }
+            }, 1, maxTaz + 1));
+        } finally
+        {
+            pool.shutdown();
+        }
+
+        logger.info(String.format("calculated %d walk and %d drive access/egress utilities in %.1f seconds using %d threads.",
+                table.walkAccessUtils.length, table.driveTaps.length, (System.currentTimeMillis() - startTime) / 1000.0, pool.getParallelism()));
+
+        return table;
+    }
+
+    private void calculateWalkUtilities(Worker w, int mgra)
+    {
+        int[] taps = mgraWalkTaps[mgra];
+        if (taps == null) return;
+        int start = walkStart[mgra];
+        for (int i = 0; i < taps.length; i++)
+        {
+            walkAccessUtils[start + i] = w.calculator.calcWalkAccessUtility(w.walkDmu, mgra, taps[i], false, null);
+            walkEgressUtils[start + i] = w.calculator.calcWalkEgressUtility(w.walkDmu, taps[i], mgra, false, null);
+        }
+    }
+
+    private void calculateDriveUtilities(Worker w, int taz)
+    {
+        for (int k = driveStart[taz]; k < driveStart[taz + 1]; k++)
+        {
+            // the mgra argument is only used for tracing
+            driveAccessUtils[k] = w.calculator.calcDriveAccessUtility(w.driveDmu, 0, taz, driveTaps[k], AccessMode.PARK_N_RIDE, false, null);
+            driveEgressUtils[k] = w.calculator.calcDriveEgressUtility(w.driveDmu, driveTaps[k], taz, 0, AccessMode.PARK_N_RIDE, false, null);
+        }
+    }
+
+    public int[] getWalkStart()
+    {
+        return walkStart;
+    }
+
+    public float[] getWalkAccessUtils()
+    {
+        return walkAccessUtils;
+    }
+
+    public float[] getWalkEgressUtils()
+    {
+        return walkEgressUtils;
+    }
+
+    public int[] getDriveStart()
+    {
+        return driveStart;
+    }
+
+    public int[] getDriveTaps()
+    {
+        return driveTaps;
+    }
+
+    public float[] getDriveAccessUtils()
+    {
+        return driveAccessUtils;
+    }
+
+    public float[] getDriveEgressUtils()
+    {
+        return driveEgressUtils;
+    }
+
+
+    private static class Worker
+    {
+        final BestTransitPathCalculator calculator;
+        final TransitWalkAccessDMU      walkDmu  = new TransitWalkAccessDMU();
+        final TransitDriveAccessDMU     driveDmu = new TransitDriveAccessDMU();
+
+        Worker(HashMap<String, String> rbMap)
+        {
+            calculator = new BestTransitPathCalculator(rbMap, false);
+        }
+    }
+
+    private interface ZoneCalculation
+    {
+        void calculate(int zone);
+    }
+
+    private static class ZoneRangeTask extends RecursiveAction
+    {
+        private final ZoneCalculation calculation;
+        private final int             first;
+        private final int             last;   // exclusive
+
+        ZoneRangeTask(ZoneCalculation calculation, int first, int last)
+        {
+            this.calculation = calculation;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute()
+        {
+            if (last - first <= ZONES_PER_TASK)
+            {
+                for (int zone = first; zone < last; zone++)
+                    calculation.calculate(zone);
+                return;
+            }
+            int mid = (first + last) >>> 1;
+            invokeAll(new ZoneRangeTask(calculation, first, mid), new ZoneRangeTask(calculation, mid, last));
+        }
+    }
+
+}
@@ -0,0 +1,392 @@
+package com.pb.mtctm2.abm.accessibilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+import com.pb.common.datafile.TableDataSet;
+import com.pb.common.math.MathUtil;
+import com.pb.common.newmodel.UtilityExpressionCalculator;
+import com.pb.common.util.Tracer;
+import com.pb.mtctm2.abm.ctramp.MgraDataManager;
+import com.pb.mtctm2.abm.ctramp.TazDataManager;
+import com.pb.mtctm2.abm.ctramp.TransitWalkAccessDMU;
+import com.pb.mtctm2.abm.ctramp.TransitWalkAccessUEC;
+import com.pb.mtctm2.abm.ctramp.Util;
+
+/**
+ * Calculates the destination choice accessibilities for all origin MGRAs in this
+ * JVM, as an alternative to running DcUtilitiesTaskJppf tasks on a thread pool.
+ *
+ * The accessibilities are the same quantities DcUtilitiesTaskJppf calculates, from
+ * the same destination sample, but the work is organized differently:
+ * - origins are processed one TAZ at a time, so the SOV, HOV and non-motorized
+ *   exponentiated utilities from the origin TAZ are calculated once, into float rows
+ *   reused by each thread, rather than kept in double arrays for every origin TAZ;
+ * - the logsum and size term columns of the DC UEC alternatives and the size terms,
+ *   by size segment, are copied into arrays once;
+ * - the sampled destinations of an origin are processed in blocks, and since the
+ *   accessibility is the sum of exp(logsum) * size term, the exponentiated logsum of
+ *   each segment is accumulated directly, without the log and exp per alternative;
+ * - origin TAZs are split over a fork/join pool, with the non-transit utilities and
+ *   best transit path calculators bound to each pool thread.
+ *
+ * The arithmetic differs too, so the results are not bitwise equal to those of
+ * DcUtilitiesTaskJppf: the auto and non-motorized exponentiated utilities are
+ * rounded to float, and the destinations are summed in double rather than added
+ * to a float accessibility after a log and exp of each composite utility, so the
+ * accessibilities can differ in the last digits.
+ */
+public class AccessibilityKernel
+{
+
+    private static final int MIN_EXP_FUNCTION_ARGUMENT = -500;
+
+    // number of sampled destinations whose composite utilities are held at once
+    private static final int DESTINATION_BLOCK_SIZE   = 256;
+    // origin TAZs below which a task is not split further
+    private static final int TAZS_PER_TASK            = 4;
+
+    private static final int NUM_LOGSUM_SEGMENTS      = 14;
+
+    private Logger           logger                   = Logger.getLogger(AccessibilityKernel.class);
+
+    private final HashMap<String, String> rbMap;
+    private final MgraDataManager         mgraManager;
+    private final double[][]              expConstants;
+
+    private final int                     maxTaz;
+    private final int                     maxMgra;
+    private final int                     numMgras;
+    private final int                     alts;
+
+    // position of each mgra in mgraManager.getMgras(), -1 if not an mgra or if it has no size term
+    private final int[]                   destinationPosition;
+    private final int[]                   mgraTaz;
+    // origin tazs, and the positions in mgraManager.getMgras() of the mgras in each
+    private final int[]                   originTazs;
+    private final int[][]                 originPositions;
+
+    // logsum segment and size segment of each alternative
+    private final int[]                   altLogsumSegment;
+    private final int[]                   altSizeSegment;
+    // size terms by size segment, then position in mgraManager.getMgras()
+    private final double[][]              segmentSizeTerms;
+
+    private final int                     stepSize;
+
+    private final boolean                 seek;
+    private final Tracer                  tracer;
+
+    private final ThreadLocal<Worker>     threadWorker;
+    private final AtomicInteger           workerCount           = new AtomicInteger();
+    private final AtomicInteger           originTazsDone        = new AtomicInteger();
+
+    private float[][]                     accessibilities;
+
+
+    public AccessibilityKernel(HashMap<String, String> rbMap, MgraDataManager mgraManager, boolean[] hasSizeTerm,
+            double[][] expConstants, double[][] sizeTerms, boolean seek, String dcUecFileName, int dcDataPage,
+            int dcUtilityPage)
+    {
+        this.rbMap = rbMap;
+        this.mgraManager = mgraManager;
+        this.expConstants = expConstants;
+        this.seek = seek;
+        this.tracer = Tracer.getTracer();
+
+        maxTaz = TazDataManager.getInstance(rbMap).maxTaz;
+        maxMgra = mgraManager.getMaxMgra();
+        mgraTaz = mgraManager.getMgraTaz();
+
+        ArrayList<Integer> mgras = mgraManager.getMgras();
+        numMgras = mgras.size();
+
+        // the alternatives' logsum and size term indices are read once, rather than from the TableDataSet for each pair
+        AccessibilitiesDMU aDmu = new AccessibilitiesDMU();
+        UtilityExpressionCalculator dcUEC = new UtilityExpressionCalculator(new File(dcUecFileName), dcUtilityPage,
+                dcDataPage, rbMap, aDmu);
+        TableDataSet altData = dcUEC.getAlternativeData();
+        alts = dcUEC.getNumberOfAlternatives();
+        int logsumColumn = altData.getColumnPosition("logsumIndex");
+        int sizeColumn = altData.getColumnPosition("sizeTermIndex");
+
+        altLogsumSegment = new int[alts];
+        altSizeSegment = new int[alts];
+        int numSizeSegments = 0;
+        for (int alt = 0; alt < alts; alt++)
+        {
+            altLogsumSegment[alt] = (int) altData.getValueAt(alt + 1, logsumColumn);
+            altSizeSegment[alt] = (int) altData.getValueAt(alt + 1, sizeColumn);
+            numSizeSegments = Math.max(numSizeSegments, altSizeSegment[alt] + 1);
+        }
+
+        destinationPosition = new int[maxMgra + 1];
+        Arrays.fill(destinationPosition, -1);
+        segmentSizeTerms = new double[numSizeSegments][numMgras];
+        for (int i = 0; i < numMgras; i++)
+        {
+            int mgra = mgras.get(i);
+            if (!hasSizeTerm[mgra]) continue;
+            destinationPosition[mgra] = i;
+            for (int s = 0; s < numSizeSegments; s++)
+                segmentSizeTerms[s][i] = sizeTerms[mgra][s];
+        }
+
+        // group the origin mgras by taz, so each origin taz's non-transit utilities are calculated once
+        int[] count = new int[maxTaz + 1];
+        for (int i = 0; i < numMgras; i++)
+            count[mgraTaz[mgras.get(i)]]++;
+        int numOriginTazs = 0;
+        for (int taz = 1; taz <= maxTaz; taz++)
+            if (count[taz] > 0) numOriginTazs++;
+        originTazs = new int[numOriginTazs];
+        originPositions = new int[numOriginTazs][];
+        int[] tazIndex = new int[maxTaz + 1];
+        int k = 0;
+        for (int taz = 1; taz <= maxTaz; taz++)
+        {
+            if (count[taz] == 0) continue;
+            originTazs[k] = taz;
+            originPositions[k] = new int[count[taz]];
+            tazIndex[taz] = k++;
+            count[taz] = 0;
+        }
+        for (int i = 0; i < numMgras; i++)
+        {
+            int taz = mgraTaz[mgras.get(i)];
+            originPositions[tazIndex[taz]][count[taz]++] = i;
+        }
+
+        float samplePercent = Util.getFloatValueFromPropertyMap(rbMap, "acc.destination.sampleRate");
+        stepSize = (int) (1 / samplePercent);
+
+        threadWorker = new ThreadLocal<Worker>() {
+            protected Worker initialValue()
+            {
+                logger.info(String.format("creating accessibilities worker %d on %s.", workerCount.incrementAndGet(),
+                        Thread.currentThread().getName()));
+                return new Worker();
+            }
+        };
+    }
+
+    /**
+     * @return accessibilities by position in mgraManager.getMgras() and DC UEC
+     *         alternative, dimensioned the same as the table assembled from
+     *         DcUtilitiesTaskJppf results.
+     */
+    public float[][] calculateAccessibilities(int numThreads)
+    {
+        long startTime = System.currentTimeMillis();
+        logger.info(String.format("calculating accessibilities for %d origin MGRAs in %d TAZs with %d threads.",
+                numMgras, originTazs.length, numThreads));
+
+        accessibilities = new float[numMgras + 1][alts];
+        originTazsDone.set(0);
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try
+        {
+            pool.invoke(new OriginTazsTask(0, originTazs.length));
+        } finally
+        {
+            pool.shutdown();
+        }
+
+        logger.info(String.format("accessibilities calculated in %.1f seconds.",
+                (System.currentTimeMillis() - startTime) / 1000.0));
+        return accessibilities;
+    }
+
+    private void calculateOriginTaz(int k, Worker worker)
+    {
+        int iTaz = originTazs[k];
+        boolean trace = tracer.isTraceOn() && tracer.isTraceZone(iTaz);
+        if (!seek || trace)
+        {
+            worker.ntUtilities.calculateAutoExpUtilities(iTaz, NonTransitUtilities.OFFPEAK_PERIOD_INDEX,
+                    worker.opSov, worker.opHov);
+            worker.ntUtilities.calculateAutoExpUtilities(iTaz, NonTransitUtilities.PEAK_PERIOD_INDEX,
+                    worker.pkSov, worker.pkHov);
+            worker.ntUtilities.calculateNMotorExpUtilities(iTaz, worker.nMotor);
+
+            for (int i : originPositions[k])
+                calculateOrigin(i, trace, worker);
+        }
+
+        int done = originTazsDone.incrementAndGet();
+        int progressWidth = Math.max(1, originTazs.length / 20);
+        if (done % progressWidth == 0)
+            logger.info(String.format("accessibilities finished %d%% (%d of %d origin TAZs)",
+                    (done * 100) / originTazs.length, done, originTazs.length));
+    }
+
+    private void calculateOrigin(int position, boolean trace, Worker worker)
+    {
+        int iMgra = mgraManager.getMgras().get(position);
+
+        // the same systematic destination sample as DcUtilitiesTaskJppf
+        Random r = new Random(iMgra);
+        int n = 0;
+        for (int jMgra = (int) (stepSize * r.nextFloat()) + 1; jMgra <= maxMgra; jMgra += stepSize)
+            if (destinationPosition[jMgra] >= 0) worker.destinations[n++] = jMgra;
+
+        if (trace)
+            logger.info("origMGRA, destMGRA, OPSOV, OPHOV, WTRAN, NMOT, SOV0OP, SOV1OP, SOV2OP, HOV0OP, HOV1OP, HOV2OP, HOV0PK, HOV1PK, HOV2PK,  ALL");
+
+        double[] sums = worker.sums;
+        Arrays.fill(sums, 0);
+
+        for (int start = 0; start < n; start += DESTINATION_BLOCK_SIZE)
+        {
+            int end = Math.min(n, start + DESTINATION_BLOCK_SIZE);
+            for (int d = start; d < end; d++)
+                calculateCompositeExpUtilities(iMgra, worker.destinations[d], d - start, trace, worker);
+
+            // accumulate all alternatives over the block
+            for (int alt = 0; alt < alts; alt++)
+            {
+                double[] composite = worker.composite[altLogsumSegment[alt]];
+                double[] size = segmentSizeTerms[altSizeSegment[alt]];
+                double sum = 0;
+                for (int d = start; d < end; d++)
+                    sum += composite[d - start] * size[destinationPosition[worker.destinations[d]]];
+                sums[alt] += sum;
+            }
+        }
+
+        float[] originAccessibilities = accessibilities[position];
+        for (int alt = 0; alt < alts; alt++)
+            originAccessibilities[alt] = sums[alt] > 0 ? (float) Math.log(sums[alt]) : 0;
+
+        if (trace)
+        {
+            StringBuilder accString = new StringBuilder("iMgra, Alternative, Accessibility\n");
+            for (int alt = 0; alt < alts; alt++)
+                accString.append(iMgra + "," + alt + "," + originAccessibilities[alt] + "\n");
+            logger.info(accString.toString());
+        }
+    }
+
+    /**
+     * Store the exponentiated logsum of each logsum segment for the origin and
+     * destination in column d of the worker's composite utilities.
+     */
+    private void calculateCompositeExpUtilities(int iMgra, int jMgra, int d, boolean trace, Worker worker)
+    {
+        int jTaz = mgraTaz[jMgra];
+
+        double opSov = worker.opSov[jTaz];
+        double opHov = worker.opHov[jTaz];
+        double pkSov = worker.pkSov[jTaz];
+        double pkHov = worker.pkHov[jTaz];
+
+        double opWT = walkTransitExpUtility(worker, TransitWalkAccessUEC.MD, iMgra, jMgra);
+        double pkWT = walkTransitExpUtility(worker, TransitWalkAccessUEC.AM, iMgra, jMgra);
+
+        double nm = worker.ntUtilities.getMgraNMotorExpUtility(iMgra, jMgra, NonTransitUtilities.OFFPEAK_PERIOD_INDEX);
+        if (Double.isNaN(nm)) nm = worker.nMotor[jTaz];
+
+        double[][] c = worker.composite;
+        double[][] k = expConstants;
+        c[0][d] = opSov;
+        c[1][d] = opHov;
+        c[2][d] = opWT;
+        c[3][d] = nm;
+        c[4][d] = opSov * k[0][0] + opWT * k[0][2] + nm * k[0][3];
+        c[5][d] = opSov * k[1][0] + opWT * k[1][2] + nm * k[1][3];
+        c[6][d] = opSov * k[2][0] + opWT * k[2][2] + nm * k[2][3];
+        c[7][d] = opHov * k[0][1] + opWT * k[0][2] + nm * k[0][3];
+        c[8][d] = opHov * k[1][1] + opWT * k[1][2] + nm * k[1][3];
+        c[9][d] = opHov * k[2][1] + opWT * k[2][2] + nm * k[2][3];
+        c[10][d] = pkHov * k[0][1] + pkWT * k[0][2] + nm * k[0][3];
+        c[11][d] = pkHov * k[1][1] + pkWT * k[1][2] + nm * k[1][3];
+        c[12][d] = pkHov * k[2][1] + pkWT * k[2][2] + nm * k[2][3];
+        c[13][d] = pkSov * k[3][0] + pkHov * k[3][1] + pkWT * k[3][2] + nm * k[3][3];
+
+        if (trace)
+        {
+            StringBuilder printString = new StringBuilder(iMgra + "," + jMgra);
+            for (int s = 0; s < NUM_LOGSUM_SEGMENTS; s++)
+                printString.append("," + String.format("%9.2f", c[s][d] > 0 ? MathUtil.log(c[s][d]) : -999f));
+            logger.info(printString.toString());
+        }
+    }
+
+    private double walkTransitExpUtility(Worker worker, int period, int iMgra, int jMgra)
+    {
+        // determine the best transit path, which also stores the best utilities array
+        worker.bestPathCalculator.findBestWalkTransitWalkTaps(worker.walkDmu, period, iMgra, jMgra, false, logger);
+
+        // sum the exponentiated utilities over modes
+        double expUtility = 0;
+        double[] utilities = worker.bestPathCalculator.getBestUtilities();
+        for (int k = 0; k < utilities.length; k++)
+            if (utilities[k] > MIN_EXP_FUNCTION_ARGUMENT) expUtility += MathUtil.exp(utilities[k]);
+        return expUtility;
+    }
+
+
+    /**
+     * The calculators and buffers used by one pool thread.
+     */
+    private class Worker
+    {
+        private final NonTransitUtilities       ntUtilities;
+        private final BestTransitPathCalculator bestPathCalculator;
+        private final TransitWalkAccessDMU      walkDmu      = new TransitWalkAccessDMU();
+
+        // exponentiated utilities from the current origin taz
+        private final float[]                   opSov        = new float[maxTaz + 1];
+        private final float[]                   opHov        = new float[maxTaz + 1];
+        private final float[]                   pkSov        = new float[maxTaz + 1];
+        private final float[]                   pkHov        = new float[maxTaz + 1];
+        private final float[]                   nMotor       = new float[maxTaz + 1];
+
+        private final int[]                     destinations = new int[maxMgra + 1];
+        // exponentiated logsums by logsum segment and sampled destination in the current block
+        private final double[][]                composite    = new double[NUM_LOGSUM_SEGMENTS][DESTINATION_BLOCK_SIZE];
+        private final double[]                  sums         = new double[alts];
+
+        Worker()
+        {
+            ntUtilities = new NonTransitUtilities(rbMap, null, null, null);
+            bestPathCalculator = new BestTransitPathCalculator(rbMap);
+        }
+    }
+
+    private class OriginTazsTask
+            extends RecursiveAction
+    {
+        private final int first;
+        private final int last;  // exclusive
+
+        OriginTazsTask(int first, int last)
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute()
+        {
+            if (last - first > TAZS_PER_TASK)
+            {
+                int mid = (first + last) >>> 1;
+                invokeAll(new OriginTazsTask(first, mid), new OriginTazsTask(mid, last));
+                return;
+            }
+
+            Worker worker = threadWorker.get();
+            for (int k = first; k < last; k++)
+                calculateOriginTaz(k, worker);
+        }
+    }
+
+}
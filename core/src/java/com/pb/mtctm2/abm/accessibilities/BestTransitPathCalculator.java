@@ -16,7 +16,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -69,6 +68,10 @@ public class BestTransitPathCalculator implements Serializable
     public static final int[]             ACC_EGR       = {WTW,WTD,DTW};
     public static final int               NUM_ACC_EGR   = ACC_EGR.length;
 
+    // maximum number of tap pairs (all access/egress segments and periods) held in the shared utility cache
+    public static final String            PROPERTIES_MAX_CACHED_TAP_PAIRS = "utility.bestTransitPath.tapPairCache.maxEntries";
+    public static final long              DEFAULT_MAX_CACHED_TAP_PAIRS    = 25000000;
+
     // seek and trace
     private boolean                       trace;
     private int[]                         traceOtaz;
@@ -93,11 +96,16 @@ public class BestTransitPathCalculator implements Serializable
     // utility data cache for each transit path segment 
     private StoredUtilityData storedDataObject; //Encapsulates data shared by the BestTransitPathCalculator objects created for each hh choice model object
     // note that access/egress utilities are independent of transit skim set 
-    private float[][]                  storedWalkAccessUtils;	// references StoredUtilityData.storedWalkAccessUtils
-    private float[][]                  storedDriveAccessUtils;// references StoredUtilityData.storedDriveAccessUtils
-    private float[][]                  storedWalkEgressUtils;	// references StoredUtilityData.storedWalkEgressUtils
-    private float[][]                  storedDriveEgressUtils;// references StoredUtilityData.storedDriveEgressUtils    
-    private HashMap<Integer,HashMap<Integer,ConcurrentHashMap<Long,float[]>>> storedDepartPeriodTapTapUtils; //references StoredUtilityData.storedDepartPeriodTapTapUtils
+    // walk utilities for the i-th walk tap of an mgra are at walkStart[mgra]+i, drive utilities for the i-th pnr tap of a taz at driveStart[taz]+i
+    private int[]                      walkStart;          // references AccessEgressUtilityTable.walkStart
+    private float[]                    walkAccessUtils;    // references AccessEgressUtilityTable.walkAccessUtils
+    private float[]                    walkEgressUtils;    // references AccessEgressUtilityTable.walkEgressUtils
+    private int[]                      driveStart;         // references AccessEgressUtilityTable.driveStart
+    private int[]                      driveTaps;          // references AccessEgressUtilityTable.driveTaps
+    private float[]                    driveAccessUtils;   // references AccessEgressUtilityTable.driveAccessUtils
+    private float[]                    driveEgressUtils;   // references AccessEgressUtilityTable.driveEgressUtils
+    private TapPairUtilityCache           storedDepartPeriodTapTapUtils; //references StoredUtilityData.storedDepartPeriodTapTapUtils
+    private float[]                       tapTapUtil;   // reused for each tap pair, values are copied into the TransitPath objects
 
     private IndexValues                   index         = new IndexValues();
 
@@ -121,6 +129,15 @@ public class BestTransitPathCalculator implements Serializable
      * @param dataSheet The sheet (0-indexed) containing the data specification.
      */
     public BestTransitPathCalculator(HashMap<String, String> rbMap)
+    {
+        this(rbMap, true);
+    }
+
+    /**
+     * @param useAccessEgressUtils false for the calculators used to build the
+     * shared AccessEgressUtilityTable, which only call the calc...Utility() methods.
+     */
+    BestTransitPathCalculator(HashMap<String, String> rbMap, boolean useAccessEgressUtils)
     {
 
         // read in resource bundle properties
@@ -175,18 +192,30 @@ public class BestTransitPathCalculator implements Serializable
         maxTap = mgraManager.getMaxTap();
         maxTaz = tazManager.getMaxTaz();
 
-        // these arrays are shared by the BestTransitPathCalculator objects created for each hh choice model object
-        storedDataObject = StoredUtilityData.getInstance( maxMgra, maxTap, maxTaz, ACC_EGR, TransitWalkAccessUEC.PERIODCODES);
-        storedWalkAccessUtils = storedDataObject.getStoredWalkAccessUtils();
-        storedDriveAccessUtils = storedDataObject.getStoredDriveAccessUtils();
-        storedWalkEgressUtils = storedDataObject.getStoredWalkEgressUtils();
-        storedDriveEgressUtils = storedDataObject.getStoredDriveEgressUtils();
-        storedDepartPeriodTapTapUtils = storedDataObject.getStoredDepartPeriodTapTapUtils();
-        
         //setup arrays
         numSkimSets = Util.getIntegerValueFromPropertyMap( rbMap, "utility.bestTransitPath.skim.sets" );
         numTransitAlts = Util.getIntegerValueFromPropertyMap( rbMap, "utility.bestTransitPath.alts" );
         
+        long maxTapPairs = DEFAULT_MAX_CACHED_TAP_PAIRS;
+        if ( rbMap.containsKey( PROPERTIES_MAX_CACHED_TAP_PAIRS ) )
+            maxTapPairs = Long.parseLong( rbMap.get( PROPERTIES_MAX_CACHED_TAP_PAIRS ).trim() );
+
+        // these arrays are shared by the BestTransitPathCalculator objects created for each hh choice model object
+        storedDataObject = StoredUtilityData.getInstance( ACC_EGR, TransitWalkAccessUEC.PERIODCODES, numSkimSets, maxTapPairs);
+        storedDepartPeriodTapTapUtils = storedDataObject.getStoredDepartPeriodTapTapUtils();
+        
+        if ( useAccessEgressUtils ) {
+            AccessEgressUtilityTable accessEgressUtils = storedDataObject.getAccessEgressUtils( rbMap, mgraManager, tazManager );
+            walkStart = accessEgressUtils.getWalkStart();
+            walkAccessUtils = accessEgressUtils.getWalkAccessUtils();
+            walkEgressUtils = accessEgressUtils.getWalkEgressUtils();
+            driveStart = accessEgressUtils.getDriveStart();
+            driveTaps = accessEgressUtils.getDriveTaps();
+            driveAccessUtils = accessEgressUtils.getDriveAccessUtils();
+            driveEgressUtils = accessEgressUtils.getDriveEgressUtils();
+        }
+        
+        tapTapUtil = new float[numSkimSets];
         bestUtilities = new double[numTransitAlts];
         bestPTap = new int[numTransitAlts];
         bestATap = new int[numTransitAlts];
@@ -231,42 +260,33 @@ public class BestTransitPathCalculator implements Serializable
         //create transit path collection
         ArrayList<TransitPath> paths = new ArrayList<TransitPath>();
         
-        for (int pTap : pMgraSet)
+        int pStart = walkStart[pMgra];
+        int aStart = walkStart[aMgra];
+        
+        for (int i = 0; i < pMgraSet.length; i++)
         {
+            int pTap = pMgraSet[i];
 
-            // Calculate the pMgra to pTap walk access utility values
-            float accUtil; 
-            if (storedWalkAccessUtils[pMgra][pTap] == StoredUtilityData.default_utility) {
-    			accUtil = calcWalkAccessUtility(walkDmu, pMgra, pTap, writeCalculations, myLogger);
-    			storedWalkAccessUtils[pMgra][pTap] = accUtil;
-            } else {
-            	accUtil = storedWalkAccessUtils[pMgra][pTap];
-            }
+            // pMgra to pTap walk access utility values, recalculated when tracing so the UEC calculations are logged
+            float accUtil = writeCalculations ? calcWalkAccessUtility(walkDmu, pMgra, pTap, writeCalculations, myLogger) : walkAccessUtils[pStart + i];
 
-            for (int aTap : aMgraSet)
+            for (int j = 0; j < aMgraSet.length; j++)
             {
+                int aTap = aMgraSet[j];
                 
-                // Calculate the aTap to aMgra walk egress utility values
-                float egrUtil;
-                if (storedWalkEgressUtils[aTap][aMgra] == StoredUtilityData.default_utility) {
-                	egrUtil = calcWalkEgressUtility(walkDmu, aTap, aMgra, writeCalculations, myLogger);
-        			storedWalkEgressUtils[aTap][aMgra] = egrUtil;
-                } else {
-                	egrUtil = storedWalkEgressUtils[aTap][aMgra];	
-                }
+                // aTap to aMgra walk egress utility values
+                float egrUtil = writeCalculations ? calcWalkEgressUtility(walkDmu, aTap, aMgra, writeCalculations, myLogger) : walkEgressUtils[aStart + j];
                 	
                 // Calculate the pTap to aTap utility values
-        		float tapTapUtil[] = new float[numSkimSets];
-        		if(!storedDepartPeriodTapTapUtils.get(WTW).get(period).containsKey(storedDataObject.paTapKey(pTap, aTap))) {
+        		long tapPairKey = storedDataObject.tapPairKey(WTW, period, pTap, aTap);
+        		if(!storedDepartPeriodTapTapUtils.get(tapPairKey, tapTapUtil)) {
         			
         			//loop across number of skim sets  the pTap to aTap utility values 
         			for (int set=0; set<numSkimSets; set++) {
 	            		tapTapUtil[set] = calcUtilitiesForTapPair(walkDmu, period, pTap, aTap, set, pMgra, aMgra, writeCalculations, myLogger);
         			}
-        			storedDepartPeriodTapTapUtils.get(WTW).get(period).putIfAbsent(storedDataObject.paTapKey(pTap, aTap), tapTapUtil);
-        		} else {
-	                tapTapUtil = storedDepartPeriodTapTapUtils.get(WTW).get(period).get(storedDataObject.paTapKey(pTap, aTap));
-            	}
+        			storedDepartPeriodTapTapUtils.put(tapPairKey, tapTapUtil);
+        		}
         		
         		//create path for each skim set
         		for (int set=0; set<numSkimSets; set++) {
@@ -293,7 +313,7 @@ public class BestTransitPathCalculator implements Serializable
         int pTaz = mgraManager.getTaz(pMgra);
         int aTaz = mgraManager.getTaz(aMgra);
 
-        if (tazManager.getParkRideOrKissRideTapsForZone(pTaz, accMode) == null
+        if (driveStart[pTaz] == driveStart[pTaz + 1]
                 || mgraManager.getMgraWlkTapsDistArray()[aMgra][0] == null)
                     {
                         return;
@@ -310,17 +330,15 @@ public class BestTransitPathCalculator implements Serializable
 
         float[][][] tapParkingInfo = tapManager.getTapParkingInfo();
 
-        int[] pTapArray = tazManager.getParkRideOrKissRideTapsForZone(pTaz, accMode);
-        for ( int pTap : pTapArray )
+        int[] aMgraSet = mgraManager.getMgraWlkTapsDistArray()[aMgra][0];
+        int aStart = walkStart[aMgra];
+
+        for ( int k = driveStart[pTaz]; k < driveStart[pTaz + 1]; k++ )
         {
-            // Calculate the pTaz to pTap drive access utility values
-            float accUtil;
-            if (storedDriveAccessUtils[pTaz][pTap] == StoredUtilityData.default_utility) {
-    			accUtil = calcDriveAccessUtility(driveDmu, pMgra, pTaz, pTap, accMode, writeCalculations, myLogger);
-    			storedDriveAccessUtils[pTaz][pTap] = accUtil;
-            } else {
-            	accUtil = storedDriveAccessUtils[pTaz][pTap];
-            }
+            int pTap = driveTaps[k];
+
+            // pTaz to pTap drive access utility values, recalculated when tracing so the UEC calculations are logged
+            float accUtil = writeCalculations ? calcDriveAccessUtility(driveDmu, pMgra, pTaz, pTap, accMode, writeCalculations, myLogger) : driveAccessUtils[k];
             
             int lotID = (int)tapParkingInfo[pTap][0][0]; // lot ID
             float lotCapacity = tapParkingInfo[pTap][2][0]; // lot capacity
@@ -329,30 +347,23 @@ public class BestTransitPathCalculator implements Serializable
                     || (accMode == AccessMode.KISS_N_RIDE))
             {
 
-                for (int aTap : mgraManager.getMgraWlkTapsDistArray()[aMgra][0])
+                for (int j = 0; j < aMgraSet.length; j++)
                 {
+                    int aTap = aMgraSet[j];
                     
-                    // Calculate the aTap to aMgra walk egress utility values
-                    float egrUtil;
-                    if (storedWalkEgressUtils[aTap][aMgra] == StoredUtilityData.default_utility) {
-            			egrUtil = calcWalkEgressUtility(walkDmu, aTap, aMgra, writeCalculations, myLogger);
-            			storedWalkEgressUtils[aTap][aMgra] = egrUtil;
-                    } else {
-                    	egrUtil = storedWalkEgressUtils[aTap][aMgra];	
-                    }
+                    // aTap to aMgra walk egress utility values
+                    float egrUtil = writeCalculations ? calcWalkEgressUtility(walkDmu, aTap, aMgra, writeCalculations, myLogger) : walkEgressUtils[aStart + j];
                                         
                     // Calculate the pTap to aTap utility values
-            		float tapTapUtil[] = new float[numSkimSets];
-            		if(!storedDepartPeriodTapTapUtils.get(DTW).get(period).containsKey(storedDataObject.paTapKey(pTap, aTap))) {
+            		long tapPairKey = storedDataObject.tapPairKey(DTW, period, pTap, aTap);
+            		if(!storedDepartPeriodTapTapUtils.get(tapPairKey, tapTapUtil)) {
             			
             			//loop across number of skim sets  the pTap to aTap utility values 
             			for (int set=0; set<numSkimSets; set++) {
     	            		tapTapUtil[set] = calcUtilitiesForTapPair(walkDmu, period, pTap, aTap, set, pMgra, aMgra, writeCalculations, myLogger);
             			}
-            			storedDepartPeriodTapTapUtils.get(DTW).get(period).putIfAbsent(storedDataObject.paTapKey(pTap, aTap), tapTapUtil);
-            		} else {
-    	                tapTapUtil = storedDepartPeriodTapTapUtils.get(DTW).get(period).get(storedDataObject.paTapKey(pTap, aTap));
-                	}
+            			storedDepartPeriodTapTapUtils.put(tapPairKey, tapTapUtil);
+            		}
             		
             		//create path for each skim set
             		for (int set=0; set<numSkimSets; set++) {
@@ -381,7 +392,7 @@ public class BestTransitPathCalculator implements Serializable
         int aTaz = mgraManager.getTaz(aMgra);
 
         if (mgraManager.getMgraWlkTapsDistArray()[pMgra][0] == null
-                || tazManager.getParkRideOrKissRideTapsForZone(aTaz, accMode) == null)
+                || driveStart[aTaz] == driveStart[aTaz + 1])
                     {
                         return;
                     }
@@ -395,19 +406,19 @@ public class BestTransitPathCalculator implements Serializable
         //create transit path collection
         ArrayList<TransitPath> paths = new ArrayList<TransitPath>();
         
-        for (int pTap : mgraManager.getMgraWlkTapsDistArray()[pMgra][0])
+        int[] pMgraSet = mgraManager.getMgraWlkTapsDistArray()[pMgra][0];
+        int pStart = walkStart[pMgra];
+
+        for (int i = 0; i < pMgraSet.length; i++)
         {
-            // Calculate the pMgra to pTap walk access utility values
-            float accUtil;
-            if (storedWalkAccessUtils[pMgra][pTap] == StoredUtilityData.default_utility) {
-    			accUtil = calcWalkAccessUtility(walkDmu, pMgra, pTap, writeCalculations, myLogger);
-    			storedWalkAccessUtils[pMgra][pTap] = accUtil;
-            } else {
-            	accUtil = storedWalkAccessUtils[pMgra][pTap];
-            }
+            int pTap = pMgraSet[i];
 
-            for (int aTap : tazManager.getParkRideOrKissRideTapsForZone(aTaz, accMode))
+            // pMgra to pTap walk access utility values, recalculated when tracing so the UEC calculations are logged
+            float accUtil = writeCalculations ? calcWalkAccessUtility(walkDmu, pMgra, pTap, writeCalculations, myLogger) : walkAccessUtils[pStart + i];
+
+            for (int k = driveStart[aTaz]; k < driveStart[aTaz + 1]; k++)
             {
+                int aTap = driveTaps[k];
 
                 int lotID = (int) tapManager.getTapParkingInfo()[aTap][0][0]; // lot
                 // ID
@@ -417,27 +428,19 @@ public class BestTransitPathCalculator implements Serializable
                         || (accMode == AccessMode.KISS_N_RIDE))
                 {
 
-                	// Calculate the aTap to aMgra drive egress utility values
-                    float egrUtil;
-                    if (storedDriveEgressUtils[aTap][aTaz] == StoredUtilityData.default_utility) {
-            			egrUtil = calcDriveEgressUtility(driveDmu, aTap, aTaz, aMgra, accMode, writeCalculations, myLogger);
-            			storedDriveEgressUtils[aTap][aTaz] = egrUtil;
-                    } else {
-                    	egrUtil = storedDriveEgressUtils[aTap][aTaz];	
-                    }
+                	// aTap to aTaz drive egress utility values
+                    float egrUtil = writeCalculations ? calcDriveEgressUtility(driveDmu, aTap, aTaz, aMgra, accMode, writeCalculations, myLogger) : driveEgressUtils[k];
                 	
                     // Calculate the pTap to aTap utility values
-            		float tapTapUtil[] = new float[numSkimSets];
-            		if(!storedDepartPeriodTapTapUtils.get(WTD).get(period).containsKey(storedDataObject.paTapKey(pTap, aTap))) {
+            		long tapPairKey = storedDataObject.tapPairKey(WTD, period, pTap, aTap);
+            		if(!storedDepartPeriodTapTapUtils.get(tapPairKey, tapTapUtil)) {
             			
             			//loop across number of skim sets  the pTap to aTap utility values 
             			for (int set=0; set<numSkimSets; set++) {
     	            		tapTapUtil[set] = calcUtilitiesForTapPair(walkDmu, period, pTap, aTap, set, pMgra, aMgra, writeCalculations, myLogger);
             			}
-            			storedDepartPeriodTapTapUtils.get(WTD).get(period).putIfAbsent(storedDataObject.paTapKey(pTap, aTap), tapTapUtil);
-            		} else {
-    	                tapTapUtil = storedDepartPeriodTapTapUtils.get(WTD).get(period).get(storedDataObject.paTapKey(pTap, aTap));
-                	}
+            			storedDepartPeriodTapTapUtils.put(tapPairKey, tapTapUtil);
+            		}
             		
             		//create path for each skim set
             		for (int set=0; set<numSkimSets; set++) {
@@ -115,6 +115,9 @@ public final class BuildAccessibilities
 
     private static final int            DISTRIBUTED_PACKET_SIZE                          = 1000;
 
+    // calculate accessibilities with AccessibilityKernel, rather than DcUtilitiesTaskJppf tasks, when acc.jppf = false
+    private static final String         PROPERTIES_ACC_KERNEL                            = "acc.without.jppf.kernel";
+
     private HashMap<Integer, Integer>   workerOccupValueSegmentIndexMap;
 
     private UtilityExpressionCalculator constantsUEC;
@@ -604,7 +607,15 @@ public final class BuildAccessibilities
         ArrayList<int[]> startEndIndexList = calcStartEndIndexList();
         
         if(! calcAccessWithJPPF ) {
-        	accessibilities = submitTasks( startEndIndexList, rbMap );
+            if ( rbMap.containsKey(PROPERTIES_ACC_KERNEL) && Util.getBooleanValueFromPropertyMap(rbMap, PROPERTIES_ACC_KERNEL) ) {
+                int numThreads = Util.getIntegerValueFromPropertyMap(rbMap, "acc.without.jppf.numThreads");
+                AccessibilityKernel kernel = new AccessibilityKernel( rbMap, mgraManager, hasSizeTerm, expConstants, sizeTerms,
+                        seek, dcUecFileName, dcDataPage, dcUtilityPage );
+                accessibilities = kernel.calculateAccessibilities( numThreads );
+            }
+            else {
+                accessibilities = submitTasks( startEndIndexList, rbMap );
+            }
         } else {
         	accessibilities = submitTasksJPPF( startEndIndexList, rbMap);
         }        
@@ -10,6 +10,7 @@ import java.util.Random;
 import java.util.concurrent.Callable;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.Tracer;
+import com.pb.common.math.MathUtil;
 import com.pb.mtctm2.abm.ctramp.CtrampDmuFactoryIf;
 import com.pb.mtctm2.abm.ctramp.HouseholdDataManagerIf;
 import com.pb.mtctm2.abm.ctramp.McLogsumsCalculator;
@@ -349,7 +350,7 @@ public class DcUtilitiesTaskJppf extends JPPFTask implements Callable<List<Objec
                 double[] walkTransitWalkUtilities = bestPathCalculator.getBestUtilities();
                 for (int k=0; k < walkTransitWalkUtilities.length; k++){
                     if ( walkTransitWalkUtilities[k] > MIN_EXP_FUNCTION_ARGUMENT )
-                        opWTExpUtility += Math.exp(walkTransitWalkUtilities[k]);
+                        opWTExpUtility += MathUtil.exp(walkTransitWalkUtilities[k]);
                 }
 
 
@@ -376,7 +377,7 @@ public class DcUtilitiesTaskJppf extends JPPFTask implements Callable<List<Objec
                 walkTransitWalkUtilities = bestPathCalculator.getBestUtilities();
                 for (int k=0; k < walkTransitWalkUtilities.length; k++){
                     if ( walkTransitWalkUtilities[k] > MIN_EXP_FUNCTION_ARGUMENT )
-                        pkWTExpUtility += Math.exp(walkTransitWalkUtilities[k]);
+                        pkWTExpUtility += MathUtil.exp(walkTransitWalkUtilities[k]);
                 }
 
                 double nmExpUtility = 0;
@@ -393,54 +394,54 @@ public class DcUtilitiesTaskJppf extends JPPFTask implements Callable<List<Objec
                 Arrays.fill(logsums, -999f);
 
                 // 0: OP SOV
-                logsums[0] = Math.log(opSovExpUtility);
+                logsums[0] = MathUtil.log(opSovExpUtility);
 
                 // 1: OP HOV
-                logsums[1] = Math.log(opHovExpUtility);
+                logsums[1] = MathUtil.log(opHovExpUtility);
 
                 // 2: Walk-Transit
-                if (opWTExpUtility > 0) logsums[2] = Math.log(opWTExpUtility);
+                if (opWTExpUtility > 0) logsums[2] = MathUtil.log(opWTExpUtility);
 
                 // 3: Non-Motorized
-                if (nmExpUtility > 0) logsums[3] = Math.log(nmExpUtility);
+                if (nmExpUtility > 0) logsums[3] = MathUtil.log(nmExpUtility);
 
                 // 4: SOVLS_0
-                logsums[4] = Math.log(opSovExpUtility * expConstants[0][0] + opWTExpUtility
+                logsums[4] = MathUtil.log(opSovExpUtility * expConstants[0][0] + opWTExpUtility
                         * expConstants[0][2] + nmExpUtility * expConstants[0][3]);
                 // 5: SOVLS_1
-                logsums[5] = Math.log(opSovExpUtility * expConstants[1][0] + opWTExpUtility
+                logsums[5] = MathUtil.log(opSovExpUtility * expConstants[1][0] + opWTExpUtility
                         * expConstants[1][2] + nmExpUtility * expConstants[1][3]);
 
                 // 6: SOVLS_2
-                logsums[6] = Math.log(opSovExpUtility * expConstants[2][0] + opWTExpUtility
+                logsums[6] = MathUtil.log(opSovExpUtility * expConstants[2][0] + opWTExpUtility
                         * expConstants[2][2] + nmExpUtility * expConstants[2][3]);
 
                 // 7: HOVLS_0_OP
-                logsums[7] = Math.log(opHovExpUtility * expConstants[0][1] + opWTExpUtility
+                logsums[7] = MathUtil.log(opHovExpUtility * expConstants[0][1] + opWTExpUtility
                         * expConstants[0][2] + nmExpUtility * expConstants[0][3]);
 
                 // 8: HOVLS_1_OP
-                logsums[8] = Math.log(opHovExpUtility * expConstants[1][1] + opWTExpUtility
+                logsums[8] = MathUtil.log(opHovExpUtility * expConstants[1][1] + opWTExpUtility
                         * expConstants[1][2] + nmExpUtility * expConstants[1][3]);
 
                 // 9: HOVLS_2_OP
-                logsums[9] = Math.log(opHovExpUtility * expConstants[2][1] + opWTExpUtility
+                logsums[9] = MathUtil.log(opHovExpUtility * expConstants[2][1] + opWTExpUtility
                         * expConstants[2][2] + nmExpUtility * expConstants[2][3]);
 
                 // 10: HOVLS_0_PK
-                logsums[10] = Math.log(pkHovExpUtility * expConstants[0][1] + pkWTExpUtility
+                logsums[10] = MathUtil.log(pkHovExpUtility * expConstants[0][1] + pkWTExpUtility
                         * expConstants[0][2] + nmExpUtility * expConstants[0][3]);
 
                 // 11: HOVLS_1_PK
-                logsums[11] = Math.log(pkHovExpUtility * expConstants[1][1] + pkWTExpUtility
+                logsums[11] = MathUtil.log(pkHovExpUtility * expConstants[1][1] + pkWTExpUtility
                         * expConstants[1][2] + nmExpUtility * expConstants[1][3]);
 
                 // 12: HOVLS_2_PK
-                logsums[12] = Math.log(pkHovExpUtility * expConstants[2][1] + pkWTExpUtility
+                logsums[12] = MathUtil.log(pkHovExpUtility * expConstants[2][1] + pkWTExpUtility
                         * expConstants[2][2] + nmExpUtility * expConstants[2][3]);
 
                 // 13: ALL
-                logsums[13] = Math.log(pkSovExpUtility * expConstants[3][0] + pkHovExpUtility
+                logsums[13] = MathUtil.log(pkSovExpUtility * expConstants[3][0] + pkHovExpUtility
                         * expConstants[3][1] + pkWTExpUtility * expConstants[3][2] + nmExpUtility
                         * expConstants[3][3]);
 
@@ -468,7 +469,7 @@ public class DcUtilitiesTaskJppf extends JPPFTask implements Callable<List<Objec
                     double logsum = aDmu.getLogsum(alt + 1);
                     double sizeTerm = aDmu.getSizeTerm(alt + 1);
 
-                    accessibilities[originMgras - 1][alt] += (Math.exp(logsum) * sizeTerm);
+                    accessibilities[originMgras - 1][alt] += (MathUtil.exp(logsum) * sizeTerm);
 
                     if (trace)
                     {
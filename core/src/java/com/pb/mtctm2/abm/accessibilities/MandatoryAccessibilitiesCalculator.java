@@ -2,6 +2,7 @@ package com.pb.mtctm2.abm.accessibilities;
 
 import com.pb.common.util.Tracer;
 import com.pb.common.calculator.IndexValues;
+import com.pb.common.math.MathUtil;
 import com.pb.mtctm2.abm.ctramp.MgraDataManager;
 import com.pb.mtctm2.abm.ctramp.TransitDriveAccessDMU;
 import com.pb.mtctm2.abm.ctramp.TransitWalkAccessDMU;
@@ -155,12 +156,12 @@ public class MandatoryAccessibilitiesCalculator
         // constrain auto sufficiency to 0,1,2
         autoSufficiency = Math.min(autoSufficiency, 2);
 
-        double utilSum = Math.exp(sovUtility) * expConstants[autoSufficiency][0]
-                       + Math.exp(hovUtility) * expConstants[autoSufficiency][1]
-                       + Math.exp(transitLogsum) * expConstants[autoSufficiency][2]
+        double utilSum = MathUtil.exp(sovUtility) * expConstants[autoSufficiency][0]
+                       + MathUtil.exp(hovUtility) * expConstants[autoSufficiency][1]
+                       + MathUtil.exp(transitLogsum) * expConstants[autoSufficiency][2]
                        + nmExpUtility * expConstants[autoSufficiency][3];
 
-        double logsum = Math.log(utilSum);
+        double logsum = MathUtil.log(utilSum);
 
         if (debug)
         {
@@ -243,8 +244,8 @@ public class MandatoryAccessibilitiesCalculator
         // constrain auto sufficiency to 0,1,2
         autoSufficiency = Math.min(autoSufficiency, 2);
 
-        double logsum = Math.exp(hovUtility) * expConstants[autoSufficiency][1]
-                      + Math.exp(transitLogsum) * expConstants[autoSufficiency][2]
+        double logsum = MathUtil.exp(hovUtility) * expConstants[autoSufficiency][1]
+                      + MathUtil.exp(transitLogsum) * expConstants[autoSufficiency][2]
                       + nmExpUtility * expConstants[autoSufficiency][3];
 
         // used for debugging
@@ -252,13 +253,13 @@ public class MandatoryAccessibilitiesCalculator
 
         if (studentType >= 2)
         {
-            logsum = logsum + Math.exp(sovUtility) * expConstants[autoSufficiency][0];
+            logsum = logsum + MathUtil.exp(sovUtility) * expConstants[autoSufficiency][0];
         }
 
         // used for debugging
         double logsum2 = logsum;
 
-        logsum = Math.log(logsum);
+        logsum = MathUtil.log(logsum);
 
         if (debug)
         {
@@ -388,12 +389,12 @@ public class MandatoryAccessibilitiesCalculator
             double[] walkTransitWalkUtilities = bestPathCalculator.getBestUtilities();
             for (int i=0; i < walkTransitWalkUtilities.length; i++){
                 if ( walkTransitWalkUtilities[i] > MIN_EXP_FUNCTION_ARGUMENT )
-                    sumWlkExpUtilities += Math.exp(walkTransitWalkUtilities[i]);
+                    sumWlkExpUtilities += MathUtil.exp(walkTransitWalkUtilities[i]);
             }
 
             // calculate  ln( sum of exponentiated utilities ) and set in accessibilities array and the dmu object
             if (sumWlkExpUtilities > 0)
-                accessibilities[7] = Math.log(sumWlkExpUtilities);
+                accessibilities[7] = MathUtil.log(sumWlkExpUtilities);
             else
                 accessibilities[7] = -999;
 
@@ -461,13 +462,13 @@ public class MandatoryAccessibilitiesCalculator
             double[] driveTransitWalkUtilities = bestPathCalculator.getBestUtilities();
             for (int i=0; i < driveTransitWalkUtilities.length; i++){
                 if ( driveTransitWalkUtilities[i] > MIN_EXP_FUNCTION_ARGUMENT )
-                    sumDrvExpUtilities += Math.exp(driveTransitWalkUtilities[i]);
+                    sumDrvExpUtilities += MathUtil.exp(driveTransitWalkUtilities[i]);
             }
 
 
             // calculate  ln( sum of exponentiated utilities ) and set in accessibilities array and the dmu object
             if (sumDrvExpUtilities > 0)
-                accessibilities[11] = Math.log(sumDrvExpUtilities);
+                accessibilities[11] = MathUtil.log(sumDrvExpUtilities);
             else
                 accessibilities[11] = -999;
 
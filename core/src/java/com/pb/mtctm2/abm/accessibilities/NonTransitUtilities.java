@@ -8,6 +8,7 @@ import java.rmi.RemoteException;
 import java.net.UnknownHostException;
 import com.pb.common.matrix.MatrixType;
 import com.pb.mtctm2.abm.ctramp.MatrixDataServer;
+import com.pb.mtctm2.abm.ctramp.MazMazSparseTable;
 import com.pb.mtctm2.abm.ctramp.MgraDataManager;
 import com.pb.mtctm2.abm.ctramp.Util;
 import com.pb.mtctm2.abm.ctramp.AutoUEC;
@@ -39,17 +40,19 @@ public class NonTransitUtilities
     private static final String[]        HOVPERIODS = {"OP", "PK"};
     private static final String[]        NMTPERIODS = {"OP"};
 
-    // store taz-taz exponentiated utilities (period, from taz, to taz)
-    private double[][][]                 sovExpUtilities;
-    private double[][][]                 hovExpUtilities;
-    private double[][][]                 nMotorExpUtilities;
+    // store taz-taz exponentiated utilities (period, from taz, to taz), as float to halve the memory
+    // used by the origin taz rows each object accumulates
+    private float[][][]                  sovExpUtilities;
+    private float[][][]                  hovExpUtilities;
+    private float[][][]                  nMotorExpUtilities;
 
     private double[] avgTazHourlyParkingCost;
     
 
-    // A HashMap of non-motorized utilities, period,oMgra,dMgra (where dMgra is
-    // ragged)
-    private HashMap<Integer, Double>[][] mgraNMotorExpUtilities;
+    // non-motorized utilities by period, oMgra, and position of dMgra in the row of oMgra
+    // in the mgra walk distance table (ragged, NaN where the utility is unavailable)
+    private double[][][]                 mgraNMotorExpUtilities;
+    private MazMazSparseTable            mgraWalkDistance;
 
     private TazDataManager               tazManager;
     private MgraDataManager              mgraManager;
@@ -73,10 +76,6 @@ public class NonTransitUtilities
     public NonTransitUtilities(HashMap<String, String> rbMap, double[][][] mySovExpUtilities, double[][][] myHovExpUtilities, double[][][] myNMotorExpUtilities)
     {
 
-        sovExpUtilities = mySovExpUtilities;
-        hovExpUtilities = myHovExpUtilities;
-        nMotorExpUtilities = myNMotorExpUtilities;
-        
         mgraManager = MgraDataManager.getInstance();
         tazManager = TazDataManager.getInstance(rbMap);
 
@@ -127,11 +126,12 @@ public class NonTransitUtilities
 
         
         
-        mgraNMotorExpUtilities = new HashMap[NMTPERIODS.length][maxMgra + 1];
+        mgraWalkDistance = mgraManager.getMgraWalkDistanceTable();
+        mgraNMotorExpUtilities = new double[NMTPERIODS.length][maxMgra + 1][];
 
-        sovExpUtilities = new double[SOVPERIODS.length][maxTaz + 1][];
-        hovExpUtilities = new double[HOVPERIODS.length][maxTaz + 1][];
-        nMotorExpUtilities = new double[NMTPERIODS.length][maxTaz + 1][];
+        sovExpUtilities = new float[SOVPERIODS.length][maxTaz + 1][];
+        hovExpUtilities = new float[HOVPERIODS.length][maxTaz + 1][];
+        nMotorExpUtilities = new float[NMTPERIODS.length][maxTaz + 1][];
 
         
         calculateAverageTazParkingCosts();
@@ -141,7 +141,7 @@ public class NonTransitUtilities
     /**
      * set the utilities values created by another object by calling buildUtilities()
      */
-    public void setAllUtilities(double[][][][] ntUtilities)
+    public void setAllUtilities(float[][][][] ntUtilities)
     {
         this.sovExpUtilities = ntUtilities[0];
         this.hovExpUtilities = ntUtilities[1];
@@ -154,9 +154,9 @@ public class NonTransitUtilities
      * @return array of 3 utilities arrays: sovExpUtilities, hovExpUtilities,
      *         nMotorExpUtilities
      */
-    public double[][][][] getAllUtilities()
+    public float[][][][] getAllUtilities()
     {
-        double[][][][] allUtilities = new double[3][][][];
+        float[][][][] allUtilities = new float[3][][][];
         allUtilities[0] = sovExpUtilities;
         allUtilities[1] = hovExpUtilities;
         allUtilities[2] = nMotorExpUtilities;
@@ -164,23 +164,24 @@ public class NonTransitUtilities
     }
 
     /**
-     * set the HashMap of non-motorized utilities, period,oMgra,dMgra (where dMgra is
-     * ragged)
+     * set the non-motorized utilities, period,oMgra,position of dMgra in the oMgra row
+     * of the mgra walk distance table (where dMgra is ragged)
      * 
      * @param mgraNMotorExpUtilities
      */
-    public void setNonMotorUtilsMap(HashMap<Integer, Double>[][] aMgraNMotorExpUtilities)
+    public void setNonMotorUtilsMap(double[][][] aMgraNMotorExpUtilities)
     {
         this.mgraNMotorExpUtilities = aMgraNMotorExpUtilities;
     }
 
     /**
-     * get the HashMap of non-motorized utilities, period,oMgra,dMgra (where dMgra is
-     * ragged) that was built by calling buildUtilities().
+     * get the non-motorized utilities, period,oMgra,position of dMgra in the oMgra row
+     * of the mgra walk distance table (where dMgra is ragged) that were built by calls
+     * to getNMotorExpUtility().
      * 
      * @return mgraNMotorExpUtilities
      */
-    public HashMap<Integer, Double>[][] getNonMotorUtilsMap()
+    public double[][][] getNonMotorUtilsMap()
     {
         return mgraNMotorExpUtilities;
     }
@@ -331,40 +332,60 @@ public class NonTransitUtilities
         if ( sovExpUtilities[period][iTaz] != null )
             return;
         
-        sovExpUtilities[period][iTaz] = new double[maxTaz+1];
-        hovExpUtilities[period][iTaz] = new double[maxTaz+1];
-        
+        sovExpUtilities[period][iTaz] = new float[maxTaz+1];
+        hovExpUtilities[period][iTaz] = new float[maxTaz+1];
+        calculateAutoExpUtilities( iTaz, period, sovExpUtilities[period][iTaz], hovExpUtilities[period][iTaz] );
+
+        // non-motorized utilities are only needed for off-peak period, so if period index == 1 (peak) no nead to calculate off-peak
+        if (nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz] == null ) {
+            nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz] = new float[maxTaz+1];
+            calculateNMotorExpUtilities( iTaz, nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz] );
+        }
+
+    }
+    
+    /**
+     * Calculate the SOV and HOV exponentiated utilities from an origin taz to all tazs
+     * for the period, without storing them in this object.
+     * 
+     * @param iTaz origin taz.
+     * @param period period index.
+     * @param sovRow array dimensioned to maxTaz+1 to hold the SOV exponentiated utilities.
+     * @param hovRow array dimensioned to maxTaz+1 to hold the HOV exponentiated utilities.
+     */
+    public void calculateAutoExpUtilities( int iTaz, int period, float[] sovRow, float[] hovRow ) {
+
         for (int i=0; i < tazManager.getTazs().length; ++i) {
             
         	int jTaz = tazManager.getTazs()[i];
             double sovUtility = sovUEC[period].calculateUtilitiesForTazPair(iTaz, jTaz, avgTazHourlyParkingCost[jTaz]);
             // exponentiate the SOV utility
-            if (sovUtility > -500)
-                sovExpUtilities[period][iTaz][jTaz] = Math.exp(sovUtility);
+            sovRow[jTaz] = sovUtility > -500 ? (float) Math.exp(sovUtility) : 0;
 
             double hovUtility = hovUEC[period].calculateUtilitiesForTazPair(iTaz, jTaz, avgTazHourlyParkingCost[jTaz]);
-            // exponentiate the SOV utility
-            if (hovUtility > -500)
-                hovExpUtilities[period][iTaz][jTaz] = Math.exp(hovUtility);
+            // exponentiate the HOV utility
+            hovRow[jTaz] = hovUtility > -500 ? (float) Math.exp(hovUtility) : 0;
 
         }
 
+    }
+    
+    /**
+     * Calculate the off-peak non-motorized exponentiated utilities from an origin taz
+     * to all tazs, without storing them in this object.
+     * 
+     * @param iTaz origin taz.
+     * @param nMotorRow array dimensioned to maxTaz+1 to hold the exponentiated utilities.
+     */
+    public void calculateNMotorExpUtilities( int iTaz, float[] nMotorRow ) {
 
-        // non-motorized utilities are only needed for off-peak period, so if period index == 1 (peak) no nead to calculate off-peak
-        if (nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz] == null ) {
-            
-            nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz] = new double[maxTaz+1];
+        for (int i=0; i < tazManager.getTazs().length; ++i) {
             
-            for (int i=0; i < tazManager.getTazs().length; ++i) {
-                
-            	int jTaz = tazManager.getTazs()[i];
-                double nmtUtility = nMotorUEC[OFFPEAK_PERIOD_INDEX].calculateUtilitiesForTazPair(iTaz, jTaz);
-                // exponentiate the SOV utility
-                if (nmtUtility > -500)
-                    nMotorExpUtilities[OFFPEAK_PERIOD_INDEX][iTaz][jTaz] = Math.exp(nmtUtility);
+        	int jTaz = tazManager.getTazs()[i];
+            double nmtUtility = nMotorUEC[OFFPEAK_PERIOD_INDEX].calculateUtilitiesForTazPair(iTaz, jTaz);
+            // exponentiate the non-motorized utility
+            nMotorRow[jTaz] = nmtUtility > -500 ? (float) Math.exp(nmtUtility) : 0;
 
-            }
-            
         }
 
     }
@@ -404,44 +425,59 @@ public class NonTransitUtilities
     }
     */
     public double getNMotorExpUtility(int iMgra, int jMgra, int period)
+    {
+
+        double expUtility = getMgraNMotorExpUtility( iMgra, jMgra, period );
+        if ( ! Double.isNaN( expUtility ) )
+            return expUtility;
+
+        // otherwise, get exponentiated utilities based on highway skim values for the taz pair associated with iMgra and jMgra.
+        int iTaz = mgraManager.getTaz(iMgra);
+        int jTaz = mgraManager.getTaz(jMgra);
+        return nMotorExpUtilities[period][iTaz][jTaz];
+
+    }
+    
+    /**
+     * Get the mgra-mgra non-motorized exponentiated utility for the mgra-pair and period,
+     * calculating the utilities for the mgras within walking distance of iMgra the first
+     * time they are needed.
+     * 
+     * @return the exponentiated utility, or NaN if jMgra is not within walking distance
+     *         of iMgra or has no utility.
+     */
+    public double getMgraNMotorExpUtility(int iMgra, int jMgra, int period)
     {
         
+        int start = mgraWalkDistance.getRowStart(iMgra);
+
         // if no utilities exist for period and origin mgra, try to compute them
         if ( mgraNMotorExpUtilities[period][iMgra] == null ) {
 
-            // get the mgras within walking distance of the iMgra
-            int[] dMgras = mgraManager.getMgrasWithinWalkDistanceFrom(iMgra);
+            // the mgras within walking distance of the iMgra
+            int end = mgraWalkDistance.getRowEnd(iMgra);
+            double[] expUtilities = new double[end - start];
 
-            if ( dMgras == null ) {
-                mgraNMotorExpUtilities[period][iMgra] = new HashMap<Integer, Double>( 0 );
+            // cycle through the destination mgras
+            for (int k = start; k < end; k++) {
+                // calculate utility for the specified mgra and period
+                double nmtUtility = nMotorUEC[period].calculateUtilitiesForMgraPair( iMgra, mgraWalkDistance.getColumnAt(k) );
+    
+                // exponentiate the utility
+                expUtilities[k - start] = nmtUtility > -500 ? Math.exp(nmtUtility) : Double.NaN;
             }
-            else {
-                mgraNMotorExpUtilities[period][iMgra] = new HashMap<Integer, Double>( dMgras.length );
 
-                // cycle through the destination mgras
-                for (int dMgra : dMgras) {
-                    // calculate utility for the specified mgra and period
-                    double nmtUtility = nMotorUEC[period].calculateUtilitiesForMgraPair( iMgra, dMgra );
-        
-                    // exponentiate the utility
-                    if (nmtUtility > -500)
-                        mgraNMotorExpUtilities[period][iMgra].put( dMgra, Math.exp(nmtUtility) );
-                }
-
-            }
+            mgraNMotorExpUtilities[period][iMgra] = expUtilities;
 
         }
 
 
-        // if jMgra is in the HashMap, return its utility value
-        if ( mgraNMotorExpUtilities[period][iMgra].containsKey( jMgra ) )
-            return mgraNMotorExpUtilities[period][iMgra].get( jMgra );
+        // if jMgra is within walking distance, return its utility value
+        int k = mgraWalkDistance.indexOf( iMgra, jMgra );
+        if ( k >= 0 )
+            return mgraNMotorExpUtilities[period][iMgra][k - start];
 
-        
-        // otherwise, get exponentiated utilities based on highway skim values for the taz pair associated with iMgra and jMgra.
-        int iTaz = mgraManager.getTaz(iMgra);
-        int jTaz = mgraManager.getTaz(jMgra);
-        return nMotorExpUtilities[period][iTaz][jTaz];
+        return Double.NaN;
 
     }
     
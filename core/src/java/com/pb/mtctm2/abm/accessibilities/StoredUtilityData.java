@@ -1,8 +1,9 @@
 package com.pb.mtctm2.abm.accessibilities;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.HashMap;
 
+import com.pb.mtctm2.abm.ctramp.MgraDataManager;
+import com.pb.mtctm2.abm.ctramp.TazDataManager;
 
 public class StoredUtilityData
 {
@@ -10,24 +11,23 @@ public class StoredUtilityData
     private static StoredUtilityData objInstance = null;
     public static final float		 default_utility = -999;
 
-    // these arrays are shared by multiple BestTransitPathCalculator objects in a distributed computing environment
-    private float[][] storedWalkAccessUtils;	// dim#1: MGRA id, dim#2: TAP id
-    private float[][] storedDriveAccessUtils; // dim#1: TAZ id, dim#2: TAP id
-    private float[][] storedWalkEgressUtils; 	// dim#1: TAP id, dim#2: MGRA id
-    private float[][] storedDriveEgressUtils; // dim#1: TAP id, dim#2: TAZ id
+    // access/egress utilities are shared by multiple BestTransitPathCalculator objects in a distributed computing environment,
+    // calculated for all zones when the first BestTransitPathCalculator is created
+    private AccessEgressUtilityTable accessEgressUtils;
     
-    // {0:WTW, 1:WTD, 2:DTW} -> TOD period number -> pTAP*100000+aTAP -> utility
-    private HashMap<Integer,HashMap<Integer,ConcurrentHashMap<Long,float[]>>> storedDepartPeriodTapTapUtils;
+    // {0:WTW, 1:WTD, 2:DTW} x TOD period x pTAP x aTAP -> utility for each skim set, key method tapPairKey below
+    private TapPairUtilityCache storedDepartPeriodTapTapUtils;
+    private int numPeriods;
        
     
     private StoredUtilityData(){
     }
     
-    public static synchronized StoredUtilityData getInstance( int maxMgra, int maxTap, int maxTaz, int[] accEgrSegments, int[] periods)
+    public static synchronized StoredUtilityData getInstance( int[] accEgrSegments, int[] periods, int numSkimSets, long maxTapPairs)
     {
         if (objInstance == null) {
             objInstance = new StoredUtilityData();
-            objInstance.setupStoredDataArrays( maxMgra, maxTap, maxTaz, accEgrSegments, periods);
+            objInstance.setupStoredDataArrays( accEgrSegments, periods, numSkimSets, maxTapPairs);
             return objInstance;
         }
         else {
@@ -35,59 +35,33 @@ public class StoredUtilityData
         }
     }    
     
-    private void setupStoredDataArrays( int maxMgra, int maxTap, int maxTaz, int[] accEgrSegments, int[] periods){        
-    	// dimension the arrays
-    	storedWalkAccessUtils = new float[maxMgra + 1][maxTap + 1];
-        storedDriveAccessUtils = new float[maxTaz + 1][maxTap + 1];
-        storedWalkEgressUtils = new float[maxTap + 1][maxMgra + 1];
-        storedDriveEgressUtils = new float[maxTap + 1][maxTaz + 1];
-        // assign default values to array elements
-        for (int i=0; i<=maxMgra; i++)
-        	for (int j=0; j<=maxTap; j++) {
-        		storedWalkAccessUtils[i][j] = default_utility;
-        		storedWalkEgressUtils[j][i] = default_utility;
-        	}
-        // assign default values to array elements
-        for (int i=0; i<=maxTaz; i++)
-        	for (int j=0; j<=maxTap; j++) {
-        		storedDriveAccessUtils[i][j] = default_utility;
-        		storedDriveEgressUtils[j][i] = default_utility;
-        	}
-        
-        //put into concurrent hashmap
-        storedDepartPeriodTapTapUtils = new HashMap<Integer,HashMap<Integer,ConcurrentHashMap<Long,float[]>>>();
-        for(int i=0; i<accEgrSegments.length; i++) {
-        	storedDepartPeriodTapTapUtils.put(accEgrSegments[i], new HashMap<Integer,ConcurrentHashMap<Long,float[]>>());
-        	for(int j=0; j<periods.length; j++) {
-        		HashMap<Integer,ConcurrentHashMap<Long,float[]>> hm = storedDepartPeriodTapTapUtils.get(accEgrSegments[i]);
-        		hm.put(periods[j], new ConcurrentHashMap<Long,float[]>()); //key method paTapKey below
-        	}
-    	}        
+    private void setupStoredDataArrays( int[] accEgrSegments, int[] periods, int numSkimSets, long maxTapPairs){        
+        //tap pair utilities for all access/egress segments and periods share one cache
+        numPeriods = periods.length;
+        storedDepartPeriodTapTapUtils = new TapPairUtilityCache(numSkimSets, maxTapPairs);
     }
     
-    public float[][] getStoredWalkAccessUtils() {
-        return storedWalkAccessUtils;
+    //build the access/egress utility table on the first call, later calls wait for it and return the same table
+    public synchronized AccessEgressUtilityTable getAccessEgressUtils( HashMap<String, String> rbMap, MgraDataManager mgraManager, TazDataManager tazManager ) {
+        if (accessEgressUtils == null)
+            accessEgressUtils = AccessEgressUtilityTable.build( rbMap, mgraManager, tazManager );
+        return accessEgressUtils;
     }
     
-    public float[][] getStoredDriveAccessUtils() {
-        return storedDriveAccessUtils;
-    }
-    
-    public float[][] getStoredWalkEgressUtils() {
-        return storedWalkEgressUtils;
-    }
-    
-    public float[][]getStoredDriveEgressUtils() {
-        return storedDriveEgressUtils;
+    public TapPairUtilityCache getStoredDepartPeriodTapTapUtils() {
+        return storedDepartPeriodTapTapUtils;
     }
     
-    public HashMap<Integer,HashMap<Integer,ConcurrentHashMap<Long,float[]>>> getStoredDepartPeriodTapTapUtils() {
-        return storedDepartPeriodTapTapUtils;
+    //hit, miss and size counts of the tap pair utility cache, or null if no instance has been created in this JVM
+    public static synchronized String getTapPairCacheStatistics() {
+        if (objInstance == null)
+            return null;
+        return objInstance.storedDepartPeriodTapTapUtils.toString();
     }
     
-    //create p to a hash key - up to 99,999 
-    public long paTapKey(int p, int a) {
-    	return(p * 100000 + a);
+    //create access/egress segment, period, p to a cache key - period is the 0-based period code
+    public long tapPairKey(int accEgr, int period, int p, int a) {
+    	return TapPairUtilityCache.key(accEgr * numPeriods + period, p, a);
     }
     
     //convert double array to float array
@@ -0,0 +1,237 @@
+package com.pb.mtctm2.abm.accessibilities;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache of TAP-pair utilities, one float per transit skim set, keyed
+ * by a positive long built by key(). The cache is split into lock striped
+ * segments, each an open addressing table holding the keys in a long[] and the
+ * utilities inline in a float[], so a lookup does not create any objects.
+ *
+ * The number of entries is capped. When a segment reaches its share of the cap
+ * it is emptied and the utilities in it are recalculated as they are requested.
+ */
+public class TapPairUtilityCache
+{
+
+    private static final int   NUM_SEGMENTS       = 256;
+    private static final int   SEGMENT_SHIFT      = 64 - 8;
+    private static final int   MIN_CAPACITY       = 1024;
+    private static final float LOAD_FACTOR        = 0.75f;
+
+    private static final long  EMPTY              = 0;
+
+    private final int          width;
+    private final Segment[]    segments;
+
+    private final AtomicLong   hits               = new AtomicLong();
+    private final AtomicLong   misses             = new AtomicLong();
+    private final AtomicLong   evictions          = new AtomicLong();
+
+    /**
+     * @param width number of utility values stored per TAP-pair (number of skim sets)
+     * @param maxEntries maximum number of TAP-pairs held by the cache
+     */
+    public TapPairUtilityCache(int width, long maxEntries)
+    {
+        this.width = width;
+
+        int maxSegmentEntries = (int) Math.min( Math.max( maxEntries / NUM_SEGMENTS, MIN_CAPACITY ), 1 << 24 );
+        int maxCapacity = MIN_CAPACITY;
+        while ( maxCapacity * LOAD_FACTOR < maxSegmentEntries )
+            maxCapacity <<= 1;
+
+        segments = new Segment[NUM_SEGMENTS];
+        for ( int i=0; i < NUM_SEGMENTS; i++ )
+            segments[i] = new Segment( maxSegmentEntries, maxCapacity );
+    }
+
+    /**
+     * Build a cache key for a TAP-pair.
+     *
+     * @param group index of the access/egress and period combination, 0 to 32766
+     * @param pTap production TAP, 0 to 2^24-1
+     * @param aTap attraction TAP, 0 to 2^24-1
+     */
+    public static long key(int group, int pTap, int aTap)
+    {
+        return ( (long) (group + 1) << 48 ) | ( (long) pTap << 24 ) | aTap;
+    }
+
+    /**
+     * Copy the utilities stored for a key into values.
+     *
+     * @return true if the key was found, false if values is unchanged
+     */
+    public boolean get(long key, float[] values)
+    {
+        long h = mix( key );
+        boolean found = segments[(int) (h >>> SEGMENT_SHIFT)].get( key, (int) h, values );
+        if ( found )
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        return found;
+    }
+
+    /**
+     * Store the first width elements of values for a key. An existing entry is
+     * replaced.
+     */
+    public void put(long key, float[] values)
+    {
+        if ( key == EMPTY )
+            throw new IllegalArgumentException( "tap pair cache key must not be " + EMPTY );
+        long h = mix( key );
+        segments[(int) (h >>> SEGMENT_SHIFT)].put( key, (int) h, values );
+    }
+
+    public void clear()
+    {
+        for ( Segment s : segments )
+            s.clear();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public long size()
+    {
+        long size = 0;
+        for ( Segment s : segments )
+            size += s.size();
+        return size;
+    }
+
+    public String toString()
+    {
+        long h = getHits();
+        long m = getMisses();
+        return String.format( "tap pair utility cache: size=%d, hits=%d, misses=%d, hit rate=%.1f%%, evictions=%d",
+                size(), h, m, ( h + m ) > 0 ? 100.0 * h / ( h + m ) : 0.0, getEvictions() );
+    }
+
+    private static long mix(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ ( h >>> 29 );
+    }
+
+
+    private final class Segment
+    {
+
+        private final int maxEntries;
+        private final int maxCapacity;
+
+        private long[]    keys;
+        private float[]   values;
+        private int       size;
+        private int       threshold;
+
+        Segment(int maxEntries, int maxCapacity)
+        {
+            this.maxEntries = maxEntries;
+            this.maxCapacity = maxCapacity;
+            allocate( MIN_CAPACITY );
+        }
+
+        private void allocate(int capacity)
+        {
+            keys = new long[capacity];
+            values = new float[capacity * width];
+            size = 0;
+            threshold = Math.min( (int) ( capacity * LOAD_FACTOR ), maxEntries );
+        }
+
+        synchronized boolean get(long key, int hash, float[] dest)
+        {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while ( true ) {
+                long k = keys[i];
+                if ( k == key ) {
+                    System.arraycopy( values, i * width, dest, 0, width );
+                    return true;
+                }
+                if ( k == EMPTY )
+                    return false;
+                i = ( i + 1 ) & mask;
+            }
+        }
+
+        synchronized void put(long key, int hash, float[] src)
+        {
+            if ( size >= threshold ) {
+                if ( keys.length < maxCapacity )
+                    resize( keys.length << 1 );
+                else {
+                    evictions.addAndGet( size );
+                    Arrays.fill( keys, EMPTY );
+                    size = 0;
+                }
+            }
+
+            int i = insertSlot( keys, key, hash );
+            if ( keys[i] == EMPTY ) {
+                keys[i] = key;
+                size++;
+            }
+            System.arraycopy( src, 0, values, i * width, width );
+        }
+
+        synchronized void clear()
+        {
+            Arrays.fill( keys, EMPTY );
+            size = 0;
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        private void resize(int capacity)
+        {
+            long[] oldKeys = keys;
+            float[] oldValues = values;
+            int oldSize = size;
+
+            allocate( capacity );
+
+            for ( int j=0; j < oldKeys.length; j++ ) {
+                long k = oldKeys[j];
+                if ( k == EMPTY )
+                    continue;
+                int i = insertSlot( keys, k, (int) mix( k ) );
+                keys[i] = k;
+                System.arraycopy( oldValues, j * width, values, i * width, width );
+            }
+            size = oldSize;
+        }
+
+        private int insertSlot(long[] table, long key, int hash)
+        {
+            int mask = table.length - 1;
+            int i = hash & mask;
+            while ( table[i] != EMPTY && table[i] != key )
+                i = ( i + 1 ) & mask;
+            return i;
+        }
+
+    }
+
+}
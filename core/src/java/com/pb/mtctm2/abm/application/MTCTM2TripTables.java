@@ -4,21 +4,30 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import com.pb.mtctm2.abm.ctramp.TapDataManager;
 import com.pb.mtctm2.abm.ctramp.TazDataManager;
 import com.pb.common.calculator.MatrixDataServerIf;
-import com.pb.common.datafile.OLD_CSVFileReader;
+import com.pb.common.datafile.MappedCSVFileReader;
+import com.pb.common.datafile.ColumnarFileReader;
 import com.pb.common.datafile.CSVFileWriter;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.matrix.Matrix;
 import com.pb.common.util.ResourceUtil;
 import com.pb.mtctm2.abm.ctramp.CtrampApplication;
+import com.pb.mtctm2.abm.ctramp.HouseholdDataWriter;
 import com.pb.mtctm2.abm.ctramp.MatrixDataServer;
 import com.pb.mtctm2.abm.ctramp.MatrixDataServerRmi;
 import com.pb.mtctm2.abm.ctramp.MgraDataManager;
@@ -71,6 +80,13 @@ public class MTCTM2TripTables {
     
     public MazSets mazSets;
     
+    //update kinds for the parked vehicle arrays, after the mode groups (auto, non-mot, tran, other)
+    private static final int CBD_VEHICLES = 4;
+    private static final int PNR_VEHICLES = 5;
+    
+    //number of trip records routed by one task
+    private static final int TRIPS_PER_SHARD = 100000;
+    
     public int numSkimSets;
     
     public MTCTM2TripTables(String resourceBundleName, int iteration, float sampleRate){
@@ -124,8 +140,9 @@ public class MTCTM2TripTables {
 		setSampleRate(sampleRate);
 		this.iteration = iteration; 
 		
-		//create mazSets
+		//create mazSets; the MAZ to MAZ auto matrices follow the TAZ auto matrices
 		mazSets = new MazSets();
+		mazSets.autoMatOffset = autoModes - 1;
 	}
 	
 	/**
@@ -212,13 +229,15 @@ public class MTCTM2TripTables {
 
 		//Open the individual trip file 
 		String indivTripFile = properties.getProperty("Results.IndivTripDataFile");
+		String indivTripColumnarFile = HouseholdDataWriter.formColumnarFileName(directory + indivTripFile, iteration);
 		indivTripFile = formFileName(directory + indivTripFile, iteration);		
-		indivTripData = openTripFile(indivTripFile);
+		indivTripData = openTripFile(indivTripFile, indivTripColumnarFile);
 		
 		//Open the joint trip file 
 		String jointTripFile = properties.getProperty("Results.JointTripDataFile");
+		String jointTripColumnarFile = HouseholdDataWriter.formColumnarFileName(directory + jointTripFile, iteration);
 		jointTripFile = formFileName(directory + jointTripFile, iteration);
-		jointTripData = openTripFile(jointTripFile);
+		jointTripData = openTripFile(jointTripFile, jointTripColumnarFile);
 
 	    // connect to matrix server
         connectToMatrixServer();
@@ -231,21 +250,10 @@ public class MTCTM2TripTables {
         writeTripFile(indivTripData, indivTripFile);
         writeTripFile(jointTripData, jointTripFile);
         
-        //Iterate through periods so that we don't have to keep
-		//trip tables for all periods in memory.
-		for(int i=0;i<numberOfPeriods;++i){
-			
-			//Initialize the matrices
-			initializeMatrices(modelStructure.getModelPeriodLabel(i));
-	
-			//process trips
-			processTrips(i, indivTripData);
-			processTrips(i, jointTripData);
-
-			//write matrices
-			writeTrips(i);
-	        
-		}
+        //Group the trips by period in one pass, then build and write the matrices
+		//one period at a time from that period's trips, so that each trip is routed
+		//once and we don't have to keep trip tables for all periods in memory.
+		aggregateTrips(new TableDataSet[] {indivTripData, jointTripData});
         
 		//write the vehicles by parking-constrained MGRA
 		String CBDFile = properties.getProperty("Results.CBDFile");
@@ -268,7 +276,7 @@ public class MTCTM2TripTables {
 	    TableDataSet tripData;
 	    
         try {
-        	OLD_CSVFileReader csvFile = new OLD_CSVFileReader();
+        	MappedCSVFileReader csvFile = new MappedCSVFileReader();
             tripData = csvFile.readFile(new File(fileName));
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -279,9 +287,111 @@ public class MTCTM2TripTables {
 	}
 	
 	/**
-	 * This is the main workhorse method in this class.  It iterates over records in the trip file.  
-	 * Attributes for the trip record are read, and the trip record is accumulated in the relevant
-	 * matrix.
+	 * Open a trip file from the columnar copy written by HouseholdDataWriter if it
+	 * exists and is at least as new as the CSV file, otherwise from the CSV file.
+	 * 
+	 * @fileName  The name of the CSV trip file
+	 * @columnarFileName  The name of the columnar trip file
+	 * @return The tabledataset
+	 */
+	private TableDataSet openTripFile(String fileName, String columnarFileName){
+		
+		File columnarFile = new File(columnarFileName);
+		File csvFile = new File(fileName);
+		if (!columnarFile.exists() || (csvFile.exists() && csvFile.lastModified() > columnarFile.lastModified()))
+			return openTripFile(fileName);
+		
+	    logger.info("Begin reading the data in file " + columnarFileName);
+	    TableDataSet tripData;
+	    
+        try {
+        	tripData = new ColumnarFileReader().readFile(columnarFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        
+        logger.info("End reading the data in file " + columnarFileName);
+        return tripData;
+	}
+	
+	/**
+	 * This is the main workhorse method in this class.  The trip records are first
+	 * grouped by the period they depart in, in one pass over the stop periods, and the
+	 * trip tables are then built one period at a time from that period's records only.
+	 * For each period the records are split into shards, which are routed in parallel
+	 * to the matrix cells and parked vehicle counts they add to (see routeTrips()), and
+	 * the shards' updates are added to the period's matrices in the original record
+	 * order, so totals are the same as adding the trips one by one.  At most two shards
+	 * per thread wait to be added, and the trip columns are read in place, so only the
+	 * current period's matrices, the record numbers by period and a few shards of
+	 * updates are held on top of the trip data.  The matrices are written on a
+	 * background thread while the next period is built.
+	 * 
+	 * @param tripData  The trip data files to process
+	 */
+	public void aggregateTrips(TableDataSet[] tripData){
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		
+		TripRecords[] records = new TripRecords[tripData.length];
+		for(int t=0;t<tripData.length;++t){
+			records[t] = new TripRecords(tripData[t]);
+			records[t].groupRowsByPeriod(numberOfPeriods);
+		}
+		
+		ExecutorService routeExecutor = Executors.newFixedThreadPool(numThreads);
+		ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+		try {
+		
+	        Future<?> previousWrite = null;
+			for(int i=0;i<numberOfPeriods;++i){
+				
+		        logger.info("Begin processing trips for period "+ i + " using " + numThreads + " threads");
+				initializeMatrices(modelStructure.getModelPeriodLabel(i));
+				final Matrix[][] periodMatrix = matrix;
+				final int period = i;
+				
+				LinkedList<Future<PeriodUpdates>> pending = new LinkedList<Future<PeriodUpdates>>();
+				for(final TripRecords tripRecords : records){
+					final int[] rows = tripRecords.rowsByPeriod[i];
+					for(int from = 0; from < rows.length; from += TRIPS_PER_SHARD){
+						final int shardFrom = from;
+						final int shardTo = Math.min(from + TRIPS_PER_SHARD, rows.length);
+						pending.add(routeExecutor.submit(new Callable<PeriodUpdates>() {
+							public PeriodUpdates call() {
+								return routeTrips(tripRecords, rows, shardFrom, shardTo, period);
+							}
+						}));
+						
+						while(pending.size() >= 2 * numThreads)
+							applyUpdates(getResult(pending.removeFirst()), periodMatrix);
+					}
+				}
+				while(!pending.isEmpty())
+					applyUpdates(getResult(pending.removeFirst()), periodMatrix);
+		        logger.info("End creating trip tables for period "+ i);
+
+				//only one period can wait to be written
+		        if(previousWrite != null)
+		        	getResult(previousWrite);
+				previousWrite = writeExecutor.submit(new Runnable() {
+					public void run() {
+						writeTrips(period, periodMatrix);
+					}
+				});
+			}
+	        if(previousWrite != null)
+	        	getResult(previousWrite);
+
+		}
+		finally {
+			routeExecutor.shutdownNow();
+			writeExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * Process the trips for one time period and accumulate them in the current matrices.
 	 * 
 	 * @param timePeriod  The time period to process
 	 * @param tripData  The trip data file to process
@@ -289,32 +399,44 @@ public class MTCTM2TripTables {
 	public void processTrips(int timePeriod, TableDataSet tripData){
 		
         logger.info("Begin processing trips for period "+ timePeriod);
+        TripRecords records = new TripRecords(tripData);
+        records.groupRowsByPeriod(numberOfPeriods);
+        int[] rows = records.rowsByPeriod[timePeriod];
+        applyUpdates(routeTrips(records, rows, 0, rows.length, timePeriod), matrix);
+        logger.info("End creating trip tables for period "+ timePeriod);
+	}
 
-        boolean jointTour = tripData.containsColumn("num_participants");
-        int participantsCol = 0;
-        if(jointTour){
-        	participantsCol = tripData.getColumnPosition("num_participants");
-        }
+	/**
+	 * Route the trip records rows[from] to rows[to - 1], which depart in a period, to
+	 * the matrix cells and parked vehicle counts they add to.
+	 *
+	 * @param tripData  The trip records to process
+	 * @param rows  The record numbers (1-based) of the period's trips
+	 * @param from  The first index in rows
+	 * @param to  The index in rows after the last
+	 * @param timePeriod  The time period the trips depart in
+	 * @return the updates for the period
+	 */
+	private PeriodUpdates routeTrips(TripRecords tripData, int[] rows, int from, int to, int timePeriod){
+		
+		PeriodUpdates periodUpdates = new PeriodUpdates(timePeriod, to - from + 16);
+		
+        boolean jointTour = tripData.participants > 0;
         
         //iterate through the trip data and save trips in arrays
-        for(int i = 1; i <= tripData.getRowCount(); ++i){
-        
-        	int departTime = (int) tripData.getValueAt(i,"stop_period");
-        	int period = SandagModelStructure.getModelPeriodIndex(departTime);
-            if(period!=timePeriod)
-            	continue;
+        for(int k = from; k < to; ++k){
+        	int r = rows[k];
             
-        	int originMGRA = (int) tripData.getValueAt(i, "orig_mgra");
-        	int destinationMGRA = (int) tripData.getValueAt(i, "dest_mgra");
-        	int tripMode = (int) tripData.getValueAt(i,"trip_mode");
+        	int originMGRA = tripData.getInt(r, tripData.origMgra);
+        	int destinationMGRA = tripData.getInt(r, tripData.destMgra);
+        	int tripMode = tripData.getInt(r, tripData.tripMode);
         	
         	int originTAZ = mgraManager.getTaz(originMGRA);
         	int destinationTAZ = mgraManager.getTaz(destinationMGRA);
-			int inbound = (int) tripData.getValueAt(i,"inbound");
+			int inbound = tripData.getInt(r, tripData.inbound);
 			
 			//get trip distance for taz/maz level matrix decision
-			float tripdist = (int) tripData.getValueAt(i,"TRIP_DISTANCE");
-
+			float tripdist = (int) tripData.data.getValueAt(r, tripData.tripDistance);
         	//transit trip - get boarding and alighting tap
         	int boardTap=0;
         	int alightTap=0;
@@ -323,11 +445,11 @@ public class MTCTM2TripTables {
         	int set=0;
         	
         	if(modelStructure.getTourModeIsWalkTransit(tripMode)||modelStructure.getTourModeIsDriveTransit(tripMode)){
-        		boardTap=(int) tripData.getValueAt(i,"trip_board_tap");
-        		alightTap = (int) tripData.getValueAt(i,"trip_alight_tap");
-        		set = (int) tripData.getValueAt(i,"set");
+        		boardTap = tripData.getInt(r, tripData.boardTap);
+        		alightTap = tripData.getInt(r, tripData.alightTap);
+        		set = tripData.getInt(r, tripData.set);
         	}else{
-        		parkingMGRA = (int) tripData.getValueAt(i,"parking_mgra");
+        		parkingMGRA = tripData.getInt(r, tripData.parkingMgra);
             }
         	
         	//scale individual person trips by occupancy for vehicle trips (auto modes only)
@@ -336,7 +458,7 @@ public class MTCTM2TripTables {
         	if(modelStructure.getTourModeIsS2(tripMode) && !jointTour){
         		vehicleTrips = 0.5f;
         	}else if(modelStructure.getTourModeIsS3(tripMode)  && !jointTour){
-            	String tourPurpose = tripData.getStringValueAt(i, "tour_purpose");
+            	String tourPurpose = tripData.getTourPurpose(r);
             	tourPurpose = tourPurpose.replace(" ","");
             	tourPurpose = tourPurpose.replace("-", "");
         		float occ = averageOcc3Plus.get(tourPurpose);
@@ -346,7 +468,7 @@ public class MTCTM2TripTables {
         	//calculate person trips for all other modes
         	float personTrips=1;
         	if(jointTour){
-        		personTrips = (int) tripData.getValueAt(i, participantsCol);
+        		personTrips = tripData.getInt(r, tripData.participants);
         	}
         	
         	//apply sample rate
@@ -363,7 +485,7 @@ public class MTCTM2TripTables {
         			parkingTaz = mgraManager.getTaz(parkingMGRA);
         			destinationTAZ = parkingTaz;
         			destinationMGRA = parkingMGRA; //update dest maz as well for maz to maz assignment if needed
-        			CBDVehicles[parkingMGRA][period] = CBDVehicles[parkingMGRA][period] + vehicleTrips;
+        			periodUpdates.add(CBD_VEHICLES, 0, parkingMGRA, 0, vehicleTrips);
         		}
         		
         		//is auto trip maz level or taz level
@@ -372,18 +494,15 @@ public class MTCTM2TripTables {
         			int mazSet = mazSets.getZoneSet(originMGRA, destinationMGRA);
         			int omaz = mazSets.getNewZoneSetNum(originMGRA);
         			int dmaz = mazSets.getNewZoneSetNum(destinationMGRA);
-        			float value = matrix[mode][mazSets.autoMatOffset + mazSet].getValueAt(omaz, dmaz);
-            		matrix[mode][mazSets.autoMatOffset + mazSet].setValueAt(omaz, dmaz, (value + vehicleTrips));
+        			periodUpdates.add(mode, mazSets.autoMatOffset + mazSet, omaz, dmaz, vehicleTrips);
         		
         		} else {        
         			//taz level
-        			float value = matrix[mode][mat].getValueAt(originTAZ, destinationTAZ);
-            		matrix[mode][mat].setValueAt(originTAZ, destinationTAZ, (value + vehicleTrips));
+        			periodUpdates.add(mode, mat, originTAZ, destinationTAZ, vehicleTrips);
         		}
         		
         	} else if (mode==1){
-        		float value = matrix[mode][mat].getValueAt(originTAZ, destinationTAZ);
-        		matrix[mode][mat].setValueAt(originTAZ, destinationTAZ, (value + personTrips));
+        		periodUpdates.add(mode, mat, originTAZ, destinationTAZ, personTrips);
         	
         	} else if (mode==2){
         		
@@ -392,8 +511,7 @@ public class MTCTM2TripTables {
         		
         		//store transit trips in matrices
         		mat = (matrixIndex[tripMode]*numSkimSets)+set;
-        		float value = matrix[mode][mat].getValueAt(boardTap, alightTap);
-        		matrix[mode][mat].setValueAt(boardTap, alightTap, (value + personTrips));
+        		periodUpdates.add(mode, mat, boardTap, alightTap, personTrips);
 
         		//Store PNR transit trips in SOV free mode skim (mode 0 mat 0)
         		if(modelStructure.getTourModeIsDriveTransit(tripMode)){
@@ -401,26 +519,58 @@ public class MTCTM2TripTables {
         			// add the vehicle trip portion to the trip table
     				if(inbound==0){ //from origin to lot (boarding tap)
         				int PNRTAZ = tapManager.getTazForTap(boardTap);
-    					value = matrix[0][0].getValueAt(originTAZ, PNRTAZ);
-    					matrix[0][0].setValueAt(originTAZ,PNRTAZ,(value+vehicleTrips));
+        				periodUpdates.add(0, 0, originTAZ, PNRTAZ, vehicleTrips);
     					
     					//and increment up the array of parked vehicles at the lot
-    					++PNRVehicles[boardTap][period];
+        				periodUpdates.add(PNR_VEHICLES, 0, boardTap, 0, 1);
         					
     				}else{  // from lot (alighting tap) to destination 
         				int PNRTAZ = tapManager.getTazForTap(alightTap);
-    					value = matrix[0][0].getValueAt(PNRTAZ, destinationTAZ);
-    					matrix[0][0].setValueAt(PNRTAZ, destinationTAZ,(value+vehicleTrips));
+        				periodUpdates.add(0, 0, PNRTAZ, destinationTAZ, vehicleTrips);
     				}
        			
         		}
         	
         	} else {
-        		float value = matrix[mode][mat].getValueAt(originTAZ, destinationTAZ);
-        		matrix[mode][mat].setValueAt(originTAZ, destinationTAZ, (value + personTrips));
+        		periodUpdates.add(mode, mat, originTAZ, destinationTAZ, personTrips);
     		}
         }
-        logger.info("End creating trip tables for period "+ timePeriod);
+        
+        return periodUpdates;
+	}
+	
+	/**
+	 * Add the updates for a period to the period's matrices and the parked vehicle arrays.
+	 */
+	private void applyUpdates(PeriodUpdates updates, Matrix[][] periodMatrix){
+		
+		int period = updates.period;
+		for(int k=0;k<updates.size;++k){
+			int mode = updates.mode[k];
+			int i = updates.row[k];
+			int j = updates.column[k];
+			float trips = updates.value[k];
+			
+			if(mode == CBD_VEHICLES){
+				CBDVehicles[i][period] = CBDVehicles[i][period] + trips;
+			}else if(mode == PNR_VEHICLES){
+				++PNRVehicles[i][period];
+			}else{
+				Matrix m = periodMatrix[mode][updates.matrix[k]];
+				m.setValueAt(i, j, m.getValueAt(i, j) + trips);
+			}
+		}
+	}
+	
+	private static <T> T getResult(Future<T> future){
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
 	}
 	
 	/**
@@ -431,6 +581,16 @@ public class MTCTM2TripTables {
 	 * period time string to append to each trip table matrix file
 	 */
 	public void writeTrips(int period){
+		writeTrips(period, matrix);
+	}
+	
+	/**
+	 * Write the given trip tables for all modes for the given time period.
+	 * 
+	 * @param period  Time period
+	 * @param periodMatrix  Trip tables for the period, indexed by mode group and mode
+	 */
+	public void writeTrips(int period, Matrix[][] periodMatrix){
 		
 		String per = modelStructure.getModelPeriodLabel(period);
 		String end = "_" + per;
@@ -442,7 +602,7 @@ public class MTCTM2TripTables {
 		fileName[3] = directory + properties.getProperty("Results.OthrTripMatrix") + end; 
 		
 		for(int i=0;i<fileName.length;++i) {
-			writeMatricesToFile(fileName[i], matrix[i]);
+			writeMatricesToFile(fileName[i], periodMatrix[i]);
 		}
  	}
 	
@@ -642,39 +802,146 @@ public class MTCTM2TripTables {
 		
 		//columns to add: trip_time, trip_distance, trip_cost
 		int rowCount = table.getRowCount();
-        float[] tripTime = new float[rowCount];
-        float[] tripDistance = new float[rowCount];
-        float[] tripCost = new float[rowCount];
-        int[] fullMode = new int[rowCount];
+        int[] inboundColumn = table.getColumnAsInt("inbound");
+        boolean[] inbound = new boolean[rowCount];
+        for (int i = 0; i < rowCount; i++)
+            inbound[i] = inboundColumn[i] == 1;
         
         //setup skim builder class
         SkimBuilder skimBuilder = new SkimBuilder(properties);
         
-        //loop through trips and get trip attributes
-        for (int i = 0; i < rowCount; i++) {
-            int row = i+1;
-            
-            SkimBuilder.TripAttributes attributes = skimBuilder.getTripAttributes(
-                    (int) table.getValueAt(row,"orig_mgra"),
-                    (int) table.getValueAt(row,"dest_mgra"),
-                    (int) table.getValueAt(row,"trip_mode"),
-                    (int) table.getValueAt(row,"trip_board_tap"),
-                    (int) table.getValueAt(row,"trip_alight_tap"),
-                    (int) table.getValueAt(row,"stop_period"),
-                    ((int) table.getValueAt(row,"inbound"))==1,
-                    (int) table.getValueAt(row,"set"));            
-            
-            tripTime[i] = attributes.getTripTime();
-            tripDistance[i] = attributes.getTripDistance();
-            tripCost[i] = attributes.getTripCost();
-            fullMode[i] = attributes.getFullMode();
-        }
+        //get trip attributes for all trips, solving the skims once for each unique origin, destination, period and mode
+        SkimBuilder.TripAttributeColumns attributes = skimBuilder.getTripAttributes(
+                table.getColumnAsInt("orig_mgra"),
+                table.getColumnAsInt("dest_mgra"),
+                table.getColumnAsInt("trip_mode"),
+                table.getColumnAsInt("trip_board_tap"),
+                table.getColumnAsInt("trip_alight_tap"),
+                table.getColumnAsInt("stop_period"),
+                inbound,
+                table.getColumnAsInt("set"),
+                Runtime.getRuntime().availableProcessors());
         
         //append data
-        table.appendColumn(tripTime,"TRIP_TIME");
-        table.appendColumn(tripDistance,"TRIP_DISTANCE");
-        table.appendColumn(tripCost,"TRIP_COST");
-        table.appendColumn(fullMode,"FULL_MODE");
+        table.appendColumn(attributes.getTripTime(),"TRIP_TIME");
+        table.appendColumn(attributes.getTripDistance(),"TRIP_DISTANCE");
+        table.appendColumn(attributes.getTripCost(),"TRIP_COST");
+        table.appendColumn(attributes.getFullMode(),"FULL_MODE");
+	}
+	
+	/**
+	 * The positions of the trip file columns used to build the trip tables.  The values
+	 * are read from the trip data in place rather than copied.
+	 */
+	private static class TripRecords {
+		
+		final TableDataSet data;
+		final int stopPeriod;
+		final int origMgra;
+		final int destMgra;
+		final int tripMode;
+		final int inbound;
+		final int tripDistance;
+		final int boardTap;
+		final int alightTap;
+		final int set;
+		final int parkingMgra;
+		final int participants; // 0 for individual trips
+		final int purposeColumn;
+		
+		// record numbers by model period, set by groupRowsByPeriod()
+		int[][] rowsByPeriod;
+		
+		TripRecords(TableDataSet data) {
+			this.data = data;
+			stopPeriod = data.checkColumnPosition("stop_period");
+			origMgra = data.checkColumnPosition("orig_mgra");
+			destMgra = data.checkColumnPosition("dest_mgra");
+			tripMode = data.checkColumnPosition("trip_mode");
+			inbound = data.checkColumnPosition("inbound");
+			tripDistance = data.checkColumnPosition("TRIP_DISTANCE");
+			boardTap = data.checkColumnPosition("trip_board_tap");
+			alightTap = data.checkColumnPosition("trip_alight_tap");
+			set = data.checkColumnPosition("set");
+			parkingMgra = data.checkColumnPosition("parking_mgra");
+			participants = data.containsColumn("num_participants") ? data.getColumnPosition("num_participants") : 0;
+			purposeColumn = data.getColumnPosition("tour_purpose");
+		}
+		
+		int getInt(int row, int column) {
+			return (int) data.getValueAt(row, column);
+		}
+		
+		String getTourPurpose(int row) {
+			return data.getStringValueAt(row, purposeColumn);
+		}
+		
+		/**
+		 * Group the record numbers (1-based) by the model period each trip departs in,
+		 * in record order, reading the stop periods once.  Trips outside the model
+		 * periods are left out, as they are in no trip table.
+		 */
+		void groupRowsByPeriod(int numberOfPeriods) {
+			int rowCount = data.getRowCount();
+			int[] periods = new int[rowCount + 1];
+			int[] counts = new int[numberOfPeriods];
+			for(int r = 1; r <= rowCount; ++r) {
+				int period = SandagModelStructure.getModelPeriodIndex(getInt(r, stopPeriod));
+				periods[r] = period;
+				if(period >= 0 && period < numberOfPeriods)
+					++counts[period];
+			}
+			
+			rowsByPeriod = new int[numberOfPeriods][];
+			for(int p = 0; p < numberOfPeriods; ++p)
+				rowsByPeriod[p] = new int[counts[p]];
+			int[] next = new int[numberOfPeriods];
+			for(int r = 1; r <= rowCount; ++r) {
+				int period = periods[r];
+				if(period >= 0 && period < numberOfPeriods)
+					rowsByPeriod[period][next[period]++] = r;
+			}
+		}
+	}
+	
+	/**
+	 * Trip table cell and parked vehicle updates for one period, in trip record order.
+	 */
+	private static class PeriodUpdates {
+		
+		final int period;
+		int size;
+		int[] mode;
+		int[] matrix;
+		int[] row;
+		int[] column;
+		float[] value;
+		
+		PeriodUpdates(int period, int capacity) {
+			this.period = period;
+			mode = new int[capacity];
+			matrix = new int[capacity];
+			row = new int[capacity];
+			column = new int[capacity];
+			value = new float[capacity];
+		}
+		
+		void add(int mode, int matrix, int row, int column, float value) {
+			if(size == this.mode.length) {
+				int capacity = size + (size >> 1) + 16;
+				this.mode = Arrays.copyOf(this.mode, capacity);
+				this.matrix = Arrays.copyOf(this.matrix, capacity);
+				this.row = Arrays.copyOf(this.row, capacity);
+				this.column = Arrays.copyOf(this.column, capacity);
+				this.value = Arrays.copyOf(this.value, capacity);
+			}
+			this.mode[size] = mode;
+			this.matrix[size] = matrix;
+			this.row[size] = row;
+			this.column[size] = column;
+			this.value[size] = value;
+			size++;
+		}
 	}
 	
 	public class MazSets implements Serializable
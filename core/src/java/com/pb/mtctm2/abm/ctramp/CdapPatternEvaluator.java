@@ -0,0 +1,280 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.Serializable;
+import org.apache.log4j.Logger;
+import com.pb.common.math.MathUtil;
+import com.pb.common.model.ModelException;
+
+/**
+ * Holds the activity pattern alternatives of the CDAP model for one household size
+ * in flat arrays, and applies the logit choice among them.
+ *
+ * A pattern is identified by a base-3 code, where digit i (least significant first)
+ * is the activity index of person i. Every pattern has a "0" alternative, and a
+ * pattern with two or more persons leaving home is followed by a "j" alternative
+ * which also receives the joint tour utility. This is the order and naming of the
+ * alternatives in the LogitModel objects previously built for each household size,
+ * and the utilities, probabilities and Monte Carlo selection are calculated exactly
+ * as LogitModel did, so the same random number gives the same choice.
+ *
+ * Utilities are accumulated into the pattern arrays by the add methods, in the
+ * order the utility segments are calculated, then choose() is called. clear()
+ * resets the object for the next household.
+ */
+public class CdapPatternEvaluator
+        implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    // utilities below this value are treated as unavailable, as in LogitModel.getUtility()
+    private static final double UNAVAILABLE_UTILITY = -400;
+
+    private final int           hhSize;
+    private final int           numPatterns;
+
+    // activity index by [pattern][person]
+    private final int[][]       patternActivities;
+
+    // index of the "j" alternative by pattern, -1 if the pattern has none
+    private final int[]         jointAlternative;
+
+    private final int[]         alternativePattern;
+    private final String[]      alternativeNames;
+
+    private final double[]      patternUtilities;
+    private final double[]      jointUtilities;
+    private final double[]      alternativeUtilities;
+    private final double[]      expUtilities;
+    private final double[]      probabilities;
+
+    /**
+     * @param hhSize number of persons in the coordinated choice
+     * @param activityNames one character name for each activity; the last one is
+     *            the at home activity
+     */
+    public CdapPatternEvaluator(int hhSize, String[] activityNames)
+    {
+        this.hhSize = hhSize;
+
+        int numActivities = activityNames.length;
+        int homeActivity = numActivities - 1;
+
+        int n = 1;
+        for (int i = 0; i < hhSize; i++)
+            n *= numActivities;
+        numPatterns = n;
+
+        patternActivities = new int[numPatterns][hhSize];
+        jointAlternative = new int[numPatterns];
+
+        int numAlternatives = 0;
+        for (int p = 0; p < numPatterns; p++)
+        {
+            int outOfHome = 0;
+            int code = p;
+            for (int i = 0; i < hhSize; i++)
+            {
+                patternActivities[p][i] = code % numActivities;
+                code /= numActivities;
+                if (patternActivities[p][i] != homeActivity) outOfHome++;
+            }
+            numAlternatives++;
+            jointAlternative[p] = outOfHome < 2 ? -1 : numAlternatives++;
+        }
+
+        alternativePattern = new int[numAlternatives];
+        alternativeNames = new String[numAlternatives];
+        int a = 0;
+        for (int p = 0; p < numPatterns; p++)
+        {
+            StringBuilder name = new StringBuilder(hhSize + 1);
+            for (int i = 0; i < hhSize; i++)
+                name.append(activityNames[patternActivities[p][i]]);
+
+            alternativePattern[a] = p;
+            alternativeNames[a++] = name + "0";
+            if (jointAlternative[p] >= 0)
+            {
+                alternativePattern[a] = p;
+                alternativeNames[a++] = name + "j";
+            }
+        }
+
+        patternUtilities = new double[numPatterns];
+        jointUtilities = new double[numPatterns];
+        alternativeUtilities = new double[numAlternatives];
+        expUtilities = new double[numAlternatives];
+        probabilities = new double[numAlternatives];
+    }
+
+    public int getHhSize()
+    {
+        return hhSize;
+    }
+
+    public int getNumberOfPatterns()
+    {
+        return numPatterns;
+    }
+
+    public int getNumberOfAlternatives()
+    {
+        return alternativeNames.length;
+    }
+
+    public String getAlternativeName(int alt)
+    {
+        return alternativeNames[alt];
+    }
+
+    /**
+     * @return the activity index of person (0-based) in pattern
+     */
+    public int getActivity(int pattern, int person)
+    {
+        return patternActivities[pattern][person];
+    }
+
+    /**
+     * @return the index of the joint tour alternative for the pattern, or -1 if
+     *         fewer than two persons leave home in the pattern.
+     */
+    public int getJointAlternative(int pattern)
+    {
+        return jointAlternative[pattern];
+    }
+
+    public void clear()
+    {
+        for (int p = 0; p < numPatterns; p++)
+        {
+            patternUtilities[p] = 0.0;
+            jointUtilities[p] = 0.0;
+        }
+    }
+
+    /**
+     * Add the utility of each activity for person a to the patterns in which a has
+     * that activity.
+     */
+    public void addPersonUtilities(int a, double[] utilities)
+    {
+        for (int p = 0; p < numPatterns; p++)
+            patternUtilities[p] += utilities[patternActivities[p][a]];
+    }
+
+    /**
+     * Add the utility of each activity to the patterns in which persons a and b
+     * both have that activity.
+     */
+    public void addPairUtilities(int a, int b, double[] utilities)
+    {
+        for (int p = 0; p < numPatterns; p++)
+        {
+            int[] activities = patternActivities[p];
+            if (activities[a] == activities[b]) patternUtilities[p] += utilities[activities[a]];
+        }
+    }
+
+    /**
+     * Add the utility of each activity to the patterns in which persons a, b and c
+     * all have that activity.
+     */
+    public void addTripleUtilities(int a, int b, int c, double[] utilities)
+    {
+        for (int p = 0; p < numPatterns; p++)
+        {
+            int[] activities = patternActivities[p];
+            if (activities[a] == activities[b] && activities[a] == activities[c])
+                patternUtilities[p] += utilities[activities[a]];
+        }
+    }
+
+    /**
+     * Add the utility of each activity to the pattern in which every person has
+     * that activity.
+     */
+    public void addAllMemberUtilities(double[] utilities)
+    {
+        for (int p = 0; p < numPatterns; p++)
+        {
+            int[] activities = patternActivities[p];
+            boolean samePattern = true;
+            for (int i = 1; i < hhSize; i++)
+            {
+                if (activities[i] != activities[0])
+                {
+                    samePattern = false;
+                    break;
+                }
+            }
+            if (samePattern) patternUtilities[p] += utilities[activities[0]];
+        }
+    }
+
+    /**
+     * Set the joint tour utility added to the "j" alternative of the pattern.
+     */
+    public void setJointUtility(int pattern, double utility)
+    {
+        jointUtilities[pattern] = utility;
+    }
+
+    /**
+     * Calculate the alternative probabilities and select an alternative.
+     *
+     * @return the chosen alternative index, or -1 if no alternative is available.
+     */
+    public int choose(double randomNumber)
+    {
+        double sum = 0;
+        for (int a = 0; a < alternativeUtilities.length; a++)
+        {
+            int p = alternativePattern[a];
+            double utility = patternUtilities[p];
+            if (jointAlternative[p] == a) utility += jointUtilities[p];
+            alternativeUtilities[a] = utility;
+
+            expUtilities[a] = utility < UNAVAILABLE_UTILITY ? 0.0 : MathUtil.exp(utility);
+            sum += expUtilities[a];
+        }
+
+        if (Double.isNaN(sum)) throw new ModelException(ModelException.INVALID_UTILITY);
+
+        double cumProbability = 0;
+        int chosen = -1;
+        for (int a = 0; a < probabilities.length; a++)
+        {
+            probabilities[a] = (expUtilities[a] > 0 && sum > 0) ? expUtilities[a] / sum : 0;
+            if (probabilities[a] == 0) continue;
+
+            cumProbability += probabilities[a];
+            if (chosen < 0 && randomNumber <= cumProbability) chosen = a;
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Log the utilities and probabilities of the alternatives from the last call to
+     * choose().
+     */
+    public void logAlternatives(Logger logger)
+    {
+        logger.info("");
+        logger.info(String.format("%-4s %-20s %15s %15s %15s %15s", "Alt", "Alternative Name", "Utility",
+                "ExpUtility", "Probability", "Cum Probability"));
+        logger.info("--------------------------------------------------------------------------------------------");
+
+        double cumProbability = 0;
+        for (int a = 0; a < alternativeNames.length; a++)
+        {
+            cumProbability += probabilities[a];
+            logger.info(String.format("%-4d %-20s %15.8f %15.8f %15.8f %15.8f", (a + 1), alternativeNames[a],
+                    alternativeUtilities[a], expUtilities[a], probabilities[a], cumProbability));
+        }
+        logger.info("");
+    }
+
+}
@@ -7,7 +7,6 @@ package com.pb.mtctm2.abm.ctramp;
  */
 import com.pb.common.calculator.IndexValues;
 import com.pb.common.calculator.VariableTable;
-import com.pb.common.newmodel.Alternative;
 import com.pb.common.newmodel.ConcreteAlternative;
 import com.pb.common.newmodel.LogitModel;
 import com.pb.common.newmodel.UtilityExpressionCalculator;
@@ -40,6 +39,10 @@ public class ChoiceModelApplication
     private UtilityExpressionCalculator uec                  = null;
     private LogitModel                  root                 = null;
 
+    // flat form of the root logit model used to calculate logsums, probabilities and choices;
+    // the LogitModel objects are only updated when they are requested
+    private NestedLogitEvaluator        evaluator            = null;
+
     // the rootLogsum is calculated when utilities are exponentiated
     private double                      rootLogsum           = 0.0;
     private int                         availabilityCount    = 0;
@@ -129,6 +132,8 @@ public class ChoiceModelApplication
             root.addAlternative(alts[i]);
         }
 
+        evaluator = new NestedLogitEvaluator(root, numberOfAlternatives);
+
     }
 
     /**
@@ -159,6 +164,7 @@ public class ChoiceModelApplication
 
         int level = allocation.length - 1;
         root = buildNestedLogitModel(level, allocation, nestingCoefficients, dispersionParameters);
+        evaluator = new NestedLogitEvaluator(root, numberOfAlternatives);
 
     }
 
@@ -297,24 +303,19 @@ public class ChoiceModelApplication
 
         // set utility for each alternative
         availabilityCount = 0;
-        for (int a = 0; a < alts.length; a++)
+        for (int a = 0; a < numberOfAlternatives; a++)
         {
-            alts[a].setAvailability(altsAvailable[a + 1]);
+            boolean available = altsAvailable[a + 1];
             if (altsSample[a + 1] == 1 && altsAvailable[a + 1])
-                alts[a].setAvailability((utilities[a] > -299.0));
-            alts[a].setUtility(utilities[a]);
+                available = utilities[a] > -299.0;
+            evaluator.setAlternative(a, utilities[a], available);
             if (altsSample[a + 1] == 1 && altsAvailable[a + 1] && utilities[a] > -299.0)
                 availabilityCount++;
         }
 
-        root.setAvailability();
-
-        // call root.getUtility() to calculate exponentiated utilties. The logit
-        // model logsum is returned.
-        rootLogsum = root.getUtility();
-
-        // calculate logit probabilities
-        root.calculateProbabilities();
+        // calculate exponentiated utilities, nest logsums and logit probabilities.
+        // The logit model logsum is returned.
+        rootLogsum = evaluator.evaluate();
 
     }
 
@@ -345,29 +346,29 @@ public class ChoiceModelApplication
 
         // set utility for each alternative
         availabilityCount = 0;
-        for (int a = 0; a < alts.length; a++)
+        for (int a = 0; a < numberOfAlternatives; a++)
         {
-            alts[a].setAvailability(altsAvailable[a + 1]);
+            boolean available = altsAvailable[a + 1];
             if (altsSample[a + 1] == 1 && altsAvailable[a + 1])
-                alts[a].setAvailability((utilities[a] > -299.0));
-            alts[a].setUtility(utilities[a]);
+                available = utilities[a] > -299.0;
+            evaluator.setAlternative(a, utilities[a], available);
             if (altsSample[a + 1] == 1 && altsAvailable[a + 1] && utilities[a] > -299.0)
                 availabilityCount++;
         }
 
-        root.setAvailability();
-
-        // call root.getUtility() to calculate exponentiated utilties. The logit
-        // model logsum is returned.
-        rootLogsum = root.getUtility();
-
-        // calculate logit probabilities
-        root.calculateProbabilities();
+        // calculate exponentiated utilities, nest logsums and logit probabilities.
+        // The logit model logsum is returned.
+        rootLogsum = evaluator.evaluate();
 
     }
 
+    /**
+     * @return the root LogitModel, with the utilities, probabilities and
+     *         availabilities from the last call to computeUtilities().
+     */
     public LogitModel getRootLogitModel()
     {
+        evaluator.copyTo(root);
         return root;
     }
 
@@ -387,6 +388,7 @@ public class ChoiceModelApplication
 
     public ConcreteAlternative[] getAlternatives()
     {
+        evaluator.copyTo(root);
         return alts;
     }
 
@@ -407,7 +409,7 @@ public class ChoiceModelApplication
     {
 
         for (int i = 0; i < numberOfAlternatives; i++)
-            elementalUtils[i] = alts[i].getUtility();
+            elementalUtils[i] = evaluator.getUtility(i);
  
         return elementalUtils;
 
@@ -423,7 +425,7 @@ public class ChoiceModelApplication
     public double[] getProbabilities(){
         
         for (int i=0; i < numberOfAlternatives; i++) {
-            elementalProbs[i] = alts[i].getProbability();
+            elementalProbs[i] = evaluator.getProbability(i);
         }
         
         return elementalProbs;
@@ -446,10 +448,7 @@ public class ChoiceModelApplication
      */
     public int getChoiceResult( double randomNumber ) {
 
-        ConcreteAlternative chosen = (ConcreteAlternative) root.chooseAlternative( randomNumber );
-        int alternativeNumber = chosen.getNumber();
-        
-        return alternativeNumber;
+        return evaluator.choose( randomNumber );
 
     }
 
@@ -516,14 +515,14 @@ public class ChoiceModelApplication
         myLogger.debug("****************************************************************************************************************");
         myLogger.debug(String.format("HH DEBUG:  %-6s  %-12s  %16s  %16s  %16s  %12s", "alt", "name", "utility", "probability", "cumProb", "availability"));
 
-        for (int a = 0; a < alts.length; a++)
+        for (int a = 0; a < numberOfAlternatives; a++)
         {
             int altIndex = a + 1;
             String altName = alternativeNames[a];
             double altUtil = utils[a];
             double altProb = probs[a];
             double altCumProb = cumProbs[a];
-            boolean altAvail = alts[a].isAvailable();
+            boolean altAvail = evaluator.isAvailable(a);
 
             if (altAvail)
                 myLogger.debug(String.format(
@@ -556,44 +555,7 @@ public class ChoiceModelApplication
         debugLogger
                 .debug("****************************************************************************************************************");
 
-        logLogitCalculations(root);
-    }
-
-    /**
-     * For each nest within the logit model, prints out the utilities, probabilities,
-     * and logsum.
-     * 
-     * @param nest
-     */
-    private void logLogitCalculations(LogitModel nest)
-    {
-
-        debugLogger.info("Nest Name = " + nest.getName() + "   NestingCoefficient = "
-                + String.format("%.8f", 1 / nest.getDispersionParameter()) + "   Logsum = "
-                + String.format("%.8f", nest.getUtility()));
-
-        String altNameList = "Alternatives    = ";
-        String utilList = "  Utilities     = ";
-        String probList = "  Probabilities = ";
-
-    	Alternative[] nestAlts = nest.getAlternatives();
-       	for (int i=0; i<nestAlts.length; i++) {
-    		Alternative alt =  nestAlts[i];
-    		altNameList += String.format("%24s", alt.getName());
-    		utilList    += String.format("%24.8f", alt.getUtility()); 
-    		probList    += String.format("%24.8f", alt.getProbability()); 
-    	}
-        debugLogger.info(altNameList);
-        debugLogger.info(utilList);
-        debugLogger.info(probList);
-
-       	for (int i=0; i<nestAlts.length; i++) {
-    		Alternative alt = nestAlts[i];
-    		if (alt instanceof LogitModel) {
-    			LogitModel subNest = (LogitModel) alt; 
-    			logLogitCalculations(subNest); 
-    		}
-    	}
+        evaluator.logLogitCalculations(debugLogger);
     }
 
     public void logUECResults ( Logger localLogger, String uecName ){
@@ -0,0 +1,539 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Named counts of model results, accumulated by a task for the households it
+ * runs and returned with the task, so the client can summarize results by
+ * merging the tallies of its tasks instead of reading every household back from
+ * the HouseholdDataManager.
+ *
+ * Two kinds of tallies are held: dense counts, an int[rows][columns] array such
+ * as chosen destinations by segment and MGRA, and keyed counts, an int[] of
+ * counts for each of a set of string keys such as choices by person type. Merging
+ * adds the counts, so tallies can be merged in any order. Dense counts are
+ * serialized sparsely, as most rows of a task's tally are mostly zeros.
+ *
+ * addHouseholdModelResults() counts everything the client logs after the
+ * household choice models; the location choice tasks count work and school
+ * locations with the UsualLocationSegments passed to them by the client.
+ */
+public class ChoiceTallies
+        implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    // dense counts of usual work and school locations, by size segment and destination MGRA
+    public static final String WORK_TOURS_BY_DEST_MGRA         = "workToursByDestMgra";
+    public static final String SCHOOL_TOURS_BY_DEST_MGRA       = "schoolToursByDestMgra";
+
+    // keyed counts of household model results
+    public static final String CDAP_BY_PERSON_TYPE_AND_ACTIVITY = "cdapByPersonTypeAndActivity";
+    public static final String CDAP_BY_PATTERN                  = "cdapByPattern";
+    public static final String IMTF_BY_PERSON_TYPE              = "imtfByPersonType";
+    public static final String AWF_BY_PERSON_TYPE               = "awfByPersonType";
+    public static final String JTF_BY_ALTERNATIVE               = "jtfByAlternative";
+    public static final String JOINT_TOURS_BY_PARTY            = "jointToursByParty";
+
+    // dense counts of household model results
+    public static final String HOUSEHOLDS_BY_AUTOS_AND_GQ      = "householdsByAutosAndGq";
+    public static final String HOUSEHOLDS_BY_TRANSPONDER       = "householdsByTransponder";
+    public static final String WORKERS_BY_FREE_PARKING_AND_AREA = "workersByFreeParkingAndArea";
+    public static final String TOURS_BY_STOP_FREQ_AND_PURPOSE  = "toursByStopFreqAndPurpose";
+    public static final String JOINT_TOUR_ERRORS               = "jointTourErrors";
+
+    // rows and columns of the dense household model counts
+    public static final int    NUM_AUTO_OWNERSHIP_CATEGORIES   = 5;
+    public static final int    NUM_GQ_CATEGORIES               = 2;
+    public static final int    TP_NO_INDEX                     = 0;
+    public static final int    TP_YES_INDEX                    = 1;
+    public static final int    TP_OTHER_INDEX                  = 2;
+    public static final int    NUM_FREE_PARKING_CATEGORIES     = 4;
+    public static final int    NUM_PARK_AREAS                  = 4;
+    public static final int    NUM_STOP_FREQ_PURPOSES          = 18;
+
+    // the activities counted in the CDAP_BY_PERSON_TYPE_AND_ACTIVITY tallies, in order
+    public static final String[] CDAP_ACTIVITIES = { Definitions.MANDATORY_PATTERN,
+            Definitions.NONMANDATORY_PATTERN, Definitions.HOME_PATTERN };
+
+    // the number of IMTF alternatives, which is the offset of the extra at home categories in the IMTF counts
+    private static final int   NUM_IMTF_ALTERNATIVES           = 5;
+
+    private transient HashMap<String, int[][]>                       counts      = new HashMap<String, int[][]>();
+    private transient HashMap<String, LinkedHashMap<String, int[]>> keyedCounts = new HashMap<String, LinkedHashMap<String, int[]>>();
+
+    // park area by MGRA, for the free parking counts
+    private transient int[]                                          parkAreas;
+
+
+    /**
+     * @return the named dense counts, created with the dimensions given if they do not exist yet.
+     */
+    public int[][] getCounts(String name, int rows, int columns)
+    {
+        int[][] array = counts.get( name );
+        if ( array == null ) {
+            array = new int[rows][columns];
+            counts.put( name, array );
+        }
+        return array;
+    }
+
+    /**
+     * @return the named dense counts, or null if there are none.
+     */
+    public int[][] getCounts(String name)
+    {
+        return counts.get( name );
+    }
+
+    /**
+     * Add one to the count at index of the key in the named keyed counts, which
+     * have width counts for each key, or more if a larger index has been counted.
+     */
+    public void count(String name, String key, int index, int width)
+    {
+        LinkedHashMap<String, int[]> map = keyedCounts.get( name );
+        if ( map == null ) {
+            map = new LinkedHashMap<String, int[]>();
+            keyedCounts.put( name, map );
+        }
+        int[] keyCounts = map.get( key );
+        if ( keyCounts == null || keyCounts.length <= index ) {
+            keyCounts = keyCounts == null ? new int[Math.max( width, index + 1 )] : Arrays.copyOf( keyCounts, index + 1 );
+            map.put( key, keyCounts );
+        }
+        keyCounts[index]++;
+    }
+
+    /**
+     * @return the named keyed counts, or null if there are none.
+     */
+    public HashMap<String, int[]> getKeyedCounts(String name)
+    {
+        return keyedCounts.get( name );
+    }
+
+    /**
+     * Add the counts of other to these tallies.
+     */
+    public void merge(ChoiceTallies other)
+    {
+        if ( other == null )
+            return;
+
+        for ( Map.Entry<String, int[][]> entry : other.counts.entrySet() ) {
+            int[][] from = entry.getValue();
+            int[][] to = counts.get( entry.getKey() );
+            if ( to == null ) {
+                to = new int[from.length][];
+                for ( int i=0; i < from.length; i++ )
+                    to[i] = from[i].clone();
+                counts.put( entry.getKey(), to );
+                continue;
+            }
+            if ( to.length != from.length )
+                throw new IllegalArgumentException( "tallies " + entry.getKey() + " have different numbers of rows." );
+            for ( int i=0; i < from.length; i++ ) {
+                if ( to[i].length != from[i].length )
+                    throw new IllegalArgumentException( "tallies " + entry.getKey() + " have different numbers of columns." );
+                for ( int j=0; j < from[i].length; j++ )
+                    to[i][j] += from[i][j];
+            }
+        }
+
+        for ( Map.Entry<String, LinkedHashMap<String, int[]>> entry : other.keyedCounts.entrySet() ) {
+            LinkedHashMap<String, int[]> to = keyedCounts.get( entry.getKey() );
+            if ( to == null ) {
+                to = new LinkedHashMap<String, int[]>();
+                keyedCounts.put( entry.getKey(), to );
+            }
+            for ( Map.Entry<String, int[]> keyEntry : entry.getValue().entrySet() ) {
+                int[] from = keyEntry.getValue();
+                int[] toCounts = to.get( keyEntry.getKey() );
+                if ( toCounts == null ) {
+                    to.put( keyEntry.getKey(), from.clone() );
+                    continue;
+                }
+                if ( toCounts.length < from.length ) {
+                    toCounts = Arrays.copyOf( toCounts, from.length );
+                    to.put( keyEntry.getKey(), toCounts );
+                }
+                for ( int j=0; j < from.length; j++ )
+                    toCounts[j] += from[j];
+            }
+        }
+    }
+
+
+    /**
+     * Count the results of all the household choice models logged by the client.
+     */
+    public void addHouseholdModelResults(Household household)
+    {
+        addAoResults( household );
+        addTpResults( household );
+        addFpResults( household );
+        addCdapResults( household );
+        addImtfResults( household );
+        addJointTourResults( household );
+        addAtWorkSubtourFreqResults( household );
+        addStopFreqResults( household );
+    }
+
+    /**
+     * Count the household by auto ownership choice, 4 or more autos together, and group quarters.
+     */
+    public void addAoResults(Household household)
+    {
+        int ao = Math.min( household.getAutoOwnershipModelResult(), NUM_AUTO_OWNERSHIP_CATEGORIES - 1 );
+        getCounts( HOUSEHOLDS_BY_AUTOS_AND_GQ, NUM_AUTO_OWNERSHIP_CATEGORIES, NUM_GQ_CATEGORIES )[ao][household.getIsGroupQuarters()]++;
+    }
+
+    /**
+     * Count the household by transponder choice.
+     */
+    public void addTpResults(Household household)
+    {
+        int index = TP_OTHER_INDEX;
+        if ( household.getTpChoice()+1 == TransponderChoiceModel.TP_MODEL_NO_ALT )
+            index = TP_NO_INDEX;
+        else if ( household.getTpChoice()+1 == TransponderChoiceModel.TP_MODEL_YES_ALT )
+            index = TP_YES_INDEX;
+        getCounts( HOUSEHOLDS_BY_TRANSPONDER, 1, 3 )[0][index]++;
+    }
+
+    /**
+     * Count the workers in the household who do not work at home by free parking choice and park area of their work location.
+     */
+    public void addFpResults(Household household)
+    {
+        if ( parkAreas == null )
+            parkAreas = MgraDataManager.getInstance().getMgraParkAreas();
+        int[][] workers = getCounts( WORKERS_BY_FREE_PARKING_AND_AREA, NUM_FREE_PARKING_CATEGORIES, NUM_PARK_AREAS );
+
+        Person[] persons = household.getPersons();
+        for ( int p=1; p < persons.length; p++ ) {
+            int workLocation = persons[p].getUsualWorkLocation();
+            if ( workLocation > 0 && workLocation != ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR ) {
+                int area = parkAreas[workLocation];
+                // skip unused mgra indexes
+                if ( area > 0 )
+                    workers[Math.max( persons[p].getFreeParkingAvailableResult(), 0 )][area - 1]++;
+            }
+        }
+    }
+
+    /**
+     * Count the household by joint tour frequency choice, and its joint tours by purpose,
+     * composition and numbers of adults and children. A household whose joint tours
+     * do not agree with its choice is logged and counted in JOINT_TOUR_ERRORS.
+     */
+    public void addJointTourResults(Household household)
+    {
+        Tour[] jt = household.getJointTourArray();
+        int jtfAlt = household.getJointTourFreqChosenAlt();
+
+        if ( ( jt == null && jtfAlt > 0 ) || ( jt != null && jtfAlt < 1 ) ) {
+            Logger.getLogger( ChoiceTallies.class ).error( String.format(
+                    "HHID=%d, joint tour array is %s, but alternative=%d is recorded for the household.",
+                    household.getHhId(), jt == null ? "null" : "not null", jtfAlt ) );
+            getCounts( JOINT_TOUR_ERRORS, 1, 1 )[0][0]++;
+            return;
+        }
+
+        if ( jt == null ) {
+            count( JTF_BY_ALTERNATIVE, "0", 0, 1 );
+            return;
+        }
+
+        count( JTF_BY_ALTERNATIVE, Integer.toString( jtfAlt ), 0, 1 );
+
+        // determine party size frequency for joint tours generated
+        Person[] persons = household.getPersons();
+        for ( Tour tour : jt ) {
+            int adults = 0;
+            int children = 0;
+            for ( int index : tour.getPersonNumArray() ) {
+                if ( persons[index].getPersonIsAdult() == 1 )
+                    adults++;
+                else
+                    children++;
+            }
+
+            // "JointTourPurpose_Composition_NumAdults_NumChildren"
+            String key = String.format( "%s_%d_%d_%d", tour.getTourPurpose(), tour.getJointTourComposition(), adults, children );
+            count( JOINT_TOURS_BY_PARTY, key, 0, 1 );
+        }
+    }
+
+    /**
+     * Count the at-work subtour frequency choice of each work tour in the household, by person type.
+     */
+    public void addAtWorkSubtourFreqResults(Household household)
+    {
+        Person[] persons = household.getPersons();
+        for ( int j=1; j < persons.length; j++ ) {
+
+            Person person = persons[j];
+            ArrayList<Tour> tourList = person.getListOfWorkTours();
+            if ( tourList == null )
+                continue;
+
+            for ( Tour workTour : tourList ) {
+                int choice = 1;
+                if ( person.getListOfAtWorkSubtours().size() > 0 )
+                    choice = Math.max( workTour.getSubtourFreqChoice(), 1 );
+                count( AWF_BY_PERSON_TYPE, person.getPersonType(), choice - 1, choice );
+            }
+        }
+    }
+
+    /**
+     * Count the stop frequency choice of each individual tour in the household, by primary purpose.
+     */
+    public void addStopFreqResults(Household household)
+    {
+        int[][] tours = getCounts( TOURS_BY_STOP_FREQ_AND_PURPOSE, StopFrequencyDMU.NUM_OB_STOPS_FOR_ALT.length, NUM_STOP_FREQ_PURPOSES );
+
+        Person[] persons = household.getPersons();
+        for ( int j=1; j < persons.length; j++ ) {
+            addStopFreqResults( tours, persons[j].getListOfWorkTours() );
+            addStopFreqResults( tours, persons[j].getListOfSchoolTours() );
+            addStopFreqResults( tours, persons[j].getListOfIndividualNonMandatoryTours() );
+            addStopFreqResults( tours, persons[j].getListOfAtWorkSubtours() );
+        }
+    }
+
+    private static void addStopFreqResults(int[][] tours, ArrayList<Tour> tourList)
+    {
+        for ( Tour t : tourList )
+            tours[t.getStopFreqChoice()][t.getTourPrimaryPurposeIndex()]++;
+    }
+
+    /**
+     * Count the coordinated daily activity pattern of the household, and the activity of each person by person type.
+     */
+    public void addCdapResults(Household household)
+    {
+        String pattern = household.getCoordinatedDailyActivityPattern();
+        if ( pattern == null )
+            return;
+
+        Person[] persons = household.getPersons();
+        for ( int j=1; j < persons.length; j++ ) {
+            String activity = persons[j].getCdapActivity();
+            for ( int a=0; a < CDAP_ACTIVITIES.length; a++ ) {
+                if ( CDAP_ACTIVITIES[a].equals( activity ) ) {
+                    count( CDAP_BY_PERSON_TYPE_AND_ACTIVITY, persons[j].getPersonType(), a, CDAP_ACTIVITIES.length );
+                    break;
+                }
+            }
+        }
+
+        count( CDAP_BY_PATTERN, pattern, 0, 1 );
+    }
+
+    /**
+     * Count the individual mandatory tour frequency choice of each person in the household with a mandatory pattern, by person type.
+     */
+    public void addImtfResults(Household household)
+    {
+        int width = HouseholdIndividualMandatoryTourFrequencyModel.choiceResults.length;
+
+        Person[] persons = household.getPersons();
+        for ( int j=1; j < persons.length; j++ ) {
+
+            Person person = persons[j];
+
+            // only summarize persons with mandatory pattern
+            String activity = person.getCdapActivity();
+            if ( activity == null || ! activity.equalsIgnoreCase( "M" ) )
+                continue;
+
+            int choice = person.getImtfChoice();
+            if ( choice == 0 ) {
+                if ( person.getPersonEmploymentCategoryIndex() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
+                        person.getPersonWorkLocationZone() == ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR )
+                    choice = NUM_IMTF_ALTERNATIVES + 1;
+                else if ( person.getPersonEmploymentCategoryIndex() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
+                        person.getPersonSchoolLocationZone() == ModelStructure.NOT_ENROLLED_SEGMENT_INDEX )
+                    choice = NUM_IMTF_ALTERNATIVES + 2;
+                else if ( person.getPersonIsStudent() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
+                        person.getPersonWorkLocationZone() == ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR )
+                    choice = NUM_IMTF_ALTERNATIVES + 3;
+                else if ( person.getPersonIsStudent() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
+                        person.getPersonSchoolLocationZone() == ModelStructure.NOT_ENROLLED_SEGMENT_INDEX )
+                    choice = NUM_IMTF_ALTERNATIVES + 4;
+            }
+
+            count( IMTF_BY_PERSON_TYPE, person.getPersonType(), choice - 1, width );
+        }
+    }
+
+
+    /**
+     * Count the usual work locations of the workers in the household who do not work at home, by occupation segment.
+     */
+    public void addWorkLocations(Household household, UsualLocationSegments segments)
+    {
+        int[][] workTours = getCounts( WORK_TOURS_BY_DEST_MGRA, segments.occupValueIndexMap.size(), MgraDataManager.getInstance().getMaxMgra() + 1 );
+        HouseholdDataManager.addWorkToursByDestMgra( household, segments.occupValueIndexMap, workTours );
+    }
+
+    /**
+     * Count the school locations of the enrolled students in the household, by school segment.
+     */
+    public void addSchoolLocations(Household household, UsualLocationSegments segments)
+    {
+        int[][] schoolTours = getCounts( SCHOOL_TOURS_BY_DEST_MGRA, segments.schoolSegmentNameIndexMap.size(), MgraDataManager.getInstance().getMaxMgra() + 1 );
+        HouseholdDataManager.addSchoolToursByDestMgra( household, segments.schoolSegmentNameIndexMap, segments.mgraGsDistrict,
+                segments.mgraHsDistrict, segments.gsDistrictIndexMap, segments.hsDistrictIndexMap, schoolTours );
+    }
+
+
+    /*
+     * Dense counts are written row by row, as the non-zero counts with their
+     * column indices if that is shorter than the whole row.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+
+        out.writeInt( counts.size() );
+        for ( Map.Entry<String, int[][]> entry : counts.entrySet() ) {
+            int[][] array = entry.getValue();
+            out.writeUTF( entry.getKey() );
+            out.writeInt( array.length );
+            for ( int[] row : array ) {
+                int nonZero = 0;
+                for ( int value : row )
+                    if ( value != 0 )
+                        nonZero++;
+                out.writeInt( row.length );
+                if ( 2 * nonZero < row.length ) {
+                    out.writeInt( nonZero );
+                    for ( int j=0; j < row.length; j++ ) {
+                        if ( row[j] != 0 ) {
+                            out.writeInt( j );
+                            out.writeInt( row[j] );
+                        }
+                    }
+                }
+                else {
+                    out.writeInt( -1 );
+                    for ( int value : row )
+                        out.writeInt( value );
+                }
+            }
+        }
+
+        out.writeInt( keyedCounts.size() );
+        for ( Map.Entry<String, LinkedHashMap<String, int[]>> entry : keyedCounts.entrySet() ) {
+            out.writeUTF( entry.getKey() );
+            out.writeInt( entry.getValue().size() );
+            for ( Map.Entry<String, int[]> keyEntry : entry.getValue().entrySet() ) {
+                out.writeUTF( keyEntry.getKey() );
+                out.writeInt( keyEntry.getValue().length );
+                for ( int value : keyEntry.getValue() )
+                    out.writeInt( value );
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+
+        counts = new HashMap<String, int[][]>();
+        int numArrays = in.readInt();
+        for ( int a=0; a < numArrays; a++ ) {
+            String name = in.readUTF();
+            int[][] array = new int[in.readInt()][];
+            for ( int i=0; i < array.length; i++ ) {
+                int[] row = new int[in.readInt()];
+                int nonZero = in.readInt();
+                if ( nonZero < 0 ) {
+                    for ( int j=0; j < row.length; j++ )
+                        row[j] = in.readInt();
+                }
+                else {
+                    for ( int k=0; k < nonZero; k++ ) {
+                        int j = in.readInt();
+                        row[j] = in.readInt();
+                    }
+                }
+                array[i] = row;
+            }
+            counts.put( name, array );
+        }
+
+        keyedCounts = new HashMap<String, LinkedHashMap<String, int[]>>();
+        int numMaps = in.readInt();
+        for ( int m=0; m < numMaps; m++ ) {
+            String name = in.readUTF();
+            LinkedHashMap<String, int[]> map = new LinkedHashMap<String, int[]>();
+            int numKeys = in.readInt();
+            for ( int k=0; k < numKeys; k++ ) {
+                String key = in.readUTF();
+                int[] keyCounts = new int[in.readInt()];
+                for ( int j=0; j < keyCounts.length; j++ )
+                    keyCounts[j] = in.readInt();
+                map.put( key, keyCounts );
+            }
+            keyedCounts.put( name, map );
+        }
+    }
+
+
+    /**
+     * The segment mappings used to count usual work or school locations, set by the
+     * client for the location choice tasks.
+     */
+    public static final class UsualLocationSegments
+            implements Serializable
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HashMap<Integer, Integer> occupValueIndexMap;
+        private final HashMap<String, Integer>  schoolSegmentNameIndexMap;
+        private final int[]                     mgraGsDistrict;
+        private final int[]                     mgraHsDistrict;
+        private final HashMap<Integer, Integer> gsDistrictIndexMap;
+        private final HashMap<Integer, Integer> hsDistrictIndexMap;
+
+        private UsualLocationSegments(HashMap<Integer, Integer> occupValueIndexMap, HashMap<String, Integer> schoolSegmentNameIndexMap,
+                int[] mgraGsDistrict, int[] mgraHsDistrict, HashMap<Integer, Integer> gsDistrictIndexMap, HashMap<Integer, Integer> hsDistrictIndexMap)
+        {
+            this.occupValueIndexMap = occupValueIndexMap;
+            this.schoolSegmentNameIndexMap = schoolSegmentNameIndexMap;
+            this.mgraGsDistrict = mgraGsDistrict;
+            this.mgraHsDistrict = mgraHsDistrict;
+            this.gsDistrictIndexMap = gsDistrictIndexMap;
+            this.hsDistrictIndexMap = hsDistrictIndexMap;
+        }
+
+        public static UsualLocationSegments forWork(HashMap<Integer, Integer> occupValueIndexMap)
+        {
+            return new UsualLocationSegments( occupValueIndexMap, null, null, null, null, null );
+        }
+
+        public static UsualLocationSegments forSchool(HashMap<String, Integer> schoolSegmentNameIndexMap, int[] mgraGsDistrict,
+                int[] mgraHsDistrict, HashMap<Integer, Integer> gsDistrictIndexMap, HashMap<Integer, Integer> hsDistrictIndexMap)
+        {
+            return new UsualLocationSegments( null, schoolSegmentNameIndexMap, mgraGsDistrict, mgraHsDistrict, gsDistrictIndexMap, hsDistrictIndexMap );
+        }
+    }
+
+}
@@ -137,6 +137,7 @@ public class CtrampApplication implements Serializable
 
     public static final String                         PROPERTIES_WRITE_DATA_TO_FILE                             = "Results.WriteDataToFiles";
     public static final String                         PROPERTIES_WRITE_DATA_TO_DATABASE                         = "Results.WriteDataToDatabase";
+    public static final String                         PROPERTIES_WRITE_DATA_TO_COLUMNAR_FILES                   = "Results.WriteDataToColumnarFiles";
 
     public static final String                         PROPERTIES_SAVE_TOUR_MODE_CHOICE_UTILS                    = "TourModeChoice.Save.UtilsAndProbs";
 
@@ -163,6 +164,12 @@ public class CtrampApplication implements Serializable
     private HashMap<Integer, HashMap<String, Integer>> cdapByHhSizeAndPattern;
     private HashMap<String, HashMap<String, Integer>>  cdapByPersonTypeAndActivity;
 
+    // summaries of the household model results returned by the household choice model tasks
+    private ChoiceTallies                              householdChoiceTallies;
+
+    // auto ownership results of the pre-AO model, counted as it is applied
+    private ChoiceTallies                              preAoChoiceTallies;
+
     private BuildAccessibilities                       aggAcc;
     
     private JPPFClient 								   jppfClient;
@@ -293,6 +300,9 @@ public class CtrampApplication implements Serializable
 
         jppfClient = new JPPFClient();
 
+        preAoChoiceTallies = null;
+        householdChoiceTallies = null;
+
         boolean runPreAutoOwnershipChoiceModel = ResourceUtil.getBooleanProperty(resourceBundle, PROPERTIES_RUN_PRE_AUTO_OWNERSHIP);
         if (runPreAutoOwnershipChoiceModel)
         {
@@ -306,6 +316,7 @@ public class CtrampApplication implements Serializable
             householdDataManager.resetPreAoRandom();
 
             HouseholdAutoOwnershipModel aoModel = new HouseholdAutoOwnershipModel( propertyMap, dmuFactory, aggAcc.getAccessibilitiesTableObject(), null );
+            ChoiceTallies preAoTallies = new ChoiceTallies();
 
             ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
 
@@ -330,15 +341,18 @@ public class CtrampApplication implements Serializable
                             i, startIndex, endIndex, householdArray[i].getHhId()));
                         logger.fatal("Exception caught:", e);
                         logger.fatal("Throwing new RuntimeException() to terminate.");
-                        throw new RuntimeException();
+                        throw new RuntimeException(e);
                     }
 
+                    preAoTallies.addAoResults(householdArray[i]);
+
                 }
                 householdDataManager.setHhArray(householdArray, startIndex);
 
             }
 
             saveAoResults(householdDataManager, projectDirectory, true);
+            preAoChoiceTallies = preAoTallies;
 
             // clear the zonal data used in the AO UEC so a different zonal data file
             // (MGRA data) can be used later by other UECs.
@@ -471,6 +485,7 @@ public class CtrampApplication implements Serializable
                     .changeResourceBundleIntoHashMap(resourceBundle);
             HouseholdChoiceModelRunner runner = new HouseholdChoiceModelRunner(propertyMap, jppfClient, restartModel, householdDataManager, ms, modelStructure, dmuFactory);
             runner.runHouseholdChoiceModels();
+            householdChoiceTallies = runner.getChoiceTallies();
 
             if (runAutoOwnershipChoiceModel)
             {
@@ -521,6 +536,7 @@ public class CtrampApplication implements Serializable
 
         boolean writeTextFileFlag = false;
         boolean writeSqliteFlag = false;
+        boolean writeColumnarFileFlag = false;
         try
         {
             writeTextFileFlag = ResourceUtil.getBooleanProperty(resourceBundle,
@@ -540,13 +556,25 @@ public class CtrampApplication implements Serializable
             // flag remains false
         }
 
+        try
+        {
+            writeColumnarFileFlag = ResourceUtil.getBooleanProperty(resourceBundle,
+                    PROPERTIES_WRITE_DATA_TO_COLUMNAR_FILES);
+        } catch (MissingResourceException e)
+        {
+            // if exception is caught while getting property file value, then boolean
+            // flag remains false
+        }
+
         HouseholdDataWriter dataWriter = null;
-        if (writeTextFileFlag || writeSqliteFlag)
+        if (writeTextFileFlag || writeSqliteFlag || writeColumnarFileFlag)
         {
             dataWriter = new HouseholdDataWriter(propertyMap, modelStructure, iteration);
 
             if (writeTextFileFlag) dataWriter.writeDataToFiles(householdDataManager);
 
+            if (writeColumnarFileFlag) dataWriter.writeDataToColumnarFiles(householdDataManager);
+
             if (writeSqliteFlag)
             {
                 String dbFilename = "";
@@ -993,34 +1021,12 @@ public class CtrampApplication implements Serializable
         header += String.format("%15s", "Total HHs");
         logger.info(header);
 
-        // track the results
-        int[][] hhsByAutoOwnership = new int[aoRowCategoryLabel.length][aoColCategoryLabel.length];
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager
-                .getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Household household = householdArray[i];
-                int ao = household.getAutoOwnershipModelResult();
-                if (ao > hhsByAutoOwnership.length - 1) ao = hhsByAutoOwnership.length - 1;
-
-                int gq = household.getIsGroupQuarters();
-                hhsByAutoOwnership[ao][gq]++;
-
-            }
-
-        }
+        // the results
+        ChoiceTallies tallies = preModel ? preAoChoiceTallies : getHouseholdChoiceTallies(householdDataManager);
+        if (tallies == null)
+            tallies = countHouseholdResults(householdDataManager, true);
+        int[][] hhsByAutoOwnership = tallies.getCounts(ChoiceTallies.HOUSEHOLDS_BY_AUTOS_AND_GQ,
+                ChoiceTallies.NUM_AUTO_OWNERSHIP_CATEGORIES, ChoiceTallies.NUM_GQ_CATEGORIES);
 
         int[] colTotals = new int[aoColCategoryLabel.length];
         for (int i = 0; i < hhsByAutoOwnership.length; i++)
@@ -1061,33 +1067,10 @@ public class CtrampApplication implements Serializable
         logger.info( String.format( "%-16s  %20s", "Category", "Num Households" ) );
         logger.info( String.format( "%-16s  %20s", "----------", "------------------" ) );
 
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        int numYes = 0;
-        int numNo = 0;
-        int numOther = 0;
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Household household = householdArray[i];
-                if ( household.getTpChoice()+1 == TransponderChoiceModel.TP_MODEL_NO_ALT )
-                    numNo++;
-                else if ( household.getTpChoice()+1 == TransponderChoiceModel.TP_MODEL_YES_ALT )
-                    numYes++;
-                else numOther++;
-                
-            }
-
-        }
+        int[] tpCounts = getHouseholdChoiceTallies(householdDataManager).getCounts(ChoiceTallies.HOUSEHOLDS_BY_TRANSPONDER, 1, 3)[0];
+        int numYes = tpCounts[ChoiceTallies.TP_YES_INDEX];
+        int numNo = tpCounts[ChoiceTallies.TP_NO_INDEX];
+        int numOther = tpCounts[ChoiceTallies.TP_OTHER_INDEX];
 
         logger.info( String.format("%-16s  %20d", "No", numNo ) );
         logger.info( String.format("%-16s  %20d", "Yes", numYes ) );
@@ -1109,51 +1092,10 @@ public class CtrampApplication implements Serializable
         logger.info(String.format("%-16s  %20s  %20s  %20s  %20s", "Category", "Workers in area 1", "Workers in area 2", "Workers in area 3", "Workers in area 4"));
         logger.info(String.format("%-16s  %20s  %20s  %20s  %20s", "----------", "------------------", "------------------", "------------------", "------------------"));
 
-        // track the results by 4 work areas - only workers in area 1 should have made choices
-        int numParkAreas = 4;
-        int[][] workLocationsByFreeParking;
-        workLocationsByFreeParking = new int[fpCategoryLabel.length][numParkAreas];
-        
-        // get the correspndence between mgra and park area to associate work locations with areas
-        MgraDataManager mgraManager = MgraDataManager.getInstance();
-        int[] parkAreas = mgraManager.getMgraParkAreas();
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Household household = householdArray[i];
-                Person[] persons = household.getPersons();
-                for ( int p=1; p < persons.length; p++ ) {
-                    int workLocation = persons[p].getUsualWorkLocation();
-                    if ( workLocation > 0 && workLocation != ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR ) {
-                        int area = parkAreas[workLocation];
-                        if(area > 0) { //skip unused mgra indexes
-	                        int areaIndex = area - 1;
-	
-	                        int fp = persons[p].getFreeParkingAvailableResult();
-	                        int freqIndex = 0;
-	                        if ( fp > 0 )
-	                            freqIndex = fp;
-	                            
-	                        workLocationsByFreeParking[freqIndex][areaIndex]++;		                      
-		                } 
-                    }
-                }
-
-            }
-
-        }
+        // the results by 4 work areas - only workers in area 1 should have made choices
+        int numParkAreas = ChoiceTallies.NUM_PARK_AREAS;
+        int[][] workLocationsByFreeParking = getHouseholdChoiceTallies(householdDataManager).getCounts(
+                ChoiceTallies.WORKERS_BY_FREE_PARKING_AND_AREA, fpCategoryLabel.length, numParkAreas);
 
         int[] total = new int[numParkAreas];
         for (int i = 0; i < workLocationsByFreeParking.length; i++)
@@ -1311,75 +1253,10 @@ public class CtrampApplication implements Serializable
         String[] choiceResults = HouseholdIndividualMandatoryTourFrequencyModel.choiceResults;
 
         // summarize results
-        HashMap<String, int[]> countByPersonType = new HashMap<String, int[]>();
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Person[] personArray = householdArray[i].getPersons();
-                for (int j = 1; j < personArray.length; j++)
-                {
-
-                    // only summarize persons with mandatory pattern
-                    String personActivity = personArray[j].getCdapActivity();
-                    if (personActivity != null && personArray[j].getCdapActivity().equalsIgnoreCase("M"))
-                    {
-
-                        String personTypeString = personArray[j].getPersonType();
-                        int choice = personArray[j].getImtfChoice();
-                        
-                        if ( choice == 0 ) {
-                            
-                            // there are 5 IMTF alts, so it's the offset for the extra at home categories
-                            if ( personArray[j].getPersonEmploymentCategoryIndex() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
-                                    personArray[j].getPersonWorkLocationZone() == ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR )
-                                        choice = 5 + 1;
-                            else if ( personArray[j].getPersonEmploymentCategoryIndex() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
-                                    personArray[j].getPersonSchoolLocationZone() == ModelStructure.NOT_ENROLLED_SEGMENT_INDEX )
-                                        choice = 5 + 2;
-                            else if ( personArray[j].getPersonIsStudent() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
-                                    personArray[j].getPersonWorkLocationZone() == ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR )
-                                        choice = 5 + 3;
-                            else if ( personArray[j].getPersonIsStudent() < Person.EmployStatus.NOT_EMPLOYED.ordinal() &&
-                                    personArray[j].getPersonSchoolLocationZone() == ModelStructure.NOT_ENROLLED_SEGMENT_INDEX )
-                                        choice = 5 + 4;
-
-                        }
-
-                        // count the results
-                        if (countByPersonType.containsKey(personTypeString))
-                        {
-
-                            int[] counterArray = countByPersonType.get(personTypeString);
-                            counterArray[choice - 1]++;
-                            countByPersonType.put(personTypeString, counterArray);
-
-                        } else
-                        {
-
-                            int[] counterArray = new int[choiceResults.length];
-                            counterArray[choice - 1]++;
-                            countByPersonType.put(personTypeString, counterArray);
-
-                        }
-                    }
-
-                }
-
-            }
-
-        }
+        HashMap<String, int[]> countByPersonType = getHouseholdChoiceTallies(householdDataManager)
+                .getKeyedCounts(ChoiceTallies.IMTF_BY_PERSON_TYPE);
+        if (countByPersonType == null)
+            countByPersonType = new HashMap<String, int[]>();
 
         for (int i = 0; i < choiceResults.length; ++i)
         {
@@ -1464,89 +1341,24 @@ public class CtrampApplication implements Serializable
         ChoiceModelApplication jointTourFrequencyModel = new ChoiceModelApplication(uecFileName, freqCompSheet, dataSheet, ResourceUtil.changeResourceBundleIntoHashMap(resourceBundle), (VariableTable) dmuObject );
         String[] altLabels = jointTourFrequencyModel.getAlternativeNames();
 
+        ChoiceTallies tallies = getHouseholdChoiceTallies(householdDataManager);
+        int[][] errors = tallies.getCounts(ChoiceTallies.JOINT_TOUR_ERRORS);
+        if (errors != null && errors[0][0] > 0)
+            throw new RuntimeException(String.format(
+                    "%d households have joint tours that do not agree with their joint tour frequency choice.", errors[0][0]));
+
         // this is the first index in the summary array for choices made by eligible households
         int[] jointTourChoiceFreq = new int[altLabels.length + 1];
+        HashMap<String, int[]> jtfCounts = tallies.getKeyedCounts(ChoiceTallies.JTF_BY_ALTERNATIVE);
+        if (jtfCounts != null)
+            for (String alt : jtfCounts.keySet())
+                jointTourChoiceFreq[Integer.parseInt(alt)] += jtfCounts.get(alt)[0];
 
         TreeMap<String, Integer> partySizeFreq = new TreeMap<String, Integer>();
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Tour[] jt = householdArray[i].getJointTourArray();
-                int jtfAlt = householdArray[i].getJointTourFreqChosenAlt();
-
-                if (jt == null)
-                {
-
-                    if (jtfAlt > 0)
-                    {
-                        logger.error(String.format(
-                            "HHID=%d, joint tour array is null, but a valid alternative=%d is recorded for the household.",
-                            householdArray[i].getHhId(), jtfAlt));
-                        throw new RuntimeException();
-                    }
-
-                    jointTourChoiceFreq[0]++;
-
-                } else
-                {
-
-                    if (jtfAlt < 1)
-                    {
-                        logger.error(String.format(
-                            "HHID=%d, joint tour array is not null, but an invalid alternative=%d is recorded for the household.",
-                            householdArray[i].getHhId(), jtfAlt));
-                        throw new RuntimeException();
-                    }
-
-                    jointTourChoiceFreq[jtfAlt]++;
-
-                    // determine party size frequency for joint tours generated
-                    Person[] persons = householdArray[i].getPersons();
-                    for (int j = 0; j < jt.length; j++)
-                    {
-
-                        int compAlt = jt[j].getJointTourComposition();
-
-                        // determine number of children and adults in tour
-                        int adults = 0;
-                        int children = 0;
-                        int[] participants = jt[j].getPersonNumArray();
-                        for (int k = 0; k < participants.length; k++)
-                        {
-                            int index = participants[k];
-                            Person person = persons[index];
-                            if (person.getPersonIsAdult() == 1) adults++;
-                            else children++;
-                        }
-
-                        // create a key to use for a frequency map for
-                        // "JointTourPurpose_Composition_NumAdults_NumChildren"
-                        String key = String.format("%s_%d_%d_%d", jt[j].getTourPurpose(), compAlt, adults, children);
-
-                        int value = 0;
-                        if (partySizeFreq.containsKey(key))
-                            value = partySizeFreq.get(key);
-                        partySizeFreq.put(key, ++value);
-
-                    }
-
-                }
-
-            }
-
-        }
+        HashMap<String, int[]> partyCounts = tallies.getKeyedCounts(ChoiceTallies.JOINT_TOURS_BY_PARTY);
+        if (partyCounts != null)
+            for (String key : partyCounts.keySet())
+                partySizeFreq.put(key, partyCounts.get(key)[0]);
 
         logger.info(" ");
         logger.info("~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~");
@@ -1623,85 +1435,86 @@ public class CtrampApplication implements Serializable
         cdapByHhSizeAndPattern = new HashMap<Integer, HashMap<String, Integer>>();
         cdapByPersonTypeAndActivity = new HashMap<String, HashMap<String, Integer>>();
 
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
+        ChoiceTallies tallies = getHouseholdChoiceTallies(householdDataManager);
 
-        for (int[] startEndIndices : startEndTaskIndicesList)
+        // count of activities by person type
+        HashMap<String, int[]> activityCounts = tallies.getKeyedCounts(ChoiceTallies.CDAP_BY_PERSON_TYPE_AND_ACTIVITY);
+        if (activityCounts != null)
         {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] partialHhArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (Household hhObject : partialHhArray)
+            for (String personTypeString : activityCounts.keySet())
             {
+                int[] counts = activityCounts.get(personTypeString);
+                HashMap<String, Integer> activityCountMap = new HashMap<String, Integer>();
+                for (int a = 0; a < counts.length; a++)
+                    if (counts[a] > 0) activityCountMap.put(ChoiceTallies.CDAP_ACTIVITIES[a], counts[a]);
+                cdapByPersonTypeAndActivity.put(personTypeString, activityCountMap);
+            }
+        }
 
-                // get the household's activity pattern choice
-                String pattern = hhObject.getCoordinatedDailyActivityPattern();
-                if ( pattern == null )
-                    continue;
-
-                Person[] personArray = hhObject.getPersons();
-                for (int j = 1; j < personArray.length; j++)
+        // count each type of pattern string by hhSize
+        HashMap<String, int[]> patternCounts = tallies.getKeyedCounts(ChoiceTallies.CDAP_BY_PATTERN);
+        if (patternCounts != null)
+        {
+            for (String pattern : patternCounts.keySet())
+            {
+                HashMap<String, Integer> patternCountMap = cdapByHhSizeAndPattern.get(pattern.length());
+                if (patternCountMap == null)
                 {
+                    patternCountMap = new HashMap<String, Integer>();
+                    cdapByHhSizeAndPattern.put(pattern.length(), patternCountMap);
+                }
+                patternCountMap.put(pattern, patternCounts.get(pattern)[0]);
+            }
+        }
 
-                    // get person's activity string
-                    String activityString = personArray[j].getCdapActivity();
-
-                    // get the person type to simmarize results by
-                    String personTypeString = personArray[j].getPersonType();
-
-                    // check if the person type is in the map
-                    if (cdapByPersonTypeAndActivity.containsKey(personTypeString))
-                    {
-
-                        HashMap<String, Integer> activityCountMap = cdapByPersonTypeAndActivity.get(personTypeString);
-
-                        // check if the activity is in the activity map
-                        int currentCount = 1;
-                        if (activityCountMap.containsKey(activityString))
-                            currentCount = activityCountMap.get(activityString) + 1;
-
-                        activityCountMap.put(activityString, currentCount);
-                        cdapByPersonTypeAndActivity.put(personTypeString, activityCountMap);
-
-                    } else
-                    {
+    }
 
-                        HashMap<String, Integer> activityCountMap = new HashMap<String, Integer>();
-                        activityCountMap.put(activityString, 1);
-                        cdapByPersonTypeAndActivity.put(personTypeString, activityCountMap);
+    /**
+     * @return the summaries of household model results returned by the household
+     *         choice model tasks, or if they are not available, summaries made from
+     *         the households in the HouseholdDataManager.
+     */
+    private ChoiceTallies getHouseholdChoiceTallies(HouseholdDataManagerIf householdDataManager)
+    {
 
-                    } // is personType in map if
+        if (householdChoiceTallies == null)
+            householdChoiceTallies = countHouseholdResults(householdDataManager, false);
+        return householdChoiceTallies;
 
-                } // j (person loop)
+    }
 
-                // count each type of pattern string by hhSize
-                if ( (! cdapByHhSizeAndPattern.isEmpty()) && cdapByHhSizeAndPattern.containsKey(pattern.length()))
-                {
+    /**
+     * @return summaries made from the households in the HouseholdDataManager, of the
+     *         auto ownership results only or of all the household model results.
+     */
+    private ChoiceTallies countHouseholdResults(HouseholdDataManagerIf householdDataManager, boolean aoOnly)
+    {
 
-                    HashMap<String, Integer> patternCountMap = cdapByHhSizeAndPattern.get(pattern.length());
+        ChoiceTallies tallies = new ChoiceTallies();
 
-                    int currentCount = 1;
-                    if (patternCountMap.containsKey(pattern))
-                        currentCount = patternCountMap.get(pattern) + 1;
-                    patternCountMap.put(pattern, currentCount);
-                    cdapByHhSizeAndPattern.put(pattern.length(), patternCountMap);
+        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
 
-                } else
-                {
+        for (int[] startEndIndices : startEndTaskIndicesList)
+        {
 
-                    HashMap<String, Integer> patternCountMap = new HashMap<String, Integer>();
-                    patternCountMap.put(pattern, 1);
-                    cdapByHhSizeAndPattern.put(pattern.length(), patternCountMap);
+            int startIndex = startEndIndices[0];
+            int endIndex = startEndIndices[1];
 
-                } // is personType in map if
+            // get the array of households
+            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
 
+            for (Household household : householdArray)
+            {
+                if (aoOnly)
+                    tallies.addAoResults(household);
+                else
+                    tallies.addHouseholdModelResults(household);
             }
 
         }
 
+        return tallies;
+
     }
 
     /**
@@ -1797,75 +1610,10 @@ public class CtrampApplication implements Serializable
     {
 
         String[] alternativeNames = modelStructure.getAwfAltLabels();
-        HashMap<String, int[]> awfByPersonType = new HashMap<String, int[]>();
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                // get this household's person array
-                Person[] personArray = householdArray[i].getPersons();
-
-                // loop through the person array (1-based)
-                for (int j = 1; j < personArray.length; ++j)
-                {
-
-                    Person person = personArray[j];
-
-                    // loop through the work tours for this person
-                    ArrayList<Tour> tourList = person.getListOfWorkTours();
-                    if (tourList == null || tourList.size() == 0) continue;
-
-                    // count the results by person type
-                    String personTypeString = person.getPersonType();
-
-                    for (Tour workTour : tourList)
-                    {
-
-                        int choice = 0;
-                        if (person.getListOfAtWorkSubtours().size() == 0) choice = 1;
-                        else
-                        {
-                            choice = workTour.getSubtourFreqChoice();
-                            if (choice == 0) choice++;
-                        }
-
-                        int dummy = 0;
-                        if (person.getPersonTypeNumber() == 7)
-                        {
-                            dummy = 1;
-                        }
-
-                        // count the results by person type
-                        if (awfByPersonType.containsKey(personTypeString))
-                        {
-                            int[] counterArray = awfByPersonType.get(personTypeString);
-                            counterArray[choice - 1]++;
-                            awfByPersonType.put(personTypeString, counterArray);
-
-                        } else
-                        {
-                            int[] counterArray = new int[alternativeNames.length];
-                            counterArray[choice - 1]++;
-                            awfByPersonType.put(personTypeString, counterArray);
-                        }
-
-                    }
-
-                }
-
-            }
-
-        }
+        HashMap<String, int[]> awfByPersonType = getHouseholdChoiceTallies(householdDataManager)
+                .getKeyedCounts(ChoiceTallies.AWF_BY_PERSON_TYPE);
+        if (awfByPersonType == null)
+            awfByPersonType = new HashMap<String, int[]>();
 
         logger.info(" ");
         logger
@@ -1904,9 +1652,10 @@ public class CtrampApplication implements Serializable
                 int[] countArray = awfByPersonType.get(personTypeString);
                 for (int j = 0; j < alternativeNames.length; ++j)
                 {
-                    stringToLog += String.format("%16d", countArray[j]);
-                    columnTotals[j] += countArray[j];
-                    lineTotal += countArray[j];
+                    int count = j < countArray.length ? countArray[j] : 0;
+                    stringToLog += String.format("%16d", count);
+                    columnTotals[j] += count;
+                    lineTotal += count;
                 } // j
 
             } // if key
@@ -1967,50 +1716,9 @@ public class CtrampApplication implements Serializable
         int[] ibStopsAlt = StopFrequencyDMU.NUM_IB_STOPS_FOR_ALT;
 
         // 17 purposes
-        int[][] chosen = new int[obStopsAlt.length][18];
+        int[][] chosen = getHouseholdChoiceTallies(householdDataManager).getCounts(ChoiceTallies.TOURS_BY_STOP_FREQ_AND_PURPOSE,
+                obStopsAlt.length, ChoiceTallies.NUM_STOP_FREQ_PURPOSES);
         HashMap<Integer, String> indexPurposeMap = modelStructure.getIndexPrimaryPurposeNameMap();
-        HashMap<String, Integer> purposeIndexMap = modelStructure.getPrimaryPurposeNameIndexMap();
-
-        ArrayList<int[]> startEndTaskIndicesList = getWriteHouseholdRanges(householdDataManager.getNumHouseholds());
-
-        for (int[] startEndIndices : startEndTaskIndicesList)
-        {
-
-            int startIndex = startEndIndices[0];
-            int endIndex = startEndIndices[1];
-
-            // get the array of households
-            Household[] householdArray = householdDataManager.getHhArray(startIndex, endIndex);
-
-            for (int i = 0; i < householdArray.length; ++i)
-            {
-
-                Person[] personArray = householdArray[i].getPersons();
-                for (int j = 1; j < personArray.length; j++)
-                {
-
-                    List<Tour> tourList = new ArrayList<Tour>();
-
-                    // apply stop frequency for all person tours
-                    tourList.addAll(personArray[j].getListOfWorkTours());
-                    tourList.addAll(personArray[j].getListOfSchoolTours());
-                    tourList.addAll(personArray[j].getListOfIndividualNonMandatoryTours());
-                    tourList.addAll(personArray[j].getListOfAtWorkSubtours());
-
-                    for (Tour t : tourList)
-                    {
-
-                        int index = t.getTourPrimaryPurposeIndex();
-                        int choice = t.getStopFreqChoice();
-                        chosen[choice][index]++;
-
-                    }
-
-                }
-
-            }
-
-        }
 
         for (int i = 1; i < chosen[1].length; ++i)
         {
@@ -311,6 +311,8 @@ public class DestChoiceModelManager
             logger.info( String.format("created workLocationChoice[%d,%d], task=%d, thread=%s.", currentIteration, dcModel.getModelIndex(), taskIndex, Thread.currentThread().getName()) );
 
         }
+
+        dcModel.setReuseStoredSamples( iteration > 0 );
         
         return dcModel;
         
@@ -571,6 +573,8 @@ public class DestChoiceModelManager
             logger.info( String.format("created schoolLocationChoice[%d,%d], task=%d, thread=%s.", currentIteration, dcModel.getModelIndex(), taskIndex, Thread.currentThread().getName()) );
 
         }
+
+        dcModel.setReuseStoredSamples( iteration > 0 );
         
         return dcModel;
         
@@ -665,6 +669,8 @@ public class DestChoiceModelManager
 
         }
 
+        UsualLocationSampleStore.clearInstance( ModelStructure.WORK_PRIMARY_PURPOSE_NAME );
+
         if ( modelQueueWork != null ) {
             
             System.out.println(String.format( "%s:  clearing dc choice models modelQueueWork, thread=%s.", new Date(), Thread.currentThread().getName()));
@@ -699,6 +705,8 @@ public class DestChoiceModelManager
 
         }
 
+        UsualLocationSampleStore.clearInstance( ModelStructure.SCHOOL_PRIMARY_PURPOSE_NAME );
+
         if ( modelQueueSchool != null ) {
             
             System.out.println(String.format( "%s:  clearing dc choice models modelQueueSchool, thread=%s.", new Date(), Thread.currentThread().getName()));
@@ -7,7 +7,9 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
 import org.apache.log4j.Logger;
 import com.pb.mtctm2.abm.ctramp.TazDataManager;
 
@@ -51,8 +53,9 @@ public class DestChoiceTwoStageModel
     private double[][] slcTazDistExpUtils;        
     
     
-    // create an array to re-use to hold cumulative probabilities for selecting an MGRA from a TAZ.
-    private double[] tempMgraCumProbs = new double[200];
+    // cumulative MGRA size probabilities for selecting an MGRA from a TAZ, computed from mgraSizeProbs and slcSizeProbs.
+    private CumulativeProbabilities mgraSizeCumProbs;
+    private CumulativeProbabilities slcSizeCumProbs;
     
     private double[] slcTazProbs;
     private double[] slcTazCumProbs;
@@ -183,9 +186,14 @@ public class DestChoiceTwoStageModel
 
     
     public void chooseSampleMgra( int sampleIndex, int origTaz, int sizePurposeIndex, int segmentTypeIndex, double rn, boolean debug ) {
+        chooseSampleMgra( sampleIndex, origTaz, sizePurposeIndex, segmentTypeIndex, tazDistCumProbs[segmentTypeIndex][origTaz-1], rn, debug );
+    }
+
+
+    private void chooseSampleMgra( int sampleIndex, int origTaz, int sizePurposeIndex, int segmentTypeIndex, double[] tazCumProbs, double rn, boolean debug ) {
 
         // get the chosen TAZ array index for the 0-based cumulative TAZ distance probabilities array 
-        int chosenTazIndex = Util.binarySearchDouble( tazDistCumProbs[segmentTypeIndex][origTaz-1], rn );
+        int chosenTazIndex = Util.binarySearchDouble( tazCumProbs, rn );
 
         if ( mgraSizeProbs[segmentTypeIndex][chosenTazIndex].length == 0 ) {
             logger.error( "The MGRA size probabilities array for chosen TAZ index = " + chosenTazIndex + " has 0 length." );
@@ -195,75 +203,41 @@ public class DestChoiceTwoStageModel
         }
 
         // get the chosen TAZ distance probability from the taz distance cumulative probabilities array
-        // also initialize the 0 index cumulative MGRA probability to the cumulative taz distance propbaility
+        // also get the cumulative probability of the TAZs before the chosen TAZ
         double tazProb = 0;
         double cumProbabilityLowerBound = 0;
         if ( chosenTazIndex > 0 ) {
-            tazProb = tazDistCumProbs[segmentTypeIndex][origTaz-1][chosenTazIndex] - tazDistCumProbs[segmentTypeIndex][origTaz-1][chosenTazIndex-1];
-            cumProbabilityLowerBound = tazDistCumProbs[segmentTypeIndex][origTaz-1][chosenTazIndex-1];
+            tazProb = tazCumProbs[chosenTazIndex] - tazCumProbs[chosenTazIndex-1];
+            cumProbabilityLowerBound = tazCumProbs[chosenTazIndex-1];
         }
         else {
-            tazProb = tazDistCumProbs[segmentTypeIndex][origTaz-1][0];
+            tazProb = tazCumProbs[0];
             cumProbabilityLowerBound = 0;
         }
 
-        
-        // get the array of MGRAs for the chosen TAZ (the chosen index + 1)
-        int[] mgraArray = tdm.getMgraArray(chosenTazIndex+1);
-
-        // get the unscaled MGRA size probability, scale by the TAZ distance probability, and accumulate cumulative probabilities
-        tempMgraCumProbs[0] = cumProbabilityLowerBound + ( mgraSizeProbs[segmentTypeIndex][chosenTazIndex][0] * tazProb );
-        for ( int i=1; i < mgraArray.length; i++ )
-            tempMgraCumProbs[i] = tempMgraCumProbs[i-1] + ( mgraSizeProbs[segmentTypeIndex][chosenTazIndex][i] * tazProb );
-        
-        
-        // get the chosen array index for the 0-based cumulative probabilities array 
-        int chosenMgraIndex = Util.binarySearchDouble( cumProbabilityLowerBound, tempMgraCumProbs, mgraArray.length, rn );
-        
-        
-        // use the chosen mgra index to get the chosenMgra value from the 0-based array of MGRAs associated with the chosen TAZ
-        int chosenMgra = mgraArray[chosenMgraIndex];
-
+        int chosenMgraIndex = chooseMgraIndex( mgraSizeCumProbs.get( segmentTypeIndex, chosenTazIndex ), cumProbabilityLowerBound, tazProb, rn );
         
         // store the sampled mgra and its selection probability 
-        sampleMgras[sampleIndex] = chosenMgra;
-        sampleProbabilities[sampleIndex] = ( mgraSizeProbs[segmentTypeIndex][chosenTazIndex][chosenMgraIndex] * tazProb );
-        
-        
-        // if the sample freq is 0, this mgra has not been selected yet, so add it to the array of unique sampled mgras.
-        if ( mgraSampleFreq[chosenMgra] == 0 ) {
-            uniqueMgraSample[uniqueIndex] = chosenMgra;
-            uniqueSampleIndices[uniqueIndex] = sampleIndex;
-            uniqueIndex++;
-        }
-
-        // increment the frequency of times this mgra was selected for the sample
-        mgraSampleFreq[chosenMgra]++;
-        
+        int chosenMgra = addSampleMgra( sampleIndex, chosenTazIndex, chosenMgraIndex, mgraSizeProbs[segmentTypeIndex][chosenTazIndex][chosenMgraIndex] * tazProb );
         
         if ( debug ) {
 
             double cumDistProb = 0;
             double prevDistCumProb = 0;
             if ( chosenTazIndex > 1 ) {
-                cumDistProb = tazDistCumProbs[segmentTypeIndex][origTaz-1][chosenTazIndex];
-                prevDistCumProb = tazDistCumProbs[segmentTypeIndex][origTaz-1][chosenTazIndex-1];
+                cumDistProb = tazCumProbs[chosenTazIndex];
+                prevDistCumProb = tazCumProbs[chosenTazIndex-1];
             }
             else {
-                cumDistProb = tazDistCumProbs[segmentTypeIndex][origTaz-1][0];
+                cumDistProb = tazCumProbs[0];
                 prevDistCumProb = 0;
             }
 
-            double cumSizeProb = 0;
-            double prevSizeCumProb = 0;
-            if ( chosenMgraIndex > 0 ) {
-                cumSizeProb = tempMgraCumProbs[chosenMgraIndex];
-                prevSizeCumProb = tempMgraCumProbs[chosenMgraIndex-1];
-            }
-            else {
-                cumSizeProb = tempMgraCumProbs[0];
-                prevSizeCumProb = 0;
-            }
+            // cumulative probabilities of the chosen MGRA, on the same scale as the TAZ cumulative probabilities
+            double[] sizeCumProbs = mgraSizeCumProbs.get( segmentTypeIndex, chosenTazIndex );
+            double scale = tazProb / sizeCumProbs[sizeCumProbs.length-1];
+            double cumSizeProb = cumProbabilityLowerBound + sizeCumProbs[chosenMgraIndex] * scale;
+            double prevSizeCumProb = chosenMgraIndex > 0 ? cumProbabilityLowerBound + sizeCumProbs[chosenMgraIndex-1] * scale : 0;
             
             logger.info ( String.format( "%-12d %10d %10.6f %16.8f %16.8f %18d %18.8f %18.8f %12d %18.8f", sampleIndex, chosenTazIndex, rn, prevDistCumProb, cumDistProb, chosenMgraIndex, prevSizeCumProb, cumSizeProb, chosenMgra, ((cumSizeProb-prevSizeCumProb)*(cumDistProb-prevDistCumProb)) ) );
         }
@@ -271,54 +245,11 @@ public class DestChoiceTwoStageModel
     }
     
 
-    
-    private void chooseSlcSampleMgraBinarySearch( int sampleIndex, int slcOrigTaz, int slcDestTaz, int slcSizeSegmentIndex, double rn, boolean debug ) {
-        
-        // compute stop location sample probabilities from the pre-computed sample exponentiated utilities and taz size terms.
-        // first compute exponentiated utilites for each alternative from the pre-computed component exponentiated utilities
-        double totalExponentiatedUtility = 0;
-        for ( int k=0; k < maxTaz; k++ ) {
-            slcTazProbs[k] = ( slcTazDistExpUtils[slcOrigTaz-1][k] * slcTazDistExpUtils[k][slcDestTaz-1] / slcTazDistExpUtils[slcOrigTaz-1][slcDestTaz-1] ) * slcTazSize[slcSizeSegmentIndex][k+1];
-            totalExponentiatedUtility += slcTazProbs[k];
-        }
-
-
-        // now compute alterantive probabilities and determine selected alternative
-        slcTazCumProbs[0] = slcTazProbs[0] / totalExponentiatedUtility;
-        for ( int k=1; k < maxTaz - 1; k++ )
-            slcTazCumProbs[k] = slcTazCumProbs[k-1] + (slcTazProbs[k] / totalExponentiatedUtility);
-        slcTazCumProbs[maxTaz - 1] = 1.0;
+    private void chooseSlcSampleMgra( int sampleIndex, int slcOrigTaz, int slcDestTaz, int slcSizeSegmentIndex, double rn, boolean debug ) {
 
-        // get the chosen TAZ array index for the 0-based cumulative TAZ distance probabilities array 
-        int chosenTazIndex = Util.binarySearchDouble( slcTazCumProbs, rn );
+        // get the chosen TAZ array index for the 0-based cumulative stop location TAZ probabilities array 
+        int chosenTazIndex = Util.binarySearchUpperBound( slcTazCumProbs, maxTaz, rn );
 
-        
-/*        
-        // now compute alterantive probabilities and determine selected alternative
-        int chosenTazIndex0 = -1;
-        double sum = slcTazProbs[0] / totalExponentiatedUtility;
-        if ( rn < sum ) {
-            chosenTazIndex0 = 0;
-        }
-        else {
-            for ( int k=1; k < maxTaz; k++ ) {
-                slcTazProbs[k] /= totalExponentiatedUtility;
-                sum += slcTazProbs[k]; 
-                if ( rn < sum ) {
-                    chosenTazIndex0 = k;
-                    break;
-                }
-            }            
-        }
-          
-         
-        if ( chosenTazIndex0 != chosenTazIndex ) {
-            logger.error ( "error - inconsistent choices made by two alternative monte carlo methods. " );
-            System.exit(-1);
-        }
-*/        
-  
-        
         if ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex].length == 0 ) {
             logger.error( "The MGRA size probabilities array for chosen stop location TAZ index = " + chosenTazIndex + " has 0 length." );
             logger.error( "This should not be the case.  If a TAZ was chosen, its TAZ Size > 0, so there should be at least one MGRA with size > 0 in the TAZ." );
@@ -326,176 +257,35 @@ public class DestChoiceTwoStageModel
             throw new RuntimeException();
         }
     
-          
-        // get the chosen SLC TAZ distance probability from the taz distance cumulative probabilities array
-        // also initialize the 0 index cumulative MGRA probability to the cumulative taz distance propbaility
-        double tazProb = 0;
-        double cumProbabilityLowerBound = 0;
-        if ( chosenTazIndex > 0 ) {
-            tazProb = slcTazCumProbs[chosenTazIndex] - slcTazCumProbs[chosenTazIndex-1];
-            cumProbabilityLowerBound = slcTazCumProbs[chosenTazIndex-1];
-        }
-        else {
-            tazProb = slcTazCumProbs[0];
-            cumProbabilityLowerBound = 0;
-        }
-    
-          
-        // get the array of MGRAs for the chosen TAZ (the chosen index + 1)
-        int[] mgraArray = tdm.getMgraArray(chosenTazIndex+1);
-    
-        // get the unscaled MGRA size probability, scale by the TAZ distance probability, and accumulate cumulative probabilities
-        tempMgraCumProbs[0] = cumProbabilityLowerBound + ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][0] * tazProb );
-        for ( int i=1; i < mgraArray.length; i++ )
-            tempMgraCumProbs[i] = tempMgraCumProbs[i-1] + ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][i] * tazProb );
-          
-          
-        // get the chosen array index for the 0-based cumulative probabilities array 
-        int chosenMgraIndex = Util.binarySearchDouble( cumProbabilityLowerBound, tempMgraCumProbs, mgraArray.length, rn );
-          
-          
-        // use the chosen mgra index to get the chosenMgra value from the 0-based array of MGRAs associated with the chosen TAZ
-        int chosenMgra = mgraArray[chosenMgraIndex];
+        double tazProb = slcTazProbs[chosenTazIndex];
+        double cumProbabilityLowerBound = chosenTazIndex > 0 ? slcTazCumProbs[chosenTazIndex-1] : 0;
 
-        
-        // store the sampled mgra and its selection probability 
-        sampleMgras[sampleIndex] = chosenMgra;
-        sampleProbabilities[sampleIndex] = ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][chosenMgraIndex] * tazProb );
-        
-        
-        // if the sample freq is 0, this mgra has not been selected yet, so add it to the array of unique sampled mgras.
-        if ( mgraSampleFreq[chosenMgra] == 0 ) {
-            uniqueMgraSample[uniqueIndex] = chosenMgra;
-            uniqueSampleIndices[uniqueIndex] = sampleIndex;
-            uniqueIndex++;
-        }
+        int chosenMgraIndex = chooseMgraIndex( slcSizeCumProbs.get( slcSizeSegmentIndex, chosenTazIndex ), cumProbabilityLowerBound, tazProb, rn );
 
-        // increment the frequency of times this mgra was selected for the sample
-        mgraSampleFreq[chosenMgra]++;
+        // store the sampled mgra and its selection probability 
+        addSampleMgra( sampleIndex, chosenTazIndex, chosenMgraIndex, slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][chosenMgraIndex] * tazProb );
         
     }
-  
-  
-    private void chooseSlcSampleMgraLinearWalk( int sampleIndex, int slcOrigTaz, int slcDestTaz, int slcSizeSegmentIndex, double rn, boolean debug ) {
-        
-        // compute stop location sample probabilities from the pre-computed sample exponentiated utilities and taz size terms.
-        // first compute exponentiated utilites for each alternative from the pre-computed component exponentiated utilities
-        double totalExponentiatedUtility = 0;
-        for ( int k=0; k < maxTaz; k++ ) {
-            slcTazProbs[k] = ( slcTazDistExpUtils[slcOrigTaz-1][k] * slcTazDistExpUtils[k][slcDestTaz-1] / slcTazDistExpUtils[slcOrigTaz-1][slcDestTaz-1] ) * slcTazSize[slcSizeSegmentIndex][k+1];
-            totalExponentiatedUtility += slcTazProbs[k];
-        }
 
 
-/*        
-        // now compute alterantive probabilities and determine selected alternative
-        slcTazCumProbs[0] = slcTazProbs[0] / totalExponentiatedUtility;
-        for ( int k=1; k < maxTaz - 1; k++ )
-            slcTazCumProbs[k] = slcTazCumProbs[k-1] + (slcTazProbs[k] / totalExponentiatedUtility);
-        slcTazCumProbs[maxTaz - 1] = 1.0;
+    /**
+     * Choose an MGRA within the chosen TAZ.  The part of the random number that falls in the chosen TAZ's interval of the
+     * TAZ cumulative distribution, [cumProbabilityLowerBound, cumProbabilityLowerBound + tazProb), is rescaled to the
+     * TAZ's cumulative MGRA size distribution, so the cumulative MGRA probabilities do not need to be rebuilt for each draw.
+     */
+    private int chooseMgraIndex( double[] sizeCumProbs, double cumProbabilityLowerBound, double tazProb, double rn ) {
+        double entry = ( rn - cumProbabilityLowerBound ) / tazProb * sizeCumProbs[sizeCumProbs.length-1];
+        return Util.binarySearchUpperBound( sizeCumProbs, sizeCumProbs.length, entry );
+    }
 
-        
-/*                                
-        // get the chosen TAZ array index for the 0-based cumulative TAZ distance probabilities array 
-        int chosenTazIndex0 = Util.binarySearchDouble( slcTazCumProbs, rn );
-*/
-        
-        
-        // now compute alterantive probabilities and determine selected alternative
-        int chosenTazIndex = -1;
-        double sum = slcTazProbs[0] / totalExponentiatedUtility;
-        double cumProbabilityLowerBound = 0;
-        double tazProb = 0;
-        if ( rn < sum ) {
-            chosenTazIndex = 0;
-            tazProb = sum;
-        }
-        else {
-            for ( int k=1; k < maxTaz; k++ ) {
-                tazProb = slcTazProbs[k] / totalExponentiatedUtility;
-                cumProbabilityLowerBound = sum;
-                sum += tazProb; 
-                if ( rn < sum ) {
-                    chosenTazIndex = k;
-                    break;
-                }
-            }            
-        }
-          
- 
-/*        
-        if ( chosenTazIndex0 != chosenTazIndex ) {
-            logger.error ( "error - inconsistent choices made by two alternative monte carlo methods. " );
-            System.exit(-1);
-        }
-*/        
-  
-        
-        if ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex].length == 0 ) {
-            logger.error( "The MGRA size probabilities array for chosen stop location TAZ index = " + chosenTazIndex + " has 0 length." );
-            logger.error( "This should not be the case.  If a TAZ was chosen, its TAZ Size > 0, so there should be at least one MGRA with size > 0 in the TAZ." );
-            logger.error( "Likely cause is an indexing bug.  sampleIndex=" + sampleIndex + ", slcOrigTaz=" + slcOrigTaz +  ", slcDestTaz=" + slcDestTaz + ", slcSizeSegmentIndex=" + slcSizeSegmentIndex );
-            throw new RuntimeException();
-        }
-    
-          
-/*        
-        // get the chosen SLC TAZ distance probability from the taz distance cumulative probabilities array
-        // also initialize the 0 index cumulative MGRA probability to the cumulative taz distance propbaility
-        double tazProb = 0;
-        double cumProbabilityLowerBound = 0;
-        if ( chosenTazIndex > 0 ) {
-            tazProb = slcTazCumProbs[chosenTazIndex] - slcTazCumProbs[chosenTazIndex-1];
-            cumProbabilityLowerBound = slcTazCumProbs[chosenTazIndex-1];
-        }
-        else {
-            tazProb = slcTazCumProbs[0];
-            cumProbabilityLowerBound = 0;
-        }
-*/
-        
-          
-        // get the array of MGRAs for the chosen TAZ (the chosen index + 1)
-        int[] mgraArray = tdm.getMgraArray(chosenTazIndex+1);
-    
-/*        
-        // get the unscaled MGRA size probability, scale by the TAZ distance probability, and accumulate cumulative probabilities
-        tempMgraCumProbs[0] = cumProbabilityLowerBound + ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][0] * tazProb );
-        for ( int i=1; i < mgraArray.length; i++ )
-            tempMgraCumProbs[i] = tempMgraCumProbs[i-1] + ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][i] * tazProb );
-*/
-        
-        // now compute alterantive probabilities and determine selected alternative
-        int chosenMgraIndex = -1;
-        sum = cumProbabilityLowerBound + ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][0] * tazProb );
-        if ( rn < sum ) {
-            chosenMgraIndex = 0;
-        }
-        else {
-            for ( int k=1; k < mgraArray.length; k++ ) {
-                sum += ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][k] * tazProb ); 
-                if ( rn < sum ) {
-                    chosenMgraIndex = k;
-                    break;
-                }
-            }            
-        }
-        
 
-/*        
-        // get the chosen array index for the 0-based cumulative probabilities array 
-        int chosenMgraIndex = Util.binarySearchDouble( cumProbabilityLowerBound, tempMgraCumProbs, mgraArray.length, rn );
-*/
-        
-          
+    private int addSampleMgra( int sampleIndex, int chosenTazIndex, int chosenMgraIndex, double sampleProbability ) {
+
         // use the chosen mgra index to get the chosenMgra value from the 0-based array of MGRAs associated with the chosen TAZ
-        int chosenMgra = mgraArray[chosenMgraIndex];
+        int chosenMgra = tdm.getMgraArray(chosenTazIndex+1)[chosenMgraIndex];
 
-        
-        // store the sampled mgra and its selection probability 
         sampleMgras[sampleIndex] = chosenMgra;
-        sampleProbabilities[sampleIndex] = ( slcSizeProbs[slcSizeSegmentIndex][chosenTazIndex][chosenMgraIndex] * tazProb );
-        
+        sampleProbabilities[sampleIndex] = sampleProbability;
         
         // if the sample freq is 0, this mgra has not been selected yet, so add it to the array of unique sampled mgras.
         if ( mgraSampleFreq[chosenMgra] == 0 ) {
@@ -506,7 +296,8 @@ public class DestChoiceTwoStageModel
 
         // increment the frequency of times this mgra was selected for the sample
         mgraSampleFreq[chosenMgra]++;
-        
+
+        return chosenMgra;
     }
   
   
@@ -519,8 +310,9 @@ public class DestChoiceTwoStageModel
         }
         
         resetSampleArrays();
+        double[] tazCumProbs = tazDistCumProbs[segmentTypeIndex][origTaz-1];
         for ( int i=0; i < numInSample; i++ ) {            
-            chooseSampleMgra( i, origTaz, sizeSegmentIndex, segmentTypeIndex, rand.nextDouble(), debug );
+            chooseSampleMgra( i, origTaz, sizeSegmentIndex, segmentTypeIndex, tazCumProbs, rand.nextDouble(), debug );
         }
         
         soaRunTime += ( System.nanoTime() - timeCheck );                
@@ -528,14 +320,39 @@ public class DestChoiceTwoStageModel
     }
 
     
+    /**
+     * compute the stop location TAZ probabilities, which depend only on the stop origin and destination TAZs and the size segment,
+     * once for all the draws in the sample.
+     */
+    private void computeSlcTazProbabilities( int slcOrigTaz, int slcDestTaz, int slcSizeSegmentIndex ) {
+        
+        // compute stop location sample probabilities from the pre-computed sample exponentiated utilities and taz size terms.
+        // first compute exponentiated utilites for each alternative from the pre-computed component exponentiated utilities
+        double totalExponentiatedUtility = 0;
+        for ( int k=0; k < maxTaz; k++ ) {
+            slcTazProbs[k] = ( slcTazDistExpUtils[slcOrigTaz-1][k] * slcTazDistExpUtils[k][slcDestTaz-1] / slcTazDistExpUtils[slcOrigTaz-1][slcDestTaz-1] ) * slcTazSize[slcSizeSegmentIndex][k+1];
+            totalExponentiatedUtility += slcTazProbs[k];
+        }
+
+        // now compute alternative probabilities and their cumulative probabilities
+        double sum = 0;
+        for ( int k=0; k < maxTaz; k++ ) {
+            slcTazProbs[k] /= totalExponentiatedUtility;
+            sum += slcTazProbs[k];
+            slcTazCumProbs[k] = sum;
+        }
+        
+    }
+
+    
     public void chooseSlcSample( int origTaz, int destTaz, int sizeSegmentIndex, int numInSample, Random rand, boolean debug ) {
         
         long timeCheck = System.nanoTime();
         
         resetSampleArrays();
+        computeSlcTazProbabilities( origTaz, destTaz, sizeSegmentIndex );
         for ( int i=0; i < numInSample; i++ ) {            
-            //chooseSlcSampleMgraBinarySearch( i, origTaz, destTaz, sizeSegmentIndex, rand.nextDouble(), debug );
-            chooseSlcSampleMgraLinearWalk( i, origTaz, destTaz, sizeSegmentIndex, rand.nextDouble(), debug );
+            chooseSlcSampleMgra( i, origTaz, destTaz, sizeSegmentIndex, rand.nextDouble(), debug );
         }
         
         soaRunTime += ( System.nanoTime() - timeCheck );                
@@ -545,6 +362,7 @@ public class DestChoiceTwoStageModel
     
     public void setSlcSoaProbsAndUtils( double[][] slcTazDistExpUtils, double[][][] slcSizeProbs, double[][] slcTazSize ) {
         this.slcSizeProbs = slcSizeProbs;
+        this.slcSizeCumProbs = CumulativeProbabilities.getInstance( slcSizeProbs );
         this.slcTazSize = slcTazSize;
         this.slcTazDistExpUtils = slcTazDistExpUtils;        
     }
@@ -552,6 +370,7 @@ public class DestChoiceTwoStageModel
     
     public void setMgraSizeProbs( double[][][] probs ) {
         mgraSizeProbs = probs;
+        mgraSizeCumProbs = CumulativeProbabilities.getInstance( probs );
     }
 
     public void setTazDistProbs( double[][][] probs ) {
@@ -566,4 +385,80 @@ public class DestChoiceTwoStageModel
         soaRunTime = 0;
     }
    
+
+
+    /**
+     * Cumulative versions of the [segment][tazIndex] arrays of MGRA size probabilities.  A cumulative array is computed the
+     * first time it is used, and again if the size probabilities array for the segment and TAZ has been replaced, which is
+     * how the DestChoiceModelManager updates size probabilities for shadow pricing iterations.
+     * 
+     * There is one object for each size probabilities array, shared by all the DestChoiceTwoStageModel objects in the JVM,
+     * since the size probabilities arrays themselves are shared.  Each cumulative array is published in an immutable entry
+     * with the array it was computed from, so threads need no locking: a thread that does not yet see another thread's
+     * entry computes an identical one.
+     */
+    private static class CumulativeProbabilities {
+
+        private static final Map<double[][][], CumulativeProbabilities> instances = new WeakHashMap<double[][][], CumulativeProbabilities>();
+
+        private final double[][][] probs;
+        private final Entry[][] entries;
+
+        private static final class Entry {
+            final double[] source;
+            final double[] cumProbs;
+
+            Entry( double[] source, double[] cumProbs ) {
+                this.source = source;
+                this.cumProbs = cumProbs;
+            }
+        }
+
+        private CumulativeProbabilities( double[][][] probs ) {
+            this.probs = probs;
+            entries = new Entry[probs.length][];
+            for ( int segment=0; segment < probs.length; segment++ ) {
+                if ( probs[segment] != null )
+                    entries[segment] = new Entry[probs[segment].length];
+            }
+        }
+
+        static CumulativeProbabilities getInstance( double[][][] probs ) {
+            synchronized ( instances ) {
+                CumulativeProbabilities instance = instances.get( probs );
+                if ( instance == null ) {
+                    instance = new CumulativeProbabilities( probs );
+                    instances.put( probs, instance );
+                }
+                return instance;
+            }
+        }
+
+        double[] get( int segment, int tazIndex ) {
+
+            double[] row = probs[segment][tazIndex];
+
+            Entry[] segmentEntries = entries[segment];
+            if ( segmentEntries == null ) {
+                segmentEntries = new Entry[probs[segment].length];
+                entries[segment] = segmentEntries;
+            }
+
+            Entry entry = segmentEntries[tazIndex];
+            if ( entry == null || entry.source != row ) {
+                double[] cum = new double[row.length];
+                double sum = 0;
+                for ( int i=0; i < row.length; i++ ) {
+                    sum += row[i];
+                    cum[i] = sum;
+                }
+                entry = new Entry( row, cum );
+                segmentEntries[tazIndex] = entry;
+            }
+
+            return entry.cumProbs;
+        }
+
+    }
+
 }
@@ -7,6 +7,7 @@ import com.pb.mtctm2.abm.ctramp.TazDataManager;
 
 import com.pb.common.calculator.IndexValues;
 import com.pb.common.calculator.VariableTable;
+import com.pb.common.math.MathUtil;
 
 public class DestChoiceTwoStageSoaProbabilitiesCalculator
 {
@@ -113,7 +114,7 @@ public class DestChoiceTwoStageSoaProbabilitiesCalculator
                 double[] utils = cm.getUtilities();
                 double total = 0;
                 for ( int k=0; k < probs.length; k++ )
-                    total += Math.exp( utils[k] );
+                    total += MathUtil.exp( utils[k] );
                 
                 soaTwoStageProbsLogger.info( "" );
                 for ( int k=1; k < altsToLog.length; k++ )
@@ -1,6 +1,7 @@
 package com.pb.mtctm2.abm.ctramp;
 
 import com.pb.common.calculator.VariableTable;
+import com.pb.common.math.MathUtil;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -496,7 +497,7 @@ public class DestinationSampleOfAlternativesModel
                 double[] utils = choiceModel[choiceModelIndex].getUtilities();
                 double total = 0;
                 for ( int i=0; i < probs.length; i++ )
-                    total += Math.exp( utils[i] );
+                    total += MathUtil.exp( utils[i] );
                 
                 dcSoaLogger.info( "" );
                 for ( int i=1; i < altsToLog.length; i++ )
@@ -3,6 +3,9 @@ package com.pb.mtctm2.abm.ctramp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import org.apache.log4j.Logger;
 import org.jppf.client.JPPFClient;
 import org.jppf.client.JPPFJob;
@@ -30,6 +33,14 @@ public class HouseholdChoiceModelRunner
     private static final String     HOUSEHOLD_CHOICE_PACKET_SIZE          = "distributed.task.packet.size";
     private static final String     RUN_THIS_HOUSEHOLD_ONLY               = "run.this.household.only";
 
+    // if set, households are run by this many threads in this JVM instead of by JPPF nodes (0 for all processors)
+    private static final String     PROPERTIES_LOCAL_THREADS              = "household.choice.local.threads";
+    private static final String     PROPERTIES_LOCAL_MIN_CHUNK_SIZE       = "household.choice.local.min.chunk.size";
+    private static final int        DEFAULT_LOCAL_MIN_CHUNK_SIZE          = 8;
+
+    // a range is split while fewer than this many tasks are queued beyond what idle threads could steal
+    private static final int        LOCAL_SURPLUS_TASK_THRESHOLD          = 2;
+
     private HashMap<String, String> propertyMap;
     private String                  restartModelString;
     private MatrixDataServerIf      ms;
@@ -39,6 +50,12 @@ public class HouseholdChoiceModelRunner
 
     private JPPFClient              jppfClient;
 
+    private int                     localThreads                          = -1;
+    private int                     localMinChunkSize                     = DEFAULT_LOCAL_MIN_CHUNK_SIZE;
+
+    // summaries of the household model results merged from the tasks, null if a task did not return any
+    private ChoiceTallies           choiceTallies;
+
     // The number of initialization packets are the number of "small" packets
     // submited at the beginning of a
     // distributed task to minimize synchronization issues that significantly slow
@@ -83,18 +100,30 @@ public class HouseholdChoiceModelRunner
         if (propertyValue == null) INITIALIZATION_PACKET_SIZE = 0;
         else INITIALIZATION_PACKET_SIZE = Integer.parseInt(propertyValue);
 
+        if (propertyMap.containsKey(PROPERTIES_LOCAL_THREADS))
+        {
+            localThreads = Integer.parseInt(propertyMap.get(PROPERTIES_LOCAL_THREADS).trim());
+            if (localThreads <= 0) localThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        if (propertyMap.containsKey(PROPERTIES_LOCAL_MIN_CHUNK_SIZE))
+            localMinChunkSize = Math.max(1, Integer.parseInt(propertyMap.get(PROPERTIES_LOCAL_MIN_CHUNK_SIZE).trim()));
+
     }
 
     /**
      * 
-     * JPPF framework based method
+     * JPPF framework based method, or the local fork/join scheduler if
+     * household.choice.local.threads is set.
      */
     public void runHouseholdChoiceModels()
     {
 
         long initTime = System.currentTimeMillis();
 
-        submitTasks();
+        choiceTallies = null;
+        if (localThreads > 0) runTasksLocally();
+        else submitTasks();
 
         logger.info(String.format("household model runner finished %d households in %d minutes.",
                 hhDataManager.getNumHouseholds(),
@@ -149,6 +178,7 @@ public class HouseholdChoiceModelRunner
                 taskIndex++;
             }
 
+            ChoiceTallies tallies = new ChoiceTallies();
             List<JPPFTask> results = jppfClient.submit(job);
             for (JPPFTask task : results)
             {
@@ -157,6 +187,11 @@ public class HouseholdChoiceModelRunner
                 try
                 {
                     logger.info(String.format("HH TASK: %s returned: %s, maxAlts: %d.", task.getId(), (String) task.getResult(), ((HouseholdChoiceModelsTaskJppf) task).getMaxAlts()));
+                    ChoiceTallies taskTallies = ((HouseholdChoiceModelsTaskJppf) task).getChoiceTallies();
+                    if (tallies != null && taskTallies != null)
+                        tallies.merge(taskTallies);
+                    else
+                        tallies = null;
                 } catch (Exception e)
                 {
                     logger.error( "Exception returned by computing node caught in HouseholdChoiceModelsTaskJppf.", e);
@@ -165,6 +200,8 @@ public class HouseholdChoiceModelRunner
 
             }
 
+            choiceTallies = tallies;
+
         } catch (Exception e)
         {
             logger.error( "Exception caught creating/submitting/receiving HouseholdChoiceModelsTaskJppf.", e);
@@ -173,6 +210,219 @@ public class HouseholdChoiceModelRunner
 
     }
 
+    /**
+     * Run the household choice models with a fork/join pool in this JVM. Each pool
+     * thread gets its own HouseholdChoiceModels object from the
+     * HouseholdChoiceModelsManager, and household ranges are split in half for as
+     * long as other threads are short of work, so chunk sizes adapt to the
+     * variation in household run times without the packet size properties.
+     */
+    private void runTasksLocally()
+    {
+
+        long startTime = System.currentTimeMillis();
+
+        DestChoiceModelManager dcModelManager = DestChoiceModelManager.getInstance();
+        dcModelManager.clearDcModels();
+
+        HouseholdChoiceModelsManager modelManager = HouseholdChoiceModelsManager.getInstance();
+        modelManager.managerSetup(ms, hhDataManager, propertyMap, restartModelString,
+                modelStructure, dmuFactory);
+
+        // a local HouseholdDataManager returns its own array, so the models update the
+        // households in place. A remote one is transferred once each way.
+        boolean remote = !(hhDataManager instanceof HouseholdDataManager);
+        if (remote)
+            logger.warn("the household data manager is remote, the local household scheduler transfers all households to and from it.");
+
+        Household[] households = hhDataManager.getHhArray();
+
+        int first = 0;
+        int last = households.length - 1;
+        if (ONE_HH_ID >= 0)
+        {
+            first = hhDataManager.getArrayIndex(ONE_HH_ID);
+            last = first;
+        }
+
+        boolean runDebugHouseholdsOnly = Util.getBooleanValueFromPropertyMap(propertyMap,
+                HouseholdDataManager.DEBUG_HHS_ONLY_KEY);
+
+        LocalSchedule schedule = new LocalSchedule(modelManager, households, runDebugHouseholdsOnly,
+                localMinChunkSize);
+
+        logger.info(String.format("running household choice models for %d households using %d local threads.",
+                last - first + 1, localThreads));
+
+        ForkJoinPool pool = new ForkJoinPool(localThreads);
+        try
+        {
+            pool.invoke(new HouseholdRangeTask(schedule, first, last + 1));
+        } finally
+        {
+            pool.shutdown();
+
+            int maxAlts = 0;
+            ChoiceTallies tallies = new ChoiceTallies();
+            for (LocalWorker worker : schedule.workers)
+            {
+                tallies.merge(worker.tallies);
+                logger.info(String.format(
+                        "HH WORKER: hhModel[%d] ran %d households in %d chunks, %.1f seconds, %.1f households/second.",
+                        worker.hhModel.getModelIndex(), worker.households, worker.chunks,
+                        worker.nanos / 1.0e9, worker.nanos > 0 ? worker.households / (worker.nanos / 1.0e9) : 0.0));
+                maxAlts = Math.max(maxAlts, worker.hhModel.getMaxAlts());
+                modelManager.returnHouseholdChoiceModelsObject(worker.hhModel, 0, worker.households - 1);
+            }
+            logger.info(String.format("local household scheduler used %d hhModels, maxAlts: %d.",
+                    schedule.workers.size(), maxAlts));
+            choiceTallies = tallies;
+        }
+
+        if (remote) hhDataManager.setHhArray(households);
+
+        String logsumCacheStatistics = TourMcLogsumCache.getTourMcLogsumCacheStatistics();
+        if (logsumCacheStatistics != null) logger.info(logsumCacheStatistics);
+
+        logger.info(String.format("local household scheduler finished in %.1f seconds.",
+                (System.currentTimeMillis() - startTime) / 1000.0));
+
+    }
+
+    /**
+     * State shared by the tasks of one local run, with a HouseholdChoiceModels
+     * worker bound to each pool thread.
+     */
+    private static class LocalSchedule
+    {
+        private final HouseholdChoiceModelsManager       modelManager;
+        private final Household[]                        households;
+        private final boolean                            runDebugHouseholdsOnly;
+        private final int                                minChunkSize;
+        private final ConcurrentLinkedQueue<LocalWorker> workers = new ConcurrentLinkedQueue<LocalWorker>();
+        private final ThreadLocal<LocalWorker>           threadWorker;
+
+        LocalSchedule(HouseholdChoiceModelsManager modelManager, Household[] households,
+                boolean runDebugHouseholdsOnly, int minChunkSize)
+        {
+            this.modelManager = modelManager;
+            this.households = households;
+            this.runDebugHouseholdsOnly = runDebugHouseholdsOnly;
+            this.minChunkSize = minChunkSize;
+
+            threadWorker = new ThreadLocal<LocalWorker>() {
+                protected LocalWorker initialValue()
+                {
+                    LocalWorker worker = new LocalWorker(
+                            LocalSchedule.this.modelManager.getHouseholdChoiceModelsObject(workers.size() + 1));
+                    workers.add(worker);
+                    return worker;
+                }
+            };
+        }
+    }
+
+    private static class LocalWorker
+    {
+        private final HouseholdChoiceModels hhModel;
+        private int                         households;
+        private int                         chunks;
+        private long                        nanos;
+        private final ChoiceTallies         tallies = new ChoiceTallies();
+
+        LocalWorker(HouseholdChoiceModels hhModel)
+        {
+            this.hhModel = hhModel;
+            hhModel.zeroTimes();
+        }
+    }
+
+    private static class HouseholdRangeTask
+            extends RecursiveAction
+    {
+        private final LocalSchedule schedule;
+        private final int           first;
+        private final int           last;  // exclusive
+        private HouseholdRangeTask  next;  // the chain of tasks forked by the same parent
+
+        HouseholdRangeTask(LocalSchedule schedule, int first, int last)
+        {
+            this.schedule = schedule;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute()
+        {
+            int start = first;
+            int end = last;
+
+            // keep the first half and fork the second while other threads could use more work
+            HouseholdRangeTask forked = null;
+            while (end - start > schedule.minChunkSize
+                    && getSurplusQueuedTaskCount() < LOCAL_SURPLUS_TASK_THRESHOLD)
+            {
+                int mid = (start + end) >>> 1;
+                HouseholdRangeTask task = new HouseholdRangeTask(schedule, mid, end);
+                task.next = forked;
+                task.fork();
+                forked = task;
+                end = mid;
+            }
+
+            runHouseholds(start, end);
+
+            for (HouseholdRangeTask task = forked; task != null; task = task.next)
+                task.join();
+        }
+
+        private void runHouseholds(int start, int end)
+        {
+            LocalWorker worker = schedule.threadWorker.get();
+            HouseholdChoiceModels hhModel = worker.hhModel;
+            Household[] households = schedule.households;
+
+            long startTime = System.nanoTime();
+            for (int i = start; i < end; i++)
+            {
+
+                // for debugging only - process only household objects specified for debugging, if property key was set to true
+                if (schedule.runDebugHouseholdsOnly && !households[i].getDebugChoiceModels())
+                    continue;
+
+                try
+                {
+                    hhModel.runModelsWithTiming(households[i]);
+                } catch (RuntimeException e)
+                {
+                    Logger logger = Logger.getLogger(HouseholdChoiceModelRunner.class);
+                    logger.fatal(String.format(
+                            "exception caught in local household scheduler, hhModel index=%d applying hh model for i=%d, hhId=%d.",
+                            hhModel.getModelIndex(), i, households[i].getHhId()));
+                    logger.fatal("Exception caught:", e);
+                    logger.fatal("Throwing new RuntimeException() to terminate.");
+                    throw new RuntimeException();
+                }
+
+            }
+
+            for (int i = start; i < end; i++)
+                worker.tallies.addHouseholdModelResults(households[i]);
+            worker.nanos += System.nanoTime() - startTime;
+            worker.households += end - start;
+            worker.chunks++;
+        }
+    }
+
+    /**
+     * @return the summaries of household model results returned by the tasks of
+     *         the last run, or null if they are not available.
+     */
+    public ChoiceTallies getChoiceTallies()
+    {
+        return choiceTallies;
+    }
+
     private ArrayList<int[]> getTaskHouseholdRanges(int numberOfHouseholds)
     {
 
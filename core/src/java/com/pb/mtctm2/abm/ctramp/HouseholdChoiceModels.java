@@ -34,8 +34,6 @@ public class HouseholdChoiceModels
     private static final int STF_SEED_OFFSET = 15; 
     private static final int SLC_SEED_OFFSET = 16; 
 
-    private static final String USE_NEW_SLC_SOA_METHOD_PROPERTY_KEY = "slc.use.new.soa";
-    
     private boolean                                                  runAutoOwnershipModel;
     private boolean                                                  runTransponderModel;
     private boolean                                                  runParkingProvisionModel;
@@ -108,12 +106,6 @@ public class HouseholdChoiceModels
     
     private int globalSeed;
 
-    private boolean useNewSlcSoaMethod;
-    
-    private double[][][] slcSizeProbs;
-    private double[][] slcTazSize;
-    private double[][] slcTazDistExpUtils;        
-    
     private MgraDataManager mgraManager;
     private TazDataManager tdm;
 
@@ -124,7 +116,8 @@ public class HouseholdChoiceModels
             BuildAccessibilities aggAcc, McLogsumsCalculator logsumHelper, MandatoryAccessibilitiesCalculator mandAcc,
             double[] pctHighIncome, double[] pctMedHighPlusIncome, double[] pctMultipleAutos, double[] avgtts, double[] transpDist, double[] pctDetour,
             double[][][] nonManSoaDistProbs, double[][][] nonManSoaSizeProbs,
-            double[][][] subTourSoaDistProbs, double[][][] subTourSoaSizeProbs )
+            double[][][] subTourSoaDistProbs, double[][][] subTourSoaSizeProbs,
+            StopLocationSoaData slcSoaData )
     {
 
         this.modelIndex = modelIndex;
@@ -161,9 +154,6 @@ public class HouseholdChoiceModels
 
         try
         {
-            useNewSlcSoaMethod = Util.getBooleanValueFromPropertyMap( propertyMap, USE_NEW_SLC_SOA_METHOD_PROPERTY_KEY);
-            
-            
             AccessibilitiesTable accTable = aggAcc.getAccessibilitiesTableObject();
 
             // create the auto ownership choice model application object
@@ -264,29 +254,7 @@ public class HouseholdChoiceModels
             }
 
             if ( runStopLocationModel ) {
-                stlmcModel = new IntermediateStopChoiceModels( propertyMap, modelStructure, dmuFactory, logsumHelper );
-
-                
-                // if the slcTazDistProbs are not null, they have been already computed, and it is
-                // not necessary for the thread creating this HouseholdChoiceModels object to 
-                // compute them also.  If slcTazDistProbs is null, compute them.                 
-                if ( useNewSlcSoaMethod && slcSizeProbs == null ) {
-                    
-                    // compute the array of cumulative taz distance based SOA probabilities for each origin taz.
-                    DestChoiceTwoStageSoaTazDistanceUtilityDMU locChoiceDistSoaDmu = dmuFactory.getDestChoiceSoaTwoStageTazDistUtilityDMU();        
-                    
-                    DestChoiceTwoStageSoaProbabilitiesCalculator slcSoaDistProbsObject =  new DestChoiceTwoStageSoaProbabilitiesCalculator(
-                            propertyMap, dmuFactory,
-                            IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_UTILITY,
-                            IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_MODEL_PAGE,
-                            IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_DATA_PAGE );
-                    
-                    computeSlcSoaProbabilities( slcSoaDistProbsObject, locChoiceDistSoaDmu,
-                            stlmcModel.getSizeSegmentNameIndexMap(),
-                            stlmcModel.getSizeSegmentArray() );
-
-                    stlmcModel.setupSlcDistanceBaseSoaModel( propertyMap, slcTazDistExpUtils, slcSizeProbs, slcTazSize );                    
-                }
+                stlmcModel = new IntermediateStopChoiceModels( propertyMap, modelStructure, dmuFactory, logsumHelper, slcSoaData );
 
                 if ( measureObjectSizes ) logger.info ( "SLMT size:       " + ObjectUtil.sizeOf( stlmcModel ) );
             }
@@ -704,105 +672,4 @@ public class HouseholdChoiceModels
         return maxAlts;
     }
 
-    
-    private void computeSlcSoaProbabilities( DestChoiceTwoStageSoaProbabilitiesCalculator locChoiceSoaDistProbsObject,
-            DestChoiceTwoStageSoaTazDistanceUtilityDMU locChoiceDistSoaDmu,
-            HashMap<String, Integer> segmentNameIndexMap, double[][] dcSizeArray ) {
-
-        // compute the exponentiated distance utilities that all segments of this tour purpose will share
-        slcTazDistExpUtils = computeTazDistanceExponentiatedUtilities( locChoiceSoaDistProbsObject, locChoiceDistSoaDmu );
-        
-        slcTazSize = new double[dcSizeArray.length][];
-        slcSizeProbs = new double[dcSizeArray.length][][];
-        
-        // compute an array of SOA size probabilities for each segment
-        for ( String segmentName : segmentNameIndexMap.keySet() ) {
-    
-            // compute the TAZ size values from the mgra values and the correspondence between mgras and tazs.
-            int segmentIndex = segmentNameIndexMap.get( segmentName );
-            slcTazSize[segmentIndex] = computeTazSize( dcSizeArray[segmentIndex] );
-
-            slcSizeProbs[segmentIndex] = computeSizeSegmentProbabilities( dcSizeArray[segmentIndex], slcTazSize[segmentIndex] );  
-            
-        }
-                                
-    }
-    
-    private double[][] computeSizeSegmentProbabilities( double[] size, double[] totalTazSize ) {
-
-        int maxTaz = tdm.getMaxTaz();
-                
-        // this is a 0-based array of cumulative probabilities
-        double[][] sizeProbs = new double[maxTaz][];
-                
-        for ( int k=0; k<tdm.getTazs().length; k++ ) {
-
-            int taz = tdm.getTazs()[k];
-            int[] mgraArray = tdm.getMgraArray(taz);
-            
-            if ( mgraArray == null ) {
-                sizeProbs[taz-1] = new double[0];                
-            }
-            else {
-                
-                if ( totalTazSize[taz] > 0 ) {
-                    sizeProbs[taz-1] = new double[mgraArray.length];                
-                    for ( int i=0; i < mgraArray.length; i++ ) {
-                        double mgraSize = size[mgraArray[i]];
-                        if ( mgraSize > 0 )
-                            mgraSize += 1;
-                        sizeProbs[taz-1][i] = mgraSize / totalTazSize[taz];
-                    }
-                }
-                else {
-                    sizeProbs[taz-1] = new double[0];                
-                }
-            }            
-                        
-        }
-        
-        return sizeProbs;
-        
-    }
-    
-    private double[][] computeTazDistanceExponentiatedUtilities( DestChoiceTwoStageSoaProbabilitiesCalculator locChoiceSoaDistProbsObject,
-            DestChoiceTwoStageSoaTazDistanceUtilityDMU locChoiceDistSoaDmu) {
-
-        // compute the TAZ x TAZ exponentiated utilities array for sample selection utilities.
-        double[][] tazDistExpUtils = locChoiceSoaDistProbsObject.computeDistanceUtilities( locChoiceDistSoaDmu );
-        for ( int i=0; i < tazDistExpUtils.length; i++ )
-            for ( int j=0; j < tazDistExpUtils[i].length; j++ ) {
-                if ( tazDistExpUtils[i][j] < -500 )
-                    tazDistExpUtils[i][j] = 0;
-                else
-                    tazDistExpUtils[i][j] = Math.exp( tazDistExpUtils[i][j] );
-            }
-                                
-        return tazDistExpUtils;
-        
-    }
-    
-    
-    private double[] computeTazSize( double[] size ) {
-
-        int maxTaz = tdm.getMaxTaz();
-        
-        double[] tazSize = new double[maxTaz+1];
-        
-        for ( int i=0; i< tdm.getTazs().length; i++ ) {
-
-            int taz = tdm.getTazs()[i];
-            int[] mgraArray = tdm.getMgraArray(taz);            
-            if ( mgraArray != null ) {
-                for ( int mgra : mgraArray ) {
-                    tazSize[taz] += size[mgra] + (size[mgra] > 0 ? 1 : 0);
-                }
-            }
-            
-        }
-        
-        return tazSize;
-        
-    }
-            
 }
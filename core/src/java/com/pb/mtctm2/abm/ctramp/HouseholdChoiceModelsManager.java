@@ -26,6 +26,7 @@ public class HouseholdChoiceModelsManager
     private transient Logger                              logger              = Logger.getLogger(HouseholdChoiceModelsManager.class);
 
     private static final String USE_NEW_SOA_METHOD_PROPERTY_KEY = "nmdc.use.new.soa";
+    private static final String USE_NEW_SLC_SOA_METHOD_PROPERTY_KEY = "slc.use.new.soa";
     
     private static final String TAZ_FIELD_NAME = "TAZ";
     private static final String TP_CHOICE_AVG_TTS_FILE = "tc.choice.avgtts.file";
@@ -77,6 +78,9 @@ public class HouseholdChoiceModelsManager
     private double[][][]                        subTourSizeProbs;
     private double[][][]                        subTourTazDistProbs;
 
+    // stop location SOA size terms and probabilities, built with the first HouseholdChoiceModels object and shared by all of them
+    private StopLocationSoaData                 slcSoaData;
+
     private AutoTazSkimsCalculator tazDistanceCalculator;
     
     private boolean                             useNewSoaMethod;
@@ -211,12 +215,18 @@ public class HouseholdChoiceModelsManager
             
             MandatoryAccessibilitiesCalculator mandAcc = new MandatoryAccessibilitiesCalculator(propertyMap, ntUtilities, aggAcc.getExpConstants(), logsumHelper.getBestTransitPathCalculator());
             
+            if ( slcSoaData == null && Boolean.parseBoolean(propertyMap.get(CtrampApplication.PROPERTIES_RUN_STOP_LOCATION)) ) {
+                // set the last argument to a positive, non-zero mgra value to get logging for the size term calculation for the specified mgra.
+                boolean useNewSlcSoaMethod = Util.getBooleanValueFromPropertyMap( propertyMap, USE_NEW_SLC_SOA_METHOD_PROPERTY_KEY );
+                slcSoaData = new StopLocationSoaData( propertyMap, dmuFactory, useNewSlcSoaMethod, -1 );
+            }
+
 
             // create choice model object
             hhChoiceModels = new HouseholdChoiceModels(++modelIndex, restartModelString, propertyMap, modelStructure, dmuFactory, aggAcc, logsumHelper, mandAcc,
                     pctHighIncome, pctMedHighPlusIncome, pctMultipleAutos,tdm.getAvgTravelTimeData(),tdm.getAvgTravelDistanceData(),tdm.getPctDetourData(),
                     nonMandatoryTazDistProbs, nonMandatorySizeProbs,
-                    subTourTazDistProbs, subTourSizeProbs );
+                    subTourTazDistProbs, subTourSizeProbs, slcSoaData );
             
             
             message = String.format("created hhChoiceModels=%d, task=%d, thread=%s.", modelIndex, taskIndex, Thread.currentThread().getName());
@@ -263,6 +273,7 @@ public class HouseholdChoiceModelsManager
         completedHouseholds = 0;
 
         modelQueue = null;
+        slcSoaData = null;
 
     }
 
@@ -1,8 +1,15 @@
 package com.pb.mtctm2.abm.ctramp;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import com.pb.common.calculator.MatrixDataServerIf;
+import com.pb.mtctm2.abm.accessibilities.StoredUtilityData;
 import org.apache.log4j.Logger;
 import org.jppf.server.protocol.JPPFTask;
 import org.jppf.task.storage.DataProvider;
@@ -24,6 +31,12 @@ public class HouseholdChoiceModelsTaskJppf
 
     private int maxAlts;
 
+    // summaries of the task's household model results, returned with the task
+    private ChoiceTallies tallies;
+
+    // number of households per transfer between the HouseholdDataManager and this task, the whole task range if not set
+    private static final String               PROPERTIES_TRANSFER_CHUNK_SIZE = "distributed.task.transfer.chunk.size";
+
     private boolean runWithTiming;
 
     
@@ -37,6 +50,41 @@ public class HouseholdChoiceModelsTaskJppf
         runWithTiming = true;
     }
 
+    private Future<Household[]> submitGet(ExecutorService executor, final int first, final int last)
+    {
+        return executor.submit( new Callable<Household[]>() {
+            public Household[] call()
+            {
+                return HouseholdCodec.decode( hhDataManager.getEncodedHhArray(first, last) );
+            }
+        });
+    }
+
+    private Future<?> submitPut(ExecutorService executor, Household[] hhs, final int first)
+    {
+        final byte[] encodedHhs = HouseholdCodec.encode( hhs );
+        return executor.submit( new Runnable() {
+            public void run()
+            {
+                hhDataManager.setEncodedHhArray(encodedHhs, first);
+            }
+        });
+    }
+
+    private <T> T getResult(Future<T> future)
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted waiting for household transfer.", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("exception transferring households.", e.getCause());
+        }
+    }
+
     public void run()
     {
 
@@ -90,35 +138,80 @@ public class HouseholdChoiceModelsTaskJppf
 
         setup1 = (System.nanoTime() - startTime)/1000000;
 
-        Household[] householdArray = hhDataManager.getHhArray(startIndex, endIndex);
-
-        setup2 = (System.nanoTime() - startTime)/1000000;
-        
         boolean runDebugHouseholdsOnly = Util.getBooleanValueFromPropertyMap( propertyMap, HouseholdDataManager.DEBUG_HHS_ONLY_KEY );
+
+        int chunkSize = endIndex - startIndex + 1;
+        if ( propertyMap.containsKey( PROPERTIES_TRANSFER_CHUNK_SIZE ) ) {
+            int size = Integer.parseInt( propertyMap.get( PROPERTIES_TRANSFER_CHUNK_SIZE ).trim() );
+            if ( size > 0 )
+                chunkSize = size;
+        }
+
+        // households are transferred in chunks - the next chunk is read and the previous chunk is written
+        // by background threads while the current chunk is being processed.
+        ExecutorService getExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService putExecutor = Executors.newSingleThreadExecutor();
+        ArrayList<Future<?>> puts = new ArrayList<Future<?>>();
+        long getHhsTime = 0;
+        long putHhsTime = 0;
         
         if ( runWithTiming ) 
             hhModel.zeroTimes();
-        for (int i = 0; i < householdArray.length; i++) {
-
-            // for debugging only - process only household objects specified for debugging, if property key was set to true
-            if ( runDebugHouseholdsOnly && ! householdArray[i].getDebugChoiceModels() )
-                continue;
-            
-            try {
-                if ( runWithTiming )
-                    hhModel.runModelsWithTiming ( householdArray[i] );
-                else
-                    hhModel.runModels ( householdArray[i] );                
-            }
-            catch (RuntimeException e) {
-                logger.fatal(String.format(
-                    "exception caught in taskIndex=%d hhModel index=%d applying hh model for i=%d, hhId=%d.",
-                    taskIndex, hhModel.getModelIndex(), i, householdArray[i].getHhId()));
-                logger.fatal("Exception caught:", e);
-                logger.fatal("Throwing new RuntimeException() to terminate.");
-                throw new RuntimeException();
+
+        tallies = new ChoiceTallies();
+
+        try {
+
+            Future<Household[]> nextChunk = submitGet( getExecutor, startIndex, Math.min( startIndex + chunkSize - 1, endIndex ) );
+
+            for ( int chunkStart = startIndex; chunkStart <= endIndex; chunkStart += chunkSize ) {
+
+                long waitStart = System.nanoTime();
+                Household[] householdArray = getResult( nextChunk );
+                getHhsTime += System.nanoTime() - waitStart;
+
+                int nextStart = chunkStart + chunkSize;
+                if ( nextStart <= endIndex )
+                    nextChunk = submitGet( getExecutor, nextStart, Math.min( nextStart + chunkSize - 1, endIndex ) );
+
+                for (int i = 0; i < householdArray.length; i++) {
+        
+                    // for debugging only - process only household objects specified for debugging, if property key was set to true
+                    if ( runDebugHouseholdsOnly && ! householdArray[i].getDebugChoiceModels() )
+                        continue;
+                    
+                    try {
+                        if ( runWithTiming )
+                            hhModel.runModelsWithTiming ( householdArray[i] );
+                        else
+                            hhModel.runModels ( householdArray[i] );                
+                    }
+                    catch (RuntimeException e) {
+                        logger.fatal(String.format(
+                            "exception caught in taskIndex=%d hhModel index=%d applying hh model for i=%d, hhId=%d.",
+                            taskIndex, hhModel.getModelIndex(), chunkStart - startIndex + i, householdArray[i].getHhId()));
+                        logger.fatal("Exception caught:", e);
+                        logger.fatal("Throwing new RuntimeException() to terminate.");
+                        throw new RuntimeException();
+                    }
+        
+                }
+
+                for (Household household : householdArray)
+                    tallies.addHouseholdModelResults( household );
+
+                puts.add( submitPut( putExecutor, householdArray, chunkStart ) );
             }
 
+            long waitStart = System.nanoTime();
+            for ( Future<?> put : puts )
+                getResult( put );
+            putHhsTime += System.nanoTime() - waitStart;
+
+        }
+        finally {
+            getExecutor.shutdownNow();
+            putExecutor.shutdown();
         }
 
         long[] componentTimes = hhModel.getTimes();
@@ -127,11 +220,10 @@ public class HouseholdChoiceModelsTaskJppf
         if ( hhModel.getMaxAlts() > maxAlts )
             maxAlts = hhModel.getMaxAlts();
         
-        setup3 = (System.nanoTime() - startTime)/1000000;
-        
-        hhDataManager.setHhArray(householdArray, startIndex);
-
+        // getHhs and putHhs are the times spent waiting for transfers that did not overlap household processing
+        setup2 = setup1 + getHhsTime/1000000;
         setup4 = (System.nanoTime() - startTime)/1000000;
+        setup3 = setup4 - putHhsTime/1000000;
         
         logger.info(String.format(
             "end of household choice model thread=%s, task[%d], hhModel[%d], startIndex=%d, endIndex=%d",
@@ -143,6 +235,14 @@ public class HouseholdChoiceModelsTaskJppf
 
         logger.info( "task=" + taskIndex + ", setup=" + setup1 + ", getHhs=" + (setup2 - setup1) + ", processHhs=" + (setup3 - setup2) + ", putHhs=" + (setup4 - setup3) + ", return model=" + (setup5 - setup4) + "." );
 
+        String tapPairCacheStatistics = StoredUtilityData.getTapPairCacheStatistics();
+        if ( tapPairCacheStatistics != null )
+            logger.info( "task=" + taskIndex + ", " + tapPairCacheStatistics );
+
+        String logsumCacheStatistics = TourMcLogsumCache.getTourMcLogsumCacheStatistics();
+        if ( logsumCacheStatistics != null )
+            logger.info( "task=" + taskIndex + ", " + logsumCacheStatistics );
+
         if ( runWithTiming )
             logModelComponentTimes( componentTimes, partialStopTimes, logger, hhModel.getModelIndex() );
         
@@ -189,4 +289,9 @@ public class HouseholdChoiceModelsTaskJppf
         return maxAlts;
     }
 
+    public ChoiceTallies getChoiceTallies()
+    {
+        return tallies;
+    }
+
 }
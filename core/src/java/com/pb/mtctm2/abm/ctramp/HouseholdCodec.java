@@ -0,0 +1,79 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes a chunk of Household objects as a single compressed byte array for
+ * transfer between the HouseholdDataManager and the household choice model tasks.
+ *
+ * The households in a chunk are written in one object stream, so objects they
+ * share (ModelStructure, class descriptors) are written once per chunk, and the
+ * stream is deflated, which removes most of the repeated field and class names.
+ * The RMI layer then only has to move a byte[].
+ *
+ * A field-level codec sending only choice outcomes back was considered and not
+ * used. The cost of writing and reading a chunk is small next to the time the
+ * choice models take for its households, and the transfer of one chunk overlaps
+ * the models run on the previous one. A hand-written codec would also have to
+ * be kept in step with every field of Household, Person, Tour and Stop, and
+ * would silently drop any field added later.
+ */
+public final class HouseholdCodec
+{
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private HouseholdCodec()
+    {
+    }
+
+    public static byte[] encode(Household[] hhs)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE), BUFFER_SIZE));
+            out.writeInt(hhs.length);
+            for (Household hh : hhs)
+                out.writeObject(hh);
+            out.close();
+        } catch (IOException e)
+        {
+            throw new RuntimeException("exception encoding " + hhs.length + " households.", e);
+        } finally
+        {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Household[] decode(byte[] data)
+    {
+        try
+        {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(data)), BUFFER_SIZE));
+            Household[] hhs = new Household[in.readInt()];
+            for (int i = 0; i < hhs.length; i++)
+                hhs[i] = (Household) in.readObject();
+            in.close();
+            return hhs;
+        } catch (IOException e)
+        {
+            throw new RuntimeException("exception decoding households.", e);
+        } catch (ClassNotFoundException e)
+        {
+            throw new RuntimeException("exception decoding households.", e);
+        }
+    }
+
+}
@@ -2,15 +2,10 @@ package com.pb.mtctm2.abm.ctramp;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
 import com.pb.common.calculator.VariableTable;
-import com.pb.common.model.Alternative;
-import com.pb.common.model.ConcreteAlternative;
-import com.pb.common.model.LogitModel;
-import com.pb.common.model.ModelException;
 import com.pb.mtctm2.abm.accessibilities.AccessibilitiesTable;
 import com.pb.mtctm2.abm.ctramp.CoordinatedDailyActivityPatternDMU;
 import com.pb.mtctm2.abm.ctramp.CtrampDmuFactoryIf;
@@ -73,12 +68,14 @@ public class HouseholdCoordinatedDailyActivityPatternModel
     private static final String                HOME_PATTERN                           = Definitions.HOME_PATTERN;
     private static final String[]              activityNameArray                      = {
             MANDATORY_PATTERN, NONMANDATORY_PATTERN, HOME_PATTERN                     };
+    private static final int                   MANDATORY_INDEX                        = 0;
+    private static final int                   NONMANDATORY_INDEX                     = 1;
 
     private ModelStructure                     modelStructure;
     private double[][]                         fixedCumulativeProportions;
 
-    // collection of logit models - one for each household size
-    private ArrayList<LogitModel>              logitModelList;
+    // pattern evaluators - one for each household size
+    private CdapPatternEvaluator[]             evaluators;
 
     private AccessibilitiesTable accTable;
 
@@ -100,7 +97,7 @@ public class HouseholdCoordinatedDailyActivityPatternModel
         accTable = myAccTable;
 
         // setup the coordinated daily activity pattern choice model objects
-        createLogitModels();
+        createPatternEvaluators();
         setupCoordinatedDailyActivityPatternModelApplication(propertyMap, dmuFactory);
 
     }
@@ -291,89 +288,17 @@ public class HouseholdCoordinatedDailyActivityPatternModel
     }
 
     /**
-     * Prepares a separate logit model for households of size 1, 2, 3, 4, and 5. Each
-     * model has 3^n alternatives, where n is the household size. The models are
+     * Prepares a separate pattern evaluator for households of size 1, 2, 3, 4, and
+     * 5. Each has 3^n patterns, where n is the household size. The evaluators are
      * cleared and re-used for each household of the specified size.
      * 
      */
-    private void createLogitModels()
+    private void createPatternEvaluators()
     {
 
-        // new the collection of logit models
-        logitModelList = new ArrayList<LogitModel>(MAX_MODEL_HH_SIZE);
-
-        // build a model for each HH size
+        evaluators = new CdapPatternEvaluator[MAX_MODEL_HH_SIZE];
         for (int i = 0; i < MAX_MODEL_HH_SIZE; ++i)
-        {
-
-            int hhSize = i + 1;
-
-            // create the working model
-            LogitModel workingLogitModel = new LogitModel(hhSize + " Person HH");
-
-            // compute the number of alternatives
-            int numberOfAlternatives = 1;
-            for (int j = 0; j < hhSize; ++j)
-                numberOfAlternatives *= activityNameArray.length;
-
-            // create a counter for each of the people in the hh
-            int[] counterForEachPerson = new int[hhSize];
-            Arrays.fill(counterForEachPerson, 0);
-
-            // create the alternatives and add them to the logit model
-            int numberOfAltsCounter = 0;
-            int totalAltsCounter = 0;
-            while(numberOfAltsCounter < numberOfAlternatives)
-            {
-
-                // set the string for the alternative
-                String alternativeName = "";
-                int numOutOfHomeActivites = 0;
-                for (int j = 0; j < hhSize; ++j)
-                {
-                    alternativeName += activityNameArray[counterForEachPerson[j]];
-                    if (!activityNameArray[counterForEachPerson[j]].equalsIgnoreCase(HOME_PATTERN))
-                        numOutOfHomeActivites++;
-                }
-
-                // create the alternative and add it to the model
-                if (numOutOfHomeActivites < 2)
-                {
-                    ConcreteAlternative tempAlt = new ConcreteAlternative(alternativeName + "0",
-                            totalAltsCounter);
-                    workingLogitModel.addAlternative(tempAlt);
-                    numberOfAltsCounter++;
-                    totalAltsCounter++;
-
-                } else
-                {
-
-                    ConcreteAlternative tempAlt = new ConcreteAlternative(alternativeName + "0",
-                            totalAltsCounter);
-                    workingLogitModel.addAlternative(tempAlt);
-                    numberOfAltsCounter++;
-                    totalAltsCounter++;
-
-                    tempAlt = new ConcreteAlternative(alternativeName + "j", totalAltsCounter);
-                    workingLogitModel.addAlternative(tempAlt);
-                    totalAltsCounter++;
-
-                }
-
-                // check increment the counters
-                for (int j = 0; j < hhSize; ++j)
-                {
-                    counterForEachPerson[j]++;
-                    if (counterForEachPerson[j] == activityNameArray.length) counterForEachPerson[j] = 0;
-                    else break;
-                }
-
-            }
-
-            // add the model to the array list
-            logitModelList.add(i, workingLogitModel);
-
-        } // for i max hh size
+            evaluators[i] = new CdapPatternEvaluator(i + 1, activityNameArray);
 
     }
 
@@ -400,23 +325,14 @@ public class HouseholdCoordinatedDailyActivityPatternModel
         // reorder persons for large households if need be
         reOrderPersonsForCdap(householdObject);
 
-        // get the logit model we need and clear it of any lingering probilities
-        LogitModel workingLogitModel = logitModelList.get(modelHhSize - 1);
-        workingLogitModel.clear();
-
-        // get the alternatives and reset the utilities to zero
-        ArrayList<Alternative> alternativeList = workingLogitModel.getAlternatives();
-        for (int i = 0; i < alternativeList.size(); ++i)
-        {
-            Alternative tempAlt = (Alternative) alternativeList.get(i);
-            tempAlt.setUtility(0.0);
-        }
+        // get the pattern evaluator for this household size and clear the previous household's utilities
+        CdapPatternEvaluator evaluator = evaluators[modelHhSize - 1];
+        evaluator.clear();
 
         // write the debug header if we have a trace household
         if (householdObject.getDebugChoiceModels())
         {
 
-            LogitModel.setLogger(cdapLogsumLogger);
 
             cdapLogger.info(" ");
             cdapLogger
@@ -495,30 +411,8 @@ public class HouseholdCoordinatedDailyActivityPatternModel
 
             } // debug trace
 
-            // align the one person utilities with the alternatives for person i
-            for (int j = 0; j < alternativeList.size(); ++j)
-            {
-
-                // get the name of the alternative
-                Alternative tempAlt = (Alternative) alternativeList.get(j);
-                String altName = tempAlt.getName();
-
-                // get the name of the activity for this person in the alternative
-                // string
-                String altNameForPersonA = altName.substring(i, i + 1);
-
-                // align the utility results with this activity
-                for (int k = 0; k < activityNameArray.length; ++k)
-                {
-
-                    if (altNameForPersonA.equalsIgnoreCase(activityNameArray[k]))
-                    {
-                        double currentUtility = tempAlt.getUtility();
-                        tempAlt.setUtility(currentUtility + firstPersonUtilities[k]);
-                    }
-                } // k
-
-            } // j
+            // add the one person utilities to the patterns for person i
+            evaluator.addPersonUtilities(i, firstPersonUtilities);
 
             // loop through all possible person Bs
             for (int j = 0; j < modelHhSize; ++j)
@@ -564,27 +458,8 @@ public class HouseholdCoordinatedDailyActivityPatternModel
 
                 } // debug trace
 
-                // align the two person utilities with the alternatives for person i
-                for (int k = 0; k < alternativeList.size(); ++k)
-                {
-                    Alternative tempAlt = (Alternative) alternativeList.get(k);
-                    String altName = tempAlt.getName();
-
-                    // get the name of the activity for this person in the
-                    // alternative string
-                    String altNameForPersonA = altName.substring(i, i + 1);
-                    String altNameForPersonB = altName.substring(j, j + 1);
-
-                    for (int l = 0; l < activityNameArray.length; ++l)
-                    {
-                        if (altNameForPersonA.equalsIgnoreCase(activityNameArray[l])
-                                && altNameForPersonB.equalsIgnoreCase(activityNameArray[l]))
-                        {
-                            double currentUtility = tempAlt.getUtility();
-                            tempAlt.setUtility(currentUtility + twoPersonUtilities[l]);
-                        }
-                    } // l
-                } // k
+                // add the two person utilities to the patterns for persons i and j
+                evaluator.addPairUtilities(i, j, twoPersonUtilities);
 
                 // loop through all possible person Cs
                 for (int k = 0; k < modelHhSize; ++k)
@@ -636,30 +511,8 @@ public class HouseholdCoordinatedDailyActivityPatternModel
 
                     } // debug trace
 
-                    // align the three person utilities with the alternatives for
-                    // person i
-                    for (int l = 0; l < alternativeList.size(); ++l)
-                    {
-                        Alternative tempAlt = (Alternative) alternativeList.get(l);
-                        String altName = tempAlt.getName();
-
-                        // get the name of the activity for this person in the
-                        // alternative string
-                        String altNameForPersonA = altName.substring(i, i + 1);
-                        String altNameForPersonB = altName.substring(j, j + 1);
-                        String altNameForPersonC = altName.substring(k, k + 1);
-
-                        for (int m = 0; m < activityNameArray.length; ++m)
-                        {
-                            if (altNameForPersonA.equalsIgnoreCase(activityNameArray[m])
-                                    && altNameForPersonB.equalsIgnoreCase(activityNameArray[m])
-                                    && altNameForPersonC.equalsIgnoreCase(activityNameArray[m]))
-                            {
-                                double currentUtility = tempAlt.getUtility();
-                                tempAlt.setUtility(currentUtility + threePersonUtilities[m]);
-                            }
-                        } // m
-                    } // l
+                    // add the three person utilities to the patterns for persons i, j and k
+                    evaluator.addTripleUtilities(i, j, k, threePersonUtilities);
 
                 } // k (person C loop)
 
@@ -687,68 +540,29 @@ public class HouseholdCoordinatedDailyActivityPatternModel
 
         } // debug trace
 
-        // align the utilities with the proper alternatives
-        for (int i = 0; i < alternativeList.size(); ++i)
-        {
-            Alternative tempAlt = (Alternative) alternativeList.get(i);
-            String altName = tempAlt.getName();
-
-            for (int j = 0; j < activityNameArray.length; ++j)
-            {
-
-                boolean samePattern = true;
-                for (int k = 0; k < modelHhSize; ++k)
-                {
-
-                    // alternative should have pattern j for each member k
-                    String altNameForThisPerson = altName.substring(k, k + 1);
-                    if (altNameForThisPerson.equalsIgnoreCase(activityNameArray[j])) continue;
-                    else
-                    {
-                        samePattern = false;
-                        break;
-                    }
-                } // k
-
-                // if all have the same pattern, add the new utilities
-                if (samePattern)
-                {
-                    double currentUtility = tempAlt.getUtility();
-                    tempAlt.setUtility(currentUtility + allMemberInteractionUtilities[j]);
-                }
-            } // j
-
-        } // i
+        // add the interaction utilities to the patterns where all members have the same activity
+        evaluator.addAllMemberUtilities(allMemberInteractionUtilities);
 
         // compute the joint utilities to be added to alternatives with joint tour
-        // indicator
-
-        int adultsWithMand = 0;
-        int adultsWithNonMand = 0;
-        int kidsWithMand = 0;
-        int kidsWithNonMand = 0;
-        int adultsLeaveHome = 0;
-        int workMgra = 0;
-        double workLocationAccessibilityForWorkers = 0.0;
-        for (int i = 0; i < alternativeList.size(); ++i)
+        // indicator. The joint utility depends only on the pattern, so it is computed
+        // once for each pattern that has a joint tour alternative.
+        for (int p = 0; p < evaluator.getNumberOfPatterns(); ++p)
         {
 
-            Alternative tempAlt = (Alternative) alternativeList.get(i);
-            String altName = tempAlt.getName();
+            int jointAlt = evaluator.getJointAlternative(p);
+            if (jointAlt < 0) continue;
 
-            adultsWithMand = 0;
-            adultsWithNonMand = 0;
-            kidsWithMand = 0;
-            kidsWithNonMand = 0;
-            adultsLeaveHome = 0;
-            workMgra = 0;
-            workLocationAccessibilityForWorkers = 0.0;
+            int adultsWithMand = 0;
+            int adultsWithNonMand = 0;
+            int kidsWithMand = 0;
+            int kidsWithNonMand = 0;
+            int adultsLeaveHome = 0;
+            double workLocationAccessibilityForWorkers = 0.0;
             for (int k = 0; k < modelHhSize; ++k)
             {
 
-                // alternative should have pattern j for each member k
-                String altNameForThisPerson = altName.substring(k, k + 1);
-                if (altNameForThisPerson.equalsIgnoreCase(MANDATORY_PATTERN))
+                int activity = evaluator.getActivity(p, k);
+                if (activity == MANDATORY_INDEX)
                 {
                     if (isThisCdapPersonAnAdult(k + 1))
                     {
@@ -759,7 +573,7 @@ public class HouseholdCoordinatedDailyActivityPatternModel
                         kidsWithMand++;
                     }
 
-                    workMgra = getWorkLocationForThisCdapPerson(k + 1);
+                    int workMgra = getWorkLocationForThisCdapPerson(k + 1);
                     if (workMgra > 0
                             && workMgra != ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR)
                     {
@@ -767,7 +581,7 @@ public class HouseholdCoordinatedDailyActivityPatternModel
                         workLocationAccessibilityForWorkers += tempPerson.getWorkLocationLogsum();
                     }
 
-                } else if (altNameForThisPerson.equalsIgnoreCase(NONMANDATORY_PATTERN))
+                } else if (activity == NONMANDATORY_INDEX)
                 {
                     if (isThisCdapPersonAnAdult(k + 1))
                     {
@@ -791,96 +605,52 @@ public class HouseholdCoordinatedDailyActivityPatternModel
             double[] jointUtilities = jointUec.solve(cdapDmuObject.getIndexValues(), cdapDmuObject,
                     availability);
 
+            evaluator.setJointUtility(p, jointUtilities[0]);
+
             // log these utilities for trace households
             if (householdObject.getDebugChoiceModels())
             {
-                String stringToLog = String.format("%-13s%4d %-12s%9s%9s%9s", "Joint", (i + 1),
+                String altName = evaluator.getAlternativeName(jointAlt);
+                String stringToLog = String.format("%-13s%4d %-12s%9s%9s%9s", "Joint", (jointAlt + 1),
                         altName, "--", "--", "--");
-                stringToLog += String.format("%10.4f",
-                        (altName.indexOf("j") > 0 ? jointUtilities[0] : 0.0));
+                stringToLog += String.format("%10.4f", jointUtilities[0]);
                 cdapLogger.info(stringToLog);
 
                 jointUec.logAnswersArray(cdapUecLogger, "JOINT Utility for CDAP Alt index = "
-                        + (i + 1) + ", Alt name = " + altName);
+                        + (jointAlt + 1) + ", Alt name = " + altName);
             } // debug trace
 
-            // align the utilities with the proper alternatives
-            if (altName.indexOf("j") > 0)
-            {
-                double currentUtility = tempAlt.getUtility();
-                tempAlt.setUtility(currentUtility + jointUtilities[0]);
-            }
-
-        } // i
-
-        // TODO: check this out - use computeAvailabilty() checks that an alternative
-        // is available
-        // all utilities are set - compute probabilities
-        // workingLogitModel.setAvailability(true);
-        workingLogitModel.computeAvailabilities();
-
-        // compute the exponentiated utility, logging debug if need be
-        if (householdObject.getDebugChoiceModels())
-        {
-            workingLogitModel.setDebug(true);
-            workingLogitModel.writeUtilityHeader();
-        }
-        workingLogitModel.getUtility();
-
-        // compute the probabilities, logging debug if need be
-        if (householdObject.getDebugChoiceModels())
-        {
-            workingLogitModel.writeProbabilityHeader();
-        }
-        workingLogitModel.calculateProbabilities();
-
-        // turn debug off for the next guy
-        workingLogitModel.setDebug(false);
+        } // p
 
         // make a choice for the first five
         Random hhRandom = householdObject.getHhRandom();
 
         double randomNumber = hhRandom.nextDouble();
 
+        int chosenAlt = evaluator.choose(randomNumber);
+
         if (householdObject.getDebugChoiceModels())
         {
+            evaluator.logAlternatives(cdapLogger);
             cdapLogger.info("randomNumber = " + randomNumber);
         }
 
-        String firstFiveChosenName = "";
-        try
+        if (chosenAlt < 0)
         {
-            ConcreteAlternative chosenAlternative = (ConcreteAlternative) workingLogitModel
-                    .chooseElementalAlternative(randomNumber);
-            firstFiveChosenName = chosenAlternative.getName();
-
-            if (householdObject.getDebugChoiceModels())
-            {
+            String message = String.format("no available CDAP alternatives to choose for HHID=%d.",
+                    householdObject.getHhId());
+            logger.error(message);
+            throw new RuntimeException(message);
+        }
 
-                int chosenIndex = 0;
-                // get the index number for the alternative chosen
-                for (int i = 0; i < alternativeList.size(); ++i)
-                {
-                    Alternative tempAlt = (Alternative) alternativeList.get(i);
-                    String altName = tempAlt.getName();
-                    if (altName.equalsIgnoreCase(firstFiveChosenName))
-                    {
-                        chosenIndex = i + 1;
-                        break;
-                    }
-                }
+        String firstFiveChosenName = evaluator.getAlternativeName(chosenAlt);
 
-                cdapLogger.info("chosen pattern (5 or fewer hh members): Alt index = "
-                        + chosenIndex + ", Alt name = " + firstFiveChosenName);
-                cdapLogger.info("");
-                cdapLogger.info("");
-            }
-        } catch (ModelException e)
+        if (householdObject.getDebugChoiceModels())
         {
-            logger.error(String.format(
-                    "Exception caught for HHID=%d, no available CDAP alternatives to choose.",
-                    householdObject.getHhId()), e);
-            throw new RuntimeException();
+            cdapLogger.info("chosen pattern (5 or fewer hh members): Alt index = "
+                    + (chosenAlt + 1) + ", Alt name = " + firstFiveChosenName);
+            cdapLogger.info("");
+            cdapLogger.info("");
         }
 
         // make a choice for additional hh members if need be
@@ -927,12 +697,6 @@ public class HouseholdCoordinatedDailyActivityPatternModel
 
         }
 
-        if (householdObject.getDebugChoiceModels())
-        {
-            // reset the logger to what it was before we changed it
-            LogitModel.setLogger(Logger.getLogger(LogitModel.class));
-        }
-
         // no need to re-order the activities - hhsize <= MAX_MODEL_HH_SIZE have
         // original order of persons
         return firstFiveChosenName;
@@ -1,6 +1,6 @@
 package com.pb.mtctm2.abm.ctramp;
 
-import com.pb.common.datafile.OLD_CSVFileReader;
+import com.pb.common.datafile.MappedCSVFileReader;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.util.IndexSort;
 import com.pb.common.util.ObjectUtil;
@@ -292,13 +292,11 @@ public abstract class HouseholdDataManager
         Random r = h.getHhRandom();
 
         int seed = inputRandomSeed + h.getHhId();
-        r.setSeed(seed);
 
-        // select count Random draws to reset this household's Random to it's state
+        // skip count Random draws to reset this household's Random to it's state
         // prior to
         // the model run for which model results were stored in HouseholdDataManager.
-        for (int i = 0; i < count; i++)
-            r.nextDouble();
+        HouseholdRandom.setSeedAndSkip(r, seed, count);
 
         // reset the randomCount for the household's Random
         h.setHhRandomCount(count);
@@ -659,6 +657,24 @@ public abstract class HouseholdDataManager
         return tempHhs;
     }
 
+    public byte[] getEncodedHhArray(int first, int last)
+    {
+        long startTime = System.currentTimeMillis();
+        Household[] tempHhs = new Household[last - first + 1];
+        System.arraycopy(hhs, first, tempHhs, 0, tempHhs.length);
+        byte[] encodedHhs = HouseholdCodec.encode(tempHhs);
+        logger.debug(String.format("getEncodedHhArray for first=%d, last=%d, %d bytes, elapsed=%d millisecs.", first, last, encodedHhs.length, (System.currentTimeMillis() - startTime)));
+        return encodedHhs;
+    }
+
+    public void setEncodedHhArray(byte[] encodedHhs, int startIndex)
+    {
+        long startTime = System.currentTimeMillis();
+        Household[] tempHhs = HouseholdCodec.decode(encodedHhs);
+        System.arraycopy(tempHhs, 0, hhs, startIndex, tempHhs.length);
+        logger.debug(String.format("setEncodedHhArray for startIndex=%d, %d bytes, elapsed=%d millisecs.", startIndex, encodedHhs.length, (System.currentTimeMillis() - startTime)));
+    }
+
     public int getArrayIndex(int hhId)
     {
         int i = hhIndexArray[hhId];
@@ -698,8 +714,7 @@ public abstract class HouseholdDataManager
         try
         {
             logger.info("reading popsyn household data file.");
-            OLD_CSVFileReader reader = new OLD_CSVFileReader();
-            reader.setDelimSet("," + reader.getDelimSet());
+            MappedCSVFileReader reader = new MappedCSVFileReader();
             hhTable = reader.readFile(new File(fileName));
         } catch (Exception e)
         {
@@ -719,8 +734,7 @@ public abstract class HouseholdDataManager
         try
         {
             logger.info("reading popsyn person data file.");
-            OLD_CSVFileReader reader = new OLD_CSVFileReader();
-            reader.setDelimSet("," + reader.getDelimSet());
+            MappedCSVFileReader reader = new MappedCSVFileReader();
             personTable = reader.readFile(new File(fileName));
         } catch (Exception e)
         {
@@ -1029,7 +1043,7 @@ public abstract class HouseholdDataManager
                                                         "exception caught summing workers by origin MGRA for household table record r=%d, person=%d, homeMgra=%d, occup=%d, segmentIndex=%d.",
                                                         r, person.getPersonNum(), homeMgra, occup,
                                                         segmentIndex), e);
-                        throw new RuntimeException();
+                        throw new RuntimeException(e);
                     }
 
                 }
@@ -1100,7 +1114,7 @@ public abstract class HouseholdDataManager
                         logger.error( String.format(
                             "exception caught summing students by origin MGRA for household table record r=%d, person=%d, homeMgra=%d, segmentIndex=%d.",
                             r, person.getPersonNum(), homeMgra, segmentIndex), e);
-                        throw new RuntimeException();
+                        throw new RuntimeException(e);
                     }
 
                 }
@@ -1173,53 +1187,60 @@ public abstract class HouseholdDataManager
 
         // dimension the array
         int maxMgra = mgraManager.getMaxMgra();
-        int destMgra = 0;
 
         int[][] workTours = new int[segmentValueIndexMap.size()][maxMgra + 1];
 
         // hhs is dimesioned to number of households + 1.
         for (int r = 0; r < getNumHouseholds(); r++)
-        {
+            addWorkToursByDestMgra(hhs[r], segmentValueIndexMap, workTours);
 
-            Person[] persons = hhs[r].getPersons();
+        return workTours;
 
-            for (int p = 1; p < persons.length; p++)
-            {
+    }
 
-                Person person = persons[p];
+    /**
+     * Add the workers in the household who do not work at home to the counts of work
+     * tours by occupation segment and work location MGRA.
+     */
+    public static void addWorkToursByDestMgra(Household hh, HashMap<Integer, Integer> segmentValueIndexMap, int[][] workTours)
+    {
 
-                int occup = -1;
-                int segmentIndex = -1;
-                try
-                {
+        Person[] persons = hh.getPersons();
 
-                    if (person.getPersonIsWorker() == 1)
-                    {
+        for (int p = 1; p < persons.length; p++)
+        {
 
-                        destMgra = person.getPersonWorkLocationZone();
+            Person person = persons[p];
 
-                        if (destMgra != ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR)
-                        {
-                            occup = person.getPersPecasOccup();
-                            segmentIndex = segmentValueIndexMap.get(occup);
-                            workTours[segmentIndex][destMgra]++;
-                        }
+            int destMgra = 0;
+            int occup = -1;
+            int segmentIndex = -1;
+            try
+            {
+
+                if (person.getPersonIsWorker() == 1)
+                {
 
+                    destMgra = person.getPersonWorkLocationZone();
+
+                    if (destMgra != ModelStructure.WORKS_AT_HOME_LOCATION_INDICATOR)
+                    {
+                        occup = person.getPersPecasOccup();
+                        segmentIndex = segmentValueIndexMap.get(occup);
+                        workTours[segmentIndex][destMgra]++;
                     }
 
-                } catch (Exception e)
-                {
-                    logger.error( String.format(
-                        "exception caught summing workers by work location MGRA for household table record r=%d, person=%d, workMgra=%d, occup=%d, segmentIndex=%d.",
-                        r, person.getPersonNum(), destMgra, occup, segmentIndex), e);
-                    throw new RuntimeException();
                 }
 
+            } catch (Exception e)
+            {
+                Logger.getLogger(HouseholdDataManager.class).error( String.format(
+                    "exception caught summing workers by work location MGRA for hhid=%d, person=%d, workMgra=%d, occup=%d, segmentIndex=%d.",
+                    hh.getHhId(), person.getPersonNum(), destMgra, occup, segmentIndex), e);
+                throw new RuntimeException(e);
             }
 
-        } // r (households)
-
-        return workTours;
+        }
 
     }
 
@@ -1265,7 +1286,7 @@ public abstract class HouseholdDataManager
                     logger.error( String.format(
                         "exception caught summing workers by work location MGRA for household table record r=%d, person=%d, workMgra=%d, occup=%d, segmentIndex=%d.",
                         r, person.getPersonNum(), destMgra, occup, segmentIndex), e);
-                    throw new RuntimeException();
+                    throw new RuntimeException(e);
                 }
 
             }
@@ -1291,63 +1312,73 @@ public abstract class HouseholdDataManager
 
         // dimension the array
         int maxMgra = mgraManager.getMaxMgra();
-        int destMgra = 0;
 
         int[][] schoolTours = new int[schoolSegmentNameIndexMap.size()][maxMgra + 1];
 
         // hhs is dimesioned to number of households + 1.
         for (int r = 0; r < getNumHouseholds(); r++)
-        {
+            addSchoolToursByDestMgra(hhs[r], schoolSegmentNameIndexMap, mgraGsDistrict, mgraHsDistrict,
+                    gsDistrictSegmentMap, hsDistrictSegmentMap, schoolTours);
 
-            Person[] persons = hhs[r].getPersons();
+        return schoolTours;
 
-            for (int p = 1; p < persons.length; p++)
-            {
+    }
 
-                Person person = persons[p];
-                destMgra = person.getPersonSchoolLocationZone();
-                if (destMgra == 0) continue;
+    /**
+     * Add the students in the household who are enrolled to the counts of school
+     * tours by school segment and school location MGRA. The grade school and high
+     * school segments are those of the school districts of the school locations.
+     */
+    public static void addSchoolToursByDestMgra(Household hh, HashMap<String, Integer> schoolSegmentNameIndexMap,
+            int[] mgraGsDistrict, int[] mgraHsDistrict, HashMap<Integer,Integer> gsDistrictSegmentMap,
+            HashMap<Integer,Integer> hsDistrictSegmentMap, int[][] schoolTours)
+    {
 
-                int segmentIndex = -1;
-                try
-                {
+        Person[] persons = hh.getPersons();
 
-                    if (person.getPersonIsPreschoolChild() == 1) {
-                        segmentIndex = schoolSegmentNameIndexMap.get( BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.PRESCHOOL_SEGMENT_GROUP_INDEX] );
-                    }
-                    else if (person.getPersonIsGradeSchool() == 1) {
-                        int gsDistrict = mgraGsDistrict[destMgra];
-                        segmentIndex = gsDistrictSegmentMap.get( gsDistrict );
-                    }
-                    else if (person.getPersonIsHighSchool() == 1) {
-                        int hsDistrict = mgraHsDistrict[destMgra];
-                        segmentIndex = hsDistrictSegmentMap.get( hsDistrict );
-                    }
-                    else if (person.getPersonIsUniversityStudent() == 1 && person.getAge() < 30) {
-                        segmentIndex = schoolSegmentNameIndexMap.get(  BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.UNIV_TYPICAL_SEGMENT_GROUP_INDEX] );
-                    }
-                    else if (person.getPersonIsUniversityStudent() == 1 && person.getAge() >= 30) {
-                        segmentIndex = schoolSegmentNameIndexMap.get(  BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.UNIV_NONTYPICAL_SEGMENT_GROUP_INDEX] );
-                    }
+        for (int p = 1; p < persons.length; p++)
+        {
 
-                    // if person type is a student but segment index is -1, the person is not enrolled; assume home schooled and don't add to sum by home mgra
-                    if (segmentIndex >= 0)
-                        schoolTours[segmentIndex][destMgra]++;
-                    
+            Person person = persons[p];
+            int destMgra = person.getPersonSchoolLocationZone();
+            if (destMgra == 0) continue;
 
-                } catch (Exception e)
-                {
-                    logger.error( String.format(
-                        "exception caught summing students by origin MGRA for household table record r=%d, person=%d, schoolMgra=%d, segmentIndex=%d.",
-                        r, person.getPersonNum(), destMgra, segmentIndex), e );
-                    throw new RuntimeException();
+            int segmentIndex = -1;
+            try
+            {
+
+                if (person.getPersonIsPreschoolChild() == 1) {
+                    segmentIndex = schoolSegmentNameIndexMap.get( BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.PRESCHOOL_SEGMENT_GROUP_INDEX] );
+                }
+                else if (person.getPersonIsGradeSchool() == 1) {
+                    int gsDistrict = mgraGsDistrict[destMgra];
+                    segmentIndex = gsDistrictSegmentMap.get( gsDistrict );
+                }
+                else if (person.getPersonIsHighSchool() == 1) {
+                    int hsDistrict = mgraHsDistrict[destMgra];
+                    segmentIndex = hsDistrictSegmentMap.get( hsDistrict );
+                }
+                else if (person.getPersonIsUniversityStudent() == 1 && person.getAge() < 30) {
+                    segmentIndex = schoolSegmentNameIndexMap.get(  BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.UNIV_TYPICAL_SEGMENT_GROUP_INDEX] );
+                }
+                else if (person.getPersonIsUniversityStudent() == 1 && person.getAge() >= 30) {
+                    segmentIndex = schoolSegmentNameIndexMap.get(  BuildAccessibilities.SCHOOL_DC_SIZE_SEGMENT_NAME_LIST[BuildAccessibilities.UNIV_NONTYPICAL_SEGMENT_GROUP_INDEX] );
                 }
 
-            }
+                // if person type is a student but segment index is -1, the person is not enrolled; assume home schooled and don't add to sum by home mgra
+                if (segmentIndex >= 0)
+                    schoolTours[segmentIndex][destMgra]++;
 
-        } // r (households)
 
-        return schoolTours;
+            } catch (Exception e)
+            {
+                Logger.getLogger(HouseholdDataManager.class).error( String.format(
+                    "exception caught summing students by origin MGRA for hhid=%d, person=%d, schoolMgra=%d, segmentIndex=%d.",
+                    hh.getHhId(), person.getPersonNum(), destMgra, segmentIndex), e );
+                throw new RuntimeException(e);
+            }
+
+        }
 
     }
 
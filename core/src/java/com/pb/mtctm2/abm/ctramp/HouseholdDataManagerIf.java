@@ -118,6 +118,16 @@ public interface HouseholdDataManagerIf
 
     public Household[] getHhArray(int firstHhIndex, int lastHhIndex);
 
+    /**
+     * return households firstHhIndex to lastHhIndex encoded by HouseholdCodec.
+     */
+    public byte[] getEncodedHhArray(int firstHhIndex, int lastHhIndex);
+
+    /**
+     * replace households starting at startIndex with those decoded by HouseholdCodec.
+     */
+    public void setEncodedHhArray(byte[] encodedHhs, int startIndex);
+
     /**
      * return the number of household objects read from the synthetic population.
      * 
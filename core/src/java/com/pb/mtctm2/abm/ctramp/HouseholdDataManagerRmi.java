@@ -329,6 +329,18 @@ public class HouseholdDataManagerRmi
         remote.method("setHhArray", objArray);
     }
 
+    public byte[] getEncodedHhArray(int first, int last)
+    {
+        Object[] objArray = {first, last};
+        return (byte[]) remote.method("getEncodedHhArray", objArray);
+    }
+
+    public void setEncodedHhArray(byte[] encodedHhs, int startIndex)
+    {
+        Object[] objArray = {encodedHhs, startIndex};
+        remote.method("setEncodedHhArray", objArray);
+    }
+
     /**
      * return the array of Household objects holding the synthetic population and
      * choice model outcomes.
@@ -1,6 +1,7 @@
 package com.pb.mtctm2.abm.ctramp;
 
 import com.pb.common.calculator.IndexValues;
+import com.pb.common.datafile.ColumnarFileWriter;
 //import com.pb.common.util.ObjectUtil;
 import com.pb.common.util.ResourceUtil;
 import com.pb.mtctm2.abm.accessibilities.MandatoryAccessibilitiesDMU;
@@ -9,6 +10,11 @@ import com.pb.mtctm2.abm.ctramp.CtrampApplication;
 import com.pb.common.newmodel.UtilityExpressionCalculator;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.io.PrintWriter;
 import java.io.File;
 import java.io.IOException;
@@ -42,6 +48,9 @@ public class HouseholdDataWriter
     private static final String PROPERTIES_INDIV_TRIP_TABLE     = "Results.IndivTripTable";
     private static final String PROPERTIES_JOINT_TRIP_TABLE     = "Results.JointTripTable";
 
+    // number of threads filling columnar row groups, all available processors if not set
+    private static final String PROPERTIES_COLUMNAR_WRITE_THREADS = "Results.ColumnarWriteThreads";
+
     private static final int    NUM_WRITE_PACKETS               = 2000;
     private static final int MAX_NUM_STOPS_ON_HALF_TOUR = 4;
     private static String[] STOP_FIELDS = {"mode", "period", "taz", "purpose"};
@@ -59,9 +68,8 @@ public class HouseholdDataWriter
 
     private HashMap<String,String> rbMap;
     
-    private MandatoryAccessibilitiesDMU dmu;
-    private UtilityExpressionCalculator autoSkimUEC;
-    private IndexValues iv;
+    // the auto skim UEC is not thread safe, so each thread writing households has its own
+    private ThreadLocal<AutoSkims> autoSkims;
     private MgraDataManager mgraManager;
    
     private ModelStructure      modelStructure;
@@ -78,13 +86,16 @@ public class HouseholdDataWriter
         writeStopsFlag = Boolean.parseBoolean(rbMap.get(CtrampApplication.PROPERTIES_WRITE_STOPS_TO_TOUR_FILE));
         
         // create a UEC to get highway distance traveled for tours
-        String uecFileName = rbMap.get("acc.mandatory.uec.file");
-        int dataPage = Integer.parseInt(rbMap.get("acc.mandatory.data.page"));
-        int autoSkimPage = Integer.parseInt(rbMap.get("acc.mandatory.auto.page"));
-        File uecFile = new File(uecFileName);
-        dmu = new MandatoryAccessibilitiesDMU();
-        autoSkimUEC = new UtilityExpressionCalculator(uecFile, autoSkimPage, dataPage, rbMap, dmu);
-        iv = new IndexValues();
+        final String uecFileName = rbMap.get("acc.mandatory.uec.file");
+        final int dataPage = Integer.parseInt(rbMap.get("acc.mandatory.data.page"));
+        final int autoSkimPage = Integer.parseInt(rbMap.get("acc.mandatory.auto.page"));
+        autoSkims = new ThreadLocal<AutoSkims>() {
+            protected AutoSkims initialValue()
+            {
+                return new AutoSkims(new File(uecFileName), autoSkimPage, dataPage);
+            }
+        };
+        autoSkims.get();
         mgraManager = MgraDataManager.getInstance(rbMap);
         
         // default is to not save the tour mode choice utils and probs for each tour
@@ -118,10 +129,80 @@ public class HouseholdDataWriter
         writeData(householdData, fdw);
     }
 
+    public void writeDataToColumnarFiles(HouseholdDataManagerIf householdData)
+    {
+        logger.info("Writing data structures to columnar files.");
+        long t = System.currentTimeMillis();
+        writeDataInParallel(householdData, new ColumnarDataWriter());
+        float delta = ((Long) (System.currentTimeMillis() - t)).floatValue() / 60000.0f;
+        logger.info("Finished writing data structures to columnar files (" + delta + " minutes).");
+    }
+
+    /**
+     * Fill a set of row groups for each household range on a pool of threads, and
+     * write them to the columnar files in range order as they finish. At most two
+     * ranges per thread are held waiting to be written.
+     */
+    private void writeDataInParallel(final HouseholdDataManagerIf householdDataManager, final ColumnarDataWriter writer)
+    {
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (rbMap.containsKey(PROPERTIES_COLUMNAR_WRITE_THREADS))
+            numThreads = Integer.parseInt(rbMap.get(PROPERTIES_COLUMNAR_WRITE_THREADS).trim());
+
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+        LinkedList<Future<RowGroupDataWriter>> pending = new LinkedList<Future<RowGroupDataWriter>>();
+        try
+        {
+            for (final int[] startEndIndices : getWriteHouseholdRanges(householdDataManager.getNumHouseholds()))
+            {
+                pending.add(exec.submit(new Callable<RowGroupDataWriter>() {
+                    public RowGroupDataWriter call()
+                    {
+                        RowGroupDataWriter rowGroups = writer.newRowGroupDataWriter();
+                        int hhid = 0;
+                        try
+                        {
+                            Household[] householdArray = householdDataManager.getHhArray(startEndIndices[0], startEndIndices[1]);
+                            for (Household hh : householdArray)
+                            {
+                                if (hh == null) continue;
+                                hhid = hh.getHhId();
+                                writeHouseholdData(hh, rowGroups);
+                            }
+                        } catch (RuntimeException e)
+                        {
+                            logger.error(String.format("error writing hh=%d", hhid), e);
+                            throw e;
+                        }
+                        rowGroups.encode();
+                        return rowGroups;
+                    }
+                }));
+
+                while (pending.size() >= 2 * numThreads)
+                    writer.writeRowGroups(pending.removeFirst().get());
+            }
+
+            while (!pending.isEmpty())
+                writer.writeRowGroups(pending.removeFirst().get());
+
+        } catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e)
+        {
+            logger.error("Exception returned in place of result object.", e);
+            throw new RuntimeException(e);
+        } finally
+        {
+            exec.shutdownNow();
+            writer.finishActions();
+        }
+    }
+
     private void writeData(HouseholdDataManagerIf householdDataManager, DataWriter writer)
     {
         int hhid = 0;
-        int persNum = 0;
         int tourid = 0;
         try
         {
@@ -147,28 +228,7 @@ public class HouseholdDataWriter
 //                    long size = ObjectUtil.sizeOf(hh);
 //                    if (size > maxSize) maxSize = size;
 
-                    writer.writeHouseholdData(formHouseholdDataEntry(hh));
-                    for (Person p : hh.getPersons())
-                    {
-                        if (p == null) continue;
-                        persNum = p.getPersonNum();
-
-                        writer.writePersonData(formPersonDataEntry(p));
-                        for (Tour t : p.getListOfWorkTours())
-                            writeIndivTourData(t, writer);
-                        for (Tour t : p.getListOfSchoolTours())
-                            writeIndivTourData(t, writer);
-                        for (Tour t : p.getListOfIndividualNonMandatoryTours())
-                            writeIndivTourData(t, writer);
-                        for (Tour t : p.getListOfAtWorkSubtours())
-                            writeIndivTourData(t, writer);
-                    }
-                    Tour[] jointTours = hh.getJointTourArray();
-                    if (jointTours != null) for (Tour t : jointTours)
-                    {
-                        if (t == null) continue;
-                        writeJointTourData(t, writer);
-                    }
+                    writeHouseholdData(hh, writer);
                 }
             }
 
@@ -176,64 +236,119 @@ public class HouseholdDataWriter
 
         } catch (RuntimeException e)
         {
-            logger.error(String.format("error writing hh=%d, persNum=%d", hhid, persNum), e);
-            throw new RuntimeException();
+            logger.error(String.format("error writing hh=%d", hhid), e);
+            throw new RuntimeException(e);
         } finally
         {
             writer.finishActions();
         }
     }
 
+    private void writeHouseholdData(Household hh, DataWriter writer)
+    {
+        DataRow row = writer.householdRow();
+        formHouseholdDataEntry(hh, row);
+        row.end();
+        for (Person p : hh.getPersons())
+        {
+            if (p == null) continue;
+
+            row = writer.personRow();
+            formPersonDataEntry(p, row);
+            row.end();
+            for (Tour t : p.getListOfWorkTours())
+                writeIndivTourData(t, writer);
+            for (Tour t : p.getListOfSchoolTours())
+                writeIndivTourData(t, writer);
+            for (Tour t : p.getListOfIndividualNonMandatoryTours())
+                writeIndivTourData(t, writer);
+            for (Tour t : p.getListOfAtWorkSubtours())
+                writeIndivTourData(t, writer);
+        }
+        Tour[] jointTours = hh.getJointTourArray();
+        if (jointTours != null) for (Tour t : jointTours)
+        {
+            if (t == null) continue;
+            writeJointTourData(t, writer);
+        }
+    }
+
     private void writeIndivTourData(Tour t, DataWriter writer)
     {
-        writer.writeIndivTourData(formIndivTourDataEntry(t));
+        DataRow row = writer.indivTourRow();
+        formIndivTourDataEntry(t, row);
+        row.end();
 
         Stop[] outboundStops = t.getOutboundStops();
         if (outboundStops != null)
         {
             for (int i = 0; i < outboundStops.length; i++)
             {
-                writer.writeIndivTripData(formIndivTripDataEntry(outboundStops[i]));
+                row = writer.indivTripRow();
+                formIndivTripDataEntry(outboundStops[i], row);
+                row.end();
             }
         } else
         {
-            writer.writeIndivTripData(formTourAsIndivTripDataEntry(t, false));
+            row = writer.indivTripRow();
+            formTourAsIndivTripDataEntry(t, false, row);
+            row.end();
         }
 
         Stop[] inboundStops = t.getInboundStops();
         if (inboundStops != null)
         {
             for (Stop s : inboundStops)
-                writer.writeIndivTripData(formIndivTripDataEntry(s));
+            {
+                row = writer.indivTripRow();
+                formIndivTripDataEntry(s, row);
+                row.end();
+            }
         } else
         {
-            writer.writeIndivTripData(formTourAsIndivTripDataEntry(t, true));
+            row = writer.indivTripRow();
+            formTourAsIndivTripDataEntry(t, true, row);
+            row.end();
         }
 
     }
 
     private void writeJointTourData(Tour t, DataWriter writer)
     {
-        writer.writeJointTourData(formJointTourDataEntry(t));
+        DataRow row = writer.jointTourRow();
+        formJointTourDataEntry(t, row);
+        row.end();
 
         Stop[] outboundStops = t.getOutboundStops();
         if (outboundStops != null)
         {
             for (Stop s : outboundStops)
-                writer.writeJointTripData(formJointTripDataEntry(s));
+            {
+                row = writer.jointTripRow();
+                formJointTripDataEntry(s, row);
+                row.end();
+            }
         } else
         {
-            writer.writeJointTripData(formTourAsJointTripDataEntry(t, false));
+            row = writer.jointTripRow();
+            formTourAsJointTripDataEntry(t, false, row);
+            row.end();
         }
 
         Stop[] inboundStops = t.getInboundStops();
         if (inboundStops != null)
         {
             for (Stop s : inboundStops)
-                writer.writeJointTripData(formJointTripDataEntry(s));
+            {
+                row = writer.jointTripRow();
+                formJointTripDataEntry(s, row);
+                row.end();
+            }
         } else
         {
-            writer.writeJointTripData(formTourAsJointTripDataEntry(t, true));
+            row = writer.jointTripRow();
+            formTourAsJointTripDataEntry(t, true, row);
+            row.end();
         }
 
     }
@@ -284,17 +399,15 @@ public class HouseholdDataWriter
         return data;
     }
 
-    private List<String> formHouseholdDataEntry(Household hh)
+    private void formHouseholdDataEntry(Household hh, DataRow data)
     {
-        List<String> data = new LinkedList<String>();
-        data.add(string(hh.getHhId()));
-        data.add(string(hh.getHhMgra()));
-        data.add(string(hh.getIncomeInDollars()));
-        data.add(string(hh.getAutoOwnershipModelResult()));
-        data.add(string(hh.getTpChoice()));
-        data.add(string(hh.getCoordinatedDailyActivityPattern()));
-        data.add(string(hh.getJointTourFreqChosenAlt()));
-        return data;
+        data.add(hh.getHhId());
+        data.add(hh.getHhMgra());
+        data.add(hh.getIncomeInDollars());
+        data.add(hh.getAutoOwnershipModelResult());
+        data.add(hh.getTpChoice());
+        data.add(hh.getCoordinatedDailyActivityPattern());
+        data.add(hh.getJointTourFreqChosenAlt());
     }
 
     private List<String> formPersonColumnNames()
@@ -333,22 +446,20 @@ public class HouseholdDataWriter
         return data;
     }
 
-    private List<String> formPersonDataEntry(Person p)
+    private void formPersonDataEntry(Person p, DataRow data)
     {
-        List<String> data = new LinkedList<String>();
-        data.add(string(p.getHouseholdObject().getHhId()));
-        data.add(string(p.getPersonId()));
-        data.add(string(p.getPersonNum()));
-        data.add(string(p.getAge()));
-        data.add(string(p.getPersonIsMale() == 1 ? "m" : "f"));
-        data.add(string(p.getPersonType()));
-        data.add(string(p.getValueOfTime()));
-        data.add(string(p.getCdapActivity()));
-        data.add(string(p.getImtfChoice()));
-        data.add(string(p.getInmtfChoice()));
-        data.add(string(p.getFreeParkingAvailableResult()));
-        data.add(string(p.getParkingReimbursement()));
-        return data;
+        data.add(p.getHouseholdObject().getHhId());
+        data.add(p.getPersonId());
+        data.add(p.getPersonNum());
+        data.add(p.getAge());
+        data.add(p.getPersonIsMale() == 1 ? "m" : "f");
+        data.add(p.getPersonType());
+        data.add(p.getValueOfTime());
+        data.add(p.getCdapActivity());
+        data.add(p.getImtfChoice());
+        data.add(p.getInmtfChoice());
+        data.add(p.getFreeParkingAvailableResult());
+        data.add(p.getParkingReimbursement());
     }
 
     private List<String> formIndivTourColumnNames()
@@ -555,27 +666,26 @@ public class HouseholdDataWriter
         return data;
     }
 
-    private List<String> formIndivTourDataEntry(Tour t)
+    private void formIndivTourDataEntry(Tour t, DataRow data)
     {
 
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getPersonObject().getPersonId()));
-        data.add(string(t.getPersonObject().getPersonNum()));
-        data.add(string(t.getPersonObject().getPersonTypeNumber()));
-        data.add(string(t.getTourId()));
-        data.add(string(t.getTourCategory()));
-        data.add(string(t.getTourPurpose()));
-        data.add(string(t.getTourOrigMgra()));
-        data.add(string(t.getTourDestMgra()));
-        data.add(string(t.getTourDepartPeriod()));
-        data.add(string(t.getTourArrivePeriod()));
-        data.add(string(t.getTourModeChoice()));
-        data.add(string(calculateDistancesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra())));
-        data.add(string(calculateTimesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra())));
-        data.add(string(t.getSubtourFreqChoice()));
-        data.add(string(t.getNumOutboundStops() == 0 ? 0 : t.getNumOutboundStops() - 1));
-        data.add(string(t.getNumInboundStops() == 0 ? 0 : t.getNumInboundStops() - 1));
+        data.add(t.getHhId());
+        data.add(t.getPersonObject().getPersonId());
+        data.add(t.getPersonObject().getPersonNum());
+        data.add(t.getPersonObject().getPersonTypeNumber());
+        data.add(t.getTourId());
+        data.add(t.getTourCategory());
+        data.add(t.getTourPurpose());
+        data.add(t.getTourOrigMgra());
+        data.add(t.getTourDestMgra());
+        data.add(t.getTourDepartPeriod());
+        data.add(t.getTourArrivePeriod());
+        data.add(t.getTourModeChoice());
+        data.add(calculateDistancesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra()));
+        data.add(calculateTimesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra()));
+        data.add(t.getSubtourFreqChoice());
+        data.add(t.getNumOutboundStops() == 0 ? 0 : t.getNumOutboundStops() - 1);
+        data.add(t.getNumInboundStops() == 0 ? 0 : t.getNumInboundStops() - 1);
 
         //get tour taps
         double[] outTaps = new double[4];
@@ -592,12 +702,12 @@ public class HouseholdDataWriter
         	outTaps = t.getBestDtwTapPairsOut()[(int)t.getChoosenTransitPathOut()];
         	inTaps = t.getBestWtdTapPairsIn()[(int)t.getChoosenTransitPathIn()];
         }
-        data.add(string(outTaps[0]));
-        data.add(string(outTaps[1]));
-        data.add(string(inTaps[0]));
-        data.add(string(inTaps[1]));
-        data.add(string(outTaps[2]));
-        data.add(string(inTaps[2]));
+        data.add(outTaps[0]);
+        data.add(outTaps[1]);
+        data.add(inTaps[0]);
+        data.add(inTaps[1]);
+        data.add(outTaps[2]);
+        data.add(inTaps[2]);
         
         if (saveUtilsProbsFlag)
         {
@@ -609,44 +719,41 @@ public class HouseholdDataWriter
                 dummy=1;
             
             for (int i = 0; i < utils.length; i++)
-                data.add(string(utils[i]));
+                data.add(utils[i]);
             for (int i = utils.length; i < numModeAlts; i++)
-                data.add("-999");
+                data.addText("-999");
 
             float[] probs = t.getTourModalProbabilities();
             for (int i = 0; i < probs.length; i++)
-                data.add(string(probs[i]));
+                data.add(probs[i]);
             for (int i = probs.length; i < numModeAlts; i++)
-                data.add("0.0");
+                data.addText("0.0");
         }
         
         if ( writeStopsFlag ) {
       	   
-      	   data.addAll(formStopDataEntries(t.getOutboundStops()));
-      	   data.addAll(formStopDataEntries(t.getInboundStops()));
+      	   formStopDataEntries(t.getOutboundStops(), data);
+      	   formStopDataEntries(t.getInboundStops(), data);
          }
-
-        return data;
     }
 
-    private List<String> formJointTourDataEntry(Tour t)
+    private void formJointTourDataEntry(Tour t, DataRow data)
     {
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getTourId()));
-        data.add(string(t.getTourCategory()));
-        data.add(string(t.getTourPurpose()));
-        data.add(string(t.getJointTourComposition()));
-        data.add(string(formTourParticipationEntry(t)));
-        data.add(string(t.getTourOrigMgra()));
-        data.add(string(t.getTourDestMgra()));
-        data.add(string(t.getTourDepartPeriod()));
-        data.add(string(t.getTourArrivePeriod()));
-        data.add(string(t.getTourModeChoice()));
-        data.add(string(calculateDistancesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra())));
-        data.add(string(calculateTimesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra())));
-        data.add(string(t.getNumOutboundStops() == 0 ? 0 : t.getNumOutboundStops() - 1));
-        data.add(string(t.getNumInboundStops() == 0 ? 0 : t.getNumInboundStops() - 1));
+        data.add(t.getHhId());
+        data.add(t.getTourId());
+        data.add(t.getTourCategory());
+        data.add(t.getTourPurpose());
+        data.add(t.getJointTourComposition());
+        data.add(formTourParticipationEntry(t));
+        data.add(t.getTourOrigMgra());
+        data.add(t.getTourDestMgra());
+        data.add(t.getTourDepartPeriod());
+        data.add(t.getTourArrivePeriod());
+        data.add(t.getTourModeChoice());
+        data.add(calculateDistancesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra()));
+        data.add(calculateTimesForAllMgras(t.getTourOrigMgra(), t.getTourDestMgra()));
+        data.add(t.getNumOutboundStops() == 0 ? 0 : t.getNumOutboundStops() - 1);
+        data.add(t.getNumInboundStops() == 0 ? 0 : t.getNumInboundStops() - 1);
 
         //get tour taps
         double[] outTaps = new double[4];
@@ -663,12 +770,12 @@ public class HouseholdDataWriter
         	outTaps = t.getBestDtwTapPairsOut()[(int)t.getChoosenTransitPathOut()];
         	inTaps = t.getBestWtdTapPairsIn()[(int)t.getChoosenTransitPathIn()];
         }
-        data.add(string(outTaps[0]));
-        data.add(string(outTaps[1]));
-        data.add(string(inTaps[0]));
-        data.add(string(inTaps[1]));
-        data.add(string(outTaps[2]));
-        data.add(string(inTaps[2]));
+        data.add(outTaps[0]);
+        data.add(outTaps[1]);
+        data.add(inTaps[0]);
+        data.add(inTaps[1]);
+        data.add(outTaps[2]);
+        data.add(inTaps[2]);
         
         if (saveUtilsProbsFlag)
         {
@@ -680,23 +787,21 @@ public class HouseholdDataWriter
                 dummy=1;
             
             for (int i = 0; i < utils.length; i++)
-                data.add(string(utils[i]));
+                data.add(utils[i]);
             for (int i = utils.length; i < numModeAlts; i++)
-                data.add("-999");
+                data.addText("-999");
 
             float[] probs = t.getTourModalProbabilities();
             for (int i = 0; i < probs.length; i++)
-                data.add(string(probs[i]));
+                data.add(probs[i]);
             for (int i = probs.length; i < numModeAlts; i++)
-                data.add("0.0");
+                data.addText("0.0");
         }
         
         if ( writeStopsFlag ) {
-       	   data.addAll(formStopDataEntries(t.getOutboundStops()));
-       	   data.addAll(formStopDataEntries(t.getInboundStops()));
+       	   formStopDataEntries(t.getOutboundStops(), data);
+       	   formStopDataEntries(t.getInboundStops(), data);
           }
-
-        return data;
     }
 
     private String formTourParticipationEntry(Tour t)
@@ -738,9 +843,8 @@ public class HouseholdDataWriter
  	   return null;
  }
 
-    private List<String> formStopDataEntries( Stop[] stops) {
+    private void formStopDataEntries( Stop[] stops, DataRow data) {
 
-    	List<String> stopData = new LinkedList<String>();
     	int numStops=0;
     	   	
     	if ( stops !=null )
@@ -748,17 +852,15 @@ public class HouseholdDataWriter
 
     	if ( numStops > 0 )   		
     		for ( int i = 0; i < numStops; i++ ) {
-    			stopData.add( string(stops[i].getMode()) );
-    			stopData.add( string(stops[i].getStopPeriod()) );
-    			stopData.add( string(stops[i].getDest()) );
-    			stopData.add( string(stops[i].getDestPurpose()) );
+    			data.add( stops[i].getMode() );
+    			data.add( stops[i].getStopPeriod() );
+    			data.add( stops[i].getDest() );
+    			data.add( stops[i].getDestPurpose() );
     		}
     	
     	for ( int i = numStops; i < MAX_NUM_STOPS_ON_HALF_TOUR; i++ ) 
     		for ( int j = 0; j < STOP_FIELDS.length; j++ )
-    			stopData.add (string("N.A."));
-    	
-    	return stopData;
+    			data.add ("N.A.");
     }
     
     /*
@@ -878,129 +980,123 @@ public class HouseholdDataWriter
         return data;
     }
 
-    private List<String> formIndivTripDataEntry(Stop s)
+    private void formIndivTripDataEntry(Stop s, DataRow data)
     {
         Tour t = s.getTour();
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getPersonObject().getPersonId()));
-        data.add(string(t.getPersonObject().getPersonNum()));
-        data.add(string(t.getTourId()));
-        data.add(string(s.getStopId()));
-        data.add(string(s.isInboundStop() ? 1 : 0));
-        data.add(string(t.getTourPurpose()));
+        data.add(t.getHhId());
+        data.add(t.getPersonObject().getPersonId());
+        data.add(t.getPersonObject().getPersonNum());
+        data.add(t.getTourId());
+        data.add(s.getStopId());
+        data.add(s.isInboundStop() ? 1 : 0);
+        data.add(t.getTourPurpose());
 
         if (s.getStopId() == 0)
         {
             if (s.isInboundStop())
             {
                 // first trip on inbound half-tour with stops
-                data.add(s.getOrigPurpose());
-                data.add(s.getDestPurpose());
-                data.add(string(t.getTourDestMgra()));
-                data.add(string(s.getDest()));
+                data.addText(s.getOrigPurpose());
+                data.addText(s.getDestPurpose());
+                data.add(t.getTourDestMgra());
+                data.add(s.getDest());
             } else
             {
                 // first trip on outbound half-tour with stops
                 if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
                 {
-                    data.add("Work");
-                    data.add(s.getDestPurpose());
+                    data.addText("Work");
+                    data.addText(s.getDestPurpose());
                 } else
                 {
-                    data.add("Home");
-                    data.add(s.getDestPurpose());
+                    data.addText("Home");
+                    data.addText(s.getDestPurpose());
                 }
-                data.add(string(t.getTourOrigMgra()));
-                data.add(string(s.getDest()));
+                data.add(t.getTourOrigMgra());
+                data.add(s.getDest());
             }
-            data.add(string(calculateDistancesForAllMgras(t.getTourDestMgra(), s.getDest())));
+            data.add(calculateDistancesForAllMgras(t.getTourDestMgra(), s.getDest()));
         } else if (s.isInboundStop() && s.getStopId() == t.getNumInboundStops() - 1)
         {
             // last trip on inbound half-tour with stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(s.getOrigPurpose());
-                data.add("Work");
+                data.addText(s.getOrigPurpose());
+                data.addText("Work");
             } else
             {
-                data.add(s.getOrigPurpose());
-                data.add("Home");
+                data.addText(s.getOrigPurpose());
+                data.addText("Home");
             }
-            data.add(string(s.getOrig()));
-            data.add(string(t.getTourOrigMgra()));
-            data.add(string(calculateDistancesForAllMgras(s.getOrig(), t.getTourOrigMgra())));
+            data.add(s.getOrig());
+            data.add(t.getTourOrigMgra());
+            data.add(calculateDistancesForAllMgras(s.getOrig(), t.getTourOrigMgra()));
         } else if (!s.isInboundStop() && s.getStopId() == t.getNumOutboundStops() - 1)
         {
             // last trip on outbound half-tour with stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(s.getOrigPurpose());
-                data.add(t.getTourPurpose());
+                data.addText(s.getOrigPurpose());
+                data.addText(t.getTourPurpose());
             } else
             {
-                data.add(s.getOrigPurpose());
-                data.add(t.getTourPurpose());
+                data.addText(s.getOrigPurpose());
+                data.addText(t.getTourPurpose());
             }
-            data.add(string(s.getOrig()));
-            data.add(string(t.getTourDestMgra()));
-            data.add(string(calculateDistancesForAllMgras(s.getOrig(), t.getTourDestMgra())));
+            data.add(s.getOrig());
+            data.add(t.getTourDestMgra());
+            data.add(calculateDistancesForAllMgras(s.getOrig(), t.getTourDestMgra()));
         } else
         {
-            data.add(s.getOrigPurpose());
-            data.add(s.getDestPurpose());
-            data.add(string(s.getOrig()));
-            data.add(string(s.getDest()));
-            data.add(string(calculateDistancesForAllMgras(s.getOrig(), s.getDest())));
+            data.addText(s.getOrigPurpose());
+            data.addText(s.getDestPurpose());
+            data.add(s.getOrig());
+            data.add(s.getDest());
+            data.add(calculateDistancesForAllMgras(s.getOrig(), s.getDest()));
         }
 
-        data.add(string(s.getPark()));
-        data.add(string(s.getStopPeriod()));
-        data.add(string(s.getMode()));
-        data.add(string(s.getBoardTap()));
-        data.add(string(s.getAlightTap()));
-        data.add(string(t.getTourModeChoice()));
+        data.add(s.getPark());
+        data.add(s.getStopPeriod());
+        data.add(s.getMode());
+        data.add(s.getBoardTap());
+        data.add(s.getAlightTap());
+        data.add(t.getTourModeChoice());
         
         int set = setNA;
         
         if(modelStructure.getTripModeIsTransit(s.getMode())) {
         	set = s.getSet();
         }
-        data.add(string(set));
-
-        return data;
-        
-        
+        data.add(set);
     }
 
-    private List<String> formJointTripDataEntry(Stop s)
+    private void formJointTripDataEntry(Stop s, DataRow data)
     {
         Tour t = s.getTour();
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getTourId()));
-        data.add(string(s.getStopId()));
-        data.add(string(s.isInboundStop() ? 1 : 0));
-        data.add(string(t.getTourPurpose()));
+        data.add(t.getHhId());
+        data.add(t.getTourId());
+        data.add(s.getStopId());
+        data.add(s.isInboundStop() ? 1 : 0);
+        data.add(t.getTourPurpose());
 
         if (s.getStopId() == 0)
         {
             if (s.isInboundStop())
             {
                 // first trip on inbound half-tour with stops
-                data.add(s.getOrigPurpose());
-                data.add(s.getDestPurpose());
+                data.addText(s.getOrigPurpose());
+                data.addText(s.getDestPurpose());
             } else
             {
                 // first trip on outbound half-tour with stops
                 if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
                 {
-                    data.add("Work");
-                    data.add(s.getDestPurpose());
+                    data.addText("Work");
+                    data.addText(s.getDestPurpose());
                 } else
                 {
-                    data.add("Home");
-                    data.add(s.getDestPurpose());
+                    data.addText("Home");
+                    data.addText(s.getDestPurpose());
                 }
             }
         } else if (s.isInboundStop() && s.getStopId() == t.getNumInboundStops() - 1)
@@ -1008,188 +1104,180 @@ public class HouseholdDataWriter
             // last trip on inbound half-tour with stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(s.getOrigPurpose());
-                data.add("Work");
+                data.addText(s.getOrigPurpose());
+                data.addText("Work");
             } else
             {
-                data.add(s.getOrigPurpose());
-                data.add("Home");
+                data.addText(s.getOrigPurpose());
+                data.addText("Home");
             }
         } else if (!s.isInboundStop() && s.getStopId() == t.getNumOutboundStops() - 1)
         {
             // last trip on outbound half-tour with stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(s.getOrigPurpose());
-                data.add(t.getTourPurpose());
+                data.addText(s.getOrigPurpose());
+                data.addText(t.getTourPurpose());
             } else
             {
-                data.add(s.getOrigPurpose());
-                data.add(t.getTourPurpose());
+                data.addText(s.getOrigPurpose());
+                data.addText(t.getTourPurpose());
             }
         } else
         {
-            data.add(s.getOrigPurpose());
-            data.add(s.getDestPurpose());
+            data.addText(s.getOrigPurpose());
+            data.addText(s.getDestPurpose());
         }
 
-        data.add(string(s.getOrig()));
-        data.add(string(s.getDest()));
-        data.add(string(calculateDistancesForAllMgras(s.getOrig(), s.getDest())));
-        data.add(string(s.getPark()));
-        data.add(string(s.getStopPeriod()));
-        data.add(string(s.getMode()));
+        data.add(s.getOrig());
+        data.add(s.getDest());
+        data.add(calculateDistancesForAllMgras(s.getOrig(), s.getDest()));
+        data.add(s.getPark());
+        data.add(s.getStopPeriod());
+        data.add(s.getMode());
         
         int[] participants = t.getPersonNumArray();
         if (participants == null)
         {
             logger.error("tour participants array is null, hhid=" + t.getHhId() + ".");
-            throw new RuntimeException();
+            throw new RuntimeException("tour participants array is null, hhid=" + t.getHhId() + ".");
         }
         if (participants.length < 2)
         {
             logger
                     .error("length of tour participants array is not null, but is < 2; should be >= 2 for joint tour, hhid="
                             + t.getHhId() + ".");
-            throw new RuntimeException();
+            throw new RuntimeException("length of tour participants array is < 2 for joint tour, hhid=" + t.getHhId() + ".");
         }
 
-        data.add(string(participants.length));
-        data.add(string(s.getBoardTap()));
-        data.add(string(s.getAlightTap()));
-        data.add(string(t.getTourModeChoice()));
+        data.add(participants.length);
+        data.add(s.getBoardTap());
+        data.add(s.getAlightTap());
+        data.add(t.getTourModeChoice());
 
         int set = setNA;
         
         if(modelStructure.getTripModeIsTransit(s.getMode())) {
         	set = s.getSet();
         }
-        data.add(string(set));
-        
-        return data;
+        data.add(set);
     }
 
-    private List<String> formTourAsIndivTripDataEntry(Tour t, boolean inbound)
+    private void formTourAsIndivTripDataEntry(Tour t, boolean inbound, DataRow data)
     {
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getPersonObject().getPersonId()));
-        data.add(string(t.getPersonObject().getPersonNum()));
-        data.add(string(t.getTourId()));
-        data.add(string(-1));
-        data.add(string((inbound ? 1 : 0)));
-        data.add(string(t.getTourPurpose()));
+        data.add(t.getHhId());
+        data.add(t.getPersonObject().getPersonId());
+        data.add(t.getPersonObject().getPersonNum());
+        data.add(t.getTourId());
+        data.add(-1);
+        data.add((inbound ? 1 : 0));
+        data.add(t.getTourPurpose());
 
         if (inbound)
         {
             // inbound trip on half-tour with no stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(t.getTourPurpose());
-                data.add("Work");
+                data.addText(t.getTourPurpose());
+                data.addText("Work");
             } else
             {
-                data.add(t.getTourPurpose());
-                data.add("Home");
+                data.addText(t.getTourPurpose());
+                data.addText("Home");
             }
         } else
         {
             // outbound trip on half-tour with no stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add("Work");
-                data.add(t.getTourPurpose());
+                data.addText("Work");
+                data.addText(t.getTourPurpose());
             } else
             {
-                data.add("Home");
-                data.add(t.getTourPurpose());
+                data.addText("Home");
+                data.addText(t.getTourPurpose());
             }
         }
 
-        data.add(string((inbound ? t.getTourDestMgra() : t.getTourOrigMgra())));
-        data.add(string((inbound ? t.getTourOrigMgra() : t.getTourDestMgra())));
-        data.add(string(calculateDistancesForAllMgras(inbound ? t.getTourDestMgra() : t.getTourOrigMgra(), inbound ? t.getTourOrigMgra() : t.getTourDestMgra())));
-        data.add(string(t.getTourParkMgra()));
-        data.add(string(inbound ? t.getTourArrivePeriod() : t.getTourDepartPeriod()));
-        data.add(string(t.getTourModeChoice()));
+        data.add((inbound ? t.getTourDestMgra() : t.getTourOrigMgra()));
+        data.add((inbound ? t.getTourOrigMgra() : t.getTourDestMgra()));
+        data.add(calculateDistancesForAllMgras(inbound ? t.getTourDestMgra() : t.getTourOrigMgra(), inbound ? t.getTourOrigMgra() : t.getTourDestMgra()));
+        data.add(t.getTourParkMgra());
+        data.add(inbound ? t.getTourArrivePeriod() : t.getTourDepartPeriod());
+        data.add(t.getTourModeChoice());
         
-        data.add(string(0));							// board tap
-        data.add(string(0));							// alight tap
+        data.add(0);								// board tap
+        data.add(0);								// alight tap
         
-        data.add(string(t.getTourModeChoice()));
+        data.add(t.getTourModeChoice());
        
-        data.add(string(0));							// set
-
-        return data;
+        data.add(0);								// set
     }
 
-    private List<String> formTourAsJointTripDataEntry(Tour t, boolean inbound)
+    private void formTourAsJointTripDataEntry(Tour t, boolean inbound, DataRow data)
     {
-        List<String> data = new LinkedList<String>();
-        data.add(string(t.getHhId()));
-        data.add(string(t.getTourId()));
-        data.add(string(-1));
-        data.add(string((inbound ? 1 : 0)));
-        data.add(string(t.getTourPurpose()));
+        data.add(t.getHhId());
+        data.add(t.getTourId());
+        data.add(-1);
+        data.add((inbound ? 1 : 0));
+        data.add(t.getTourPurpose());
 
         if (inbound)
         {
             // inbound trip on half-tour with no stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add(t.getTourPurpose());
-                data.add("Work");
+                data.addText(t.getTourPurpose());
+                data.addText("Work");
             } else
             {
-                data.add(t.getTourPurpose());
-                data.add("Home");
+                data.addText(t.getTourPurpose());
+                data.addText("Home");
             }
         } else
         {
             // outbound trip on half-tour with no stops
             if (t.getTourCategory().equalsIgnoreCase(ModelStructure.AT_WORK_CATEGORY))
             {
-                data.add("Work");
-                data.add(t.getTourPurpose());
+                data.addText("Work");
+                data.addText(t.getTourPurpose());
             } else
             {
-                data.add("Home");
-                data.add(t.getTourPurpose());
+                data.addText("Home");
+                data.addText(t.getTourPurpose());
             }
         }
 
-        data.add(string((inbound ? t.getTourDestMgra() : t.getTourOrigMgra())));
-        data.add(string((inbound ? t.getTourOrigMgra() : t.getTourDestMgra())));
-        data.add(string(calculateDistancesForAllMgras(inbound ? t.getTourDestMgra() : t.getTourOrigMgra(), inbound ? t.getTourOrigMgra() : t.getTourDestMgra())));
-        data.add(string(t.getTourParkMgra()));
-        data.add(string(inbound ? t.getTourArrivePeriod() : t.getTourDepartPeriod()));
-        data.add(string(t.getTourModeChoice()));
-        data.add(string(t.getTourModeChoice()));
+        data.add((inbound ? t.getTourDestMgra() : t.getTourOrigMgra()));
+        data.add((inbound ? t.getTourOrigMgra() : t.getTourDestMgra()));
+        data.add(calculateDistancesForAllMgras(inbound ? t.getTourDestMgra() : t.getTourOrigMgra(), inbound ? t.getTourOrigMgra() : t.getTourDestMgra()));
+        data.add(t.getTourParkMgra());
+        data.add(inbound ? t.getTourArrivePeriod() : t.getTourDepartPeriod());
+        data.add(t.getTourModeChoice());
+        data.add(t.getTourModeChoice());
         
         int[] participants = t.getPersonNumArray();
         if (participants == null)
         {
             logger.error("tour participants array is null, hhid=" + t.getHhId() + ".");
-            throw new RuntimeException();
+            throw new RuntimeException("tour participants array is null, hhid=" + t.getHhId() + ".");
         }
         if (participants.length < 2)
         {
             logger
                     .error("length of tour participants array is not null, but is < 2; should be >= 2 for joint tour, hhid="
                             + t.getHhId() + ".");
-            throw new RuntimeException();
+            throw new RuntimeException("length of tour participants array is < 2 for joint tour, hhid=" + t.getHhId() + ".");
         }
 
-        data.add(string(participants.length));
+        data.add(participants.length);
         
-        data.add(string(0));							// board tap
-        data.add(string(0));							// alight tap
+        data.add(0);								// board tap
+        data.add(0);								// alight tap
         
-        data.add(string(t.getTourModeChoice()));
+        data.add(t.getTourModeChoice());
        
-        data.add(string(0));							// set
-
-        return data;
+        data.add(0);								// set
     }
 
     private static enum SqliteDataTypes
@@ -1197,25 +1285,163 @@ public class HouseholdDataWriter
         INTEGER, TEXT, REAL
     }
 
+    /**
+     * One row of an output table. Values are added in column order, and the row is
+     * written by end().
+     */
+    private interface DataRow
+    {
+        void add(int value);
+
+        void add(float value);
+
+        void add(double value);
+
+        void add(String value);
+
+        // a string value added as it is, without the string format
+        void addText(String value);
+
+        void end();
+    }
+
     private interface DataWriter
     {
-        void writeHouseholdData(List<String> data);
+        DataRow householdRow();
 
-        void writePersonData(List<String> data);
+        DataRow personRow();
 
-        void writeIndivTourData(List<String> data);
+        DataRow indivTourRow();
 
-        void writeJointTourData(List<String> data);
+        DataRow jointTourRow();
 
-        void writeIndivTripData(List<String> data);
+        DataRow indivTripRow();
 
-        void writeJointTripData(List<String> data);
+        DataRow jointTripRow();
 
         void finishActions();
     }
 
-    private class DatabaseDataWriter
+    /**
+     * A writer of rows formatted as text, with String.format() and the current string
+     * format, and passed to the writeXData() methods as lists of strings.
+     */
+    private abstract class TextDataWriter
             implements DataWriter
+    {
+        abstract void writeHouseholdData(List<String> data);
+
+        abstract void writePersonData(List<String> data);
+
+        abstract void writeIndivTourData(List<String> data);
+
+        abstract void writeJointTourData(List<String> data);
+
+        abstract void writeIndivTripData(List<String> data);
+
+        abstract void writeJointTripData(List<String> data);
+
+        public DataRow householdRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writeHouseholdData(data);
+                }
+            };
+        }
+
+        public DataRow personRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writePersonData(data);
+                }
+            };
+        }
+
+        public DataRow indivTourRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writeIndivTourData(data);
+                }
+            };
+        }
+
+        public DataRow jointTourRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writeJointTourData(data);
+                }
+            };
+        }
+
+        public DataRow indivTripRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writeIndivTripData(data);
+                }
+            };
+        }
+
+        public DataRow jointTripRow()
+        {
+            return new TextDataRow() {
+                void write(List<String> data)
+                {
+                    writeJointTripData(data);
+                }
+            };
+        }
+    }
+
+    private abstract class TextDataRow
+            implements DataRow
+    {
+        private final List<String> data = new LinkedList<String>();
+
+        abstract void write(List<String> data);
+
+        public void add(int value)
+        {
+            data.add(string(value));
+        }
+
+        public void add(float value)
+        {
+            data.add(string(value));
+        }
+
+        public void add(double value)
+        {
+            data.add(string(value));
+        }
+
+        public void add(String value)
+        {
+            data.add(string(value));
+        }
+
+        public void addText(String value)
+        {
+            data.add(value);
+        }
+
+        public void end()
+        {
+            write(data);
+        }
+    }
+
+    private class DatabaseDataWriter
+            extends TextDataWriter
     {
         private final String      householdTable             = rbMap.get(PROPERTIES_HOUSEHOLD_TABLE);
         private final String      personTable                = rbMap.get(PROPERTIES_PERSON_TABLE);
@@ -1461,7 +1687,7 @@ public class HouseholdDataWriter
     }
 
     private class FileDataWriter
-            implements DataWriter
+            extends TextDataWriter
     {
         private final PrintWriter hhWriter;
         private final PrintWriter personWriter;
@@ -1590,6 +1816,251 @@ public class HouseholdDataWriter
         }
     }
 
+    /**
+     * Writes the tables to typed columnar binary files, read with
+     * com.pb.common.datafile.ColumnarFileReader. The files are named as the CSV files,
+     * with the ColumnarFileWriter extension in place of .csv.
+     */
+    private class ColumnarDataWriter
+    {
+        private final ColumnarFileWriter hhWriter;
+        private final ColumnarFileWriter personWriter;
+        private final ColumnarFileWriter indivTourWriter;
+        private final ColumnarFileWriter jointTourWriter;
+        private final ColumnarFileWriter indivTripWriter;
+        private final ColumnarFileWriter jointTripWriter;
+
+        public ColumnarDataWriter()
+        {
+            String baseDir = rbMap.get(CtrampApplication.PROPERTIES_PROJECT_DIRECTORY);
+
+            try
+            {
+                hhWriter = newFileWriter(baseDir, PROPERTIES_HOUSEHOLD_DATA_FILE, formHouseholdColumnNames(), formHouseholdColumnTypes());
+                personWriter = newFileWriter(baseDir, PROPERTIES_PERSON_DATA_FILE, formPersonColumnNames(), formPersonColumnTypes());
+                indivTourWriter = newFileWriter(baseDir, PROPERTIES_INDIV_TOUR_DATA_FILE, formIndivTourColumnNames(), formIndivTourColumnTypes());
+                jointTourWriter = newFileWriter(baseDir, PROPERTIES_JOINT_TOUR_DATA_FILE, formJointTourColumnNames(), formJointTourColumnTypes());
+                indivTripWriter = newFileWriter(baseDir, PROPERTIES_INDIV_TRIP_DATA_FILE, formIndivTripColumnNames(), formIndivTripColumnTypes());
+                jointTripWriter = newFileWriter(baseDir, PROPERTIES_JOINT_TRIP_DATA_FILE, formJointTripColumnNames(), formJointTripColumnTypes());
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private ColumnarFileWriter newFileWriter(String baseDir, String fileProperty, List<String> names,
+                List<SqliteDataTypes> types) throws IOException
+        {
+            String fileName = formColumnarFileName(rbMap.get(fileProperty), iteration);
+            logger.info("writing " + rbMap.get(fileProperty) + " file to " + fileName);
+
+            byte[] columnTypes = new byte[types.size()];
+            int c = 0;
+            for (SqliteDataTypes type : types)
+            {
+                switch (type)
+                {
+                    case INTEGER:
+                        columnTypes[c++] = ColumnarFileWriter.INT;
+                        break;
+                    case REAL:
+                        // distances and times are doubles, and keep their precision
+                        columnTypes[c++] = ColumnarFileWriter.DOUBLE;
+                        break;
+                    default:
+                        columnTypes[c++] = ColumnarFileWriter.STRING;
+                }
+            }
+            return new ColumnarFileWriter(new File(baseDir + fileName), names.toArray(new String[names.size()]), columnTypes);
+        }
+
+        public RowGroupDataWriter newRowGroupDataWriter()
+        {
+            return new RowGroupDataWriter(this);
+        }
+
+        public void writeRowGroups(RowGroupDataWriter rowGroups)
+        {
+            try
+            {
+                hhWriter.writeRowGroup(rowGroups.hh);
+                personWriter.writeRowGroup(rowGroups.person);
+                indivTourWriter.writeRowGroup(rowGroups.indivTour);
+                jointTourWriter.writeRowGroup(rowGroups.jointTour);
+                indivTripWriter.writeRowGroup(rowGroups.indivTrip);
+                jointTripWriter.writeRowGroup(rowGroups.jointTrip);
+            } catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void finishActions()
+        {
+            ColumnarFileWriter[] writers = {hhWriter, personWriter, indivTourWriter, jointTourWriter,
+                    indivTripWriter, jointTripWriter};
+            IOException exception = null;
+            for (ColumnarFileWriter w : writers)
+            {
+                try
+                {
+                    w.close();
+                } catch (IOException e)
+                {
+                    if (exception == null) exception = e;
+                }
+            }
+            if (exception != null) throw new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Collects the rows written for one range of households.
+     */
+    private static class RowGroupDataWriter
+            implements DataWriter
+    {
+        private final ColumnarFileWriter.RowGroup hh;
+        private final ColumnarFileWriter.RowGroup person;
+        private final ColumnarFileWriter.RowGroup indivTour;
+        private final ColumnarFileWriter.RowGroup jointTour;
+        private final ColumnarFileWriter.RowGroup indivTrip;
+        private final ColumnarFileWriter.RowGroup jointTrip;
+
+        RowGroupDataWriter(ColumnarDataWriter files)
+        {
+            hh = files.hhWriter.newRowGroup();
+            person = files.personWriter.newRowGroup();
+            indivTour = files.indivTourWriter.newRowGroup();
+            jointTour = files.jointTourWriter.newRowGroup();
+            indivTrip = files.indivTripWriter.newRowGroup();
+            jointTrip = files.jointTripWriter.newRowGroup();
+        }
+
+        public DataRow householdRow()
+        {
+            return new RowGroupDataRow(hh);
+        }
+
+        public DataRow personRow()
+        {
+            return new RowGroupDataRow(person);
+        }
+
+        public DataRow indivTourRow()
+        {
+            return new RowGroupDataRow(indivTour);
+        }
+
+        public DataRow jointTourRow()
+        {
+            return new RowGroupDataRow(jointTour);
+        }
+
+        public DataRow indivTripRow()
+        {
+            return new RowGroupDataRow(indivTrip);
+        }
+
+        public DataRow jointTripRow()
+        {
+            return new RowGroupDataRow(jointTrip);
+        }
+
+        // encode the column chunks on the thread that filled them
+        public void encode()
+        {
+            hh.encode();
+            person.encode();
+            indivTour.encode();
+            jointTour.encode();
+            indivTrip.encode();
+            jointTrip.encode();
+        }
+
+        public void finishActions()
+        {
+        }
+    }
+
+    /**
+     * Adds the typed values of a row straight to a row group.
+     */
+    private static class RowGroupDataRow
+            implements DataRow
+    {
+        private final ColumnarFileWriter.RowGroup rowGroup;
+
+        RowGroupDataRow(ColumnarFileWriter.RowGroup rowGroup)
+        {
+            this.rowGroup = rowGroup;
+        }
+
+        public void add(int value)
+        {
+            rowGroup.addInt(value);
+        }
+
+        public void add(float value)
+        {
+            rowGroup.addFloat(value);
+        }
+
+        public void add(double value)
+        {
+            rowGroup.addDouble(value);
+        }
+
+        public void add(String value)
+        {
+            rowGroup.addString(value);
+        }
+
+        public void addText(String value)
+        {
+            rowGroup.addString(value);
+        }
+
+        public void end()
+        {
+            rowGroup.endRow();
+        }
+    }
+
+    /**
+     * @return the name of the columnar file for a CSV output file and iteration, the
+     *         CSV file name with the iteration appended and the columnar extension.
+     */
+    public static String formColumnarFileName(String originalFileName, int iteration)
+    {
+        int lastDot = originalFileName.lastIndexOf('.');
+        String base = lastDot > 0 ? originalFileName.substring(0, lastDot) : originalFileName;
+        return String.format("%s_%d%s", base, iteration, ColumnarFileWriter.FILE_EXTENSION);
+    }
+
+    /**
+     * The auto skim UEC used for tour and trip distances and times, with its dmu and
+     * index values.
+     */
+    private class AutoSkims
+    {
+        private final MandatoryAccessibilitiesDMU dmu = new MandatoryAccessibilitiesDMU();
+        private final IndexValues                 iv  = new IndexValues();
+        private final UtilityExpressionCalculator uec;
+
+        AutoSkims(File uecFile, int autoSkimPage, int dataPage)
+        {
+            uec = new UtilityExpressionCalculator(uecFile, autoSkimPage, dataPage, rbMap, dmu);
+        }
+
+        double[] solve(int oTaz, int dTaz)
+        {
+            iv.setOriginZone(oTaz);
+            iv.setDestZone(dTaz);
+            return uec.solve(iv, dmu, null);
+        }
+    }
+
     private ArrayList<int[]> getWriteHouseholdRanges(int numberOfHouseholds)
     {
 
@@ -1629,11 +2100,8 @@ public class HouseholdDataWriter
         int oTaz = mgraManager.getTaz(oMgra);
         int dTaz = mgraManager.getTaz(dMgra);
 
-        iv.setOriginZone(oTaz);
-        iv.setDestZone(dTaz);
-
         // sov time in results[0] and distance in resuls[1]
-        double[] results = autoSkimUEC.solve(iv, dmu, null);
+        double[] results = autoSkims.get().solve(oTaz, dTaz);
 
         return results[1];
     }
@@ -1651,11 +2119,8 @@ public class HouseholdDataWriter
         int oTaz = mgraManager.getTaz(oMgra);
         int dTaz = mgraManager.getTaz(dMgra);
 
-        iv.setOriginZone(oTaz);
-        iv.setDestZone(dTaz);
-
         // sov time in results[0] and distance in resuls[1]
-        double[] results = autoSkimUEC.solve(iv, dmu, null);
+        double[] results = autoSkims.get().solve(oTaz, dTaz);
 
         return results[0];
     }
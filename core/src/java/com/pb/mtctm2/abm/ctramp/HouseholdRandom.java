@@ -0,0 +1,74 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.util.Random;
+
+/**
+ * Positions a household's java.util.Random at a given number of nextDouble() draws
+ * after seeding, without making the draws.
+ * 
+ * java.util.Random is a 48 bit linear congruential generator, and nextDouble()
+ * advances it by exactly two steps. Advancing n steps is itself a linear
+ * congruential step, x -> a*x + c (mod 2^48), whose coefficients are found by
+ * repeated squaring in O(log n) time. The resulting Random returns exactly the
+ * same numbers as one that was seeded and then made the draws, so restarts
+ * reproduce the sequences of a full run.
+ */
+public final class HouseholdRandom
+{
+
+    private static final long MULTIPLIER        = 0x5DEECE66DL;
+    private static final long ADDEND            = 0xBL;
+    private static final long MASK              = (1L << 48) - 1;
+
+    // number of generator steps used by one nextDouble()
+    private static final int  STEPS_PER_DOUBLE  = 2;
+
+    private HouseholdRandom()
+    {
+    }
+
+    /**
+     * Set the seed of random, then advance it past numDoubles calls to nextDouble().
+     * 
+     * @param random the Random to reset. If it is a subclass of java.util.Random,
+     *            which may override next(), the draws are made one at a time.
+     * @param seed the seed, as passed to Random.setSeed()
+     * @param numDoubles the number of nextDouble() draws to skip
+     */
+    public static void setSeedAndSkip(Random random, long seed, long numDoubles)
+    {
+        if (random.getClass() != Random.class)
+        {
+            random.setSeed(seed);
+            for (long i = 0; i < numDoubles; i++)
+                random.nextDouble();
+            return;
+        }
+
+        // the internal state after setSeed(seed)
+        long state = (seed ^ MULTIPLIER) & MASK;
+
+        long steps = numDoubles * STEPS_PER_DOUBLE;
+        long a = 1;
+        long c = 0;
+        long stepMultiplier = MULTIPLIER;
+        long stepAddend = ADDEND;
+        while (steps > 0)
+        {
+            if ((steps & 1) != 0)
+            {
+                a = (a * stepMultiplier) & MASK;
+                c = (c * stepMultiplier + stepAddend) & MASK;
+            }
+            stepAddend = ((stepMultiplier + 1) * stepAddend) & MASK;
+            stepMultiplier = (stepMultiplier * stepMultiplier) & MASK;
+            steps >>>= 1;
+        }
+        state = (a * state + c) & MASK;
+
+        // setSeed() scrambles its argument with the multiplier, so undo that to
+        // install the advanced state
+        random.setSeed(state ^ MULTIPLIER);
+    }
+
+}
@@ -16,7 +16,6 @@ import com.pb.mtctm2.abm.ctramp.TripModeChoiceDMU;
 import com.pb.mtctm2.abm.ctramp.MgraDataManager;
 import com.pb.mtctm2.abm.ctramp.TazDataManager;
 import com.pb.mtctm2.abm.ctramp.Modes.AccessMode;
-import com.pb.common.newmodel.UtilityExpressionCalculator;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,7 +40,6 @@ public class IntermediateStopChoiceModels implements Serializable {
     
     private transient Logger logger = Logger.getLogger(IntermediateStopChoiceModels.class);
     private transient Logger slcLogger = Logger.getLogger("slcLogger");
-    private transient Logger slcSoaLogger = Logger.getLogger("slcSoaLogger");
     private transient Logger smcLogger = Logger.getLogger("tripMcLog");
     private transient Logger tripDepartLogger = Logger.getLogger("tripDepartLog");
     private transient Logger parkLocLogger = Logger.getLogger("parkLocLog");
@@ -66,9 +64,6 @@ public class IntermediateStopChoiceModels implements Serializable {
     public static final String PROPERTIES_UEC_SLC_SOA_DISTANCE_DATA_PAGE = "auto.slc.soa.distance.data.page";
     public static final String PROPERTIES_UEC_SLC_SOA_DISTANCE_MODEL_PAGE = "auto.slc.soa.distance.model.page";
     
-    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE = "slc.soa.size.uec.file";
-    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE_DATA = "slc.soa.size.uec.data.page";
-    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE_MODEL = "slc.soa.size.uec.model.page";
 
     private static final String PROPERTIES_UEC_PARKING_LOCATION_CHOICE = "plc.uec.file";
     private static final String PROPERTIES_UEC_PLC_DATA_PAGE = "plc.uec.data.page";
@@ -275,7 +270,6 @@ public class IntermediateStopChoiceModels implements Serializable {
     private float[] altHparkcost;
     private int[] altNumfreehrs;
 
-    private HashMap<String,Integer> sizeSegmentNameIndexMap;
     
     private StopDepartArrivePeriodModel stopTodModel;
 
@@ -312,8 +306,10 @@ public class IntermediateStopChoiceModels implements Serializable {
      * @param resourceBundle - properties file with paths identified
      * @param dmuObject - decision making unit for stop frequency
      * @param modelStructure - holds the model structure info
+     * @param slcSoaData - stop location SOA size terms and probabilities shared by all instances
      */
-    public IntermediateStopChoiceModels( HashMap<String, String> propertyMap, ModelStructure myModelStructure, CtrampDmuFactoryIf dmuFactory, McLogsumsCalculator myLogsumHelper ) {
+    public IntermediateStopChoiceModels( HashMap<String, String> propertyMap, ModelStructure myModelStructure, CtrampDmuFactoryIf dmuFactory, McLogsumsCalculator myLogsumHelper,
+            StopLocationSoaData slcSoaData ) {
 
         tazs = TazDataManager.getInstance(propertyMap);
         mgraManager = MgraDataManager.getInstance(propertyMap);
@@ -336,12 +332,12 @@ public class IntermediateStopChoiceModels implements Serializable {
         modelStructure = myModelStructure;
         logsumHelper = myLogsumHelper;
         
-        setupStopLocationChoiceModels( propertyMap, dmuFactory );
+        setupStopLocationChoiceModels( propertyMap, dmuFactory, slcSoaData );
         setupParkingLocationModel( propertyMap, dmuFactory );
     }
 
 
-    private void setupStopLocationChoiceModels( HashMap<String, String> propertyMap, CtrampDmuFactoryIf dmuFactory  ) {
+    private void setupStopLocationChoiceModels( HashMap<String, String> propertyMap, CtrampDmuFactoryIf dmuFactory, StopLocationSoaData slcSoaData ) {
         
         logger.info( String.format( "setting up stop location choice models." ) );
                 
@@ -363,17 +359,11 @@ public class IntermediateStopChoiceModels implements Serializable {
         slcSoaModel[BIKE_STOP_LOC_SOA_SHEET_INDEX] = new ChoiceModelApplication(slcSoaUecFile, BIKE_STOP_LOC_SOA_SHEET_INDEX, 0, propertyMap, (VariableTable)stopLocDmuObj);
 
         
-        int numSlcSoaAlternatives = slcSoaModel[OTHER_STOP_LOC_SOA_SHEET_INDEX].getNumberOfAlternatives();
         stopLocDmuObj = dmuFactory.getStopLocationDMU();
 
-        sizeSegmentNameIndexMap = new HashMap<String,Integer>();
-        for ( int k=0; k < SLC_SIZE_SEGMENT_INDICES.length; k++ ){
-            sizeSegmentNameIndexMap.put( SLC_SIZE_SEGMENT_NAMES[k], k );
-            sizeSegmentNameIndexMap.put( SLC_SIZE_SEGMENT_NAMES[k], SLC_SIZE_SEGMENT_INDICES[k] );
-        }
-        
-        // set the second argument to a positive, non-zero mgra value to get logging for the size term calculation for the specified mgra.
-        slcSizeTerms = calculateLnSlcSizeTerms( propertyMap, -1 );        
+        slcSizeTerms = slcSoaData.getLnSizeTerms();
+        slcSizeSample = slcSoaData.getSizeSample();
+        slcSizeAvailable = slcSoaData.getSizeAvailable();
                 
         
         String mcUecFile = propertyMap.get(PROPERTIES_UEC_TRIP_MODE_CHOICE);
@@ -438,10 +428,9 @@ public class IntermediateStopChoiceModels implements Serializable {
         // this array has elements that are boolean that set availability of alternative - unavailable altrnatives do not get utility computed.
         sampleAvailability = new boolean[sampleSize+1];
         
-        soaSample = new int[numSlcSoaAlternatives+1];
-        soaAvailability = new boolean[numSlcSoaAlternatives+1];
-        soaSampleBackup = new int[numSlcSoaAlternatives+1];
-        soaAvailabilityBackup = new boolean[numSlcSoaAlternatives+1];
+        // the shared size segment arrays are copied into these for each stop, since they may be modified for transit tours
+        soaSample = new int[slcSizeSample[0].length];
+        soaAvailability = new boolean[slcSizeAvailable[0].length];
 
         sampleMgraInBoardingTapShed = new boolean[mgraManager.getMaxMgra()+1];
         sampleMgraInAlightingTapShed = new boolean[mgraManager.getMaxMgra()+1];
@@ -457,6 +446,9 @@ public class IntermediateStopChoiceModels implements Serializable {
         //createWalkTransitAvailableArray();        
         
         
+        if ( useNewSoaMethod )
+            setupSlcDistanceBaseSoaModel( propertyMap, slcSoaData );
+
         setupTripDepartTimeModel(propertyMap, dmuFactory);
 
         for (int i=0; i < 38; i++);
@@ -465,15 +457,10 @@ public class IntermediateStopChoiceModels implements Serializable {
             
     }
 
-    public void setupSlcDistanceBaseSoaModel( HashMap<String, String> propertyMap,
-            double[][] soaExpUtils, double[][][] soaSizeProbs, double[][] soaTazSize ) {
+    private void setupSlcDistanceBaseSoaModel( HashMap<String, String> propertyMap, StopLocationSoaData slcSoaData ) {
         
-        String uecPath = propertyMap.get(CtrampApplication.PROPERTIES_UEC_PATH);
-        String slcSoaDistanceUecFile = propertyMap.get(PROPERTIES_UEC_SLC_SOA_DISTANCE_UTILITY);
-        slcSoaDistanceUecFile = uecPath + slcSoaDistanceUecFile;
-                
         dcTwoStageModelObject = new DestChoiceTwoStageModel( propertyMap, sampleSize );
-        dcTwoStageModelObject.setSlcSoaProbsAndUtils( soaExpUtils, soaSizeProbs, soaTazSize );        
+        dcTwoStageModelObject.setSlcSoaProbsAndUtils( slcSoaData.getTazDistExpUtils(), slcSoaData.getSizeProbs(), slcSoaData.getTazSize() );        
             
     }
     
@@ -566,55 +553,6 @@ public class IntermediateStopChoiceModels implements Serializable {
     
     
 
-    private double[][] calculateLnSlcSizeTerms( HashMap<String, String> rbMap, int logMgra ) {
-        
-        logger.info("calculating Stop Location SOA Size Terms");
-
-        String uecPath = rbMap.get(CtrampApplication.PROPERTIES_UEC_PATH);
-        String slcSizeUecFile = rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE);
-        slcSizeUecFile = uecPath + slcSizeUecFile;
-        int slcSizeUecData = Integer.parseInt( rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE_DATA) );
-        int slcSizeUecModel = Integer.parseInt( rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE_MODEL) );
-                
-        IndexValues iv = new IndexValues();
-        UtilityExpressionCalculator slcSizeUec = new UtilityExpressionCalculator( new File(slcSizeUecFile), slcSizeUecModel, slcSizeUecData, rbMap, null );        
-
-        ArrayList<Integer> mgras = mgraManager.getMgras();
-        int maxMgra = mgraManager.getMaxMgra();
-        int numSizeSegments = slcSizeUec.getNumberOfAlternatives();
-        
-        // create the array for storing logged size term values - to be returned by this method
-        double[][] lnSlcSoaSize = new double[numSizeSegments][maxMgra + 1];
-        slcSizeSample = new int[numSizeSegments][maxMgra + 1];
-        slcSizeAvailable = new boolean[numSizeSegments][maxMgra + 1];
-        
-        // loop through mgras and calculate size terms
-        for (int mgra : mgras)
-        {
-
-            iv.setZoneIndex(mgra);
-            double[] size = slcSizeUec.solve(iv, null, null);
-
-            // if a logMgra values > 0 was specified, log the size term utility calculation for that mgra
-            if ( mgra == logMgra )
-                slcSizeUec.logAnswersArray(slcSoaLogger, "Stop Location SOA Size Terms, MGRA = " + mgra );
-            
-            // store the logged size terms
-            for (int i=0; i < numSizeSegments; i++) {
-                lnSlcSoaSize[i][mgra] = Math.log( size[i] + 1);
-                if ( size[i] > 0 ){
-                    slcSizeSample[i][mgra] = 1;
-                    slcSizeAvailable[i][mgra] = true;
-                }
-            }
-
-        }
-        
-        return lnSlcSoaSize;
-        
-    }
-    
-    
     private double[] getLnSlcSizeTermsForStopPurpose ( int stopPurpose, Household hh ){
         
         double[] lnSlcSizeTerms = null;
@@ -623,59 +561,55 @@ public class IntermediateStopChoiceModels implements Serializable {
             
             case WORK_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[WORK_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[WORK_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[WORK_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( WORK_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case UNIV_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[UNIV_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[UNIV_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[UNIV_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( UNIV_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case ESCORT_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = getLnSlcSizeTermsForEscortStopPurpose ( hh );
                 break;
             case SHOP_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[SHOP_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[SHOP_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[SHOP_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( SHOP_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case MAINT_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[MAINT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[MAINT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[MAINT_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( MAINT_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case EAT_OUT_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[EAT_OUT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[EAT_OUT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[EAT_OUT_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( EAT_OUT_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case VISIT_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[VISIT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[VISIT_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[VISIT_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( VISIT_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
             case DISCR_STOP_PURPOSE_INDEX:
                 lnSlcSizeTerms = slcSizeTerms[DISCR_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaSample = slcSizeSample[DISCR_STOP_PURPOSE_SOA_SIZE_INDEX];
-                soaAvailability = slcSizeAvailable[DISCR_STOP_PURPOSE_SOA_SIZE_INDEX];
+                setSoaSampleArrays( DISCR_STOP_PURPOSE_SOA_SIZE_INDEX );
                 break;
         }
 
-        // save backup arrays with original availability and sample values.
-        // the procedure to generate availability for transit tours overwrites the arrays used by the UECs,
-        // so they need to be restored after that happens.
-        soaSampleBackup = new int[soaSample.length];
-        soaAvailabilityBackup = new boolean[soaSample.length];
-        for ( int i=0; i < soaSample.length; i++){
-            soaSampleBackup[i] = soaSample[i];
-            soaAvailabilityBackup[i] = soaAvailability[i];
-        }
-        
         return lnSlcSizeTerms;
         
     }
     
     
+    /**
+     * Copy the sample and availability arrays for a size segment into this object's soaSample and soaAvailability arrays.
+     * The procedure to generate availability for transit tours overwrites the arrays used by the UECs, so the shared arrays,
+     * which are never modified, are kept as the backups used to restore them after that happens.
+     */
+    private void setSoaSampleArrays( int sizeSegmentIndex ) {
+        soaSampleBackup = slcSizeSample[sizeSegmentIndex];
+        soaAvailabilityBackup = slcSizeAvailable[sizeSegmentIndex];
+        System.arraycopy( soaSampleBackup, 0, soaSample, 0, soaSample.length );
+        System.arraycopy( soaAvailabilityBackup, 0, soaAvailability, 0, soaAvailability.length );
+    }
+    
+    
     private double[] getLnSlcSizeTermsForEscortStopPurpose ( Household hh ){
         
         double[] lnSlcSizeTermsForEscort = null;
@@ -688,57 +622,49 @@ public class IntermediateStopChoiceModels implements Serializable {
         // if hh has no preschool, grade school or high school children, set the array to that specific size term field
         if ( !psInHh && !gsInHh && !hsInHh ) {
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_0_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_0_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_0_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_0_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a preschool child and no gs or hs, set the array to that specific size term field
         else if ( psInHh && !gsInHh && !hsInHh ) {
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_PS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_PS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_PS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_PS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a grade school child and no ps or hs, set the array to that specific size term field
         else if ( !psInHh && gsInHh && !hsInHh ){
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_GS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a high school child and no ps or gs, set the array to that specific size term field
         else if ( !psInHh && !gsInHh && hsInHh ){
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_HS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
 
         // if hh has a preschool and a grade school child and no hs, set the array to that specific size term field
         else if ( psInHh && gsInHh && !hsInHh ) {
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_PS_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_PS_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_PS_GS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_PS_GS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a preschool and a high school child and no gs, set the array to that specific size term field
         else if ( psInHh && !gsInHh && hsInHh ){
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_PS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_PS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_PS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_PS_HS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a grade school and a high school child and no ps, set the array to that specific size term field
         else if ( !psInHh && gsInHh && hsInHh ){
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         // if hh has a preschool a grade school and a high school child, set the array to that specific size term field
         else if ( psInHh && gsInHh && hsInHh ){
             lnSlcSizeTermsForEscort = slcSizeTerms[ESCORT_PS_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaSample = slcSizeSample[ESCORT_PS_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
-            soaAvailability = slcSizeAvailable[ESCORT_PS_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX];
+            setSoaSampleArrays( ESCORT_PS_GS_HS_STOP_PURPOSE_SOA_SIZE_INDEX );
         }
         
         return lnSlcSizeTermsForEscort;
@@ -3695,7 +3621,8 @@ public class IntermediateStopChoiceModels implements Serializable {
     // return false if no parking location alternatives are in walk distance of trip destination; true otherwise.
     private int[] setupParkLocationChoiceAlternativeArrays( int tripOrigMgra, int tripDestMgra ) {
                             
-        // get the array of mgras within walking distance of the trip destination
+        // get the array of mgras within walking distance of the trip destination.
+        // they are in ascending order, so the park location alternatives are ordered by mgra.
         int[] walkMgras = mgraManager.getMgrasWithinWalkDistanceTo( tripDestMgra );
         
         // set the distance values for the mgras walkable to the destination
@@ -3785,13 +3712,4 @@ public class IntermediateStopChoiceModels implements Serializable {
     }
 
     
-    public HashMap<String,Integer> getSizeSegmentNameIndexMap() {
-        return sizeSegmentNameIndexMap;
-    }
-
-    
-    public double[][] getSizeSegmentArray() {
-        return slcSizeTerms;
-    }
-    
 }
\ No newline at end of file
@@ -4,8 +4,18 @@ import gnu.cajo.invoke.Remote;
 import gnu.cajo.utils.ItemServer;
 import org.apache.log4j.Logger;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.pb.common.calculator.DataEntry;
 import com.pb.common.calculator.MatrixDataServerIf;
 import com.pb.common.matrix.Matrix;
@@ -18,6 +28,14 @@ import com.pb.common.matrix.MatrixWriter;
  * 
  *         Class for managing matrix data in a remote process and accessed by UECs
  *         using RMI.
+ * 
+ *         Matrices are cached by name. A matrix is read at most once: concurrent
+ *         requests for a matrix being read wait for that read only, and requests
+ *         for matrices already read return without locking. Matrices in the
+ *         mapped format are read in parallel. TPPLUS reads stay serial: they go
+ *         through the VoyagerFileAccess native library, which is shared by every
+ *         TpplusMatrixReader64 and is not known to be thread safe, so a set of
+ *         TPPLUS matrices only overlaps with mapped reads.
  */
 public class MatrixDataServer
         implements MatrixDataServerIf, Serializable
@@ -25,8 +43,6 @@ public class MatrixDataServer
 
     protected transient Logger            logger                     = Logger.getLogger(MatrixDataServer.class);
 
-    private Object objectLock;
-    
     private static final String        VERSION                    = "2.2";
 
     // These are used if the server is started manually by running this class's
@@ -38,21 +54,36 @@ public class MatrixDataServer
     public static final String         MATRIX_DATA_SERVER_NAME    = MatrixDataServer.class.getCanonicalName();
     private static final String        MATRIX_DATA_SERVER_LABEL   = "matrix server";
 
-    private HashMap<String, DataEntry> matrixEntryMap;
-    private HashMap<String, Matrix>    matrixMap;
+    private ConcurrentHashMap<String, DataEntry> matrixEntryMap;
+    private ConcurrentHashMap<String, Matrix>    matrixMap;
+
+    // reads in progress, keyed by matrix name
+    private transient ConcurrentHashMap<String, FutureTask<Matrix>> inFlightMap;
+
+    // held while reading a TPPLUS matrix, since the native library may not be thread safe
+    private static final Object tpplusReadLock = new Object();
+
+    // threads shared by all calls to getMatrices(), created when first needed
+    private static ExecutorService readExecutor;
 
 
     
     public MatrixDataServer()
     {
-        // create the HashMap objects to keep track of matrix data read by the server
-        matrixEntryMap = new HashMap<String, DataEntry>();
-        matrixMap = new HashMap<String, Matrix>();
-        
-        objectLock = new Object();		
+        // create the map objects to keep track of matrix data read by the server
+        matrixEntryMap = new ConcurrentHashMap<String, DataEntry>();
+        matrixMap = new ConcurrentHashMap<String, Matrix>();
+        inFlightMap = new ConcurrentHashMap<String, FutureTask<Matrix>>();
     
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        logger = Logger.getLogger(MatrixDataServer.class);
+        inFlightMap = new ConcurrentHashMap<String, FutureTask<Matrix>>();
+    }
+
     public String testRemote( String remoteObjectName )
     {
         logger.info("testRemote() called by remote process: " + remoteObjectName + "." );
@@ -73,34 +104,160 @@ public class MatrixDataServer
     public Matrix getMatrix(DataEntry matrixEntry)
     {
 
-        Matrix matrix;
-        
-        synchronized( objectLock ) {
-            
-            String name = matrixEntry.name;
+        final String name = matrixEntry.name;
+
+        Matrix matrix = matrixMap.get( name );
+        if ( matrix != null )
+            return matrix;
+
+        final DataEntry entry = matrixEntry;
+        FutureTask<Matrix> task = new FutureTask<Matrix>( new Callable<Matrix>() {
+            public Matrix call()
+            {
+                // another read of this matrix may have finished after the cache was checked
+                Matrix m = matrixMap.get( name );
+                if ( m == null ) {
+                    m = readMatrix( entry );
+                    matrixEntryMap.put( name, entry );
+                    matrixMap.put( name, m );
+                }
+                return m;
+            }
+        });
 
-            if ( matrixEntryMap.containsKey( name ) ) {
-                matrix = matrixMap.get( name );
+        FutureTask<Matrix> inFlight = inFlightMap.putIfAbsent( name, task );
+        if ( inFlight == null ) {
+            inFlight = task;
+            try {
+                task.run();
             }
-            else {
-            	
-            	//create 64bit matrix reader
-                String fileName = matrixEntry.fileName;
-                MatrixReader mr = MatrixReader.createReader(MatrixType.TPPLUS, new File(fileName));
-                matrix = mr.readMatrix(matrixEntry.matrixName);
-                
-                // Use token name from control file for matrix name (not name from underlying matrix)
-                matrix.setName(matrixEntry.name);
-
-                matrixMap.put ( name, matrix );
-                matrixEntryMap.put( name, matrixEntry );
+            finally {
+                // the matrix is in matrixMap before the task is removed, or the read failed and may be retried
+                inFlightMap.remove( name, task );
             }
-                        
         }
-        
+
+        return getResult( name, inFlight );
+    }
+
+    /**
+     * Read a set of matrices, for example all matrices used by a UEC. Matrices not
+     * yet in memory are read on a shared pool of threads, so mapped matrices are
+     * read in parallel, and overlap with TPPLUS reads.
+     * 
+     * @param matrixEntries DataEntry objects describing the matrices to read
+     * @return the matrices, in the same order as matrixEntries
+     */
+    public Matrix[] getMatrices(DataEntry[] matrixEntries)
+    {
+
+        Matrix[] matrices = new Matrix[matrixEntries.length];
+
+        int numToRead = 0;
+        for ( DataEntry entry : matrixEntries ) {
+            if ( ! matrixMap.containsKey( entry.name ) )
+                numToRead++;
+        }
+
+        Future<?>[] reads = new Future<?>[matrixEntries.length];
+        if ( numToRead > 1 ) {
+            ExecutorService executor = getReadExecutor();
+            for ( int i=0; i < matrixEntries.length; i++ ) {
+                if ( matrixMap.containsKey( matrixEntries[i].name ) )
+                    continue;
+                final DataEntry entry = matrixEntries[i];
+                reads[i] = executor.submit( new Callable<Matrix>() {
+                    public Matrix call()
+                    {
+                        return getMatrix( entry );
+                    }
+                });
+            }
+        }
+
+        for ( int i=0; i < matrixEntries.length; i++ ) {
+            if ( reads[i] == null )
+                matrices[i] = getMatrix( matrixEntries[i] );
+            else
+                matrices[i] = (Matrix)getResult( matrixEntries[i].name, reads[i] );
+        }
+
+        return matrices;
+    }
+
+    /**
+     * @return the pool used to read matrices for getMatrices(). Its threads are
+     *         daemon threads, so the pool never needs to be shut down.
+     */
+    private static synchronized ExecutorService getReadExecutor()
+    {
+        if ( readExecutor == null ) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            readExecutor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread( r, "matrix-read-" + threadCount.incrementAndGet() );
+                    t.setDaemon( true );
+                    return t;
+                }
+            });
+        }
+        return readExecutor;
+    }
+
+    private Matrix readMatrix(DataEntry matrixEntry)
+    {
+
+        long startTime = System.currentTimeMillis();
+
+        //create 64bit matrix reader, or map the file if it was converted to the mapped format
+        String fileName = matrixEntry.fileName;
+        MatrixType type = matrixEntry.format.equalsIgnoreCase("mapped") ? MatrixType.MAPPED : MatrixType.TPPLUS;
+        Matrix matrix;
+        if ( type == MatrixType.TPPLUS ) {
+            synchronized ( tpplusReadLock ) {
+                matrix = MatrixReader.createReader(type, new File(fileName)).readMatrix(matrixEntry.matrixName);
+            }
+        }
+        else {
+            matrix = MatrixReader.createReader(type, new File(fileName)).readMatrix(matrixEntry.matrixName);
+        }
+
+        // Use token name from control file for matrix name (not name from underlying matrix)
+        matrix.setName(matrixEntry.name);
+
+        logger.debug( String.format( "read %s, %s, %s in %d ms.", matrixEntry.name, fileName, matrixEntry.matrixName, (System.currentTimeMillis() - startTime) ) );
+
         return matrix;
     }
 
+    private <T> T getResult(String name, Future<T> future)
+    {
+        boolean interrupted = false;
+        try {
+            while ( true ) {
+                try {
+                    return future.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+                throw (RuntimeException)cause;
+            if ( cause instanceof Error )
+                throw (Error)cause;
+            throw new RuntimeException( "exception reading matrix " + name, cause );
+        }
+        finally {
+            if ( interrupted )
+                Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Utility method to write a set of matrices to disk.
      * 
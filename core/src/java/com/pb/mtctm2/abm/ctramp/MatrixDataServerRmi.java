@@ -47,6 +47,12 @@ public class MatrixDataServerRmi
         return (Matrix) remote.method("getMatrix", objArray);
     }
 
+    public Matrix[] getMatrices(DataEntry[] dataEntries)
+    {
+        Object[] objArray = {dataEntries};
+        return (Matrix[]) remote.method("getMatrices", objArray);
+    }
+
     public void start32BitMatrixIoServer(MatrixType mType)
     {
         Object[] objArray = {mType};
@@ -0,0 +1,781 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A sparse MGRA to MGRA attribute, such as the walk distance between MGRAs within
+ * walking distance of each other, in compressed sparse row form. The destinations
+ * of origin o are at positions getRowStart(o) to getRowEnd(o)-1, sorted by
+ * destination, and the value for a pair is found by binary search within the row.
+ * The transpose (origins by destination) is stored as well, so the MGRAs from
+ * which a destination can be reached are available without a second table.
+ *
+ * A table can be saved to a binary file and memory mapped from it, so the JVMs on
+ * a node share one copy of the data in the page cache and don't parse the text
+ * file again. load() keeps such a file in a cache directory, never next to the
+ * text file it was built from, with the size and CRC-32 checksum of the text file
+ * in its header, and only maps it while they still match the text file.
+ */
+public final class MazMazSparseTable
+        implements Serializable
+{
+
+    private static Logger      logger          = Logger.getLogger(MazMazSparseTable.class);
+
+    public static final String CACHE_EXTENSION = ".csr";
+
+    private static final int   MAGIC           = 0x4D4D5352;
+    private static final int   VERSION         = 2;
+    private static final int   HEADER_BYTES    = 48;
+
+    // number of text lines parsed by one task, and number of rows sorted by one fork/join task
+    private static final int   LINES_PER_TASK  = 64 * 1024;
+    private static final int   ROWS_PER_TASK   = 256;
+
+    private transient int          maxZone;
+    private transient int          size;
+
+    // the field of the text file the values were read from
+    private transient int          valueField;
+
+    private transient IntBuffer    rowStart;       // maxZone+2 offsets into columns and values
+    private transient IntBuffer    columns;
+    private transient DoubleBuffer values;
+    private transient IntBuffer    columnStart;    // maxZone+2 offsets into rowsByColumn
+    private transient IntBuffer    rowsByColumn;
+
+    // the file the table is mapped from, null for a table on the heap
+    private transient File         mappedFile;
+
+    // the size and checksum of the text file the table was read from, 0 if not known
+    private transient long         sourceLength;
+    private transient long         sourceChecksum;
+
+
+    private MazMazSparseTable(int maxZone, int size, int valueField, IntBuffer rowStart, IntBuffer columns, DoubleBuffer values,
+            IntBuffer columnStart, IntBuffer rowsByColumn, File mappedFile)
+    {
+        this.maxZone = maxZone;
+        this.size = size;
+        this.valueField = valueField;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+        this.columnStart = columnStart;
+        this.rowsByColumn = rowsByColumn;
+        this.mappedFile = mappedFile;
+    }
+
+    /**
+     * Build a table from sorted, duplicate free rows and the transpose from them.
+     */
+    private static MazMazSparseTable fromRows(int maxZone, int valueField, int[] rowStart, int[] columns, double[] values)
+    {
+        int size = rowStart[maxZone + 1];
+
+        int[] columnStart = new int[maxZone + 2];
+        for (int k = 0; k < size; k++)
+            columnStart[columns[k] + 1]++;
+        for (int c = 1; c <= maxZone + 1; c++)
+            columnStart[c] += columnStart[c - 1];
+
+        int[] next = Arrays.copyOf(columnStart, maxZone + 1);
+        int[] rowsByColumn = new int[size];
+        for (int r = 0; r <= maxZone; r++)
+        {
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++)
+                rowsByColumn[next[columns[k]]++] = r;
+        }
+
+        return new MazMazSparseTable(maxZone, size, valueField, IntBuffer.wrap(rowStart), IntBuffer.wrap(columns),
+                DoubleBuffer.wrap(values), IntBuffer.wrap(columnStart), IntBuffer.wrap(rowsByColumn), null);
+    }
+
+    public int getMaxZone()
+    {
+        return maxZone;
+    }
+
+    /**
+     * @return the number of origin-destination pairs in the table.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getValueField()
+    {
+        return valueField;
+    }
+
+    public boolean isMapped()
+    {
+        return mappedFile != null;
+    }
+
+    public int getRowStart(int row)
+    {
+        return row < 0 || row > maxZone ? 0 : rowStart.get(row);
+    }
+
+    public int getRowEnd(int row)
+    {
+        return row < 0 || row > maxZone ? 0 : rowStart.get(row + 1);
+    }
+
+    public int getColumnAt(int index)
+    {
+        return columns.get(index);
+    }
+
+    public double getValueAt(int index)
+    {
+        return values.get(index);
+    }
+
+    /**
+     * @return the position of the pair in the table, or -1 if the pair is not in the table.
+     */
+    public int indexOf(int row, int column)
+    {
+        if (row < 0 || row > maxZone) return -1;
+
+        int low = rowStart.get(row);
+        int high = rowStart.get(row + 1) - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int c = columns.get(mid);
+            if (c < column)
+                low = mid + 1;
+            else if (c > column)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public boolean contains(int row, int column)
+    {
+        return indexOf(row, column) >= 0;
+    }
+
+    /**
+     * @return the value for the pair, or defaultValue if the pair is not in the table.
+     */
+    public double getValue(int row, int column, double defaultValue)
+    {
+        int k = indexOf(row, column);
+        return k < 0 ? defaultValue : values.get(k);
+    }
+
+    /**
+     * @return the destinations of the pairs with this origin in ascending order, or
+     *         null if there are none.
+     */
+    public int[] getColumns(int row)
+    {
+        int start = getRowStart(row);
+        int end = getRowEnd(row);
+        if (end == start) return null;
+
+        int[] result = new int[end - start];
+        for (int k = start; k < end; k++)
+            result[k - start] = columns.get(k);
+        return result;
+    }
+
+    /**
+     * @return the origins of the pairs with this destination in ascending order, or
+     *         null if there are none.
+     */
+    public int[] getRows(int column)
+    {
+        if (column < 0 || column > maxZone) return null;
+
+        int start = columnStart.get(column);
+        int end = columnStart.get(column + 1);
+        if (end == start) return null;
+
+        int[] result = new int[end - start];
+        for (int k = start; k < end; k++)
+            result[k - start] = rowsByColumn.get(k);
+        return result;
+    }
+
+
+    /**
+     * Return the table for a text file. If cacheDirectory is not null the table is
+     * mapped from the binary copy in that directory when that copy was written from
+     * a text file of the same size and checksum, and otherwise read from the text
+     * file and saved there for the next call.
+     *
+     * @see #read(File, int, int)
+     */
+    public static MazMazSparseTable load(File textFile, int maxZone, int valueField, File cacheDirectory)
+    {
+        File cacheFile = getCacheFile(textFile, cacheDirectory);
+        if (cacheFile == null) return read(textFile, maxZone, valueField);
+
+        long length = textFile.length();
+        long checksum = checksum(textFile);
+
+        if (cacheFile.exists())
+        {
+            try
+            {
+                MazMazSparseTable table = map(cacheFile);
+                if (table.maxZone == maxZone && table.valueField == valueField && table.sourceLength == length
+                        && table.sourceChecksum == checksum)
+                {
+                    logger.info(String.format("mapped %d MGRA pairs from %s.", table.size, cacheFile));
+                    return table;
+                }
+                logger.info(cacheFile + " was written from a different " + textFile + " or for a different zone system or field, it will be rebuilt.");
+            } catch (RuntimeException e)
+            {
+                logger.warn("could not map " + cacheFile + ", it will be rebuilt.", e);
+            }
+        }
+
+        MazMazSparseTable table = read(textFile, maxZone, valueField);
+        table.sourceLength = length;
+        table.sourceChecksum = checksum;
+
+        try
+        {
+            table.save(cacheFile);
+        } catch (RuntimeException e)
+        {
+            logger.warn("could not save " + cacheFile + ", MGRA pairs will be read from text next time.", e);
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the binary copy of a text file in the cache directory, or null if
+     * there is no cache directory or it can't be created. The name includes a hash
+     * of the text file's path, so files with the same name in different
+     * directories don't share a copy.
+     */
+    private static File getCacheFile(File textFile, File cacheDirectory)
+    {
+        if (cacheDirectory == null) return null;
+
+        if (!cacheDirectory.mkdirs() && !cacheDirectory.isDirectory())
+        {
+            logger.warn("could not create MGRA pair cache directory " + cacheDirectory + ", MGRA pairs will be read from text.");
+            return null;
+        }
+        String name = textFile.getName() + "." + Integer.toHexString(textFile.getAbsolutePath().hashCode()) + CACHE_EXTENSION;
+        return new File(cacheDirectory, name);
+    }
+
+    /**
+     * Read a comma separated file with the origin in field 0, the destination in
+     * field 1 and the value in field valueField, without a header. Lines are parsed
+     * in parallel. If a pair appears more than once the value on the last line is
+     * used.
+     */
+    public static MazMazSparseTable read(File textFile, int maxZone, int valueField)
+    {
+        long startTime = System.currentTimeMillis();
+
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService parsers = Executors.newFixedThreadPool(nThreads);
+        List<ParsedLines> chunks = new ArrayList<ParsedLines>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(textFile)))
+        {
+            List<Future<ParsedLines>> pending = new ArrayList<Future<ParsedLines>>();
+            String[] lines = new String[LINES_PER_TASK];
+            int n = 0;
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lines[n++] = line;
+                if (n == LINES_PER_TASK)
+                {
+                    pending.add(parsers.submit(new ParsedLines(lines, n, valueField)));
+                    lines = new String[LINES_PER_TASK];
+                    n = 0;
+
+                    // keep a bounded number of unparsed lines in memory
+                    if (pending.size() >= 2 * nThreads) chunks.add(pending.remove(0).get());
+                }
+            }
+            if (n > 0) pending.add(parsers.submit(new ParsedLines(lines, n, valueField)));
+            for (Future<ParsedLines> f : pending)
+                chunks.add(f.get());
+        } catch (Exception e)
+        {
+            throw new RuntimeException("exception reading MGRA pairs from " + textFile, e);
+        } finally
+        {
+            parsers.shutdown();
+        }
+
+        // scatter the pairs into rows, in file order within each row
+        int[] rowStart = new int[maxZone + 2];
+        for (ParsedLines chunk : chunks)
+        {
+            for (int i = 0; i < chunk.n; i++)
+            {
+                int row = chunk.rows[i];
+                int column = chunk.columns[i];
+                if (row < 0 || row > maxZone || column < 0 || column > maxZone)
+                    throw new RuntimeException(String.format("MGRA pair %d-%d in %s is outside the range 0 to %d.", row,
+                            column, textFile, maxZone));
+                rowStart[row + 1]++;
+            }
+        }
+        for (int r = 1; r <= maxZone + 1; r++)
+            rowStart[r] += rowStart[r - 1];
+
+        int total = rowStart[maxZone + 1];
+        int[] next = Arrays.copyOf(rowStart, maxZone + 1);
+        final int[] columns = new int[total];
+        final double[] values = new double[total];
+        for (ParsedLines chunk : chunks)
+        {
+            for (int i = 0; i < chunk.n; i++)
+            {
+                int k = next[chunk.rows[i]]++;
+                columns[k] = chunk.columns[i];
+                values[k] = chunk.values[i];
+            }
+        }
+        chunks = null;
+
+        // sort each row by destination and drop duplicates, in parallel
+        final int[] rowCount = new int[maxZone + 1];
+        final int[] starts = rowStart;
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try
+        {
+            pool.invoke(new SortRowsTask(starts, columns, values, rowCount, 0, maxZone + 1));
+        } finally
+        {
+            pool.shutdown();
+        }
+
+        // close the gaps left by duplicates
+        int[] compactStart = new int[maxZone + 2];
+        for (int r = 0; r <= maxZone; r++)
+            compactStart[r + 1] = compactStart[r] + rowCount[r];
+        int[] compactColumns = columns;
+        double[] compactValues = values;
+        if (compactStart[maxZone + 1] < total)
+        {
+            compactColumns = new int[compactStart[maxZone + 1]];
+            compactValues = new double[compactStart[maxZone + 1]];
+            for (int r = 0; r <= maxZone; r++)
+            {
+                System.arraycopy(columns, rowStart[r], compactColumns, compactStart[r], rowCount[r]);
+                System.arraycopy(values, rowStart[r], compactValues, compactStart[r], rowCount[r]);
+            }
+        }
+
+        MazMazSparseTable table = fromRows(maxZone, valueField, compactStart, compactColumns, compactValues);
+
+        logger.info(String.format("read %d MGRA pairs from %s in %.1f seconds.", table.size, textFile,
+                (System.currentTimeMillis() - startTime) / 1000.0));
+
+        return table;
+    }
+
+    /**
+     * Save the table in a binary form that can be memory mapped by map(). The file
+     * is written under a temporary name and then renamed, so a JVM mapping it never
+     * sees a partly written file.
+     */
+    public void save(File file)
+    {
+        File tempFile = new File(file.getPath() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+
+        try (RandomAccessFile randFile = new RandomAccessFile(tempFile, "rw"))
+        {
+            randFile.setLength(0L);
+            FileChannel channel = randFile.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(maxZone);
+            header.putInt(size);
+            header.putInt(valueField);
+            header.putLong(24, sourceLength);
+            header.putLong(32, sourceChecksum);
+            header.position(0);
+            writeFully(channel, header);
+
+            ByteBuffer bytes = ByteBuffer.allocateDirect(LINES_PER_TASK * 8).order(ByteOrder.LITTLE_ENDIAN);
+            writeInts(channel, bytes, rowStart, maxZone + 2);
+            writeInts(channel, bytes, columns, size);
+            writeDoubles(channel, bytes, values, size);
+            writeInts(channel, bytes, columnStart, maxZone + 2);
+            writeInts(channel, bytes, rowsByColumn, size);
+
+            channel.force(false);
+        } catch (IOException e)
+        {
+            tempFile.delete();
+            throw new RuntimeException("exception writing MGRA pairs to " + tempFile, e);
+        }
+
+        try
+        {
+            try
+            {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e)
+            {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e)
+        {
+            tempFile.delete();
+            throw new RuntimeException("exception renaming " + tempFile + " to " + file, e);
+        }
+    }
+
+    /**
+     * Map a table from a file written by save().
+     */
+    public static MazMazSparseTable map(File file)
+    {
+        try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+        {
+            FileChannel channel = randFile.getChannel();
+
+            ByteBuffer header = readHeader(channel, file);
+            int maxZone = header.getInt(8);
+            int size = header.getInt(12);
+            int valueField = header.getInt(16);
+
+            long position = HEADER_BYTES;
+            IntBuffer rowStart = mapInts(channel, position, maxZone + 2);
+            position += 4L * (maxZone + 2);
+            IntBuffer columns = mapInts(channel, position, size);
+            position += 4L * size;
+            DoubleBuffer values = mapDoubles(channel, position, size);
+            position += 8L * size;
+            IntBuffer columnStart = mapInts(channel, position, maxZone + 2);
+            position += 4L * (maxZone + 2);
+            IntBuffer rowsByColumn = mapInts(channel, position, size);
+            position += 4L * size;
+
+            if (position != channel.size())
+                throw new RuntimeException(file + " is " + channel.size() + " bytes, expected " + position + ".");
+
+            // mappings stay valid after the channel is closed
+            MazMazSparseTable table = new MazMazSparseTable(maxZone, size, valueField, rowStart, columns, values, columnStart,
+                    rowsByColumn, file);
+            table.sourceLength = header.getLong(24);
+            table.sourceChecksum = header.getLong(32);
+            return table;
+        } catch (IOException e)
+        {
+            throw new RuntimeException("exception mapping MGRA pairs from " + file, e);
+        }
+    }
+
+    /**
+     * @return the CRC-32 checksum of the contents of a file.
+     */
+    private static long checksum(File file)
+    {
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile randFile = new RandomAccessFile(file, "r"))
+        {
+            FileChannel channel = randFile.getChannel();
+            ByteBuffer bytes = ByteBuffer.allocateDirect(LINES_PER_TASK * 16);
+            while (channel.read(bytes) >= 0)
+            {
+                bytes.flip();
+                crc.update(bytes);
+                bytes.clear();
+            }
+        } catch (IOException e)
+        {
+            throw new RuntimeException("exception reading " + file, e);
+        }
+        return crc.getValue();
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel, File file) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining())
+        {
+            if (channel.read(header, header.position()) < 0)
+                throw new RuntimeException(file + " is not a MGRA pair file.");
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new RuntimeException(file + " is not a MGRA pair file, or was written by a different version.");
+        return header;
+    }
+
+    private static IntBuffer mapInts(FileChannel channel, long position, int n) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * n).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static DoubleBuffer mapDoubles(FileChannel channel, long position, int n) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * n).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer bytes, IntBuffer src, int n) throws IOException
+    {
+        for (int i = 0; i < n;)
+        {
+            bytes.clear();
+            IntBuffer view = bytes.asIntBuffer();
+            int m = Math.min(view.capacity(), n - i);
+            for (int j = 0; j < m; j++)
+                view.put(src.get(i + j));
+            bytes.limit(4 * m);
+            writeFully(channel, bytes);
+            i += m;
+        }
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteBuffer bytes, DoubleBuffer src, int n) throws IOException
+    {
+        for (int i = 0; i < n;)
+        {
+            bytes.clear();
+            DoubleBuffer view = bytes.asDoubleBuffer();
+            int m = Math.min(view.capacity(), n - i);
+            for (int j = 0; j < m; j++)
+                view.put(src.get(i + j));
+            bytes.limit(8 * m);
+            writeFully(channel, bytes);
+            i += m;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException
+    {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+
+    //------------------------ Serialization ------------------------
+
+    // a table is sent as its arrays. A mapped table also sends the file it is mapped
+    // from, and the receiving JVM maps that file instead if it has a copy written
+    // from the same text file, since the path need not exist on a remote node.
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeObject(mappedFile == null ? null : mappedFile.getPath());
+        out.writeLong(sourceLength);
+        out.writeLong(sourceChecksum);
+        out.writeInt(maxZone);
+        out.writeInt(valueField);
+        out.writeObject(toArray(rowStart, maxZone + 2));
+        out.writeObject(toArray(columns, size));
+        double[] v = new double[size];
+        for (int k = 0; k < size; k++)
+            v[k] = values.get(k);
+        out.writeObject(v);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        String path = (String) in.readObject();
+        long length = in.readLong();
+        long checksum = in.readLong();
+        int zones = in.readInt();
+        int field = in.readInt();
+        int[] starts = (int[]) in.readObject();
+        int[] cols = (int[]) in.readObject();
+        double[] v = (double[]) in.readObject();
+
+        MazMazSparseTable table = null;
+        if (path != null && new File(path).exists())
+        {
+            try
+            {
+                table = map(new File(path));
+                if (table.maxZone != zones || table.valueField != field || table.size != cols.length
+                        || table.sourceLength != length || table.sourceChecksum != checksum)
+                    table = null;
+            } catch (RuntimeException e)
+            {
+                table = null;
+            }
+        }
+        if (table == null)
+        {
+            table = fromRows(zones, field, starts, cols, v);
+            table.sourceLength = length;
+            table.sourceChecksum = checksum;
+        }
+
+        maxZone = table.maxZone;
+        size = table.size;
+        valueField = table.valueField;
+        rowStart = table.rowStart;
+        columns = table.columns;
+        values = table.values;
+        columnStart = table.columnStart;
+        rowsByColumn = table.rowsByColumn;
+        mappedFile = table.mappedFile;
+        sourceLength = table.sourceLength;
+        sourceChecksum = table.sourceChecksum;
+    }
+
+    private static int[] toArray(IntBuffer buffer, int n)
+    {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++)
+            a[i] = buffer.get(i);
+        return a;
+    }
+
+
+    //------------------------ Parallel build ------------------------
+
+    private static class ParsedLines
+            implements java.util.concurrent.Callable<ParsedLines>
+    {
+        private String[] lines;
+        private final int valueField;
+
+        int              n;
+        int[]            rows;
+        int[]            columns;
+        double[]         values;
+
+        ParsedLines(String[] lines, int numLines, int valueField)
+        {
+            this.lines = lines;
+            this.n = numLines;
+            this.valueField = valueField;
+        }
+
+        public ParsedLines call()
+        {
+            int numLines = n;
+            rows = new int[numLines];
+            columns = new int[numLines];
+            values = new double[numLines];
+            n = 0;
+            for (int i = 0; i < numLines; i++)
+            {
+                String line = lines[i].trim();
+                if (line.length() == 0) continue;
+
+                String[] data = line.split(",");
+                rows[n] = Integer.parseInt(data[0]);
+                columns[n] = Integer.parseInt(data[1]);
+                values[n] = Double.parseDouble(data[valueField]);
+                n++;
+            }
+            lines = null;
+            return this;
+        }
+    }
+
+    private static class SortRowsTask extends RecursiveAction
+    {
+        private final int[]    rowStart;
+        private final int[]    columns;
+        private final double[] values;
+        private final int[]    rowCount;
+        private final int      first;
+        private final int      last;   // exclusive
+
+        SortRowsTask(int[] rowStart, int[] columns, double[] values, int[] rowCount, int first, int last)
+        {
+            this.rowStart = rowStart;
+            this.columns = columns;
+            this.values = values;
+            this.rowCount = rowCount;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute()
+        {
+            if (last - first > ROWS_PER_TASK)
+            {
+                int mid = (first + last) >>> 1;
+                invokeAll(new SortRowsTask(rowStart, columns, values, rowCount, first, mid),
+                        new SortRowsTask(rowStart, columns, values, rowCount, mid, last));
+                return;
+            }
+
+            for (int r = first; r < last; r++)
+                rowCount[r] = sortRow(rowStart[r], rowStart[r + 1]);
+        }
+
+        /**
+         * Sort the entries of a row by destination, keeping only the last entry read
+         * for each destination, and return the number of entries kept.
+         */
+        private int sortRow(int start, int end)
+        {
+            int n = end - start;
+            if (n < 2) return n;
+
+            // the position in the row breaks ties, so the last duplicate sorts last
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++)
+                keys[i] = ((long) columns[start + i] << 32) | i;
+            Arrays.sort(keys);
+
+            int[] sortedColumns = new int[n];
+            double[] sortedValues = new double[n];
+            int m = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int column = (int) (keys[i] >>> 32);
+                double value = values[start + (int) keys[i]];
+                if (m > 0 && sortedColumns[m - 1] == column)
+                    sortedValues[m - 1] = value;
+                else
+                {
+                    sortedColumns[m] = column;
+                    sortedValues[m++] = value;
+                }
+            }
+            System.arraycopy(sortedColumns, 0, columns, start, m);
+            System.arraycopy(sortedValues, 0, values, start, m);
+            return m;
+        }
+    }
+
+}
@@ -3,12 +3,14 @@ package com.pb.mtctm2.abm.ctramp;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import org.apache.log4j.Logger;
 import com.pb.mtctm2.abm.accessibilities.AutoAndNonMotorizedSkimsCalculator;
 import com.pb.mtctm2.abm.accessibilities.BestTransitPathCalculator;
 import com.pb.common.newmodel.Alternative;
 import com.pb.common.newmodel.ConcreteAlternative;
 import com.pb.common.newmodel.LogitModel;
+import com.pb.common.newmodel.UtilityExpressionCalculator;
 import com.pb.mtctm2.abm.accessibilities.TransitPath;
 import com.pb.mtctm2.abm.ctramp.MgraDataManager;
 import com.pb.mtctm2.abm.ctramp.Modes;
@@ -63,6 +65,11 @@ public class McLogsumsCalculator implements Serializable
     private int                                setTourMcLogsumDmuAttributesTotalTime = 0;
     private int                                setTripMcLogsumDmuAttributesTotalTime = 0;
 
+    // shared cache of tour mode choice logsums, null if tourMcLogsum.cache.size is not set
+    private transient TourMcLogsumCache        tourMcLogsumCache;
+    private transient IdentityHashMap<ChoiceModelApplication, TourMcModelInfo> tourMcModels;
+    private transient double[]                 tourMcSignatureValues;
+
 
     
     public McLogsumsCalculator()
@@ -90,6 +97,10 @@ public class McLogsumsCalculator implements Serializable
     {
         bestPathUEC = new BestTransitPathCalculator(rbMap);
         anm = new AutoAndNonMotorizedSkimsCalculator(rbMap);
+
+        tourMcLogsumCache = TourMcLogsumCache.getInstance(rbMap);
+        tourMcModels = new IdentityHashMap<ChoiceModelApplication, TourMcModelInfo>();
+        tourMcSignatureValues = new double[0];
     }
 
     public void setTazDistanceSkimArrays( double[][][] storedFromTazDistanceSkims, double[][][] storedToTazDistanceSkims ) {     
@@ -144,9 +155,87 @@ public class McLogsumsCalculator implements Serializable
     }
     
     
+    /**
+     * Return the tour mode choice logsum, from the shared logsum cache if it is
+     * used and has a logsum calculated from the same values. Logsums for debug
+     * households are always calculated, so that the UEC results can be logged.
+     */
     public double calculateTourMcLogsum(int origMgra, int destMgra, int departPeriod, int arrivePeriod,
         ChoiceModelApplication mcModel, TourModeChoiceDMU mcDmuObject)
     {
+
+        if ( tourMcLogsumCache == null || mcDmuObject.getDmuIndexValues().getDebug() )
+            return computeTourMcLogsum( origMgra, destMgra, departPeriod, arrivePeriod, mcModel, mcDmuObject );
+
+        TourMcLogsumCache.Signature key = getTourMcLogsumSignature( origMgra, destMgra, departPeriod, arrivePeriod, mcModel, mcDmuObject );
+        Double cachedLogsum = tourMcLogsumCache.get( key );
+        if ( cachedLogsum == null ) {
+            double logsum = computeTourMcLogsum( origMgra, destMgra, departPeriod, arrivePeriod, mcModel, mcDmuObject );
+            tourMcLogsumCache.put( key, logsum );
+            return logsum;
+        }
+
+        if ( tourMcLogsumCache.getVerify() )
+            tourMcLogsumCache.verified( key, cachedLogsum, computeTourMcLogsum( origMgra, destMgra, departPeriod, arrivePeriod, mcModel, mcDmuObject ) );
+
+        return cachedLogsum;
+
+    }
+
+    /**
+     * Build the logsum cache signature for a tour mode choice logsum: the model sheet, the
+     * MGRAs and skim periods, the person attributes setTourMcDmuAttributes() uses for the
+     * transit path utilities and parking cost, and the values of the DMU variables used by
+     * the UEC. The DMU attributes set from the origin and destination are cleared first, as
+     * they are determined by the other values.
+     */
+    private TourMcLogsumCache.Signature getTourMcLogsumSignature(int origMgra, int destMgra, int departPeriod, int arrivePeriod,
+        ChoiceModelApplication mcModel, TourModeChoiceDMU mcDmuObject)
+    {
+
+        TourMcModelInfo model = tourMcModels.get( mcModel );
+        if ( model == null ) {
+            model = new TourMcModelInfo( tourMcLogsumCache, mcModel );
+            tourMcModels.put( mcModel, model );
+        }
+
+        int size = 12 + model.dmuVariableIndices.length;
+        if ( tourMcSignatureValues.length < size )
+            tourMcSignatureValues = new double[size];
+        double[] values = tourMcSignatureValues;
+
+        int k = 0;
+        values[k++] = model.id;
+        values[k++] = origMgra;
+        values[k++] = destMgra;
+        values[k++] = ModelStructure.getSkimPeriodIndex(departPeriod);
+        values[k++] = ModelStructure.getSkimPeriodIndex(arrivePeriod);
+
+        int joint = mcDmuObject.getTourCategoryJoint();
+        values[k++] = joint;
+        values[k++] = joint == 1 ? 0 : mcDmuObject.getPersonType();
+        values[k++] = mcDmuObject.getValueOfTime();
+        Person person = mcDmuObject.getPersonObject();
+        values[k++] = person == null ? 0 : person.getParkingReimbursement();
+
+        if ( model.usesIndexValues ) {
+            IndexValues index = mcDmuObject.getDmuIndexValues();
+            values[k++] = index.getZoneIndex();
+            values[k++] = index.getHHIndex();
+            values[k++] = index.getStopZone();
+        }
+
+        mcDmuObject.clearTourMcAttributes();
+        for ( int variableIndex : model.dmuVariableIndices )
+            values[k++] = mcDmuObject.getValueForIndex( variableIndex, 0 );
+
+        return new TourMcLogsumCache.Signature( values, k );
+
+    }
+
+    private double computeTourMcLogsum(int origMgra, int destMgra, int departPeriod, int arrivePeriod,
+        ChoiceModelApplication mcModel, TourModeChoiceDMU mcDmuObject)
+    {
         
         long currentTime = System.currentTimeMillis();        
         setTourMcDmuAttributes( mcDmuObject, origMgra, destMgra, departPeriod, arrivePeriod, mcDmuObject.getDmuIndexValues().getDebug() );
@@ -664,4 +753,23 @@ public class McLogsumsCalculator implements Serializable
     	return bestPathUEC.chooseTripPath(rnum, bestTapPairs, myTrace, myLogger);
     }
     
+
+    /**
+     * The cache id of a tour mode choice model sheet and the variables its UEC uses.
+     */
+    private static class TourMcModelInfo
+    {
+        private final int     id;
+        private final int[]   dmuVariableIndices;
+        private final boolean usesIndexValues;
+
+        TourMcModelInfo(TourMcLogsumCache cache, ChoiceModelApplication mcModel)
+        {
+            UtilityExpressionCalculator uec = mcModel.getUEC();
+            id = cache.getModelId( uec.getFile().getAbsolutePath(), uec.getModelSheet() );
+            dmuVariableIndices = uec.getObjectVariableIndices();
+            usesIndexValues = uec.usesStopZoneOrHouseholdIndex();
+        }
+    }
+
 }
@@ -18,7 +18,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -78,6 +77,11 @@ public final class MgraDataManager
     private static final String MGRA_DISTANCE_COEFF_OTHER = "mgra.avg.cost.dist.coeff.other";
     private static final String LOG_MGRA_PARKCOST = "mgra.avg.cost.trace.zone";
     public static final String PROPERTIES_MAX_WALK_DIST = "mgra.max.parking.distance";
+    public static final String PROPERTIES_MAZ_MAZ_CACHE = "maz.maz.cache.binary";
+    public static final String PROPERTIES_MAZ_MAZ_CACHE_DIR = "maz.maz.cache.dir";
+
+    // field of the maz-maz distance files with the distance in feet
+    private static final int MAZ_MAZ_DISTANCE_FIELD = 4;
 
     public static final int PARK_AREA_ONE = 1;
     private static final String MGRA_PARKAREA_FIELD   = "parkarea";
@@ -102,17 +106,11 @@ public final class MgraDataManager
     private int[][][]                   mgraWlkTapsDistArray;
     private int[]                       mgraTaz;
 
-    // An array of Hashmaps dimensioned by origin mgra, with distance in feet, in a ragged
-    // array (no key for mgra means no other mgras in walk distance)
-    private HashMap<Integer, Integer>[] oMgraWalkDistance;
-
-    // An array of Hashmaps dimensioned by destination mgra, with distance in feet, in a ragged
-    // array (no key for mgra means no other mgras in walk distance)
-    private HashMap<Integer, Integer>[] dMgraWalkDistance;
-    
+    // Distance in feet between mgras within walk distance of each other, by origin mgra,
+    // with the transpose by destination mgra (no pair means not in walk distance)
+    private MazMazSparseTable           mgraWalkDistance;
 
-    private HashMap<Integer, Integer>[] oMgraBikeDistance;
-    private HashMap<Integer, Integer>[] dMgraBikeDistance;
+    private MazMazSparseTable           mgraBikeDistance;
 
     // An array dimensioned to maxMgra of ragged arrays of lists of TAPs accessible by driving
     private Set<Integer>[]              driveAccessibleTaps;
@@ -376,46 +374,51 @@ public final class MgraDataManager
     private void readMazMazWalkDistance(HashMap<String, String> rbMap) {
         File mazMazDistanceFile = Paths.get(Util.getStringValueFromPropertyMap(rbMap, "scenario.path"),
                 		                      Util.getStringValueFromPropertyMap(rbMap, "maz.maz.distance.file")).toFile();
-        oMgraWalkDistance = new HashMap[maxMgra + 1];
-        dMgraWalkDistance = new HashMap[maxMgra + 1];
-        readMazMazDistance(mazMazDistanceFile,oMgraWalkDistance,dMgraWalkDistance);
+        mgraWalkDistance = readMazMazDistance(mazMazDistanceFile, rbMap);
     }
 
     private void readMazMazBikeDistance(HashMap<String, String> rbMap) {
         File mazMazDistanceFile = Paths.get(Util.getStringValueFromPropertyMap(rbMap, "scenario.path"),
                 		                      Util.getStringValueFromPropertyMap(rbMap, "maz.maz.bike.distance.file")).toFile();
-        oMgraBikeDistance = new HashMap[maxMgra + 1];
-        dMgraBikeDistance = new HashMap[maxMgra + 1];
-        readMazMazDistance(mazMazDistanceFile,oMgraBikeDistance,dMgraBikeDistance);
+        mgraBikeDistance = readMazMazDistance(mazMazDistanceFile, rbMap);
     }
     
-    private void readMazMazDistance(File mazMazDistanceFile, HashMap[] oDistance, HashMap[] dDistance) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(mazMazDistanceFile))) {
-        	String line;
-        	while ((line = reader.readLine()) != null) {
-				line = line.trim();
-				if (line.length() == 0)
-					continue;
-				String[] data = line.split(",");
-        		//10001,90002,90002,43053.39,11689.23
-        		//maz,maz,maz,generalized cost,distance in feet
-        		int fmaz = Integer.parseInt(data[0]);
-        		int tmaz = Integer.parseInt(data[1]);
-        		int distance = new Double(data[4]).intValue();
-        		if (oDistance[fmaz] == null)
-        			oDistance[fmaz] = new HashMap();
-        		oDistance[fmaz].put(tmaz,distance);
-        		if (dDistance[tmaz] == null)
-        			dDistance[tmaz] = new HashMap();
-        		dDistance[tmaz].put(fmaz,distance);
-        	}
-        } catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+    private MazMazSparseTable readMazMazDistance(File mazMazDistanceFile, HashMap<String, String> rbMap) {
+        //10001,90002,90002,43053.39,11689.23
+        //maz,maz,maz,generalized cost,distance in feet
+        File cacheDirectory = null;
+        boolean useCache = rbMap.containsKey(PROPERTIES_MAZ_MAZ_CACHE) && Util.getBooleanValueFromPropertyMap(rbMap, PROPERTIES_MAZ_MAZ_CACHE);
+        if (useCache) {
+            String directory = rbMap.containsKey(PROPERTIES_MAZ_MAZ_CACHE_DIR) ? Util.getStringValueFromPropertyMap(rbMap, PROPERTIES_MAZ_MAZ_CACHE_DIR) : "";
+            if (directory.length() == 0)
+                logger.warn(PROPERTIES_MAZ_MAZ_CACHE + " is true but " + PROPERTIES_MAZ_MAZ_CACHE_DIR + " is not set, MGRA pairs will be read from text.");
+            else
+                cacheDirectory = Paths.get(Util.getStringValueFromPropertyMap(rbMap, "scenario.path"), directory).toFile();
+        }
+        return MazMazSparseTable.load(mazMazDistanceFile, maxMgra, MAZ_MAZ_DISTANCE_FIELD, cacheDirectory);
+    }
+
+    /**
+     * @return the walk distances, in feet, between mgras within walk distance of each other.
+     */
+    public MazMazSparseTable getMgraWalkDistanceTable()
+    {
+        return mgraWalkDistance;
+    }
+
+    /**
+     * @return the bike distances, in feet, between mgras within short bike distance of each other.
+     */
+    public MazMazSparseTable getMgraBikeDistanceTable()
+    {
+        return mgraBikeDistance;
     }
 
     /**
-     * Return an int array of mgras within walking distance of this mgra.
+     * Return an int array of mgras within walking distance of this mgra, in
+     * ascending order. (Before the distances were held in a MazMazSparseTable the
+     * order was that of a HashMap's keys, so choices made over these mgras, such as
+     * park location choice, can differ from earlier runs for the same random draws.)
      * 
      * @param mgra The mgra to look up
      * @return The mgras within walking distance. Null is returned if no mgras are
@@ -423,24 +426,14 @@ public final class MgraDataManager
      */
     public int[] getMgrasWithinWalkDistanceFrom(int mgra)
     {
-
-        if (oMgraWalkDistance[mgra] == null) return null;
-
-        Set<Integer> keySet = oMgraWalkDistance[mgra].keySet();
-        int[] walkMgras = new int[keySet.size()];
-        Iterator<Integer> it = keySet.iterator();
-        int i = 0;
-        while (it.hasNext())
-        {
-            walkMgras[i] = it.next();
-            ++i;
-        }
-        return walkMgras;
-
+        return mgraWalkDistance.getColumns(mgra);
     }
 
     /**
-     * Return an int array of mgras within walking distance of this mgra.
+     * Return an int array of mgras within walking distance of this mgra, in
+     * ascending order. (Before the distances were held in a MazMazSparseTable the
+     * order was that of a HashMap's keys, so choices made over these mgras, such as
+     * park location choice, can differ from earlier runs for the same random draws.)
      * 
      * @param mgra The mgra to look up
      * @return The mgras within walking distance. Null is returned if no mgras are
@@ -448,20 +441,7 @@ public final class MgraDataManager
      */
     public int[] getMgrasWithinWalkDistanceTo(int mgra)
     {
-
-        if (dMgraWalkDistance[mgra] == null) return null;
-
-        Set<Integer> keySet = dMgraWalkDistance[mgra].keySet();
-        int[] walkMgras = new int[keySet.size()];
-        Iterator<Integer> it = keySet.iterator();
-        int i = 0;
-        while (it.hasNext())
-        {
-            walkMgras[i] = it.next();
-            ++i;
-        }
-        return walkMgras;
-
+        return mgraWalkDistance.getRows(mgra);
     }
 
     /**
@@ -473,12 +453,7 @@ public final class MgraDataManager
      */
     public boolean getMgrasAreWithinWalkDistance(int oMgra, int dMgra)
     {
-
-        if (dMgraWalkDistance[dMgra] == null)
-            return false;
-
-        return dMgraWalkDistance[dMgra].containsKey( oMgra );
-
+        return mgraWalkDistance.contains( oMgra, dMgra );
     }
 
     /**
@@ -540,13 +515,7 @@ public final class MgraDataManager
      */
     public int getMgraToMgraWalkDistFrom(int oMgra, int dMgra)
     {
-
-        if (oMgraWalkDistance[oMgra] == null)
-            return 0;
-        else if (oMgraWalkDistance[oMgra].containsKey(dMgra))
-            return oMgraWalkDistance[oMgra].get(dMgra);
-
-        return 0;
+        return (int) mgraWalkDistance.getValue(oMgra, dMgra, 0);
     }
 
     /**
@@ -559,13 +528,7 @@ public final class MgraDataManager
      */
     public int getMgraToMgraWalkDistTo(int oMgra, int dMgra)
     {
-
-        if (dMgraWalkDistance[dMgra] == null)
-            return 0;
-        else if (dMgraWalkDistance[dMgra].containsKey(oMgra))
-            return dMgraWalkDistance[dMgra].get(oMgra);
-
-        return 0;
+        return (int) mgraWalkDistance.getValue(oMgra, dMgra, 0);
     }
 
     /**
@@ -591,13 +554,7 @@ public final class MgraDataManager
      */
     public int getMgraToMgraBikeDistFrom(int oMgra, int dMgra)
     {
-
-        if (oMgraBikeDistance[oMgra] == null)
-            return 0;
-        else if (oMgraBikeDistance[oMgra].containsKey(dMgra))
-            return oMgraBikeDistance[oMgra].get(dMgra);
-
-        return 0;
+        return (int) mgraBikeDistance.getValue(oMgra, dMgra, 0);
     }
 
     /**
@@ -610,13 +567,7 @@ public final class MgraDataManager
      */
     public int getMgraToMgraBikeDistTo(int oMgra, int dMgra)
     {
-
-        if (dMgraBikeDistance[dMgra] == null)
-            return 0;
-        else if (dMgraBikeDistance[dMgra].containsKey(oMgra))
-            return dMgraBikeDistance[dMgra].get(oMgra);
-
-        return 0;
+        return (int) mgraBikeDistance.getValue(oMgra, dMgra, 0);
     }
 
     /**
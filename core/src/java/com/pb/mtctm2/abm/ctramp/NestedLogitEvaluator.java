@@ -0,0 +1,363 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.pb.common.math.MathUtil;
+import com.pb.common.newmodel.Alternative;
+import com.pb.common.newmodel.ConcreteAlternative;
+import com.pb.common.newmodel.LogitModel;
+
+/**
+ * Evaluates a multinomial or nested logit model held in flat arrays.
+ *
+ * The structure is compiled once from the LogitModel tree built by
+ * ChoiceModelApplication. Elemental alternatives are nodes 0 to n-1 and nests
+ * follow in post-order, so every nest comes after all of its descendants and the
+ * root is the last node. Logsums are then calculated in one forward pass over the
+ * nests and probabilities in one backward pass, with no objects visited.
+ *
+ * The arithmetic, the order of the sums and the availability rules are those of
+ * LogitModel.setAvailability(), getUtility(), calculateProbabilities() and
+ * chooseAlternative(), so results are the same as with the LogitModel tree.
+ */
+public class NestedLogitEvaluator
+        implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private static Logger  logger = Logger.getLogger(NestedLogitEvaluator.class);
+
+    private final int      numberOfAlternatives;
+    private final int      numberOfNodes;
+    private final int      root;
+
+    // children of nest node n are children[childStart[n - numberOfAlternatives]] up to the next start
+    private final int[]    childStart;
+    private final int[]    children;
+
+    // dispersion parameter by nest, applied to the utilities of its children
+    private final double[] dispersion;
+    private final String[] nodeNames;
+
+    // by node: elemental utility or nest logsum, exponentiated utility, probability
+    private final double[] utilities;
+    private final double[] expUtilities;
+    private final double[] probabilities;
+
+    // sum of the exponentiated utilities of the children, by nest
+    private final double[] nestSums;
+
+    // elemental availability, and for nests the LogitModel.getAvailability() result
+    private final boolean[] available;
+    private boolean         rootAvailable;
+
+    /**
+     * Compile the structure of a logit model tree whose elemental alternatives are
+     * ConcreteAlternative objects numbered 1 to numberOfAlternatives.
+     */
+    public NestedLogitEvaluator(LogitModel rootModel, int numberOfAlternatives)
+    {
+        this.numberOfAlternatives = numberOfAlternatives;
+
+        ArrayList<LogitModel> nests = new ArrayList<LogitModel>();
+        addNests(rootModel, nests);
+
+        numberOfNodes = numberOfAlternatives + nests.size();
+        root = numberOfNodes - 1;
+
+        childStart = new int[nests.size() + 1];
+        dispersion = new double[nests.size()];
+        nodeNames = new String[numberOfNodes];
+
+        int numChildren = 0;
+        for (LogitModel nest : nests)
+            numChildren += nest.getAlternatives().length;
+        children = new int[numChildren];
+
+        int k = 0;
+        for (int n = 0; n < nests.size(); n++)
+        {
+            LogitModel nest = nests.get(n);
+            childStart[n] = k;
+            dispersion[n] = nest.getDispersionParameter();
+            nodeNames[numberOfAlternatives + n] = nest.getName();
+            for (Alternative alt : nest.getAlternatives())
+            {
+                int child;
+                if (alt instanceof LogitModel)
+                    child = numberOfAlternatives + indexOf(nests, (LogitModel) alt);
+                else
+                {
+                    child = ((ConcreteAlternative) alt).getNumber() - 1;
+                    nodeNames[child] = alt.getName();
+                }
+                children[k++] = child;
+            }
+        }
+        childStart[nests.size()] = k;
+
+        utilities = new double[numberOfNodes];
+        expUtilities = new double[numberOfNodes];
+        probabilities = new double[numberOfNodes];
+        available = new boolean[numberOfNodes];
+        nestSums = new double[nests.size()];
+
+        // a LogitModel starts with probability 1
+        for (int n = numberOfAlternatives; n < numberOfNodes; n++)
+            probabilities[n] = 1.0;
+    }
+
+    private static void addNests(LogitModel nest, ArrayList<LogitModel> nests)
+    {
+        for (Alternative alt : nest.getAlternatives())
+        {
+            if (alt instanceof LogitModel) addNests((LogitModel) alt, nests);
+        }
+        nests.add(nest);
+    }
+
+    private static int indexOf(ArrayList<LogitModel> nests, LogitModel nest)
+    {
+        for (int i = 0; i < nests.size(); i++)
+        {
+            if (nests.get(i) == nest) return i;
+        }
+        throw new IllegalStateException("nest " + nest.getName() + " is not in the logit model.");
+    }
+
+    public int getNumberOfAlternatives()
+    {
+        return numberOfAlternatives;
+    }
+
+    /**
+     * Set the utility and availability of elemental alternative a (0-based).
+     */
+    public void setAlternative(int a, double utility, boolean isAvailable)
+    {
+        utilities[a] = utility;
+        available[a] = isAvailable;
+    }
+
+    /**
+     * Calculate the nest logsums, the root availability, exponentiated utilities
+     * and, if the root is available, the probabilities.
+     *
+     * @return the root logsum, or -999 if no alternative is available.
+     */
+    public double evaluate()
+    {
+        int firstNest = numberOfAlternatives;
+        for (int n = firstNest; n < numberOfNodes; n++)
+        {
+            double d = dispersion[n - firstNest];
+            double sum = 0;
+            boolean nestAvailable = false;
+            for (int k = childStart[n - firstNest]; k < childStart[n - firstNest + 1]; k++)
+            {
+                int c = children[k];
+                double utility = utilities[c];
+                nestAvailable |= available[c] || utility > -500;
+
+                // nests below the root are always available in LogitModel
+                if (c < firstNest && !available[c])
+                {
+                    expUtilities[c] = 0.0;
+                    probabilities[c] = 0.0;
+                    continue;
+                }
+
+                // if alternative has a very large negative utility, it isn't available
+                if (utility < -400)
+                {
+                    expUtilities[c] = 0.0;
+                    continue;
+                }
+
+                double expUtility = MathUtil.exp(d * utility);
+                expUtilities[c] = expUtility;
+                sum += expUtility;
+            }
+            nestSums[n - firstNest] = sum;
+
+            if (n < root)
+            {
+                available[n] = nestAvailable;
+                utilities[n] = (1 / d) * MathUtil.log(sum);
+            }
+        }
+
+        rootAvailable = false;
+        for (int k = childStart[root - firstNest]; k < childStart[root - firstNest + 1]; k++)
+        {
+            if (available[children[k]])
+            {
+                rootAvailable = true;
+                break;
+            }
+        }
+        utilities[root] = rootAvailable ? (1 / dispersion[root - firstNest]) * MathUtil.log(nestSums[root - firstNest]) : -999;
+
+        if (rootAvailable)
+        {
+            // parents come after their children, so go backwards to apply nest probabilities
+            for (int n = root; n >= firstNest; n--)
+            {
+                double sum = nestSums[n - firstNest];
+                double nestProbability = probabilities[n];
+                for (int k = childStart[n - firstNest]; k < childStart[n - firstNest + 1]; k++)
+                {
+                    int c = children[k];
+                    double expUtility = expUtilities[c];
+                    if (expUtility > 0 && sum > 0)
+                        probabilities[c] = expUtility / sum * nestProbability;
+                    else
+                        probabilities[c] = 0.0;
+                }
+            }
+        }
+
+        return utilities[root];
+    }
+
+    /**
+     * Choose an elemental alternative, descending the nests as LogitModel does.
+     *
+     * @return the chosen alternative number (1-based).
+     */
+    public int choose(double randomNumber)
+    {
+        int firstNest = numberOfAlternatives;
+        int nest = root;
+        double sum = 0.0;
+        while (true)
+        {
+            int chosen = -1;
+            for (int k = childStart[nest - firstNest]; k < childStart[nest - firstNest + 1]; k++)
+            {
+                int c = children[k];
+                double probability = probabilities[c];
+                if (probability == 0) continue;
+
+                sum += probability;
+                if (randomNumber <= sum)
+                {
+                    chosen = c;
+                    sum -= probability;
+                    break;
+                }
+            }
+
+            if (chosen < 0)
+            {
+                logger.error("Could not choose alternative.");
+                logger.error("Discrete Choice model random number: " + randomNumber);
+                logger.error("Discrete Choice model cummulative probability: " + sum);
+                throw new RuntimeException("no alternative chosen in nest " + nodeNames[nest] + " with random number " + randomNumber);
+            }
+
+            if (chosen < firstNest) return chosen + 1;
+            nest = chosen;
+        }
+    }
+
+    public boolean isRootAvailable()
+    {
+        return rootAvailable;
+    }
+
+    public double getUtility(int a)
+    {
+        return utilities[a];
+    }
+
+    public double getExpUtility(int a)
+    {
+        return expUtilities[a];
+    }
+
+    public double getProbability(int a)
+    {
+        return probabilities[a];
+    }
+
+    public boolean isAvailable(int a)
+    {
+        return available[a];
+    }
+
+    /**
+     * Copy the results of the last evaluation into the LogitModel tree the
+     * evaluator was compiled from, for code that reads the tree.
+     */
+    public void copyTo(LogitModel rootModel)
+    {
+        copyTo(rootModel, new int[] {numberOfAlternatives});
+    }
+
+    private void copyTo(LogitModel nest, int[] nextNest)
+    {
+        for (Alternative alt : nest.getAlternatives())
+        {
+            if (alt instanceof LogitModel) copyTo((LogitModel) alt, nextNest);
+        }
+        int n = nextNest[0]++;
+        for (int k = childStart[n - numberOfAlternatives]; k < childStart[n - numberOfAlternatives + 1]; k++)
+        {
+            Alternative alt = nest.getAlternatives()[k - childStart[n - numberOfAlternatives]];
+            int c = children[k];
+            alt.setExpUtility(expUtilities[c]);
+            alt.setProbability(probabilities[c]);
+            if (c < numberOfAlternatives)
+            {
+                alt.setUtility(utilities[c]);
+                alt.setAvailability(available[c]);
+            }
+        }
+        if (n == root) nest.setAvailability(rootAvailable);
+    }
+
+    /**
+     * For each nest, log the utilities, probabilities and logsum, as
+     * ChoiceModelApplication.logLogitCalculations() did for the LogitModel tree.
+     */
+    public void logLogitCalculations(Logger myLogger)
+    {
+        logNest(myLogger, root);
+    }
+
+    private void logNest(Logger myLogger, int n)
+    {
+        int firstNest = numberOfAlternatives;
+        double d = dispersion[n - firstNest];
+
+        myLogger.info("Nest Name = " + nodeNames[n] + "   NestingCoefficient = "
+                + String.format("%.8f", 1 / d) + "   Logsum = "
+                + String.format("%.8f", utilities[n]));
+
+        String altNameList = "Alternatives    = ";
+        String utilList = "  Utilities     = ";
+        String probList = "  Probabilities = ";
+
+        for (int k = childStart[n - firstNest]; k < childStart[n - firstNest + 1]; k++)
+        {
+            int c = children[k];
+            altNameList += String.format("%24s", nodeNames[c]);
+            utilList    += String.format("%24.8f", utilities[c]);
+            probList    += String.format("%24.8f", probabilities[c]);
+        }
+        myLogger.info(altNameList);
+        myLogger.info(utilList);
+        myLogger.info(probList);
+
+        for (int k = childStart[n - firstNest]; k < childStart[n - firstNest + 1]; k++)
+        {
+            if (children[k] >= firstNest) logNest(myLogger, children[k]);
+        }
+    }
+
+}
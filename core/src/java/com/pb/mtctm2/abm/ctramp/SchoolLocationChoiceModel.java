@@ -67,6 +67,13 @@ public class SchoolLocationChoiceModel implements Serializable {
     private int soaSampleSize;
 
     private long soaRunTime;
+
+    // samples of alternatives stored in the first shadow pricing iteration, null if samples are not reused
+    private transient UsualLocationSampleStore   sampleStore;
+    private boolean                              reuseStoredSamples;
+
+    private int[]                                storedSampleMgras;
+    private double[]                             storedSampleCorrectionFactors;
     
     
     
@@ -100,6 +107,10 @@ public class SchoolLocationChoiceModel implements Serializable {
         sampleAlternativeDistances = new double[MAXIMUM_SOA_ALTS_FOR_ANY_MODEL];
         sampleAlternativeLogsums = new double[MAXIMUM_SOA_ALTS_FOR_ANY_MODEL];
 
+        sampleStore = UsualLocationSampleStore.getInstance( propertyMap, ModelStructure.SCHOOL_PRIMARY_PURPOSE_NAME );
+        storedSampleMgras = new int[soaSampleSize];
+        storedSampleCorrectionFactors = new double[soaSampleSize];
+
     }
 
 
@@ -278,7 +289,14 @@ public class SchoolLocationChoiceModel implements Serializable {
                 dcTwoStageDmuObject.setDmuIndexValues(hh.getHhId(), homeMgra, origMgra, 0);
 
                 double[] homeMgraSizeArray = dcSizeObj.getDcSizeArray()[segmentIndex];
-                mcModel.getAnmSkimCalculator().getAmPkSkimDistancesFromMgra( homeMgra, mgraDistanceArray );
+
+                // a stored sample includes the distances to the sampled mgras, which are all the choice model uses
+                int numStoredAlts = -1;
+                if ( reuseStoredSamples )
+                    numStoredAlts = sampleStore.get( UsualLocationSampleStore.getPersonKey(hh.getHhId(), p.getPersonNum()), segmentIndex,
+                            storedSampleMgras, storedSampleCorrectionFactors, sampleAlternativeLogsums, sampleAlternativeDistances );
+                if ( numStoredAlts < 0 )
+                    mcModel.getAnmSkimCalculator().getAmPkSkimDistancesFromMgra( homeMgra, mgraDistanceArray );
 
                 // set size array for the tour segment and distance array from the home mgra to all destinaion mgras.
                 dcTwoStageDmuObject.setMgraSizeArray(homeMgraSizeArray);
@@ -290,7 +308,7 @@ public class SchoolLocationChoiceModel implements Serializable {
 
                 // get the school location alternative chosen from the sample
                 results = selectLocationFromSampleOfAlternatives( "school", segmentType, p, segmentNameList[segmentIndex], segmentIndex, tourNum++,
-                        homeMgraSizeArray, mgraDistanceArray );
+                        homeMgraSizeArray, mgraDistanceArray, numStoredAlts );
 
 
             } catch (RuntimeException e)
@@ -318,7 +336,7 @@ public class SchoolLocationChoiceModel implements Serializable {
      */
     private double[] selectLocationFromSampleOfAlternatives(String segmentType, int segmentTypeIndex,
             Person person, String segmentName, int sizeSegmentIndex, int tourNum,
-            double[] homeMgraSizeArray, double[] homeMgraDistanceArray)
+            double[] homeMgraSizeArray, double[] homeMgraDistanceArray, int numStoredAlts)
     {
 
         // set tour origin taz/subzone and start/end times for calculating mode
@@ -328,11 +346,28 @@ public class SchoolLocationChoiceModel implements Serializable {
         Household household = person.getHouseholdObject();
 
 
-        // get sample of locations and correction factors for sample using the alternate method
-        dcTwoStageModelObject.chooseSample( household.getHhTaz(), sizeSegmentIndex, segmentTypeIndex, soaSampleSize, household.getHhRandom(), household.getDebugChoiceModels() );
-        int[] finalSample = dcTwoStageModelObject.getUniqueSampleMgras();
-        double[] sampleCorrectionFactors = dcTwoStageModelObject.getUniqueSampleMgraCorrectionFactors();
-        int numUniqueAlts = dcTwoStageModelObject.getNumberofUniqueMgrasInSample();
+        int[] finalSample = null;
+        double[] sampleCorrectionFactors = null;
+        int numUniqueAlts = 0;
+        if ( numStoredAlts >= 0 ) {
+            // the sample, logsums and distances stored for the person in the first shadow pricing iteration
+            finalSample = storedSampleMgras;
+            sampleCorrectionFactors = storedSampleCorrectionFactors;
+            numUniqueAlts = numStoredAlts;
+
+            // draw the random numbers chooseSample() would have used, so the choice from the
+            // sample and the models after this one get the same draws as without the store
+            Random hhRandom = household.getHhRandom();
+            for ( int i=0; i < soaSampleSize; i++ )
+                hhRandom.nextDouble();
+        }
+        else {
+            // get sample of locations and correction factors for sample using the alternate method
+            dcTwoStageModelObject.chooseSample( household.getHhTaz(), sizeSegmentIndex, segmentTypeIndex, soaSampleSize, household.getHhRandom(), household.getDebugChoiceModels() );
+            finalSample = dcTwoStageModelObject.getUniqueSampleMgras();
+            sampleCorrectionFactors = dcTwoStageModelObject.getUniqueSampleMgraCorrectionFactors();
+            numUniqueAlts = dcTwoStageModelObject.getNumberofUniqueMgrasInSample();
+        }
 
         Arrays.fill( dcModelAltsAvailable, false );
         Arrays.fill( dcModelAltsSample, 0 );
@@ -353,12 +388,18 @@ public class SchoolLocationChoiceModel implements Serializable {
             int destMgra = finalSample[i];
             dcModelSampleValues[i] = finalSample[i];
 
-            // set logsum value in DC dmuObject for the logsum index, sampled zone and subzone.
-            double logsum = getModeChoiceLogsum( household, person, destMgra, segmentTypeIndex );
-            dcTwoStageDmuObject.setMcLogsum(i, logsum);
-            
-            sampleAlternativeLogsums[i] = logsum;
-            sampleAlternativeDistances[i] = homeMgraDistanceArray[finalSample[i]];
+            if ( numStoredAlts >= 0 ) {
+                dcTwoStageDmuObject.setMcLogsum(i, sampleAlternativeLogsums[i]);
+                homeMgraDistanceArray[destMgra] = sampleAlternativeDistances[i];
+            }
+            else {
+                // set logsum value in DC dmuObject for the logsum index, sampled zone and subzone.
+                double logsum = getModeChoiceLogsum( household, person, destMgra, segmentTypeIndex );
+                dcTwoStageDmuObject.setMcLogsum(i, logsum);
+
+                sampleAlternativeLogsums[i] = logsum;
+                sampleAlternativeDistances[i] = homeMgraDistanceArray[finalSample[i]];
+            }
             
             // set availaibility and sample values for the purpose, dcAlt.
             dcModelAltsAvailable[i+1] = true;
@@ -368,6 +409,10 @@ public class SchoolLocationChoiceModel implements Serializable {
         
         dcTwoStageDmuObject.setSampleArray( dcModelSampleValues );
 
+        if ( sampleStore != null && numStoredAlts < 0 )
+            sampleStore.put( UsualLocationSampleStore.getPersonKey(household.getHhId(), person.getPersonNum()), sizeSegmentIndex,
+                    numUniqueAlts, finalSample, sampleCorrectionFactors, sampleAlternativeLogsums, sampleAlternativeDistances );
+
 
 
         // log headers to traceLogger if the person making the destination choice is
@@ -562,6 +607,15 @@ public class SchoolLocationChoiceModel implements Serializable {
         this.dcSizeObj = dcSizeObj;
     }
 
+    /**
+     * In shadow pricing iterations after the first, choose from the samples of
+     * alternatives stored in the first iteration, if uwsl.ShadowPricing.ReuseSamples is set.
+     */
+    public void setReuseStoredSamples(boolean reuse)
+    {
+        reuseStoredSamples = reuse && sampleStore != null;
+    }
+
     public long getSoaRunTime() {
         return soaRunTime;
     }
@@ -23,12 +23,16 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
     private transient int                     soaSampleSize;
     private transient CtrampDmuFactoryIf      dmuFactory;
     private transient String                  restartModelString;
+    private transient ChoiceTallies.UsualLocationSegments locationSegments;
 
     private int                               iteration;
     private int                               startIndex;
     private int                               endIndex;
     private int                               taskIndex                                 = -1;
 
+    // chosen locations of the task's households, returned with the task
+    private ChoiceTallies                     tallies;
+
     public SchoolLocationChoiceTaskJppfNew(int taskIndex, int startIndex, int endIndex, int iteration)
     {
         this.startIndex = startIndex;
@@ -41,6 +45,7 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
     {
 
         String start = (new Date()).toString();
+        tallies = new ChoiceTallies();
         long startTime = System.currentTimeMillis();
 
         String threadName = null;
@@ -74,6 +79,7 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
             this.soaSampleSize = (Integer) dataProvider.getValue("soaSampleSize");
             this.dmuFactory = (CtrampDmuFactoryIf) dataProvider.getValue("dmuFactory");
             this.restartModelString = (String) dataProvider.getValue("restartModelString");
+            this.locationSegments = (ChoiceTallies.UsualLocationSegments) dataProvider.getValue("locationSegments");
 
         } catch (Exception e)
         {
@@ -128,6 +134,10 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
                 dcModel.applySchoolLocationChoice(householdArray[i]);
             }
 
+            // count the chosen school locations of all the task's households for shadow pricing
+            for (Household household : householdArray)
+                tallies.addSchoolLocations(household, locationSegments);
+
             hhDataManager.setHhArray(householdArray, startIndex);
 
         } catch (Exception e)
@@ -169,6 +179,11 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
         return Integer.toString(taskIndex);
     }
 
+    public ChoiceTallies getChoiceTallies()
+    {
+        return tallies;
+    }
+
     private void clearClassAttributes() {
         propertyMap = null;
         ms = null;
@@ -180,5 +195,6 @@ public class SchoolLocationChoiceTaskJppfNew extends JPPFTask
         soaUecFileName = null;
         dmuFactory = null;
         restartModelString = null;
+        locationSegments = null;
     }
 }
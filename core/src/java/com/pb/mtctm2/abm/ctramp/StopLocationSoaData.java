@@ -0,0 +1,240 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.apache.log4j.Logger;
+
+import com.pb.common.calculator.IndexValues;
+import com.pb.common.newmodel.UtilityExpressionCalculator;
+
+/**
+ * Stop location sample of alternatives data that is the same for every
+ * IntermediateStopChoiceModels object: the logged MGRA size terms for each size
+ * segment and, if the two stage SOA method is used, the TAZ distance exponentiated
+ * utilities, TAZ size terms and MGRA size probabilities computed from them.
+ *
+ * HouseholdChoiceModelsManager builds one of these per JVM and hands it to each
+ * HouseholdChoiceModels object it creates.  The arrays are not modified after
+ * construction, so they are shared by all threads without synchronization.
+ */
+public class StopLocationSoaData
+{
+
+    private Logger logger = Logger.getLogger(StopLocationSoaData.class);
+    private Logger slcSoaLogger = Logger.getLogger("slcSoaLogger");
+
+    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE = "slc.soa.size.uec.file";
+    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE_DATA = "slc.soa.size.uec.data.page";
+    private static final String PROPERTIES_UEC_STOP_LOCATION_SIZE_MODEL = "slc.soa.size.uec.model.page";
+
+    private MgraDataManager mgraManager;
+    private TazDataManager tdm;
+
+    // logged size terms [size segment][mgra], and 1/true where the size term is > 0
+    private double[][] lnSizeTerms;
+    private int[][] sizeSample;
+    private boolean[][] sizeAvailable;
+
+    // two stage SOA arrays, null if the two stage method is not used
+    private double[][] tazDistExpUtils;
+    private double[][][] sizeProbs;
+    private double[][] tazSize;
+
+
+    /**
+     * @param logMgra a positive mgra value to log the size term calculation for that mgra, or -1.
+     */
+    public StopLocationSoaData( HashMap<String, String> propertyMap, CtrampDmuFactoryIf dmuFactory, boolean useTwoStageSoa, int logMgra ) {
+
+        mgraManager = MgraDataManager.getInstance( propertyMap );
+        tdm = TazDataManager.getInstance( propertyMap );
+
+        calculateLnSizeTerms( propertyMap, logMgra );
+
+        if ( useTwoStageSoa ) {
+
+            DestChoiceTwoStageSoaTazDistanceUtilityDMU distSoaDmu = dmuFactory.getDestChoiceSoaTwoStageTazDistUtilityDMU();
+
+            DestChoiceTwoStageSoaProbabilitiesCalculator soaDistProbsObject = new DestChoiceTwoStageSoaProbabilitiesCalculator(
+                    propertyMap, dmuFactory,
+                    IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_UTILITY,
+                    IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_MODEL_PAGE,
+                    IntermediateStopChoiceModels.PROPERTIES_UEC_SLC_SOA_DISTANCE_DATA_PAGE );
+
+            computeTwoStageSoaProbabilities( soaDistProbsObject, distSoaDmu );
+        }
+
+    }
+
+
+    public double[][] getLnSizeTerms() {
+        return lnSizeTerms;
+    }
+
+    public int[][] getSizeSample() {
+        return sizeSample;
+    }
+
+    public boolean[][] getSizeAvailable() {
+        return sizeAvailable;
+    }
+
+    public double[][] getTazDistExpUtils() {
+        return tazDistExpUtils;
+    }
+
+    public double[][][] getSizeProbs() {
+        return sizeProbs;
+    }
+
+    public double[][] getTazSize() {
+        return tazSize;
+    }
+
+
+    private void calculateLnSizeTerms( HashMap<String, String> rbMap, int logMgra ) {
+
+        logger.info("calculating Stop Location SOA Size Terms");
+
+        String uecPath = rbMap.get(CtrampApplication.PROPERTIES_UEC_PATH);
+        String slcSizeUecFile = rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE);
+        slcSizeUecFile = uecPath + slcSizeUecFile;
+        int slcSizeUecData = Integer.parseInt( rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE_DATA) );
+        int slcSizeUecModel = Integer.parseInt( rbMap.get(PROPERTIES_UEC_STOP_LOCATION_SIZE_MODEL) );
+
+        IndexValues iv = new IndexValues();
+        UtilityExpressionCalculator slcSizeUec = new UtilityExpressionCalculator( new File(slcSizeUecFile), slcSizeUecModel, slcSizeUecData, rbMap, null );
+
+        ArrayList<Integer> mgras = mgraManager.getMgras();
+        int maxMgra = mgraManager.getMaxMgra();
+        int numSizeSegments = slcSizeUec.getNumberOfAlternatives();
+
+        lnSizeTerms = new double[numSizeSegments][maxMgra + 1];
+        sizeSample = new int[numSizeSegments][maxMgra + 1];
+        sizeAvailable = new boolean[numSizeSegments][maxMgra + 1];
+
+        // loop through mgras and calculate size terms
+        for (int mgra : mgras)
+        {
+
+            iv.setZoneIndex(mgra);
+            double[] size = slcSizeUec.solve(iv, null, null);
+
+            // if a logMgra values > 0 was specified, log the size term utility calculation for that mgra
+            if ( mgra == logMgra )
+                slcSizeUec.logAnswersArray(slcSoaLogger, "Stop Location SOA Size Terms, MGRA = " + mgra );
+
+            // store the logged size terms
+            for (int i=0; i < numSizeSegments; i++) {
+                lnSizeTerms[i][mgra] = Math.log( size[i] + 1);
+                if ( size[i] > 0 ){
+                    sizeSample[i][mgra] = 1;
+                    sizeAvailable[i][mgra] = true;
+                }
+            }
+
+        }
+
+    }
+
+
+    private void computeTwoStageSoaProbabilities( DestChoiceTwoStageSoaProbabilitiesCalculator soaDistProbsObject,
+            DestChoiceTwoStageSoaTazDistanceUtilityDMU distSoaDmu ) {
+
+        // compute the exponentiated distance utilities that all segments will share
+        tazDistExpUtils = computeTazDistanceExponentiatedUtilities( soaDistProbsObject, distSoaDmu );
+
+        tazSize = new double[lnSizeTerms.length][];
+        sizeProbs = new double[lnSizeTerms.length][][];
+
+        // compute an array of SOA size probabilities for each segment
+        for ( int segmentIndex : IntermediateStopChoiceModels.SLC_SIZE_SEGMENT_INDICES ) {
+
+            // compute the TAZ size values from the mgra values and the correspondence between mgras and tazs.
+            tazSize[segmentIndex] = computeTazSize( lnSizeTerms[segmentIndex] );
+
+            sizeProbs[segmentIndex] = computeSizeSegmentProbabilities( lnSizeTerms[segmentIndex], tazSize[segmentIndex] );
+
+        }
+
+    }
+
+    private double[][] computeSizeSegmentProbabilities( double[] size, double[] totalTazSize ) {
+
+        int maxTaz = tdm.getMaxTaz();
+
+        // this is a 0-based array of cumulative probabilities
+        double[][] sizeProbs = new double[maxTaz][];
+
+        for ( int k=0; k<tdm.getTazs().length; k++ ) {
+
+            int taz = tdm.getTazs()[k];
+            int[] mgraArray = tdm.getMgraArray(taz);
+
+            if ( mgraArray == null ) {
+                sizeProbs[taz-1] = new double[0];
+            }
+            else {
+
+                if ( totalTazSize[taz] > 0 ) {
+                    sizeProbs[taz-1] = new double[mgraArray.length];
+                    for ( int i=0; i < mgraArray.length; i++ ) {
+                        double mgraSize = size[mgraArray[i]];
+                        if ( mgraSize > 0 )
+                            mgraSize += 1;
+                        sizeProbs[taz-1][i] = mgraSize / totalTazSize[taz];
+                    }
+                }
+                else {
+                    sizeProbs[taz-1] = new double[0];
+                }
+            }
+
+        }
+
+        return sizeProbs;
+
+    }
+
+    private double[][] computeTazDistanceExponentiatedUtilities( DestChoiceTwoStageSoaProbabilitiesCalculator soaDistProbsObject,
+            DestChoiceTwoStageSoaTazDistanceUtilityDMU distSoaDmu ) {
+
+        // compute the TAZ x TAZ exponentiated utilities array for sample selection utilities.
+        double[][] tazDistExpUtils = soaDistProbsObject.computeDistanceUtilities( distSoaDmu );
+        for ( int i=0; i < tazDistExpUtils.length; i++ )
+            for ( int j=0; j < tazDistExpUtils[i].length; j++ ) {
+                if ( tazDistExpUtils[i][j] < -500 )
+                    tazDistExpUtils[i][j] = 0;
+                else
+                    tazDistExpUtils[i][j] = Math.exp( tazDistExpUtils[i][j] );
+            }
+
+        return tazDistExpUtils;
+
+    }
+
+
+    private double[] computeTazSize( double[] size ) {
+
+        int maxTaz = tdm.getMaxTaz();
+
+        double[] tazSize = new double[maxTaz+1];
+
+        for ( int i=0; i< tdm.getTazs().length; i++ ) {
+
+            int taz = tdm.getTazs()[i];
+            int[] mgraArray = tdm.getMgraArray(taz);
+            if ( mgraArray != null ) {
+                for ( int mgra : mgraArray ) {
+                    tazSize[taz] += size[mgra] + (size[mgra] > 0 ? 1 : 0);
+                }
+            }
+
+        }
+
+        return tazSize;
+
+    }
+
+}
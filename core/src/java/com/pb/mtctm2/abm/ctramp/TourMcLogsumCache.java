@@ -0,0 +1,278 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.pb.common.calculator.MatrixDataManager;
+
+/**
+ * Thread safe, bounded cache of tour mode choice logsums shared by the
+ * McLogsumsCalculator objects in a JVM. A logsum is stored under a signature of
+ * everything that enters its calculation, built by McLogsumsCalculator: the mode
+ * choice model sheet, the origin and destination MGRAs, the skim periods and the
+ * values of the DMU variables used by the UEC.
+ *
+ * The cache is split into lock striped segments, each holding its share of the
+ * entries in access order and dropping the least recently used entry when full.
+ * If verification is enabled, every hit is also calculated and compared with the
+ * cached value.
+ *
+ * The logsums depend on the skims, so the cache is cleared when a new
+ * McLogsumsCalculator gets it after the MatrixDataManager data has been cleared,
+ * as the model managers do when they are set up for a global iteration.
+ */
+public class TourMcLogsumCache
+{
+
+    private static TourMcLogsumCache objInstance = null;
+
+    // maximum number of cached logsums, 0 to not use the cache
+    public static final String   PROPERTIES_CACHE_SIZE   = "tourMcLogsum.cache.size";
+    // calculate logsums for cache hits as well and log any that differ from the cached value
+    public static final String   PROPERTIES_CACHE_VERIFY = "tourMcLogsum.cache.verify";
+
+    private static final int     NUM_SEGMENTS            = 64;
+    private static final int     MAX_LOGGED_MISMATCHES   = 20;
+
+    private Logger               logger                  = Logger.getLogger(TourMcLogsumCache.class);
+
+    private final Segment[]      segments;
+    private final boolean        verify;
+
+    // MatrixDataManager clear count when the cached logsums were calculated
+    private int                  matrixClearCount;
+
+    // mode choice model sheets, by UEC file and model sheet, numbered for the signatures
+    private final HashMap<String, Integer> modelIds = new HashMap<String, Integer>();
+
+    private final AtomicLong     hits                    = new AtomicLong();
+    private final AtomicLong     misses                  = new AtomicLong();
+    private final AtomicLong     evictions               = new AtomicLong();
+    private final AtomicLong     mismatches              = new AtomicLong();
+
+
+    private TourMcLogsumCache(long maxEntries, boolean verify)
+    {
+        this.verify = verify;
+
+        int maxSegmentEntries = (int) Math.min( Math.max( maxEntries / NUM_SEGMENTS, 1 ), Integer.MAX_VALUE );
+        segments = new Segment[NUM_SEGMENTS];
+        for ( int i=0; i < NUM_SEGMENTS; i++ )
+            segments[i] = new Segment( maxSegmentEntries );
+    }
+
+    /**
+     * @return the cache for this JVM, or null if tourMcLogsum.cache.size is not set or is 0.
+     */
+    public static synchronized TourMcLogsumCache getInstance(HashMap<String, String> propertyMap)
+    {
+        if (objInstance == null) {
+            if ( ! propertyMap.containsKey( PROPERTIES_CACHE_SIZE ) )
+                return null;
+            long maxEntries = Long.parseLong( propertyMap.get( PROPERTIES_CACHE_SIZE ).trim() );
+            if ( maxEntries <= 0 )
+                return null;
+            boolean verify = propertyMap.containsKey( PROPERTIES_CACHE_VERIFY ) && Util.getBooleanValueFromPropertyMap( propertyMap, PROPERTIES_CACHE_VERIFY );
+            objInstance = new TourMcLogsumCache( maxEntries, verify );
+            objInstance.logger.info( String.format( "created tour mode choice logsum cache for %d logsums, verify=%s.", maxEntries, verify ) );
+            objInstance.matrixClearCount = MatrixDataManager.getInstance().getClearCount();
+        }
+        else if ( objInstance.matrixClearCount != MatrixDataManager.getInstance().getClearCount() ) {
+            objInstance.logger.info( String.format( "clearing tour mode choice logsum cache after skims were cleared: %s.", objInstance ) );
+            objInstance.clear();
+            objInstance.matrixClearCount = MatrixDataManager.getInstance().getClearCount();
+        }
+        return objInstance;
+    }
+
+    //hit, miss and eviction counts of the logsum cache, or null if no instance has been created in this JVM
+    public static synchronized String getTourMcLogsumCacheStatistics() {
+        if (objInstance == null)
+            return null;
+        return objInstance.toString();
+    }
+
+    /**
+     * Number a mode choice model sheet, the same number for all the UECs built from it.
+     */
+    public synchronized int getModelId(String uecFile, int modelSheet)
+    {
+        String name = uecFile + "#" + modelSheet;
+        Integer id = modelIds.get( name );
+        if ( id == null ) {
+            id = modelIds.size();
+            modelIds.put( name, id );
+        }
+        return id;
+    }
+
+    public boolean getVerify()
+    {
+        return verify;
+    }
+
+    /**
+     * @return the cached logsum for a signature, or null if there is none.
+     */
+    public Double get(Signature key)
+    {
+        Double logsum = segments[key.hash >>> 26].get( key );
+        if ( logsum == null )
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return logsum;
+    }
+
+    public void put(Signature key, double logsum)
+    {
+        segments[key.hash >>> 26].put( key, logsum );
+    }
+
+    /**
+     * Record the result of checking a cached logsum against the calculated value.
+     */
+    public void verified(Signature key, double cachedLogsum, double logsum)
+    {
+        if ( Double.compare( cachedLogsum, logsum ) == 0 )
+            return;
+        if ( mismatches.incrementAndGet() <= MAX_LOGGED_MISMATCHES )
+            logger.warn( String.format( "cached tour mode choice logsum=%.8f differs from calculated logsum=%.8f for signature %s.",
+                    cachedLogsum, logsum, key ) );
+    }
+
+    public void clear()
+    {
+        for ( Segment s : segments )
+            s.clear();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public long getMismatches()
+    {
+        return mismatches.get();
+    }
+
+    public long size()
+    {
+        long size = 0;
+        for ( Segment s : segments )
+            size += s.size();
+        return size;
+    }
+
+    public String toString()
+    {
+        long h = getHits();
+        long m = getMisses();
+        String s = String.format( "tour mode choice logsum cache: size=%d, hits=%d, misses=%d, hit rate=%.1f%%, evictions=%d",
+                size(), h, m, ( h + m ) > 0 ? 100.0 * h / ( h + m ) : 0.0, getEvictions() );
+        if ( verify )
+            s += ", verify mismatches=" + getMismatches();
+        return s;
+    }
+
+
+    /**
+     * The values a logsum is calculated from, stored as the bits of each value.
+     */
+    public static final class Signature
+    {
+        private final long[] values;
+        private final int    hash;
+
+        public Signature(double[] values, int length)
+        {
+            this.values = new long[length];
+            long h = length;
+            for ( int i=0; i < length; i++ ) {
+                this.values[i] = Double.doubleToLongBits( values[i] );
+                h = ( h ^ this.values[i] ) * 0x9E3779B97F4A7C15L;
+            }
+            this.hash = (int) ( h ^ ( h >>> 32 ) );
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object o)
+        {
+            if ( this == o )
+                return true;
+            if ( ! ( o instanceof Signature ) )
+                return false;
+            Signature other = (Signature) o;
+            return hash == other.hash && Arrays.equals( values, other.values );
+        }
+
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder( "[" );
+            for ( int i=0; i < values.length; i++ ) {
+                if ( i > 0 )
+                    sb.append( ", " );
+                sb.append( Double.longBitsToDouble( values[i] ) );
+            }
+            return sb.append( "]" ).toString();
+        }
+    }
+
+
+    private final class Segment
+    {
+        private final LinkedHashMap<Signature, Double> map;
+
+        Segment(final int maxEntries)
+        {
+            map = new LinkedHashMap<Signature, Double>( 16, 0.75f, true ) {
+                protected boolean removeEldestEntry(Map.Entry<Signature, Double> eldest)
+                {
+                    if ( size() <= maxEntries )
+                        return false;
+                    evictions.incrementAndGet();
+                    return true;
+                }
+            };
+        }
+
+        synchronized Double get(Signature key)
+        {
+            return map.get( key );
+        }
+
+        synchronized void put(Signature key, double logsum)
+        {
+            map.put( key, logsum );
+        }
+
+        synchronized void clear()
+        {
+            map.clear();
+        }
+
+        synchronized int size()
+        {
+            return map.size();
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.pb.mtctm2.abm.ctramp;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import org.apache.log4j.Logger;
 import com.pb.common.calculator.IndexValues;
@@ -223,6 +224,33 @@ public class TourModeChoiceDMU
         return dMaz; 
     }
     
+    /**
+     * Clear the attributes that McLogsumsCalculator.setTourMcDmuAttributes() sets from
+     * the tour origin and destination.
+     */
+    public void clearTourMcAttributes()
+    {
+        origDuDen = 0;
+        origEmpDen = 0;
+        origTotInt = 0;
+        destDuDen = 0;
+        destEmpDen = 0;
+        destTotInt = 0;
+        lsWgtAvgCostM = 0;
+        lsWgtAvgCostD = 0;
+        lsWgtAvgCostH = 0;
+        reimburseProportion = 0;
+        pTazTerminalTime = 0;
+        aTazTerminalTime = 0;
+        nmWalkTimeOut = 0;
+        nmWalkTimeIn = 0;
+        nmBikeTimeOut = 0;
+        nmBikeTimeIn = 0;
+        parkingArea = 0;
+        for ( double[] logsums : transitLogSum )
+            Arrays.fill( logsums, 0 );
+    }
+
     public void setTransitLogSum(int accEgr, boolean inbound, double value){
     	transitLogSum[accEgr][inbound == true ? 1 : 0] = value;
     }
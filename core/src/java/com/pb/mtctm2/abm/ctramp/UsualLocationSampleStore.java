@@ -0,0 +1,228 @@
+package com.pb.mtctm2.abm.ctramp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.apache.log4j.Logger;
+
+/**
+ * Store of the sample of alternatives drawn for each person by a usual work or
+ * school location choice model: the sampled MGRAs, their sample correction
+ * factors, mode choice logsums and distances from home. Between shadow pricing
+ * iterations only the size terms change, so in iterations after the first the
+ * location choice models read a person's sample back from the store and choose
+ * from it again, without drawing a new sample or calculating mode choice logsums.
+ * The household random numbers the sample would have used are still drawn, so the
+ * random number stream of each household is the same as without the store.
+ *
+ * There is one store per purpose in a JVM. A record is 12 bytes plus 16 bytes per
+ * sampled alternative, written to direct buffers outside the Java heap and found
+ * through an open addressing index of person keys. A person whose sample is not
+ * in the store, for instance because their household was processed in another
+ * JVM in the first iteration, gets a new sample and it is stored. A new sample
+ * for a person already in the store is written over their record, so records are
+ * never abandoned in the buffers.
+ */
+public final class UsualLocationSampleStore
+{
+
+    // reuse the samples of alternatives and logsums from the first shadow pricing iteration in later iterations
+    public static final String PROPERTIES_REUSE_SAMPLES = "uwsl.ShadowPricing.ReuseSamples";
+
+    private static final int   BLOCK_BYTES              = 16 * 1024 * 1024;
+    private static final int   HEADER_BYTES             = 12;
+    private static final int   ALT_BYTES                = 16;
+    private static final long  EMPTY_KEY                = -1;
+
+    private static Logger      logger                   = Logger.getLogger(UsualLocationSampleStore.class);
+
+    private static final HashMap<String, UsualLocationSampleStore> instances = new HashMap<String, UsualLocationSampleStore>();
+
+    private final String       purpose;
+
+    // records are written to the end of the last block, a record never spans blocks
+    private final ArrayList<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    private int                blockEnd;
+
+    // index of person keys to record locations: block index in the high 32 bits, byte offset in the low 32 bits
+    private long[]             keys;
+    private long[]             locations;
+    private int                size;
+
+    private long               hits;
+    private long               misses;
+    private long               rejects;
+
+
+    private UsualLocationSampleStore(String purpose)
+    {
+        this.purpose = purpose;
+        keys = new long[1024];
+        locations = new long[1024];
+        Arrays.fill( keys, EMPTY_KEY );
+    }
+
+    /**
+     * @return the store for the purpose in this JVM, or null if uwsl.ShadowPricing.ReuseSamples is not true.
+     */
+    public static synchronized UsualLocationSampleStore getInstance(HashMap<String, String> propertyMap, String purpose)
+    {
+        if ( ! propertyMap.containsKey( PROPERTIES_REUSE_SAMPLES ) || ! Util.getBooleanValueFromPropertyMap( propertyMap, PROPERTIES_REUSE_SAMPLES ) )
+            return null;
+
+        UsualLocationSampleStore store = instances.get( purpose );
+        if ( store == null ) {
+            store = new UsualLocationSampleStore( purpose );
+            instances.put( purpose, store );
+            logger.info( String.format( "created usual %s location sample store.", purpose ) );
+        }
+        return store;
+    }
+
+    /**
+     * Log the statistics of the store for the purpose and release its memory.
+     */
+    public static synchronized void clearInstance(String purpose)
+    {
+        UsualLocationSampleStore store = instances.remove( purpose );
+        if ( store != null )
+            logger.info( store.toString() );
+    }
+
+    public static long getPersonKey(int hhId, int personNum)
+    {
+        return ( (long) hhId << 8 ) | personNum;
+    }
+
+    /**
+     * Store a person's sample of alternatives. If a sample is stored for the person
+     * already, the new sample is written over it when it has no more alternatives
+     * than the stored one. A larger sample is not stored, and the stored one is
+     * marked so that get() misses, so the person gets a new sample each time.
+     */
+    public synchronized void put(long personKey, int segmentIndex, int numAlts, int[] mgras, double[] corrections,
+            double[] logsums, double[] distances)
+    {
+        if ( 2 * ( size + 1 ) > keys.length )
+            growIndex();
+        int slot = findSlot( keys, personKey );
+
+        ByteBuffer block;
+        int offset;
+        if ( keys[slot] == EMPTY_KEY ) {
+            int recordBytes = HEADER_BYTES + numAlts * ALT_BYTES;
+            if ( blocks.isEmpty() || blockEnd + recordBytes > BLOCK_BYTES ) {
+                blocks.add( ByteBuffer.allocateDirect( BLOCK_BYTES ) );
+                blockEnd = 0;
+            }
+
+            block = blocks.get( blocks.size() - 1 );
+            offset = blockEnd;
+            blockEnd += recordBytes;
+            block.putInt( offset + 8, numAlts );
+
+            keys[slot] = personKey;
+            locations[slot] = ( (long) ( blocks.size() - 1 ) << 32 ) | offset;
+            size++;
+        }
+        else {
+            // the record keeps the number of alternatives it was written with as its capacity
+            block = blocks.get( (int) ( locations[slot] >>> 32 ) );
+            offset = (int) locations[slot];
+            if ( numAlts > block.getInt( offset + 8 ) ) {
+                block.putInt( offset, -1 );
+                rejects++;
+                return;
+            }
+        }
+
+        block.putInt( offset, segmentIndex );
+        block.putInt( offset + 4, numAlts );
+        int p = offset + HEADER_BYTES;
+        for ( int i=0; i < numAlts; i++ ) {
+            block.putInt( p, mgras[i] );
+            block.putFloat( p + 4, (float) corrections[i] );
+            block.putFloat( p + 8, (float) logsums[i] );
+            block.putFloat( p + 12, (float) distances[i] );
+            p += ALT_BYTES;
+        }
+    }
+
+    /**
+     * Copy a person's stored sample of alternatives to the arrays.
+     *
+     * @return the number of sampled alternatives, or -1 if no sample is stored for
+     *         the person or the stored sample is for a different size segment.
+     */
+    public synchronized int get(long personKey, int segmentIndex, int[] mgras, double[] corrections,
+            double[] logsums, double[] distances)
+    {
+        int slot = findSlot( keys, personKey );
+        if ( keys[slot] == EMPTY_KEY ) {
+            misses++;
+            return -1;
+        }
+
+        ByteBuffer block = blocks.get( (int) ( locations[slot] >>> 32 ) );
+        int offset = (int) locations[slot];
+        if ( block.getInt( offset ) != segmentIndex ) {
+            misses++;
+            return -1;
+        }
+
+        int numAlts = block.getInt( offset + 4 );
+        int p = offset + HEADER_BYTES;
+        for ( int i=0; i < numAlts; i++ ) {
+            mgras[i] = block.getInt( p );
+            corrections[i] = block.getFloat( p + 4 );
+            logsums[i] = block.getFloat( p + 8 );
+            distances[i] = block.getFloat( p + 12 );
+            p += ALT_BYTES;
+        }
+        hits++;
+        return numAlts;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized String toString()
+    {
+        return String.format( "usual %s location sample store: persons=%d, off-heap bytes=%d, hits=%d, misses=%d, rejected samples=%d",
+                purpose, size, (long) blocks.size() * BLOCK_BYTES, hits, misses, rejects );
+    }
+
+
+    private void growIndex()
+    {
+        long[] newKeys = new long[keys.length * 2];
+        long[] newLocations = new long[locations.length * 2];
+        Arrays.fill( newKeys, EMPTY_KEY );
+        for ( int i=0; i < keys.length; i++ ) {
+            if ( keys[i] == EMPTY_KEY )
+                continue;
+            int slot = findSlot( newKeys, keys[i] );
+            newKeys[slot] = keys[i];
+            newLocations[slot] = locations[i];
+        }
+        keys = newKeys;
+        locations = newLocations;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would be added.
+     */
+    private static int findSlot(long[] keys, long key)
+    {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) ( h ^ ( h >>> 32 ) ) & mask;
+        while ( keys[slot] != EMPTY_KEY && keys[slot] != key )
+            slot = ( slot + 1 ) & mask;
+        return slot;
+    }
+
+}
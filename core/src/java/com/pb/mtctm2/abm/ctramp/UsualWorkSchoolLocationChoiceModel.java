@@ -239,6 +239,9 @@ public class UsualWorkSchoolLocationChoiceModel
         // shadow pricing iterations
         for (int iter = 0; iter < workerDcSizeObj.getMaxShadowPriceIterations(); iter++)
         {
+
+            // tallies of chosen locations returned by the tasks, null if a task did not return any
+            ChoiceTallies tallies = new ChoiceTallies();
             
             try
             {
@@ -261,6 +264,7 @@ public class UsualWorkSchoolLocationChoiceModel
                 dataProvider.setValue("soaSampleSize", soaWorkSampleSize);
                 dataProvider.setValue("dmuFactory", dmuFactory);
                 dataProvider.setValue("restartModelString", restartModelString);
+                dataProvider.setValue("locationSegments", ChoiceTallies.UsualLocationSegments.forWork(occupValueIndexMap));
 
                 job.setDataProvider(dataProvider);
 
@@ -297,6 +301,7 @@ public class UsualWorkSchoolLocationChoiceModel
                         String stringResult = (String) task.getResult();
                         logger.info(stringResult);
                         System.out.println(stringResult);
+                        tallies = mergeTaskTallies(tallies, task);
                     } catch (Exception e)
                     {
                         logger.error("", e);
@@ -308,12 +313,16 @@ public class UsualWorkSchoolLocationChoiceModel
             } catch (Exception e)
             {
                 e.printStackTrace();
+                tallies = null;
             }
 
             // sum the chosen destinations by purpose, dest zone and subzone for
             // shadow pricing adjustment
-            int[][] finalModeledDestChoiceLocationsByDestMgra = householdDataManager
-                    .getWorkToursByDestMgra(occupValueIndexMap);
+            int[][] finalModeledDestChoiceLocationsByDestMgra = null;
+            if (tallies != null)
+                finalModeledDestChoiceLocationsByDestMgra = tallies.getCounts(ChoiceTallies.WORK_TOURS_BY_DEST_MGRA);
+            if (finalModeledDestChoiceLocationsByDestMgra == null)
+                finalModeledDestChoiceLocationsByDestMgra = householdDataManager.getWorkToursByDestMgra(occupValueIndexMap);
 
             int[] numChosenDests = new int[workSegmentNameIndexMap.size()];
 
@@ -419,6 +428,9 @@ public class UsualWorkSchoolLocationChoiceModel
         for (int iter = 0; iter < schoolDcSizeObj.getMaxShadowPriceIterations(); iter++)
         {
 
+            // tallies of chosen locations returned by the tasks, null if a task did not return any
+            ChoiceTallies tallies = new ChoiceTallies();
+
             // logger.info( String.format( "Size of Household[] in bytes = %d.",
             // householdDataManager.getBytesUsedByHouseholdArray() ) );
 
@@ -441,6 +453,8 @@ public class UsualWorkSchoolLocationChoiceModel
                 dataProvider.setValue("soaSampleSize", soaSchoolSampleSize);
                 dataProvider.setValue("dmuFactory", dmuFactory);
                 dataProvider.setValue("restartModelString", restartModelString);
+                dataProvider.setValue("locationSegments", ChoiceTallies.UsualLocationSegments.forSchool(schoolSegmentNameIndexMap,
+                        aggAcc.getMgraGsDistrict(), aggAcc.getMgraHsDistrict(), aggAcc.getGsDistrictIndexMap(), aggAcc.getHsDistrictIndexMap()));
 
                 job.setDataProvider(dataProvider);
 
@@ -475,6 +489,7 @@ public class UsualWorkSchoolLocationChoiceModel
                         String stringResult = (String) task.getResult();
                         logger.info(stringResult);
                         System.out.println(stringResult);
+                        tallies = mergeTaskTallies(tallies, task);
                     } catch (Exception e)
                     {
                         logger.error("", e);
@@ -486,11 +501,16 @@ public class UsualWorkSchoolLocationChoiceModel
             } catch (Exception e)
             {
                 e.printStackTrace();
+                tallies = null;
             }
 
             // sum the chosen destinations by purpose, dest zone and subzone for
             // shadow pricing adjustment
-            int[][] finalModeledDestChoiceLocationsByDestMgra = householdDataManager.getSchoolToursByDestMgra();
+            int[][] finalModeledDestChoiceLocationsByDestMgra = null;
+            if (tallies != null)
+                finalModeledDestChoiceLocationsByDestMgra = tallies.getCounts(ChoiceTallies.SCHOOL_TOURS_BY_DEST_MGRA);
+            if (finalModeledDestChoiceLocationsByDestMgra == null)
+                finalModeledDestChoiceLocationsByDestMgra = householdDataManager.getSchoolToursByDestMgra();
 
             int[] numChosenDests = new int[schoolSegmentIndexNameMap.size()];
 
@@ -706,6 +726,29 @@ public class UsualWorkSchoolLocationChoiceModel
 
     }
 
+    /**
+     * Merge the tallies returned by a work or school location choice task.
+     * 
+     * @return the merged tallies, or null if tallies or the task's tallies are null.
+     */
+    private ChoiceTallies mergeTaskTallies(ChoiceTallies tallies, JPPFTask task)
+    {
+        ChoiceTallies taskTallies = null;
+        if (task instanceof WorkLocationChoiceTaskJppf)
+            taskTallies = ((WorkLocationChoiceTaskJppf) task).getChoiceTallies();
+        else if (task instanceof WorkLocationChoiceTaskJppfNew)
+            taskTallies = ((WorkLocationChoiceTaskJppfNew) task).getChoiceTallies();
+        else if (task instanceof SchoolLocationChoiceTaskJppf)
+            taskTallies = ((SchoolLocationChoiceTaskJppf) task).getChoiceTallies();
+        else if (task instanceof SchoolLocationChoiceTaskJppfNew)
+            taskTallies = ((SchoolLocationChoiceTaskJppfNew) task).getChoiceTallies();
+
+        if (tallies == null || taskTallies == null)
+            return null;
+        tallies.merge(taskTallies);
+        return tallies;
+    }
+
     private ArrayList<int[]> getTaskHouseholdRanges(int numberOfHouseholds)
     {
 
@@ -99,4 +99,34 @@ public class Util implements Serializable {
 
     }
 
+    /**
+     * 
+     * @param cumProbabilities cumulative probabilities array
+     * @param numIndices are the number of probability values to consider in the cumulative probabilities array
+     * @param entry target to search for in array
+     * @return the smallest array index i where cumProbabilities[i] > entry.  If entry is not less than
+     *         cumProbabilities[numIndices-1], for example due to rounding, the last index with a non-zero
+     *         probability is returned.
+     */
+    public static int binarySearchUpperBound(double[] cumProbabilities, int numIndices, double entry) {
+
+        int low = 0;
+        int high = numIndices - 1;
+        if ( entry >= cumProbabilities[high] ) {
+            while ( high > 0 && cumProbabilities[high] == cumProbabilities[high-1] )
+                high--;
+            return high;
+        }
+
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( cumProbabilities[mid] > entry )
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+
+    }
+
 }
@@ -66,6 +66,13 @@ public class WorkLocationChoiceModel implements Serializable {
     private int soaSampleSize;
 
     private long soaRunTime;
+
+    // samples of alternatives stored in the first shadow pricing iteration, null if samples are not reused
+    private transient UsualLocationSampleStore   sampleStore;
+    private boolean                              reuseStoredSamples;
+
+    private int[]                                storedSampleMgras;
+    private double[]                             storedSampleCorrectionFactors;
     
     
     
@@ -99,6 +106,10 @@ public class WorkLocationChoiceModel implements Serializable {
 
         workOccupValueSegmentIndexMap = aggAcc.getWorkOccupValueIndexMap();
 
+        sampleStore = UsualLocationSampleStore.getInstance( propertyMap, ModelStructure.WORK_PRIMARY_PURPOSE_NAME );
+        storedSampleMgras = new int[soaSampleSize];
+        storedSampleCorrectionFactors = new double[soaSampleSize];
+
     }
 
     public void setupWorkSegments(int[] myUecSheetIndices, int[] mySoaUecSheetIndices)
@@ -245,7 +256,14 @@ public class WorkLocationChoiceModel implements Serializable {
                 dcTwoStageDmuObject.setDmuIndexValues(hh.getHhId(), homeMgra, origMgra, 0);
 
                 double[] homeMgraSizeArray = dcSizeObj.getDcSizeArray()[occupSegmentIndex];
-                mcModel.getAnmSkimCalculator().getAmPkSkimDistancesFromMgra( homeMgra, mgraDistanceArray );
+
+                // a stored sample includes the distances to the sampled mgras, which are all the choice model uses
+                int numStoredAlts = -1;
+                if ( reuseStoredSamples )
+                    numStoredAlts = sampleStore.get( UsualLocationSampleStore.getPersonKey(hh.getHhId(), p.getPersonNum()), occupSegmentIndex,
+                            storedSampleMgras, storedSampleCorrectionFactors, sampleAlternativeLogsums, sampleAlternativeDistances );
+                if ( numStoredAlts < 0 )
+                    mcModel.getAnmSkimCalculator().getAmPkSkimDistancesFromMgra( homeMgra, mgraDistanceArray );
                 
                 // set size array for the tour segment and distance array from the home mgra to all destinaion mgras.
                 dcTwoStageDmuObject.setMgraSizeArray(homeMgraSizeArray);
@@ -257,7 +275,7 @@ public class WorkLocationChoiceModel implements Serializable {
 
                 // get the work location alternative chosen from the sample
                 results = selectLocationFromSampleOfAlternatives("work", -1, p, occupSegmentName, occupSegmentIndex, tourNum++,
-                        homeMgraSizeArray, mgraDistanceArray );
+                        homeMgraSizeArray, mgraDistanceArray, numStoredAlts );
 
                 soaRunTime += dcTwoStageModelObject.getSoaRunTime();
 
@@ -286,7 +304,7 @@ public class WorkLocationChoiceModel implements Serializable {
      */
     private double[] selectLocationFromSampleOfAlternatives(String segmentType, int segmentTypeIndex,
             Person person, String segmentName, int sizeSegmentIndex, int tourNum,
-            double[] homeMgraSizeArray, double[] homeMgraDistanceArray)
+            double[] homeMgraSizeArray, double[] homeMgraDistanceArray, int numStoredAlts)
     {
 
         // set tour origin taz/subzone and start/end times for calculating mode
@@ -296,12 +314,29 @@ public class WorkLocationChoiceModel implements Serializable {
         Household household = person.getHouseholdObject();
 
 
-        // get sample of locations and correction factors for sample using the alternate method
-        // for work location, the sizeSegmentType INdex and sizeSegmentIndex are the same values.
-        dcTwoStageModelObject.chooseSample( household.getHhTaz(), sizeSegmentIndex, sizeSegmentIndex, soaSampleSize, household.getHhRandom(), household.getDebugChoiceModels() );
-        int[] finalSample = dcTwoStageModelObject.getUniqueSampleMgras();
-        double[] sampleCorrectionFactors = dcTwoStageModelObject.getUniqueSampleMgraCorrectionFactors();
-        int numUniqueAlts = dcTwoStageModelObject.getNumberofUniqueMgrasInSample();
+        int[] finalSample = null;
+        double[] sampleCorrectionFactors = null;
+        int numUniqueAlts = 0;
+        if ( numStoredAlts >= 0 ) {
+            // the sample, logsums and distances stored for the person in the first shadow pricing iteration
+            finalSample = storedSampleMgras;
+            sampleCorrectionFactors = storedSampleCorrectionFactors;
+            numUniqueAlts = numStoredAlts;
+
+            // draw the random numbers chooseSample() would have used, so the choice from the
+            // sample and the models after this one get the same draws as without the store
+            Random hhRandom = household.getHhRandom();
+            for ( int i=0; i < soaSampleSize; i++ )
+                hhRandom.nextDouble();
+        }
+        else {
+            // get sample of locations and correction factors for sample using the alternate method
+            // for work location, the sizeSegmentType INdex and sizeSegmentIndex are the same values.
+            dcTwoStageModelObject.chooseSample( household.getHhTaz(), sizeSegmentIndex, sizeSegmentIndex, soaSampleSize, household.getHhRandom(), household.getDebugChoiceModels() );
+            finalSample = dcTwoStageModelObject.getUniqueSampleMgras();
+            sampleCorrectionFactors = dcTwoStageModelObject.getUniqueSampleMgraCorrectionFactors();
+            numUniqueAlts = dcTwoStageModelObject.getNumberofUniqueMgrasInSample();
+        }
 
 
         Arrays.fill( dcModelAltsAvailable, false );
@@ -323,12 +358,18 @@ public class WorkLocationChoiceModel implements Serializable {
             int destMgra = finalSample[i];
             dcModelSampleValues[i] = finalSample[i];
             
-            // set logsum value in DC dmuObject for the logsum index, sampled zone and subzone.
-            double logsum = getModeChoiceLogsum( household, person, destMgra, segmentTypeIndex );
-            dcTwoStageDmuObject.setMcLogsum(i, logsum);
-            
-            sampleAlternativeLogsums[i] = logsum;
-            sampleAlternativeDistances[i] = homeMgraDistanceArray[finalSample[i]];
+            if ( numStoredAlts >= 0 ) {
+                dcTwoStageDmuObject.setMcLogsum(i, sampleAlternativeLogsums[i]);
+                homeMgraDistanceArray[destMgra] = sampleAlternativeDistances[i];
+            }
+            else {
+                // set logsum value in DC dmuObject for the logsum index, sampled zone and subzone.
+                double logsum = getModeChoiceLogsum( household, person, destMgra, segmentTypeIndex );
+                dcTwoStageDmuObject.setMcLogsum(i, logsum);
+
+                sampleAlternativeLogsums[i] = logsum;
+                sampleAlternativeDistances[i] = homeMgraDistanceArray[finalSample[i]];
+            }
             
             // set availaibility and sample values for the purpose, dcAlt.
             dcModelAltsAvailable[i+1] = true;
@@ -338,6 +379,10 @@ public class WorkLocationChoiceModel implements Serializable {
         
         dcTwoStageDmuObject.setSampleArray( dcModelSampleValues );
 
+        if ( sampleStore != null && numStoredAlts < 0 )
+            sampleStore.put( UsualLocationSampleStore.getPersonKey(household.getHhId(), person.getPersonNum()), sizeSegmentIndex,
+                    numUniqueAlts, finalSample, sampleCorrectionFactors, sampleAlternativeLogsums, sampleAlternativeDistances );
+
 
 
         // log headers to traceLogger if the person making the destination choice is
@@ -645,6 +690,15 @@ public class WorkLocationChoiceModel implements Serializable {
     {
         this.dcSizeObj = dcSizeObj;
     }
+
+    /**
+     * In shadow pricing iterations after the first, choose from the samples of
+     * alternatives stored in the first iteration, if uwsl.ShadowPricing.ReuseSamples is set.
+     */
+    public void setReuseStoredSamples(boolean reuse)
+    {
+        reuseStoredSamples = reuse && sampleStore != null;
+    }
     
     public long getSoaRunTime() {
         return soaRunTime;
@@ -28,12 +28,16 @@ public class WorkLocationChoiceTaskJppfNew
     private transient int                     soaSampleSize;
     private transient CtrampDmuFactoryIf      dmuFactory;
     private transient String                  restartModelString;
+    private transient ChoiceTallies.UsualLocationSegments locationSegments;
 
     private int                     iteration;
     private int                     startIndex;
     private int                     endIndex;
     private int                     taskIndex = -1;
 
+    // chosen locations of the task's households, returned with the task
+    private ChoiceTallies                     tallies;
+
     public WorkLocationChoiceTaskJppfNew(int taskIndex, int startIndex, int endIndex, int iteration)
     {
         this.startIndex = startIndex;
@@ -46,6 +50,7 @@ public class WorkLocationChoiceTaskJppfNew
     {
 
         String start = (new Date()).toString();
+        tallies = new ChoiceTallies();
         long startTime = System.currentTimeMillis();
 
         String threadName = null;
@@ -75,6 +80,7 @@ public class WorkLocationChoiceTaskJppfNew
             this.soaSampleSize = (Integer) dataProvider.getValue("soaSampleSize");
             this.dmuFactory = (CtrampDmuFactoryIf) dataProvider.getValue("dmuFactory");
             this.restartModelString = (String) dataProvider.getValue("restartModelString");
+            this.locationSegments = (ChoiceTallies.UsualLocationSegments) dataProvider.getValue("locationSegments");
 
         } catch (Exception e)
         {
@@ -131,6 +137,10 @@ public class WorkLocationChoiceTaskJppfNew
                 dcModel.applyWorkLocationChoice(householdArray[i]);
             }
 
+            // count the chosen work locations of all the task's households for shadow pricing
+            for (Household household : householdArray)
+                tallies.addWorkLocations(household, locationSegments);
+
             hhDataManager.setHhArray(householdArray, startIndex);
 
         } catch (Exception e)
@@ -173,6 +183,11 @@ public class WorkLocationChoiceTaskJppfNew
         return Integer.toString(taskIndex);
     }
 
+    public ChoiceTallies getChoiceTallies()
+    {
+        return tallies;
+    }
+
     private void clearClassAttributes() {
         propertyMap = null;
         ms = null;
@@ -186,6 +201,7 @@ public class WorkLocationChoiceTaskJppfNew
         soaUecFileName = null;
         dmuFactory = null;
         restartModelString = null;        
+        locationSegments = null;
     }
     
 }
@@ -0,0 +1,269 @@
+package com.pb.mtctm2.abm.ctramp.tests;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.pb.common.model.Alternative;
+import com.pb.common.model.ConcreteAlternative;
+import com.pb.common.model.LogitModel;
+import com.pb.common.model.ModelException;
+import com.pb.mtctm2.abm.ctramp.CdapPatternEvaluator;
+import com.pb.mtctm2.abm.ctramp.Definitions;
+
+/**
+ * Checks that CdapPatternEvaluator names and orders the CDAP alternatives as the
+ * LogitModel objects HouseholdCoordinatedDailyActivityPatternModel used to build for
+ * each household size, and that it chooses the same alternative for the same
+ * utilities and random number as the original loop: utilities aligned with the
+ * alternatives by their names, then computeAvailabilities(), getUtility(),
+ * calculateProbabilities() and chooseElementalAlternative().
+ *
+ * The random utilities include values below -400 and -999, households with nothing
+ * available and households with NaN utilities. Where LogitModel cannot choose an
+ * alternative the evaluator must return -1, so "Could not choose alternative" errors
+ * are logged as the test runs.
+ *
+ * Run with no arguments.
+ */
+public class CdapPatternEvaluatorTest
+{
+
+    private static final String[] ACTIVITY_NAMES  = {Definitions.MANDATORY_PATTERN,
+            Definitions.NONMANDATORY_PATTERN, Definitions.HOME_PATTERN};
+
+    private static final int      MAX_HH_SIZE     = 5;
+    private static final int      TRIALS          = 2000;
+    private static final int      CHOICES         = 5;
+
+    public static void main(String[] args)
+    {
+        Random random = new Random(2468);
+        int unavailable = 0;
+        int invalid = 0;
+        int chosen = 0;
+
+        for (int hhSize = 1; hhSize <= MAX_HH_SIZE; hhSize++)
+        {
+            LogitModel model = createLogitModel(hhSize);
+            CdapPatternEvaluator evaluator = new CdapPatternEvaluator(hhSize, ACTIVITY_NAMES);
+
+            ArrayList<?> alternatives = model.getAlternatives();
+            check(evaluator.getNumberOfAlternatives() == alternatives.size(), hhSize
+                    + " person alternatives");
+            for (int a = 0; a < alternatives.size(); a++)
+                check(evaluator.getAlternativeName(a).equals(((Alternative) alternatives.get(a)).getName()),
+                        hhSize + " person alternative " + a + " name " + evaluator.getAlternativeName(a));
+
+            for (int trial = 0; trial < TRIALS; trial++)
+            {
+                String trialName = hhSize + " person trial " + trial;
+
+                model.clear();
+                for (Object alt : alternatives)
+                    ((Alternative) alt).setUtility(0.0);
+                evaluator.clear();
+
+                // every 101st trial has nothing available and every 211th a NaN utility
+                double[] firstPersonUtilities = randomUtilities(random);
+                if (trial % 101 == 0) firstPersonUtilities = new double[] {-2000, -2000, -2000};
+                if (trial % 211 == 0) firstPersonUtilities[random.nextInt(ACTIVITY_NAMES.length)] = Double.NaN;
+
+                // the segments in the order the model calculates them
+                for (int i = 0; i < hhSize; i++)
+                {
+                    double[] utilities = i == 0 ? firstPersonUtilities : randomUtilities(random);
+                    addUtilities(alternatives, utilities, i);
+                    evaluator.addPersonUtilities(i, utilities);
+
+                    for (int j = i + 1; j < hhSize; j++)
+                    {
+                        utilities = randomUtilities(random);
+                        addUtilities(alternatives, utilities, i, j);
+                        evaluator.addPairUtilities(i, j, utilities);
+
+                        for (int k = j + 1; k < hhSize; k++)
+                        {
+                            utilities = randomUtilities(random);
+                            addUtilities(alternatives, utilities, i, j, k);
+                            evaluator.addTripleUtilities(i, j, k, utilities);
+                        }
+                    }
+                }
+
+                double[] allMemberUtilities = randomUtilities(random);
+                int[] allMembers = new int[hhSize];
+                for (int i = 0; i < hhSize; i++)
+                    allMembers[i] = i;
+                addUtilities(alternatives, allMemberUtilities, allMembers);
+                evaluator.addAllMemberUtilities(allMemberUtilities);
+
+                // the joint tour utility depends on the activities of the pattern
+                double[] jointUtilities = new double[evaluator.getNumberOfPatterns()];
+                for (int p = 0; p < jointUtilities.length; p++)
+                {
+                    jointUtilities[p] = 2 * random.nextGaussian();
+                    if (evaluator.getJointAlternative(p) >= 0)
+                        evaluator.setJointUtility(p, jointUtilities[p]);
+                }
+                for (Object alt : alternatives)
+                {
+                    Alternative tempAlt = (Alternative) alt;
+                    String altName = tempAlt.getName();
+                    if (altName.indexOf("j") > 0)
+                        tempAlt.setUtility(tempAlt.getUtility() + jointUtilities[pattern(altName, hhSize)]);
+                }
+
+                boolean expectedInvalid = false;
+                try
+                {
+                    model.computeAvailabilities();
+                    model.getUtility();
+                    model.calculateProbabilities();
+                } catch (ModelException e)
+                {
+                    expectedInvalid = true;
+                }
+                if (!model.isAvailable()) unavailable++;
+
+                for (int c = 0; c < CHOICES; c++)
+                {
+                    double randomNumber = random.nextDouble();
+
+                    boolean isInvalid = false;
+                    int choice = -1;
+                    try
+                    {
+                        choice = evaluator.choose(randomNumber);
+                    } catch (ModelException e)
+                    {
+                        isInvalid = true;
+                    }
+                    check(isInvalid == expectedInvalid, trialName + " invalid utilities");
+                    if (isInvalid) continue;
+
+                    String expected = null;
+                    try
+                    {
+                        expected = model.chooseElementalAlternative(randomNumber).getName();
+                    } catch (ModelException e)
+                    {
+                        // no alternative available, or the random number is above the
+                        // cumulative probability
+                    }
+                    String choiceName = choice < 0 ? null : evaluator.getAlternativeName(choice);
+                    check(expected == null ? choiceName == null : expected.equals(choiceName), trialName
+                            + " chose " + choiceName + " expected " + expected + " with random number "
+                            + randomNumber);
+                    if (choice >= 0) chosen++;
+                }
+                if (expectedInvalid) invalid++;
+            }
+        }
+
+        check(unavailable > 0 && invalid > 0 && chosen > 0, "trials cover unavailable and invalid households");
+        System.out.println("CdapPatternEvaluatorTest passed: " + unavailable + " households with nothing available, "
+                + invalid + " with invalid utilities, " + chosen + " choices");
+    }
+
+    /**
+     * Builds the alternatives as HouseholdCoordinatedDailyActivityPatternModel did
+     * before CdapPatternEvaluator, with the first person's activity changing fastest.
+     */
+    private static LogitModel createLogitModel(int hhSize)
+    {
+        LogitModel workingLogitModel = new LogitModel(hhSize + " Person HH");
+
+        int numberOfAlternatives = 1;
+        for (int j = 0; j < hhSize; ++j)
+            numberOfAlternatives *= ACTIVITY_NAMES.length;
+
+        int[] counterForEachPerson = new int[hhSize];
+        int totalAltsCounter = 0;
+        for (int n = 0; n < numberOfAlternatives; n++)
+        {
+            String alternativeName = "";
+            int numOutOfHomeActivites = 0;
+            for (int j = 0; j < hhSize; ++j)
+            {
+                alternativeName += ACTIVITY_NAMES[counterForEachPerson[j]];
+                if (!ACTIVITY_NAMES[counterForEachPerson[j]].equalsIgnoreCase(Definitions.HOME_PATTERN))
+                    numOutOfHomeActivites++;
+            }
+
+            workingLogitModel.addAlternative(new ConcreteAlternative(alternativeName + "0", totalAltsCounter++));
+            if (numOutOfHomeActivites >= 2)
+                workingLogitModel.addAlternative(new ConcreteAlternative(alternativeName + "j",
+                        totalAltsCounter++));
+
+            for (int j = 0; j < hhSize; ++j)
+            {
+                counterForEachPerson[j]++;
+                if (counterForEachPerson[j] == ACTIVITY_NAMES.length) counterForEachPerson[j] = 0;
+                else break;
+            }
+        }
+
+        return workingLogitModel;
+    }
+
+    /**
+     * Adds the utility of each activity to the alternatives in which all the persons
+     * have that activity, found from the alternative names as the original loop did.
+     */
+    private static void addUtilities(ArrayList<?> alternatives, double[] utilities, int... persons)
+    {
+        for (Object alt : alternatives)
+        {
+            Alternative tempAlt = (Alternative) alt;
+            String altName = tempAlt.getName();
+            for (int l = 0; l < ACTIVITY_NAMES.length; ++l)
+            {
+                boolean samePattern = true;
+                for (int person : persons)
+                {
+                    if (!altName.substring(person, person + 1).equalsIgnoreCase(ACTIVITY_NAMES[l]))
+                    {
+                        samePattern = false;
+                        break;
+                    }
+                }
+                if (samePattern) tempAlt.setUtility(tempAlt.getUtility() + utilities[l]);
+            }
+        }
+    }
+
+    // the evaluator's pattern code of an alternative name, the first person's activity
+    // as the least significant digit
+    private static int pattern(String altName, int hhSize)
+    {
+        int code = 0;
+        for (int i = hhSize - 1; i >= 0; i--)
+        {
+            int activity = 0;
+            while (!ACTIVITY_NAMES[activity].equals(altName.substring(i, i + 1)))
+                activity++;
+            code = code * ACTIVITY_NAMES.length + activity;
+        }
+        return code;
+    }
+
+    // mostly ordinary utilities, and some below -400 and -999
+    private static double[] randomUtilities(Random random)
+    {
+        double[] utilities = new double[ACTIVITY_NAMES.length];
+        for (int a = 0; a < utilities.length; a++)
+        {
+            double u = random.nextDouble();
+            if (u < 0.03) utilities[a] = -400 - 100 * random.nextDouble();
+            else if (u < 0.05) utilities[a] = -999 - random.nextDouble();
+            else utilities[a] = 2 * random.nextGaussian();
+        }
+        return utilities;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition) throw new RuntimeException("CdapPatternEvaluatorTest failed: " + message);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.pb.mtctm2.abm.ctramp.tests;
+
+import java.util.Random;
+
+import com.pb.common.newmodel.Alternative;
+import com.pb.common.newmodel.ConcreteAlternative;
+import com.pb.common.newmodel.LogitModel;
+import com.pb.mtctm2.abm.ctramp.NestedLogitEvaluator;
+
+/**
+ * Checks that NestedLogitEvaluator gives the same logsums, availabilities,
+ * exponentiated utilities, probabilities and chosen alternatives as the LogitModel
+ * tree it is compiled from, evaluated as ChoiceModelApplication did with
+ * setAvailability(), getUtility(), calculateProbabilities() and chooseAlternative().
+ *
+ * The tree has two levels of nests, alternatives numbered out of tree order, and the
+ * random utilities include unavailable alternatives, utilities below -400 and -500,
+ * and choice sets with nothing available. Where LogitModel cannot choose an
+ * alternative the evaluator must fail too, so "Could not choose alternative" errors
+ * are logged as the test runs.
+ *
+ * Run with no arguments.
+ */
+public class NestedLogitEvaluatorTest
+{
+
+    private static final int NUM_ALTERNATIVES = 9;
+    private static final int TRIALS           = 20000;
+
+    public static void main(String[] args)
+    {
+        ConcreteAlternative[] alts = new ConcreteAlternative[NUM_ALTERNATIVES];
+        for (int a = 0; a < NUM_ALTERNATIVES; a++)
+            alts[a] = new ConcreteAlternative("alt" + (a + 1), a + 1);
+
+        // the tree is evaluated by LogitModel, the evaluator is compiled from it
+        LogitModel root = buildTree(alts);
+        NestedLogitEvaluator evaluator = new NestedLogitEvaluator(root, NUM_ALTERNATIVES);
+        check(evaluator.getNumberOfAlternatives() == NUM_ALTERNATIVES, "number of alternatives");
+
+        Random random = new Random(4321);
+        int rootUnavailable = 0;
+        int chosen = 0;
+        for (int trial = 0; trial < TRIALS; trial++)
+        {
+            // every 97th trial has nothing available, as the UEC leaves it, and every
+            // 89th has no alternative available but utilities above -500
+            for (int a = 0; a < NUM_ALTERNATIVES; a++)
+            {
+                double utility = trial % 97 == 0 ? -999 : randomUtility(random);
+                boolean available = trial % 97 != 0 && trial % 89 != 0 && random.nextDouble() > 0.2;
+                alts[a].setAvailability(available);
+                alts[a].setUtility(utility);
+                evaluator.setAlternative(a, utility, available);
+            }
+
+            root.setAvailability();
+            double expectedLogsum = root.getUtility();
+            root.calculateProbabilities();
+
+            double logsum = evaluator.evaluate();
+
+            String trialName = "trial " + trial;
+            check(Double.compare(expectedLogsum, logsum) == 0, trialName + " logsum " + logsum + " expected " + expectedLogsum);
+            check(root.isAvailable() == evaluator.isRootAvailable(), trialName + " root availability");
+            if (!root.isAvailable())
+            {
+                rootUnavailable++;
+                continue;
+            }
+
+            for (int a = 0; a < NUM_ALTERNATIVES; a++)
+            {
+                check(Double.compare(alts[a].getExpUtility(), evaluator.getExpUtility(a)) == 0,
+                        trialName + " exp utility of alternative " + (a + 1));
+                check(Double.compare(alts[a].getProbability(), evaluator.getProbability(a)) == 0,
+                        trialName + " probability of alternative " + (a + 1));
+            }
+
+            for (int i = 0; i < 5; i++)
+            {
+                double randomNumber = random.nextDouble();
+                Alternative expected = root.chooseAlternative(randomNumber);
+                int choice;
+                try
+                {
+                    choice = evaluator.choose(randomNumber);
+                } catch (RuntimeException e)
+                {
+                    choice = -1;
+                }
+                int expectedChoice = expected == null ? -1 : ((ConcreteAlternative) expected).getNumber();
+                check(choice == expectedChoice, trialName + " chose " + choice + " expected " + expectedChoice
+                        + " with random number " + randomNumber);
+                if (choice > 0) chosen++;
+            }
+        }
+
+        check(rootUnavailable > 0 && chosen > 0, "trials cover unavailable roots and choices");
+        System.out.println("NestedLogitEvaluatorTest passed: " + TRIALS + " trials, " + rootUnavailable
+                + " with no alternative available, " + chosen + " choices");
+    }
+
+    /**
+     * root: nest "auto" (3, 1, 2), alternative 4, nest "transit" (nest "walk" (6, 5), 7, nest "drive" (9, 8))
+     */
+    private static LogitModel buildTree(ConcreteAlternative[] alts)
+    {
+        LogitModel root = new LogitModel("root", 0, 3);
+
+        LogitModel auto = nest("auto", 1 / 0.6, alts, 3, 1, 2);
+
+        LogitModel transit = new LogitModel("transit", 0, 3);
+        double transitDispersion = 1 / 0.7;
+        transit.setDispersionParameter(transitDispersion);
+        transit.addAlternative(nest("walk", transitDispersion / 0.5, alts, 6, 5));
+        transit.addAlternative(alts[6]);
+        transit.addAlternative(nest("drive", transitDispersion / 0.8, alts, 9, 8));
+
+        root.addAlternative(auto);
+        root.addAlternative(alts[3]);
+        root.addAlternative(transit);
+        return root;
+    }
+
+    private static LogitModel nest(String name, double dispersion, ConcreteAlternative[] alts, int... numbers)
+    {
+        LogitModel nest = new LogitModel(name, 0, numbers.length);
+        nest.setDispersionParameter(dispersion);
+        for (int number : numbers)
+            nest.addAlternative(alts[number - 1]);
+        return nest;
+    }
+
+    // mostly ordinary utilities, and some below -400, below -500 and near -999
+    private static double randomUtility(Random random)
+    {
+        double u = random.nextDouble();
+        if (u < 0.08) return -400 - 100 * random.nextDouble();
+        if (u < 0.14) return -500 - 400 * random.nextDouble();
+        if (u < 0.16) return -999;
+        return 6 * random.nextGaussian();
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition) throw new RuntimeException("NestedLogitEvaluatorTest failed: " + message);
+    }
+
+}
@@ -3,6 +3,7 @@ package com.pb.mtctm2.abm.reports;
 import com.pb.common.calculator.DataEntry;
 import com.pb.common.calculator.MatrixDataServerIf;
 import com.pb.common.datafile.CSVFileReader;
+import com.pb.common.datafile.ColumnarFileWriter;
 import com.pb.common.datafile.TableDataSet;
 import com.pb.common.matrix.Matrix;
 import com.pb.common.util.ResourceUtil;
@@ -33,6 +34,10 @@ public class DataExporter {
     private static final String STRING_FORMAT_NAME = "STRING";
     public static final String PROJECT_PATH_PROPERTY_TOKEN = "%project.folder%"; 
     private static final String TOD_TOKEN = "%TOD%";
+    //csv (the default) or columnar, the format of the skim tables
+    private static final String SKIM_TABLE_FORMAT_PROPERTY = "DataExporter.SkimTableFormat";
+    //the number of threads formatting skim table rows, all available processors if not set
+    private static final String SKIM_TABLE_WRITE_THREADS_PROPERTY = "DataExporter.SkimTableWriteThreads";
 
     private final Properties properties;
 //    private final String projectPath;
@@ -444,55 +449,50 @@ public class DataExporter {
         //id triptype recid partysize orig_mgra dest_mgra trip_board_tap trip_alight_tap trip_depart_time trip_time trip_distance trip_cost trip_purpose_name trip_mode_name
         int rowCount = table.getRowCount();
         //columns to add: trip_time, trip_distance, trip_cost, trip_purpose_name, trip_mode_name, recid
-        float[] tripTime = new float[rowCount];
-        float[] tripDistance = new float[rowCount];
-        float[] tripCost = new float[rowCount];
         String[] tripPurpose = new String[rowCount];
         String[] tripMode = new String[rowCount];
         int[] tripId = new int[rowCount];
-        int[] tripDepartTime = new int[rowCount];
-        int[] tripBoardTaz = new int[rowCount];
-        int[] tripAlightTaz = new int[rowCount];
-        int[] originTaz = new int[rowCount];
-        int[] destinationTaz = new int[rowCount];
+
+        boolean[] inbound = new boolean[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            int row = i+1;
+            inbound[i] = tripStructureDefinition.booleanIndicatorVariables ? table.getBooleanValueAt(row,tripStructureDefinition.inboundColumn) :
+                                table.getValueAt(row,tripStructureDefinition.inboundColumn) == 1.0;
+        }
 
         SkimBuilder skimBuilder = new SkimBuilder(properties);
+        SkimBuilder.TripAttributeColumns attributes = skimBuilder.getTripAttributes(
+                table.getColumnAsInt(tripStructureDefinition.originMgraColumn),
+                table.getColumnAsInt(tripStructureDefinition.destMgraColumn),
+                table.getColumnAsInt(tripStructureDefinition.modeColumn),
+                table.getColumnAsInt(tripStructureDefinition.boardTapColumn),
+                table.getColumnAsInt(tripStructureDefinition.alightTapColumn),
+                table.getColumnAsInt(tripStructureDefinition.todColumn),
+                inbound,
+                table.getColumnAsInt(tripStructureDefinition.setColumn),
+                Runtime.getRuntime().availableProcessors());
+        float[] tripTime = attributes.getTripTime();
+        float[] tripDistance = attributes.getTripDistance();
+        float[] tripCost = attributes.getTripCost();
+        int[] tripDepartTime = attributes.getTripStartTime();
+        int[] tripBoardTaz = attributes.getTripBoardTaz();
+        int[] tripAlightTaz = attributes.getTripAlightTaz();
+        int[] originTaz = attributes.getTripOriginTaz();
+        int[] destinationTaz = attributes.getTripDestinationTaz();
+
         boolean hasPurposeColumn = tripStructureDefinition.originPurposeColumn > -1;
         for (int i = 0; i < rowCount; i++) {
             int row = i+1;
-
-            boolean inbound = tripStructureDefinition.booleanIndicatorVariables ? table.getBooleanValueAt(row,tripStructureDefinition.inboundColumn) :
-                                table.getValueAt(row,tripStructureDefinition.inboundColumn) == 1.0;
-         
-
-
-            SkimBuilder.TripAttributes attributes = skimBuilder.getTripAttributes(
-                    (int) table.getValueAt(row,tripStructureDefinition.originMgraColumn),
-                    (int) table.getValueAt(row,tripStructureDefinition.destMgraColumn),
-                    (int) table.getValueAt(row,tripStructureDefinition.modeColumn),
-                    (int) table.getValueAt(row,tripStructureDefinition.boardTapColumn),
-                    (int) table.getValueAt(row,tripStructureDefinition.alightTapColumn),
-                    (int) table.getValueAt(row,tripStructureDefinition.todColumn),
-                    inbound,
-                    (int) table.getValueAt(row,tripStructureDefinition.setColumn));
-            tripTime[i] = attributes.getTripTime();
-            tripDistance[i] = attributes.getTripDistance();
-            tripCost[i] = attributes.getTripCost();
             if (hasPurposeColumn) {
                 tripPurpose[i] = table.getStringValueAt(row,tripStructureDefinition.destinationPurposeColumn);
             } else {
-                if (!inbound) //going out
+                if (!inbound[i]) //going out
                     tripPurpose[i] = tripStructureDefinition.destinationName;
                 else
                     tripPurpose[i] = tripStructureDefinition.homeName;
             }
             tripMode[i] = "";
             tripId[i] = i;
-            tripDepartTime[i] = attributes.getTripStartTime();
-            tripBoardTaz[i] = attributes.getTripBoardTaz();
-            tripAlightTaz[i] = attributes.getTripAlightTaz();
-            originTaz[i] = attributes.getTripOriginTaz();
-            destinationTaz[i] = attributes.getTripDestinationTaz();
         }
         table.appendColumn(tripTime,"TRIP_TIME");
         table.appendColumn(tripDistance,"TRIP_DISTANCE");
@@ -1223,21 +1223,17 @@ public class DataExporter {
     private void exportAutoSkims(String outputFileBase) {
         addTable(outputFileBase);
         String[] includedTimePeriods = getTimePeriodsForSkims(); //can't include them all
-        Set<Integer> internalZones = new LinkedHashSet<Integer>();
+        int[] internalZones = null;
 
 
-        PrintWriter writer = null;
+        SkimTableWriter skimWriter = null;
         List<String> costColumns = new LinkedList<String>();
         try {
-            writer = new PrintWriter(getOutputPath(outputFileBase + ".csv"));
-
-
             Map<String,String> vehicleSkimFiles = getVehicleSkimFileNameMapping();
             Map<String,String[]> vehicleSkimCores = getVehicleSkimFileCoreNameMapping();
             Set<String> modeNames = new LinkedHashSet<String>();
             for (String n : vehicleSkimFiles.keySet())
                 modeNames.add(vehicleSkimFiles.get(n));
-            boolean first = true;
             for (String period : includedTimePeriods) {
                 clearMatrixServer();
                 Map<String,Matrix> lengthMatrix = new LinkedHashMap<String,Matrix>();
@@ -1252,20 +1248,12 @@ public class DataExporter {
                     timeMatrix.put(name,getMatrixFromFile(file,cores[1].replace(TOD_TOKEN,period)));
                     if (cores.length > 2)
                         fareMatrix.put(name,getMatrixFromFile(file,cores[2].replace(TOD_TOKEN,period)));
-                    if (internalZones.size() == 0) {
-                        boolean f = true;
-                        for (int zone : lengthMatrix.get(name).getExternalColumnNumbers()) {
-                            if (f) {
-                                f = false;
-                                continue;
-                            }
-                            internalZones.add(zone);
-                        }
-                    }
+                    if (internalZones == null)
+                        internalZones = getSkimZones(lengthMatrix.get(name));
                 }
 
                 //put data into arrays for faster access
-                Matrix[] orderedData = new Matrix[lengthMatrix.size()+timeMatrix.size()+fareMatrix.size()];
+                final Matrix[] orderedData = new Matrix[lengthMatrix.size()+timeMatrix.size()+fareMatrix.size()];
                 int counter = 0;
                 for (String mode : modeNames) {
                     orderedData[counter++] = lengthMatrix.get(mode);
@@ -1274,42 +1262,37 @@ public class DataExporter {
                         orderedData[counter++] = fareMatrix.get(mode);
                 }
 
-                StringBuilder sb = new StringBuilder();
-                if (first) {
-                    sb.append("ORIG_TAZ,DEST_TAZ,TOD");
+                if (skimWriter == null) {
                     for (String modeName : modeNames) {
-                        sb.append(",DIST_").append(modeName);
-                        sb.append(",TIME_").append(modeName);
                         costColumns.add("DIST_" + modeName);
                         costColumns.add("TIME_" + modeName);
-                        if (fareMatrix.containsKey(modeName)) {
-                            sb.append(",COST_").append(modeName);
+                        if (fareMatrix.containsKey(modeName))
                             costColumns.add("COST_" + modeName);
-                        }
                     }
-                    writer.println(sb.toString());
-                    first = false;
+                    skimWriter = getSkimTableWriter(outputFileBase,new String[] {"ORIG_TAZ","DEST_TAZ","TOD"},costColumns);
                 }
 
-                for (int i : internalZones) {
-                    for (int j : internalZones) {
-                        sb = new StringBuilder();
-                        sb.append(i).append(",").append(j).append(",").append(period);
-                        for (Matrix matrix : orderedData)
-                            sb.append(",").append(matrix.getValueAt(i,j));
-                        writer.println(sb.toString());
+                skimWriter.writePeriod(internalZones,period,new SkimTableWriter.SkimRowSource() {
+                    public boolean getRow(int origin, int destination, float[] values) {
+                        for (int m = 0; m < orderedData.length; m++)
+                            values[m] = orderedData[m].getValueAt(origin,destination);
+                        return true;
                     }
-                }
+                });
             }
 
+            if (skimWriter != null) {
+                SkimTableWriter finished = skimWriter;
+                skimWriter = null;
+                finished.close();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
-            if (writer != null)
-                writer.close();
+            closeSkimTableWriterAfterFailure(skimWriter);
         }
 
-        writer = null;
+        PrintWriter writer = null;
         try {
             writer = new PrintWriter(getOutputPath(outputFileBase + ".sql"));
             String tableName = outputFileBase.toUpperCase();
@@ -1355,100 +1338,142 @@ public class DataExporter {
         return new String[] {"AM","MD","PM"};
     }
 
+    /**
+     * @return the zones of a skim matrix to export, its external column numbers without the first.
+     */
+    private int[] getSkimZones(Matrix matrix) {
+        int[] externalNumbers = matrix.getExternalColumnNumbers();
+        return Arrays.copyOfRange(externalNumbers,1,externalNumbers.length);
+    }
+
+    /**
+     * @return a matrix of the sum of sum and core, or of 0.0 and core if sum is null. The
+     *         values are added in the order the cores are read, so the sums are the same
+     *         as adding the cores' values for each zone pair.
+     */
+    private Matrix addSkimCore(Matrix sum, Matrix core) {
+        if (sum == null) {
+            sum = new Matrix(core.getRowCount(),core.getColumnCount());
+            sum.setExternalNumbers(core.getExternalRowNumbers(),core.getExternalColumnNumbers());
+        }
+        float[][] sumValues = sum.getValues();
+        float[][] coreValues = core.getValues();
+        for (int r = 0; r < sumValues.length; r++)
+            for (int c = 0; c < sumValues[r].length; c++)
+                sumValues[r][c] += coreValues[r][c];
+        return sum;
+    }
+
+    /**
+     * @return a writer for a skim table, to a csv file or, if DataExporter.SkimTableFormat is
+     *         columnar, to a columnar file which can be converted to the csv file with
+     *         com.pb.common.datafile.ColumnarFileReader.
+     */
+    private SkimTableWriter getSkimTableWriter(String outputFileBase, String[] keyColumns, List<String> valueColumns) throws IOException {
+        boolean columnar = properties.containsKey(SKIM_TABLE_FORMAT_PROPERTY) &&
+                properties.getProperty(SKIM_TABLE_FORMAT_PROPERTY).trim().equalsIgnoreCase("columnar");
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (properties.containsKey(SKIM_TABLE_WRITE_THREADS_PROPERTY))
+            numThreads = Integer.parseInt(properties.getProperty(SKIM_TABLE_WRITE_THREADS_PROPERTY).trim());
+
+        List<String> columns = new LinkedList<String>(Arrays.asList(keyColumns));
+        columns.addAll(valueColumns);
+        File file = new File(getOutputPath(outputFileBase + (columnar ? ColumnarFileWriter.FILE_EXTENSION : ".csv")));
+        return new SkimTableWriter(file,columns.toArray(new String[columns.size()]),columnar,numThreads);
+    }
+
+    /**
+     * Close a skim table writer left open by an export that failed. A failure to close
+     * is only logged, so it does not hide the exception that stopped the export.
+     */
+    private void closeSkimTableWriterAfterFailure(SkimTableWriter skimWriter) {
+        if (skimWriter == null)
+            return;
+        try {
+            skimWriter.close();
+        } catch (IOException e) {
+            logger.warn("could not close skim table " + skimWriter.getFile() + " after a failed export",e);
+        }
+    }
+
     private void exportTransitSkims(String outputFileBase) {
         addTable(outputFileBase);
         String[] includedTimePeriods = getTimePeriodsForSkims(); //can't include them all
-        Set<Integer> internalZones = new LinkedHashSet<Integer>();
+        int[] internalZones = null;
 
 
-        PrintWriter writer = null;
+        SkimTableWriter skimWriter = null;
         List<String> costColumns = new LinkedList<String>();
         try {
-            writer = new PrintWriter(getOutputPath(outputFileBase + ".csv"));
-
-
             Map<String,String> transitSkimFiles = getTransitSkimFileNameMapping();
             Map<String,String[]> transitSkimTimeCores = getTransitSkimFileTimeCoreNameMapping();
             String fareCore = getTransitSkimFileFareCoreName();
             Set<String> modeNames = new LinkedHashSet<String>();
             for (String n : transitSkimFiles.keySet())
                 modeNames.add(transitSkimFiles.get(n));
-            boolean first = true;
             for (String period : includedTimePeriods) {
                 clearMatrixServer();
-                Map<String,Matrix[]> timeMatrix = new LinkedHashMap<String,Matrix[]>();
+                Map<String,Matrix> timeMatrix = new LinkedHashMap<String,Matrix>();
                 Map<String,Matrix> fareMatrix = new LinkedHashMap<String,Matrix>();
 
                 for (String key : transitSkimFiles.keySet()) {
                     String name = transitSkimFiles.get(key);
                     String[] timeCores = transitSkimTimeCores.get(key);
                     String file = "output/" + key.replace(TOD_TOKEN,period);
-                    Matrix[] timeMatrices = new Matrix[timeCores.length];
-                    for (int i = 0; i < timeCores.length; i++)
-                        timeMatrices[i] = getMatrixFromFile(file,timeCores[i].replace(TOD_TOKEN,period));
-                    timeMatrix.put(name,timeMatrices);
+                    //sum the time cores as they are read, so only the sum is held
+                    Matrix time = null;
+                    for (String timeCore : timeCores)
+                        time = addSkimCore(time,getMatrixFromFile(file,timeCore.replace(TOD_TOKEN,period)));
+                    timeMatrix.put(name,time);
                     fareMatrix.put(name,getMatrixFromFile(file,fareCore.replace(TOD_TOKEN,period)));
-                    if (internalZones.size() == 0) {
-                        boolean f = true;
-                        for (int zone : fareMatrix.get(name).getExternalColumnNumbers()) {
-                            if (f) {
-                                f = false;
-                                continue;
-                            }
-                            internalZones.add(zone);
-                        }
-                    }
+                    if (internalZones == null)
+                        internalZones = getSkimZones(fareMatrix.get(name));
                 }
 
                 //put data into arrays for faster access
-                Matrix[][] orderedTimeData = new Matrix[timeMatrix.size()][];
-                Matrix[] fareData = new Matrix[orderedTimeData.length];
+                final Matrix[] timeData = new Matrix[timeMatrix.size()];
+                final Matrix[] fareData = new Matrix[timeData.length];
                 int counter = 0;
                 for (String mode : modeNames) {
-                    orderedTimeData[counter] = timeMatrix.get(mode);
+                    timeData[counter] = timeMatrix.get(mode);
                     fareData[counter++] = fareMatrix.get(mode);
                 }
 
-                StringBuilder sb = new StringBuilder();
-                if (first) {
-                    sb.append("ORIG_TAP,DEST_TAP,TOD");
+                if (skimWriter == null) {
                     for (String modeName : modeNames) {
-                        sb.append(",TIME_").append(modeName);
                         costColumns.add("TIME_" + modeName);
-                        sb.append(",FARE_").append(modeName);
                         costColumns.add("FARE_" + modeName);
                     }
-                    writer.println(sb.toString());
-                    first = false;
+                    skimWriter = getSkimTableWriter(outputFileBase,new String[] {"ORIG_TAP","DEST_TAP","TOD"},costColumns);
                 }
 
-                for (int i : internalZones) {
-                    for (int j : internalZones) {
-                        sb = new StringBuilder();
-                        sb.append(i).append(",").append(j).append(",").append(period);
+                skimWriter.writePeriod(internalZones,period,new SkimTableWriter.SkimRowSource() {
+                    public boolean getRow(int origin, int destination, float[] values) {
                         float runningTotal = 0.0f;
-                        for (int m = 0; m < orderedTimeData.length; m++) {
-                            float time = 0.0f;
-                            for (Matrix tm : orderedTimeData[m])
-                                time += tm.getValueAt(i,j);
-                            float fare = fareData[m].getValueAt(i,j);
+                        for (int m = 0; m < timeData.length; m++) {
+                            float time = timeData[m].getValueAt(origin,destination);
+                            float fare = fareData[m].getValueAt(origin,destination);
                             runningTotal += fare + time;
-                            sb.append(",").append(time).append(",").append(fare);
+                            values[2*m] = time;
+                            values[2*m+1] = fare;
                         }
-                        if (runningTotal > 0.0f)
-                            writer.println(sb.toString());
+                        return runningTotal > 0.0f;
                     }
-                }
+                });
             }
 
+            if (skimWriter != null) {
+                SkimTableWriter finished = skimWriter;
+                skimWriter = null;
+                finished.close();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
-            if (writer != null)
-                writer.close();
+            closeSkimTableWriterAfterFailure(skimWriter);
         }
 
-        writer = null;
+        PrintWriter writer = null;
         try {
             writer = new PrintWriter(getOutputPath(outputFileBase + ".sql"));
             String tableName = outputFileBase.toUpperCase();
@@ -18,6 +18,8 @@ import com.pb.mtctm2.abm.ctramp.Util;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The {@code SkimBuilder} ...
@@ -110,6 +112,25 @@ public class SkimBuilder {
     private static final int TRANSIT_SET_MAIN_MODE_INDEX = 12;
     private static final int TRANSIT_SET_XFERS_INDEX = 13;
 
+    // the auto skims used by trip modes, as time, distance and cost indices, cost -1 if there is none
+    private static final int[][] AUTO_SKIM_GROUPS = {
+            {DA_TIME_INDEX, DA_DIST_INDEX, -1},
+            {DA_TOLL_TIME_INDEX, DA_TOLL_DIST_INDEX, DA_TOLL_COST_INDEX},
+            {HOV_TIME_INDEX, HOV_DIST_INDEX, -1},
+            {HOV_TOLL_TIME_INDEX, HOV_TOLL_DIST_INDEX, HOV_TOLL_COST_INDEX},
+            {HOV3_TIME_INDEX, HOV3_DIST_INDEX, -1},
+            {HOV3_TOLL_TIME_INDEX, HOV3_TOLL_DIST_INDEX, HOV3_TOLL_COST_INDEX}};
+    private static final int DA_GROUP = 0;
+    private static final int DA_TOLL_GROUP = 1;
+    private static final int HOV_GROUP = 2;
+    private static final int HOV_TOLL_GROUP = 3;
+    private static final int HOV3_GROUP = 4;
+    private static final int HOV3_TOLL_GROUP = 5;
+
+    private static final int TRIPS_PER_TASK = 20000;
+    private static final int KEYS_PER_TASK = 500;
+
+    private final HashMap<String,String> rbMap;
     private final TapDataManager tapManager;
     private final TazDataManager tazManager;
     private final MgraDataManager mgraManager;
@@ -124,7 +145,7 @@ public class SkimBuilder {
 
     public SkimBuilder(Properties properties) {
 
-        HashMap<String,String> rbMap = new HashMap<String,String>((Map<String,String>) (Map) properties);
+        rbMap = new HashMap<String,String>((Map<String,String>) (Map) properties);
         startMatrixServer(properties);
 
         tapManager = TapDataManager.getInstance(rbMap);
@@ -209,6 +230,322 @@ public class SkimBuilder {
         return attributes;
     }
 
+    /**
+     * Get the attributes of a batch of trips, the same as calling getTripAttributes()
+     * for each trip. The auto skims are solved once for each unique combination of
+     * origin TAZ, destination TAZ, skim period and the auto skims used by the trip
+     * mode, on numThreads threads, and then the attributes of the trips are filled
+     * in from them on numThreads threads. Transit trips need transit skims for their
+     * taps and are done one at a time, with their distances from the auto skims.
+     *
+     * @return the attributes, indexed as the trip arrays.
+     */
+    public TripAttributeColumns getTripAttributes(int[] origin, int[] destination, int[] tripModeIndex, int[] boardTap, int[] alightTap,
+            int[] tripTimePeriod, boolean[] inbound, int[] set, int numThreads) {
+
+        long startTime = System.currentTimeMillis();
+        final TripBatch batch = new TripBatch(origin,destination,tripModeIndex,boardTap,alightTap,tripTimePeriod,inbound,set);
+        int numTrips = origin.length;
+
+        // the unique auto skim keys, and the trips that are done one at a time
+        final SkimKeyIndex keyIndex = new SkimKeyIndex();
+        int numSequential = 0;
+        for (int i = 0; i < numTrips; i++) {
+            long key = batch.getSkimKey(i);
+            if (key < 0) {
+                numSequential++;
+                if (batch.isTransitTrip(i))
+                    key = batch.getSkimKey(DA_GROUP,i);
+            }
+            if (key > 0)
+                keyIndex.add(key,i);
+        }
+        batch.keys = keyIndex.getKeys();
+        batch.keyTrips = keyIndex.getTrips();
+        batch.values = new double[batch.keys.length*3];
+        logger.info(String.format("getting attributes of %d trips from %d unique auto skim keys with %d threads",
+                numTrips,batch.keys.length,numThreads));
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1,numThreads));
+        try {
+            pool.invoke(new RangeTask(0,batch.keys.length,KEYS_PER_TASK) {
+                protected void compute(int first, int last) {
+                    batch.solveSkims(first,last);
+                }
+            });
+            pool.invoke(new RangeTask(0,numTrips,TRIPS_PER_TASK) {
+                protected void compute(int first, int last) {
+                    batch.fill(first,last,keyIndex);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        // transit trips, and trips without valid MGRAs which are left to getTripAttributes()
+        if (numSequential > 0) {
+            for (int i = 0; i < numTrips; i++) {
+                if (batch.getSkimKey(i) >= 0)
+                    continue;
+                TripAttributes attributes;
+                TripModeChoice tripMode = batch.getTripMode(i);
+                if (batch.isTransitTrip(i)) {
+                    double dist = batch.values[keyIndex.get(batch.getSkimKey(DA_GROUP,i))*3 + 1];
+                    attributes = getTransitTripAttributes(tripMode,origin[i],destination[i],boardTap[i],alightTap[i],
+                            getTod(tripTimePeriod[i]),inbound[i],set[i],dist);
+                    attributes.setTripStartTime(getStartTime(tripTimePeriod[i]));
+                    attributes.setOriginTAZ(mgraManager.getTaz(origin[i]));
+                    attributes.setDestinationTAZ(mgraManager.getTaz(destination[i]));
+                } else {
+                    attributes = getTripAttributes(origin[i],destination[i],tripModeIndex[i],boardTap[i],alightTap[i],
+                            tripTimePeriod[i],inbound[i],set[i]);
+                }
+                batch.columns.set(i,attributes);
+            }
+        }
+
+        logger.info(String.format("trip attributes done in %.1f seconds", (System.currentTimeMillis() - startTime) / 1000.0));
+        return batch.columns;
+    }
+
+    /**
+     * The trips of a call to getTripAttributes() for a batch of trips, and the auto
+     * skims solved for them.
+     */
+    private class TripBatch {
+        private final int[] origin;
+        private final int[] destination;
+        private final int[] tripModeIndex;
+        private final int[] tripTimePeriod;
+        private final TripAttributeColumns columns;
+
+        // the unique auto skim keys, the first trip with each key, and time, distance and cost for each
+        private long[] keys;
+        private int[] keyTrips;
+        private double[] values;
+
+        // an auto skims calculator for each thread, as a calculator's UECs can be used by one thread only
+        private final ThreadLocal<AutoAndNonMotorizedSkimsCalculator> calculator = new ThreadLocal<AutoAndNonMotorizedSkimsCalculator>() {
+            protected AutoAndNonMotorizedSkimsCalculator initialValue() {
+                return new AutoAndNonMotorizedSkimsCalculator(rbMap);
+            }
+        };
+
+        TripBatch(int[] origin, int[] destination, int[] tripModeIndex, int[] boardTap, int[] alightTap,
+                int[] tripTimePeriod, boolean[] inbound, int[] set) {
+            int numTrips = origin.length;
+            if (destination.length != numTrips || tripModeIndex.length != numTrips || boardTap.length != numTrips || alightTap.length != numTrips
+                    || tripTimePeriod.length != numTrips || inbound.length != numTrips || set.length != numTrips)
+                throw new IllegalArgumentException("trip attribute arrays have different lengths");
+            this.origin = origin;
+            this.destination = destination;
+            this.tripModeIndex = tripModeIndex;
+            this.tripTimePeriod = tripTimePeriod;
+            columns = new TripAttributeColumns(numTrips);
+        }
+
+        TripModeChoice getTripMode(int i) {
+            return modeChoiceLookup[tripModeIndex[i] < 0 ? 0 : tripModeIndex[i]];
+        }
+
+        /**
+         * @return the auto skim key of trip i, 0 if it does not need auto skims, or -1
+         *         if it is done one at a time.
+         */
+        long getSkimKey(int i) {
+            TripModeChoice tripMode = getTripMode(i);
+            if (tripMode == TripModeChoice.UNKNOWN)
+                return 0;
+            if (origin[i] <= 0 || destination[i] <= 0)
+                return -1;
+            switch (tripMode) {
+                case DRIVE_ALONE_NO_TOLL :
+                case S2_GP :
+                case S3_GP : return getSkimKey(DA_GROUP,i);
+                case DRIVE_ALONE_TOLL : return getSkimKey(DA_TOLL_GROUP,i);
+                case S2_NO_TOLL :
+                case SCHOOLBUS : return getSkimKey(HOV_GROUP,i);
+                case S2_TOLL : return getSkimKey(HOV_TOLL_GROUP,i);
+                case S3_NO_TOLL : return getSkimKey(HOV3_GROUP,i);
+                case S3_TOLL : return getSkimKey(HOV3_TOLL_GROUP,i);
+                case WALK :
+                case BIKE : return mgraManager.getMgrasAreWithinWalkDistance(origin[i],destination[i]) ? 0 : getSkimKey(DA_GROUP,i);
+                default : return -1;
+            }
+        }
+
+        boolean isTransitTrip(int i) {
+            TripModeChoice tripMode = getTripMode(i);
+            return (tripMode == TripModeChoice.WALK_SET || tripMode == TripModeChoice.PNR_SET || tripMode == TripModeChoice.KNR_SET)
+                    && origin[i] > 0 && destination[i] > 0;
+        }
+
+        long getSkimKey(int group, int i) {
+            int tod = getTod(tripTimePeriod[i]);
+            return ((long) (group*ModelStructure.SKIM_PERIOD_INDICES.length + tod + 1) << 48)
+                    | ((long) mgraManager.getTaz(origin[i]) << 24) | mgraManager.getTaz(destination[i]);
+        }
+
+        /**
+         * Solve the auto skims for keys first to last - 1.
+         */
+        void solveSkims(int first, int last) {
+            AutoAndNonMotorizedSkimsCalculator autoSkimsCalculator = calculator.get();
+            for (int k = first; k < last; k++) {
+                long key = keys[k];
+                int group = (int) (key >>> 48) - 1;
+                int tod = group % ModelStructure.SKIM_PERIOD_INDICES.length;
+                group /= ModelStructure.SKIM_PERIOD_INDICES.length;
+
+                // the auto skims are the skims of the TAZs of the MGRAs, so the MGRAs of any trip with the key give them
+                int i = keyTrips[k];
+                double[] autoSkims = autoSkimsCalculator.getAutoSkims(origin[i],destination[i],tod,false,logger);
+                int[] indices = AUTO_SKIM_GROUPS[group];
+                values[k*3] = autoSkims[indices[0]];
+                values[k*3 + 1] = autoSkims[indices[1]];
+                values[k*3 + 2] = getCost(indices[2] < 0 ? 0.0 : autoSkims[indices[2]],autoSkims[indices[1]]);
+            }
+        }
+
+        /**
+         * Fill in the attributes of trips first to last - 1, other than those done one at a time.
+         */
+        void fill(int first, int last, SkimKeyIndex keyIndex) {
+            for (int i = first; i < last; i++) {
+                long key = getSkimKey(i);
+                if (key < 0)
+                    continue;
+
+                TripModeChoice tripMode = getTripMode(i);
+                if (tripMode == TripModeChoice.UNKNOWN) {
+                    columns.set(i,-1,-1,-1,-1);
+                } else if (tripMode == TripModeChoice.WALK || tripMode == TripModeChoice.BIKE) {
+                    double speed = tripMode == TripModeChoice.BIKE ? DEFAULT_BIKE_SPEED : DEFAULT_WALK_SPEED;
+                    int fullMode = tripMode.ordinal();
+                    if (key == 0) {
+                        double distance = mgraManager.getMgraToMgraWalkDistFrom(origin[i],destination[i]);
+                        columns.set(i,(distance/5280)*60/speed,distance/5280,0,fullMode);
+                    } else {
+                        double distance = values[keyIndex.get(key)*3 + 1];
+                        columns.set(i,distance*60/speed,distance,0,fullMode);
+                    }
+                } else {
+                    int k = keyIndex.get(key)*3;
+                    int fullMode = tripMode == TripModeChoice.SCHOOLBUS ? TripModeChoice.SCHOOLBUS.ordinal() + 15 : tripMode.ordinal();
+                    columns.set(i,values[k],values[k + 1],values[k + 2],fullMode);
+                }
+                columns.tripStartTime[i] = getStartTime(tripTimePeriod[i]);
+                columns.originTaz[i] = mgraManager.getTaz(origin[i]);
+                columns.destinationTaz[i] = mgraManager.getTaz(destination[i]);
+            }
+        }
+    }
+
+    /**
+     * Open addressing index of auto skim keys, which are positive longs, and the
+     * first trip added with each key. Keys are added by one thread, after which the
+     * index can be read by any thread.
+     */
+    private static class SkimKeyIndex {
+        private long[] table = new long[1024];
+        private int[] positions = new int[1024];
+        private int[] trips = new int[512];
+        private int size;
+
+        void add(long key, int trip) {
+            if (2*(size + 1) > table.length)
+                grow();
+            int slot = findSlot(table,key);
+            if (table[slot] == 0) {
+                table[slot] = key;
+                trips[size] = trip;
+                positions[slot] = size++;
+            }
+        }
+
+        /**
+         * @return the position of the key in getKeys().
+         */
+        int get(long key) {
+            int slot = findSlot(table,key);
+            if (table[slot] == 0)
+                throw new IllegalStateException("auto skim key not found: " + key);
+            return positions[slot];
+        }
+
+        long[] getKeys() {
+            long[] keys = new long[size];
+            for (int slot = 0; slot < table.length; slot++)
+                if (table[slot] != 0)
+                    keys[positions[slot]] = table[slot];
+            return keys;
+        }
+
+        int[] getTrips() {
+            return Arrays.copyOf(trips,size);
+        }
+
+        private void grow() {
+            trips = Arrays.copyOf(trips,table.length);
+            long[] oldTable = table;
+            int[] oldPositions = positions;
+            table = new long[oldTable.length*2];
+            positions = new int[oldTable.length*2];
+            for (int slot = 0; slot < oldTable.length; slot++) {
+                if (oldTable[slot] == 0)
+                    continue;
+                int newSlot = findSlot(table,oldTable[slot]);
+                table[newSlot] = oldTable[slot];
+                positions[newSlot] = oldPositions[slot];
+            }
+        }
+
+        private static int findSlot(long[] table, long key) {
+            int mask = table.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (table[slot] != 0 && table[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+
+    /**
+     * Splits a range of indices into tasks of at most size indices.
+     */
+    private abstract static class RangeTask extends RecursiveAction {
+        private final int first;
+        private final int last;  // exclusive
+        private final int size;
+
+        RangeTask(int first, int last, int size) {
+            this.first = first;
+            this.last = last;
+            this.size = size;
+        }
+
+        protected abstract void compute(int first, int last);
+
+        protected void compute() {
+            if (last - first > size) {
+                final int mid = (first + last) >>> 1;
+                final RangeTask parent = this;
+                invokeAll(new RangeTask(first,mid,size) {
+                            protected void compute(int first, int last) {
+                                parent.compute(first,last);
+                            }
+                        },
+                        new RangeTask(mid,last,size) {
+                            protected void compute(int first, int last) {
+                                parent.compute(first,last);
+                            }
+                        });
+                return;
+            }
+            compute(first,last);
+        }
+    }
+
     private TripAttributes getTripAttributesUnknown() {
         return new TripAttributes(-1,-1,-1,-1,-1,-1);
     }
@@ -320,133 +657,8 @@ public class SkimBuilder {
             case WALK_SET : 
             case PNR_SET : 
             case KNR_SET : {
-                boolean isDrive = modeChoice.isDrive;
-
-                double[] skims;
-                int boardTaz = -1;
-                int alightTaz = -1;
-                double boardAccessTime = 0.0;
-                double alightAccessTime = 0.0;
-                boardTaz = mgraManager.getTaz(origin);
-                alightTaz = mgraManager.getTaz(destination);
-                if (isDrive) {
-                    if (!inbound) { //outbound: drive to transit stop at origin, then transit to destination
-                        int taz = tapManager.getTazForTap(boardTap);
-                        boardTaz = taz;
-                        int btapPosition = tazManager.getTapPosition(taz,boardTap,Modes.AccessMode.PARK_N_RIDE);
-                        int atapPosition = mgraManager.getTapPosition(destination,alightTap);
-                        if (atapPosition < 0 || btapPosition < 0) {
-                            logger.info("bad tap position for drive access board tap");
-                            logger.info("mc: " + modeChoice);
-                            logger.info("origin: " + origin);
-                            logger.info("dest: " + destination);
-                            logger.info("board tap: " + boardTap);
-                            logger.info("alight tap: " + alightTap);
-                            logger.info("tod: " + tod);
-                            logger.info("inbound: " + inbound);
-                            logger.info("set: " + set);
-                            logger.info("board tap position: " + btapPosition);
-                            logger.info("alight tap position: " + atapPosition);
-                        } else {
-                            boardAccessTime = tazManager.getTapTime(taz,btapPosition,Modes.AccessMode.PARK_N_RIDE);
-                            alightAccessTime = mgraManager.getMgraToTapWalkTime(destination,atapPosition);
-                        }
-                        skims = dtw.getDriveTransitWalkSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
-                    } else { //inbound: transit from origin to destination, then drive
-                        int taz = -1;
-                        try {
-                            taz = tapManager.getTazForTap(alightTap);
-                            alightTaz = taz;
-                        } catch (NullPointerException e) {
-                            logger.info("tap manager can't find taz for alight tap");
-                            logger.info("mc: " + modeChoice);
-                            logger.info("origin: " + origin);
-                            logger.info("dest: " + destination);
-                            logger.info("board tap: " + boardTap);
-                            logger.info("alight tap: " + alightTap);
-                            logger.info("tod: " + tod);
-                            logger.info("inbound: " + inbound);
-                            logger.info("set: " + set);
-                            logger.info("a: " + tapManager.getTapParkingInfo());
-                            logger.info("b: " + tapManager.getTapParkingInfo()[alightTap]);
-                            logger.info("b: " + tapManager.getTapParkingInfo()[alightTap][1]);
-                            logger.info("b: " + tapManager.getTapParkingInfo()[alightTap][1][0]);
-                            throw e;
-                        }
-                        int atapPosition = tazManager.getTapPosition(taz,alightTap,Modes.AccessMode.PARK_N_RIDE);
-                        int btapPosition = mgraManager.getTapPosition(origin,boardTap);
-                        if (atapPosition < 0 || btapPosition < 0) {
-
-                            logger.info("mc: " + modeChoice);
-                            logger.info("origin: " + origin);
-                            logger.info("dest: " + destination);
-                            logger.info("board tap: " + boardTap);
-                            logger.info("alight tap: " + alightTap);
-                            logger.info("tod: " + tod);
-                            logger.info("set: " + set);
-                            logger.info("inbound: " + inbound);
-                            logger.info("board tap position: " + btapPosition);
-                            logger.info("alight tap position: " + atapPosition);
-                        } else {
-                            boardAccessTime = mgraManager.getMgraToTapWalkTime(origin,btapPosition);
-                            alightAccessTime = tazManager.getTapTime(taz,atapPosition,Modes.AccessMode.PARK_N_RIDE);
-                        }
-                        skims = wtd.getWalkTransitDriveSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
-                    }
-                } else {
-                    int bt = mgraManager.getTapPosition(origin,boardTap);
-                    int at = mgraManager.getTapPosition(destination,alightTap);
-                    if (bt < 0 || at < 0) {
-                        logger.info("bad tap position: " + bt + "  " + at);
-                        logger.info("mc: " + modeChoice);
-                        logger.info("origin: " + origin);
-                        logger.info("dest: " + destination);
-                        logger.info("board tap: " + boardTap);
-                        logger.info("alight tap: " + alightTap);
-                        logger.info("tod: " + tod);
-                        logger.info("inbound: " + inbound);
-                        logger.info("set: " + set);
-                        logger.info("board tap position: " + bt);
-                        logger.info("alight tap position: " + at);
-                    } else {
-                        boardAccessTime = mgraManager.getMgraToTapWalkTime(origin,bt);
-                        alightAccessTime = mgraManager.getMgraToTapWalkTime(destination,at);
-                    }
-                    skims = wtw.getWalkTransitWalkSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
-                }
-
-                double time = 0.0;
-                
-                time += skims[TRANSIT_SET_CR_TIME_INDEX];
-                time += skims[TRANSIT_SET_LRT_TIME_INDEX];
-                time += skims[TRANSIT_SET_HR_TIME_INDEX];
-                time += skims[TRANSIT_SET_FR_TIME_INDEX];
-                time += skims[TRANSIT_SET_EXPRESS_BUS_TIME_INDEX];
-                time += skims[TRANSIT_SET_LOCAL_BUS_TIME_INDEX];
-                
-                time += skims[TRANSIT_SET_ACCESS_TIME_INDEX];
-                time += skims[TRANSIT_SET_EGRESS_TIME_INDEX ];
-                time += skims[TRANSIT_SET_AUX_WALK_TIME_INDEX];
-                time += skims[TRANSIT_SET_FIRST_WAIT_TIME_INDEX];
-                time += skims[TRANSIT_SET_TRANSFER_WAIT_TIME_INDEX];
-                
-                int modeIndex = 0;
-                for(modeIndex = TRANSIT_SET_LOCAL_BUS_TIME_INDEX; modeIndex <= TRANSIT_SET_CR_TIME_INDEX; modeIndex++){
-                	if(skims[modeIndex] > 0)
-                		break;
-                }
-                
-                if(modeChoice == TripModeChoice.WALK_SET)
-                	fullMode = TripModeChoice.WALK_SET.ordinal() + (modeIndex - 3);//11-16
-                
-                if(modeChoice == TripModeChoice.PNR_SET)
-                	fullMode = TripModeChoice.PNR_SET.ordinal() + (modeIndex + 2);//17-22
-                
-                if(modeChoice == TripModeChoice.KNR_SET)
-                	fullMode = TripModeChoice.KNR_SET.ordinal() + (modeIndex + 7);//23-28
-                
                 double dist = autoNonMotSkims.getAutoSkims(origin,destination,tod,false,logger)[DA_DIST_INDEX];  //todo: is this correct enough?
-                return new TripAttributes(time,dist,skims[TRANSIT_SET_FARE_INDEX],fullMode,boardTaz,alightTaz);
+                return getTransitTripAttributes(modeChoice,origin,destination,boardTap,alightTap,tod,inbound,set,dist);
             }
             case SCHOOLBUS : {
                 if (timeIndex < 0) {
@@ -462,6 +674,139 @@ public class SkimBuilder {
         }
     }
 
+    /**
+     * @param dist the distance of the trip, which is the drive alone non-toll distance skim
+     */
+    private TripAttributes getTransitTripAttributes(TripModeChoice modeChoice, int origin, int destination, int boardTap, int alightTap, int tod, boolean inbound, int set, double dist) {
+        int fullMode = -1;
+        boolean isDrive = modeChoice.isDrive;
+
+        double[] skims;
+        int boardTaz = -1;
+        int alightTaz = -1;
+        double boardAccessTime = 0.0;
+        double alightAccessTime = 0.0;
+        boardTaz = mgraManager.getTaz(origin);
+        alightTaz = mgraManager.getTaz(destination);
+        if (isDrive) {
+            if (!inbound) { //outbound: drive to transit stop at origin, then transit to destination
+                int taz = tapManager.getTazForTap(boardTap);
+                boardTaz = taz;
+                int btapPosition = tazManager.getTapPosition(taz,boardTap,Modes.AccessMode.PARK_N_RIDE);
+                int atapPosition = mgraManager.getTapPosition(destination,alightTap);
+                if (atapPosition < 0 || btapPosition < 0) {
+                    logger.info("bad tap position for drive access board tap");
+                    logger.info("mc: " + modeChoice);
+                    logger.info("origin: " + origin);
+                    logger.info("dest: " + destination);
+                    logger.info("board tap: " + boardTap);
+                    logger.info("alight tap: " + alightTap);
+                    logger.info("tod: " + tod);
+                    logger.info("inbound: " + inbound);
+                    logger.info("set: " + set);
+                    logger.info("board tap position: " + btapPosition);
+                    logger.info("alight tap position: " + atapPosition);
+                } else {
+                    boardAccessTime = tazManager.getTapTime(taz,btapPosition,Modes.AccessMode.PARK_N_RIDE);
+                    alightAccessTime = mgraManager.getMgraToTapWalkTime(destination,atapPosition);
+                }
+                skims = dtw.getDriveTransitWalkSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
+            } else { //inbound: transit from origin to destination, then drive
+                int taz = -1;
+                try {
+                    taz = tapManager.getTazForTap(alightTap);
+                    alightTaz = taz;
+                } catch (NullPointerException e) {
+                    logger.info("tap manager can't find taz for alight tap");
+                    logger.info("mc: " + modeChoice);
+                    logger.info("origin: " + origin);
+                    logger.info("dest: " + destination);
+                    logger.info("board tap: " + boardTap);
+                    logger.info("alight tap: " + alightTap);
+                    logger.info("tod: " + tod);
+                    logger.info("inbound: " + inbound);
+                    logger.info("set: " + set);
+                    logger.info("a: " + tapManager.getTapParkingInfo());
+                    logger.info("b: " + tapManager.getTapParkingInfo()[alightTap]);
+                    logger.info("b: " + tapManager.getTapParkingInfo()[alightTap][1]);
+                    logger.info("b: " + tapManager.getTapParkingInfo()[alightTap][1][0]);
+                    throw e;
+                }
+                int atapPosition = tazManager.getTapPosition(taz,alightTap,Modes.AccessMode.PARK_N_RIDE);
+                int btapPosition = mgraManager.getTapPosition(origin,boardTap);
+                if (atapPosition < 0 || btapPosition < 0) {
+
+                    logger.info("mc: " + modeChoice);
+                    logger.info("origin: " + origin);
+                    logger.info("dest: " + destination);
+                    logger.info("board tap: " + boardTap);
+                    logger.info("alight tap: " + alightTap);
+                    logger.info("tod: " + tod);
+                    logger.info("set: " + set);
+                    logger.info("inbound: " + inbound);
+                    logger.info("board tap position: " + btapPosition);
+                    logger.info("alight tap position: " + atapPosition);
+                } else {
+                    boardAccessTime = mgraManager.getMgraToTapWalkTime(origin,btapPosition);
+                    alightAccessTime = tazManager.getTapTime(taz,atapPosition,Modes.AccessMode.PARK_N_RIDE);
+                }
+                skims = wtd.getWalkTransitDriveSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
+            }
+        } else {
+            int bt = mgraManager.getTapPosition(origin,boardTap);
+            int at = mgraManager.getTapPosition(destination,alightTap);
+            if (bt < 0 || at < 0) {
+                logger.info("bad tap position: " + bt + "  " + at);
+                logger.info("mc: " + modeChoice);
+                logger.info("origin: " + origin);
+                logger.info("dest: " + destination);
+                logger.info("board tap: " + boardTap);
+                logger.info("alight tap: " + alightTap);
+                logger.info("tod: " + tod);
+                logger.info("inbound: " + inbound);
+                logger.info("set: " + set);
+                logger.info("board tap position: " + bt);
+                logger.info("alight tap position: " + at);
+            } else {
+                boardAccessTime = mgraManager.getMgraToTapWalkTime(origin,bt);
+                alightAccessTime = mgraManager.getMgraToTapWalkTime(destination,at);
+            }
+            skims = wtw.getWalkTransitWalkSkims(set,boardAccessTime,alightAccessTime,boardTap,alightTap,tod,false);
+        }
+
+        double time = 0.0;
+        
+        time += skims[TRANSIT_SET_CR_TIME_INDEX];
+        time += skims[TRANSIT_SET_LRT_TIME_INDEX];
+        time += skims[TRANSIT_SET_HR_TIME_INDEX];
+        time += skims[TRANSIT_SET_FR_TIME_INDEX];
+        time += skims[TRANSIT_SET_EXPRESS_BUS_TIME_INDEX];
+        time += skims[TRANSIT_SET_LOCAL_BUS_TIME_INDEX];
+        
+        time += skims[TRANSIT_SET_ACCESS_TIME_INDEX];
+        time += skims[TRANSIT_SET_EGRESS_TIME_INDEX ];
+        time += skims[TRANSIT_SET_AUX_WALK_TIME_INDEX];
+        time += skims[TRANSIT_SET_FIRST_WAIT_TIME_INDEX];
+        time += skims[TRANSIT_SET_TRANSFER_WAIT_TIME_INDEX];
+        
+        int modeIndex = 0;
+        for(modeIndex = TRANSIT_SET_LOCAL_BUS_TIME_INDEX; modeIndex <= TRANSIT_SET_CR_TIME_INDEX; modeIndex++){
+        	if(skims[modeIndex] > 0)
+        		break;
+        }
+        
+        if(modeChoice == TripModeChoice.WALK_SET)
+        	fullMode = TripModeChoice.WALK_SET.ordinal() + (modeIndex - 3);//11-16
+        
+        if(modeChoice == TripModeChoice.PNR_SET)
+        	fullMode = TripModeChoice.PNR_SET.ordinal() + (modeIndex + 2);//17-22
+        
+        if(modeChoice == TripModeChoice.KNR_SET)
+        	fullMode = TripModeChoice.KNR_SET.ordinal() + (modeIndex + 7);//23-28
+        
+        return new TripAttributes(time,dist,skims[TRANSIT_SET_FARE_INDEX],fullMode,boardTaz,alightTaz);
+    }
+
     public static enum TripModeChoice {
         UNKNOWN(false,false),
         DRIVE_ALONE_NO_TOLL(true,false),
@@ -564,4 +909,88 @@ public class SkimBuilder {
         }
     }
 
+    /**
+     * The attributes of a batch of trips, as columns indexed as the trip arrays.
+     */
+    public static class TripAttributeColumns {
+        private final float[] tripTime;
+        private final float[] tripDistance;
+        private final float[] tripCost;
+        private final int[] fullMode;
+        private final int[] tripStartTime;
+        private final int[] tripBoardTaz;
+        private final int[] tripAlightTaz;
+        private final int[] originTaz;
+        private final int[] destinationTaz;
+
+        public TripAttributeColumns(int numTrips) {
+            tripTime = new float[numTrips];
+            tripDistance = new float[numTrips];
+            tripCost = new float[numTrips];
+            fullMode = new int[numTrips];
+            tripStartTime = new int[numTrips];
+            tripBoardTaz = new int[numTrips];
+            tripAlightTaz = new int[numTrips];
+            originTaz = new int[numTrips];
+            destinationTaz = new int[numTrips];
+        }
+
+        private void set(int i, double time, double distance, double cost, int mode) {
+            tripTime[i] = (float) time;
+            tripDistance[i] = (float) distance;
+            tripCost[i] = (float) cost;
+            fullMode[i] = mode;
+            tripBoardTaz[i] = -1;
+            tripAlightTaz[i] = -1;
+        }
+
+        private void set(int i, TripAttributes attributes) {
+            tripTime[i] = attributes.getTripTime();
+            tripDistance[i] = attributes.getTripDistance();
+            tripCost[i] = attributes.getTripCost();
+            fullMode[i] = attributes.getFullMode();
+            tripStartTime[i] = attributes.getTripStartTime();
+            tripBoardTaz[i] = attributes.getTripBoardTaz();
+            tripAlightTaz[i] = attributes.getTripAlightTaz();
+            originTaz[i] = attributes.getTripOriginTaz();
+            destinationTaz[i] = attributes.getTripDestinationTaz();
+        }
+
+        public float[] getTripTime() {
+            return tripTime;
+        }
+
+        public float[] getTripDistance() {
+            return tripDistance;
+        }
+
+        public float[] getTripCost() {
+            return tripCost;
+        }
+
+        public int[] getFullMode() {
+            return fullMode;
+        }
+
+        public int[] getTripStartTime() {
+            return tripStartTime;
+        }
+
+        public int[] getTripBoardTaz() {
+            return tripBoardTaz;
+        }
+
+        public int[] getTripAlightTaz() {
+            return tripAlightTaz;
+        }
+
+        public int[] getTripOriginTaz() {
+            return originTaz;
+        }
+
+        public int[] getTripDestinationTaz() {
+            return destinationTaz;
+        }
+    }
+
 }
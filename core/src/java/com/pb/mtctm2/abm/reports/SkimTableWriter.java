@@ -0,0 +1,163 @@
+package com.pb.mtctm2.abm.reports;
+
+import com.pb.common.datafile.ColumnarFileWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a skim table with a row for each pair of zones in each time period, to a csv file
+ * or to a columnar file read with com.pb.common.datafile.ColumnarFileReader. The rows of a
+ * block of origin zones are formatted (or encoded, for a columnar file) on a pool of threads,
+ * and the blocks are written to the file in origin order as they finish, so the file is the
+ * same whatever the number of threads. At most two blocks per thread are held waiting to be
+ * written, so only a few blocks of formatted rows are in memory at once.
+ *
+ * The first two columns are the origin and destination zones, the third the time period,
+ * and the rest are the skim values.
+ */
+public class SkimTableWriter {
+
+    // a block is the rows of as many origins as make about this many rows, at least one
+    private static final int ROWS_PER_BLOCK = 16384;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * The skim values for a pair of zones, which may be asked for from several threads at once.
+     */
+    public interface SkimRowSource {
+        /**
+         * Fill values with the skim values from origin to destination.
+         *
+         * @return false if the row should be left out of the table.
+         */
+        boolean getRow(int origin, int destination, float[] values);
+    }
+
+    private final File file;
+    private final int valueCount;
+    private final int numThreads;
+    private final OutputStream csvOut;
+    private final ColumnarFileWriter columnarWriter;
+
+    public SkimTableWriter(File file, String[] columnLabels, boolean columnar, int numThreads) throws IOException {
+        this.file = file;
+        this.valueCount = columnLabels.length - 3;
+        this.numThreads = numThreads;
+        if (columnar) {
+            byte[] columnTypes = new byte[columnLabels.length];
+            Arrays.fill(columnTypes,ColumnarFileWriter.FLOAT);
+            columnTypes[0] = ColumnarFileWriter.INT;
+            columnTypes[1] = ColumnarFileWriter.INT;
+            columnTypes[2] = ColumnarFileWriter.STRING;
+            columnarWriter = new ColumnarFileWriter(file,columnLabels,columnTypes);
+            csvOut = null;
+        } else {
+            csvOut = new BufferedOutputStream(new FileOutputStream(file),1 << 20);
+            StringBuilder sb = new StringBuilder();
+            for (String label : columnLabels)
+                sb.append(sb.length() == 0 ? "" : ",").append(label);
+            csvOut.write(sb.append(LINE_SEPARATOR).toString().getBytes());
+            columnarWriter = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Write the rows of a time period, for each origin and destination in zones.
+     */
+    public void writePeriod(final int[] zones, final String period, final SkimRowSource source) throws IOException {
+        ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+        LinkedList<Future<Object>> pending = new LinkedList<Future<Object>>();
+        int originsPerBlock = Math.max(1,ROWS_PER_BLOCK / Math.max(1,zones.length));
+        try {
+            for (int start = 0; start < zones.length; start += originsPerBlock) {
+                final int from = start;
+                final int to = Math.min(start + originsPerBlock,zones.length);
+                pending.add(exec.submit(new Callable<Object>() {
+                    public Object call() {
+                        return columnarWriter == null ? formatBlock(zones,from,to,period,source) : encodeBlock(zones,from,to,period,source);
+                    }
+                }));
+
+                while (pending.size() >= 2 * numThreads)
+                    writeBlock(pending.removeFirst().get());
+            }
+
+            while (!pending.isEmpty())
+                writeBlock(pending.removeFirst().get());
+
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    public void close() throws IOException {
+        if (columnarWriter != null)
+            columnarWriter.close();
+        else
+            csvOut.close();
+    }
+
+    private byte[] formatBlock(int[] zones, int from, int to, String period, SkimRowSource source) {
+        float[] values = new float[valueCount];
+        StringBuilder sb = new StringBuilder();
+        for (int o = from; o < to; o++) {
+            int i = zones[o];
+            for (int j : zones) {
+                if (!source.getRow(i,j,values))
+                    continue;
+                sb.append(i).append(",").append(j).append(",").append(period);
+                for (float value : values)
+                    sb.append(",").append(value);
+                sb.append(LINE_SEPARATOR);
+            }
+        }
+        return sb.toString().getBytes();
+    }
+
+    private ColumnarFileWriter.RowGroup encodeBlock(int[] zones, int from, int to, String period, SkimRowSource source) {
+        float[] values = new float[valueCount];
+        ColumnarFileWriter.RowGroup rowGroup = columnarWriter.newRowGroup();
+        for (int o = from; o < to; o++) {
+            int i = zones[o];
+            for (int j : zones) {
+                if (!source.getRow(i,j,values))
+                    continue;
+                rowGroup.addInt(i);
+                rowGroup.addInt(j);
+                rowGroup.addString(period);
+                for (float value : values)
+                    rowGroup.addFloat(value);
+                rowGroup.endRow();
+            }
+        }
+        rowGroup.encode();
+        return rowGroup;
+    }
+
+    private void writeBlock(Object block) throws IOException {
+        if (columnarWriter != null)
+            columnarWriter.writeRowGroup((ColumnarFileWriter.RowGroup) block);
+        else
+            csvOut.write((byte[]) block);
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.pb.mtctm2.abm.reports.tests;
+
+import com.pb.common.datafile.ColumnarFileReader;
+import com.pb.common.datafile.TableDataSet;
+import com.pb.mtctm2.abm.reports.SkimTableWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Checks that SkimTableWriter writes the same csv file, byte for byte, as the single threaded
+ * PrintWriter loop DataExporter used before, with one thread and with several, and that its
+ * columnar file is the same whatever the number of threads and reads back to the skim values.
+ *
+ * Run with no arguments; the files are written to the temporary directory and deleted.
+ */
+public class SkimTableWriterTest {
+
+    private static final String[] COLUMN_LABELS = {"ORIG_TAP","DEST_TAP","TOD","TIME_LOCAL","FARE_LOCAL","TIME_EXPRESS"};
+    private static final String[] PERIODS = {"EA","AM"};
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws IOException {
+        int[] zones = new int[300];
+        for (int i = 0; i < zones.length; i++)
+            zones[i] = 2 * i + 1;
+
+        File expected = tempFile(".csv");
+        writeOldCsv(expected,zones);
+        byte[] expectedBytes = readBytes(expected);
+
+        for (int numThreads : new int[] {1,THREADS}) {
+            File csv = tempFile(".csv");
+            write(csv,false,numThreads,zones);
+            check(Arrays.equals(expectedBytes,readBytes(csv)),"csv file with " + numThreads + " threads differs from the old writer's");
+        }
+
+        File columnarOne = tempFile(".ctbl");
+        write(columnarOne,true,1,zones);
+        File columnarMany = tempFile(".ctbl");
+        write(columnarMany,true,THREADS,zones);
+        check(Arrays.equals(readBytes(columnarOne),readBytes(columnarMany)),"columnar file with " + THREADS + " threads differs from one thread");
+        checkColumnar(new ColumnarFileReader().readFile(columnarMany),zones);
+
+        System.out.println("SkimTableWriterTest passed");
+    }
+
+    /**
+     * Skim values made from the zones and period, with some rows left out and some special values.
+     */
+    private static class TestSource implements SkimTableWriter.SkimRowSource {
+        private final String period;
+
+        TestSource(String period) {
+            this.period = period;
+        }
+
+        public boolean getRow(int origin, int destination, float[] values) {
+            float scale = period.equals("AM") ? 1.3f : 1.0f;
+            values[0] = (origin * 31 + destination * 17) % 97 / 7.0f * scale;
+            values[1] = origin == destination ? 0.0f : (origin + destination) * 0.01f;
+            values[2] = destination % 50 == 0 ? Float.NaN : destination % 40 == 0 ? -0.0f : origin / (float) destination;
+            return (origin + destination) % 11 != 0;
+        }
+    }
+
+    private static void write(File file, boolean columnar, int numThreads, int[] zones) throws IOException {
+        SkimTableWriter writer = new SkimTableWriter(file,COLUMN_LABELS,columnar,numThreads);
+        for (String period : PERIODS)
+            writer.writePeriod(zones,period,new TestSource(period));
+        writer.close();
+    }
+
+    /**
+     * The skim table as DataExporter wrote it before SkimTableWriter.
+     */
+    private static void writeOldCsv(File file, int[] zones) throws IOException {
+        PrintWriter writer = new PrintWriter(file);
+        StringBuilder sb = new StringBuilder();
+        for (String label : COLUMN_LABELS)
+            sb.append(sb.length() == 0 ? "" : ",").append(label);
+        writer.println(sb.toString());
+        float[] values = new float[COLUMN_LABELS.length - 3];
+        for (String period : PERIODS) {
+            SkimTableWriter.SkimRowSource periodSource = new TestSource(period);
+            for (int i : zones) {
+                for (int j : zones) {
+                    if (!periodSource.getRow(i,j,values))
+                        continue;
+                    sb = new StringBuilder();
+                    sb.append(i).append(",").append(j).append(",").append(period);
+                    for (float value : values)
+                        sb.append(",").append(value);
+                    writer.println(sb.toString());
+                }
+            }
+        }
+        writer.close();
+    }
+
+    private static void checkColumnar(TableDataSet table, int[] zones) {
+        float[] values = new float[COLUMN_LABELS.length - 3];
+        int row = 0;
+        for (String period : PERIODS) {
+            SkimTableWriter.SkimRowSource periodSource = new TestSource(period);
+            for (int i : zones) {
+                for (int j : zones) {
+                    if (!periodSource.getRow(i,j,values))
+                        continue;
+                    row++;
+                    check(table.getValueAt(row,COLUMN_LABELS[0]) == i && table.getValueAt(row,COLUMN_LABELS[1]) == j
+                            && table.getStringValueAt(row,COLUMN_LABELS[2]).equals(period),"columnar key at row " + row);
+                    for (int v = 0; v < values.length; v++)
+                        check(Float.floatToIntBits(table.getValueAt(row,COLUMN_LABELS[v + 3])) == Float.floatToIntBits(values[v]),
+                              "columnar " + COLUMN_LABELS[v + 3] + " at row " + row);
+                }
+            }
+        }
+        check(table.getRowCount() == row,"columnar row count " + table.getRowCount() + ", expected " + row);
+    }
+
+    private static File tempFile(String extension) throws IOException {
+        File file = File.createTempFile("skimTableWriterTest",extension);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file,"r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new RuntimeException("SkimTableWriterTest failed: " + message);
+    }
+
+}